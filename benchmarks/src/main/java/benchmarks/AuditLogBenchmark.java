@@ -0,0 +1,98 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import model.Account;
+import model.AuditLog;
+import model.Bank;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What the audit log costs the sessions: publishing alone, by size of the ring, counting the events dropped
+ * when the consumer falls behind; and a deposit with and without an audit log (`audited`, -p audited=false).
+ * Run with -t to add producer threads. The consumer thread needs a core of its own: on a single core,
+ * its time writing the files is counted against the producers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuditLogBenchmark {
+    @Param({"1024", "65536"})
+    public int capacity;
+
+    @Param({"true"})
+    public boolean audited;
+
+    private Path directory;
+    private AuditLog auditLog;
+    private Bank theBank;
+    private Account account;
+
+    /**
+     * Events published and dropped by each thread, reported next to the throughput
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long published;
+        public long dropped;
+    }
+
+    @Setup(Level.Trial)
+    public void openAuditLog() throws IOException {
+        this.directory = Files.createTempDirectory("atm-audit-benchmark");
+        this.auditLog = AuditLog.open(this.directory, this.capacity, 64L << 20, 4);
+        this.theBank = new Bank("Benchmark");
+        if (this.audited) {
+            this.theBank.setAuditLog(this.auditLog);
+        }
+        this.account = Fixtures.addAccount(this.theBank, Fixtures.addUser(this.theBank, "0000"), 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        this.auditLog.close();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(this.directory);
+    }
+
+    @Benchmark
+    public boolean publish(Outcome outcome) {
+        boolean published = this.auditLog.publish(AuditLog.Type.TRANSACTION, this.account.getUUID(), 100, "Deposit");
+        if (published) {
+            outcome.published++;
+        } else {
+            outcome.dropped++;
+        }
+        return published;
+    }
+
+    @Benchmark
+    public void deposit() {
+        this.theBank.deposit(this.account, 100, "Deposit");
+    }
+}
@@ -0,0 +1,107 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import model.Account;
+import model.Bank;
+import model.ColdStore;
+import model.DailyRollup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Balance of an account at a random point in its history, from the index against summing the Transactions,
+ * and the daily rollups of the bank. With hotTransactions >= 0, the bank has a ColdStore and all but the
+ * last hotTransactions of the history are read from sealed segments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BalanceAsOfBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int historyLength;
+
+    @Param({"-1", "1024"})
+    public int hotTransactions;
+
+    private Account account;
+    private Bank theBank;
+    private Path coldStorePath;
+    private long first;
+    private long last;
+
+    @Setup(Level.Trial)
+    public void setUpAccount() throws IOException {
+        this.theBank = new Bank("Benchmark");
+        if (this.hotTransactions >= 0) {
+            this.coldStorePath = Files.createTempFile("atm-cold-benchmark", ".segments");
+            this.theBank.setColdStore(ColdStore.create(this.coldStorePath, this.hotTransactions));
+        }
+        this.account = Fixtures.addAccount(this.theBank, Fixtures.addUser(this.theBank, "0000"),
+                this.historyLength);
+        this.first = this.account.getTransaction(0).getTimestamp();
+        this.last = this.account.getLastTimestamp();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteColdStore() throws IOException {
+        if (this.coldStorePath != null) {
+            this.theBank.getColdStore().close();
+            Files.delete(this.coldStorePath);
+        }
+    }
+
+    private long randomTime() {
+        return ThreadLocalRandom.current().nextLong(this.first, this.last + 1);
+    }
+
+    @Benchmark
+    public long balanceAsOf() {
+        return this.account.getBalanceAsOf(this.randomTime());
+    }
+
+    @Benchmark
+    public long netFlow() {
+        long from = this.randomTime();
+        return this.account.getNetFlow(from, from + 1000);
+    }
+
+    @Benchmark
+    public long sumOfTransactions() {
+        long time = this.randomTime();
+        long balance = 0;
+        for (int i = 0; i < this.account.numberOfTransactions(); i++) {
+            if (this.account.getTransaction(i).getTimestamp() > time) {
+                break;
+            }
+            balance += this.account.getTransaction(i).getAmount();
+        }
+        return balance;
+    }
+
+    @Benchmark
+    public List<DailyRollup> dailyRollupsOfAMonth() {
+        LocalDate today = LocalDate.now();
+        return this.theBank.getDailyRollups().between(today.minusDays(30), today);
+    }
+}
@@ -0,0 +1,99 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import model.Account;
+import model.Bank;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The hot paths of an ATM session: login, balance, posting, summary lines and transfers,
+ * for banks of different sizes and accounts with short and long histories
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BankBenchmark {
+    @Param({"1000", "100000"})
+    public int users;
+
+    @Param({"10", "10000"})
+    public int historyLength;
+
+    private Bank theBank;
+    private User user;
+    private Account from;
+    private Account to;
+    private Account history;
+    private long transfers;
+
+    @Setup(Level.Trial)
+    public void setUpBank() {
+        this.theBank = new Bank("Benchmark");
+        Fixtures.addUsers(this.theBank, this.users - 1);
+        // The user logging in has a pin hashed at the default cost
+        this.user = Fixtures.addUser(this.theBank, "1234");
+        this.history = Fixtures.addAccount(this.theBank, this.user, this.historyLength);
+    }
+
+    /**
+     * Fresh accounts for every iteration, so that the benchmarks adding transactions don't make
+     * the history grow from one iteration to the next
+     */
+    @Setup(Level.Iteration)
+    public void setUpAccounts() {
+        this.from = Fixtures.addAccount(this.theBank, this.user, this.historyLength);
+        this.to = Fixtures.addAccount(this.theBank, this.user, this.historyLength);
+        this.transfers = 0;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public User userLogin() {
+        return this.theBank.userLogin(this.user.getUUID(), "1234");
+    }
+
+    @Benchmark
+    public long getBalance() {
+        return this.history.getBalance();
+    }
+
+    @Benchmark
+    public String accountSummaryLine() {
+        return this.history.getSummaryLine();
+    }
+
+    @Benchmark
+    public String transactionSummaryLine() {
+        return this.history.getTransaction(this.historyLength - 1).getSummaryLine();
+    }
+
+    @Benchmark
+    public void addTransaction() {
+        this.from.addTransaction(1, "Benchmark deposit");
+    }
+
+    @Benchmark
+    public boolean transfer() {
+        // Back and forth, so that neither account runs out of money
+        if ((this.transfers++ & 1) == 0) {
+            return this.theBank.transfer(this.from, this.to, 1, "Benchmark");
+        }
+        return this.theBank.transfer(this.to, this.from, 1, "Benchmark");
+    }
+}
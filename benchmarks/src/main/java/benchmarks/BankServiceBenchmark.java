@@ -0,0 +1,108 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import model.Account;
+import model.Bank;
+import model.BankService;
+import model.Journal;
+import model.Money;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Deposits and transfers between random accounts of a journaled bank: each session either calls the Bank
+ * and waits for every operation (sync), or pipelines PIPELINE_DEPTH calls to a BankService before waiting
+ * for them all (pipelined). Run it with -t 16 or more to compare the two under many sessions; the scores
+ * are operations per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BankServiceBenchmark {
+    private static final int PIPELINE_DEPTH = 32;
+
+    @Param({"BUFFERED", "FSYNC"})
+    public Journal.Durability durability;
+
+    @Param({"1024"})
+    public int accounts;
+
+    private Path directory;
+    private Bank theBank;
+    private Account[] theAccounts;
+    private BankService service;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        this.directory = Files.createTempDirectory("atm-service-benchmark");
+        this.theBank = Bank.open("Benchmark", this.directory.resolve("bank.journal"), this.durability);
+        Fixtures.addUsers(this.theBank, this.accounts);
+        this.theAccounts = new Account[this.accounts];
+        int i = 0;
+        for (User user : this.theBank.getUsers()) {
+            this.theAccounts[i] = Fixtures.addAccount(this.theBank, user, 0);
+            this.theAccounts[i].addTransaction(Money.of(1000000, 0), "Opening balance");
+            i++;
+        }
+        this.service = new BankService(this.theBank);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        this.service.close();
+        this.theBank.getJournal().close();
+        Files.deleteIfExists(this.directory.resolve("bank.journal"));
+        Files.deleteIfExists(this.directory);
+    }
+
+    @Benchmark
+    public boolean sync() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Account account = this.theAccounts[random.nextInt(this.accounts)];
+        if (random.nextBoolean()) {
+            this.theBank.deposit(account, 100, "Benchmark deposit");
+            return true;
+        }
+        Account to = this.theAccounts[random.nextInt(this.accounts)];
+        return this.theBank.transfer(account, to, 100, "Benchmark");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public Object pipelined() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CompletableFuture<?>[] results = new CompletableFuture<?>[PIPELINE_DEPTH];
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            Account account = this.theAccounts[random.nextInt(this.accounts)];
+            if (random.nextBoolean()) {
+                results[i] = this.service.deposit(account, 100, "Benchmark deposit");
+            } else {
+                Account to = this.theAccounts[random.nextInt(this.accounts)];
+                results[i] = this.service.transfer(account, to, 100, "Benchmark");
+            }
+        }
+        return CompletableFuture.allOf(results).join();
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import model.Bank;
+import model.EndOfDayBatch;
+import model.EndOfDayReport;
+import model.EndOfDayRule;
+import model.Money;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The end-of-day batch over every account of a bank, by number of threads: interest on the Savings account
+ * addUser opens, and a maintenance fee on a Checking account per user, both with historyLength transactions.
+ * The time is per batch of the whole bank, a new day each time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndOfDayBenchmark {
+    @Param({"50000"})
+    public int users;
+
+    @Param({"100"})
+    public int historyLength;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Bank theBank;
+    private EndOfDayBatch batch;
+    private LocalDate day;
+
+    @Setup(Level.Trial)
+    public void setUpBank() {
+        this.theBank = new Bank("Benchmark");
+        Fixtures.addUsers(this.theBank, this.users);
+        for (User user : this.theBank.getUsers()) {
+            Fixtures.addAccount(this.theBank, user, this.historyLength);
+        }
+        this.batch = new EndOfDayBatch(this.theBank, List.of(EndOfDayRule.interest("Savings", 150),
+                EndOfDayRule.maintenanceFee("Checking", Money.of(5, 0), Money.of(1000000, 0))), this.parallelism);
+        this.day = LocalDate.of(2026, 1, 1);
+    }
+
+    @Benchmark
+    public EndOfDayReport run() {
+        this.day = this.day.plusDays(1);
+        return this.batch.run(this.day);
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import model.Account;
+import model.Bank;
+import model.PinAuthenticator;
+import model.User;
+
+/**
+ * Builds the banks the benchmarks run against
+ */
+final class Fixtures {
+    /**
+     * Amount of each deposit of a generated history, in cents
+     */
+    static final long DEPOSIT = 10000;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Add users to a bank, with a single hash iteration so that large banks are quick to build
+     * @param theBank the bank
+     * @param numberOfUsers number of users to add
+     */
+    static void addUsers(Bank theBank, int numberOfUsers) {
+        PinAuthenticator authenticator = theBank.getAuthenticator();
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, TimeUnit.MINUTES.toMillis(15)));
+        try {
+            for (int i = 0; i < numberOfUsers; i++) {
+                theBank.addUser("First" + i, "Last" + i, "0000");
+            }
+        } finally {
+            theBank.setAuthenticator(authenticator);
+        }
+    }
+
+    /**
+     * Add an account with a history of deposits to a user
+     * @param theBank the bank
+     * @param holder the user
+     * @param historyLength number of transactions of the account
+     * @return the account
+     */
+    static Account addAccount(Bank theBank, User holder, int historyLength) {
+        Account account = new Account("Checking", holder, theBank);
+        holder.addAccount(account);
+        theBank.addAccount(account);
+        for (int i = 0; i < historyLength; i++) {
+            account.addTransaction(DEPOSIT, "Deposit " + (i % 16));
+        }
+        return account;
+    }
+
+    /**
+     * Add a user
+     * @param theBank the bank
+     * @param pin the pin of the user
+     * @return the user
+     */
+    static User addUser(Bank theBank, String pin) {
+        return theBank.addUser("Bench", "Mark", pin);
+    }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import model.Bank;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The uuid generators, with the ID space already filled to different levels.
+ * Every call uses up an ID and there are only 1M user IDs, so each iteration starts over from a new Bank
+ * and times a fixed batch of calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = IdBenchmark.BATCH)
+@Measurement(iterations = 5, batchSize = IdBenchmark.BATCH)
+@Fork(1)
+public class IdBenchmark {
+    static final int BATCH = 10000;
+
+    /**
+     * Number of IDs given out before the measured ones
+     */
+    @Param({"0", "500000", "900000"})
+    public int users;
+
+    private Bank theBank;
+
+    @Setup(Level.Iteration)
+    public void setUpBank() {
+        this.theBank = new Bank("Benchmark");
+        for (int i = 0; i < this.users; i++) {
+            this.theBank.getNewUserUUID();
+            this.theBank.getNewAccountUUID();
+        }
+    }
+
+    @Benchmark
+    public void getNewUserUUID(Blackhole blackhole) {
+        blackhole.consume(this.theBank.getNewUserUUID());
+    }
+
+    @Benchmark
+    public void getNewAccountUUID(Blackhole blackhole) {
+        blackhole.consume(this.theBank.getNewAccountUUID());
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import model.Account;
+import model.Bank;
+import model.Journal;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Posting a transaction to a journaled bank, in each durability mode.
+ * Run it with -t 4 or more to see concurrent sessions share writes and fsyncs (group commit).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+    /**
+     * The journaled bank, shared by all the benchmark threads
+     */
+    @State(Scope.Benchmark)
+    public static class JournaledBank {
+        @Param({"BUFFERED", "WRITE", "FSYNC"})
+        public Journal.Durability durability;
+
+        Path directory;
+        Bank theBank;
+
+        @Setup(Level.Trial)
+        public void open() throws IOException {
+            this.directory = Files.createTempDirectory("atm-journal-benchmark");
+            this.theBank = Bank.open("Benchmark", this.directory.resolve("bank.journal"), this.durability);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            this.theBank.getJournal().close();
+            Files.deleteIfExists(this.directory.resolve("bank.journal"));
+            Files.deleteIfExists(this.directory);
+        }
+    }
+
+    /**
+     * An account per benchmark thread, so that threads only meet in the journal
+     */
+    @State(Scope.Thread)
+    public static class Session {
+        Account account;
+
+        @Setup(Level.Trial)
+        public void addAccount(JournaledBank bank) {
+            User user = Fixtures.addUser(bank.theBank, "1234");
+            this.account = Fixtures.addAccount(bank.theBank, user, 0);
+        }
+    }
+
+    @Benchmark
+    public void addTransaction(Session session) {
+        session.account.addTransaction(1, "Benchmark deposit");
+    }
+}
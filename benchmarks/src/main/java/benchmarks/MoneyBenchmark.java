@@ -0,0 +1,73 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Money as long cents against the double dollars it replaced: summing a history, and formatting an amount
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoneyBenchmark {
+    @Param({"1000", "1000000"})
+    public int historyLength;
+
+    private long[] cents;
+    private double[] dollars;
+
+    @Setup
+    public void setUpAmounts() {
+        Random random = new Random(42);
+        this.cents = new long[this.historyLength];
+        this.dollars = new double[this.historyLength];
+        for (int i = 0; i < this.historyLength; i++) {
+            this.cents[i] = random.nextInt(2000000) - 1000000;
+            this.dollars[i] = this.cents[i] / 100.0;
+        }
+    }
+
+    @Benchmark
+    public long sumCents() {
+        long balance = 0;
+        for (long amount : this.cents) {
+            balance = Money.add(balance, amount);
+        }
+        return balance;
+    }
+
+    @Benchmark
+    public double sumDollars() {
+        double balance = 0;
+        for (double amount : this.dollars) {
+            balance += amount;
+        }
+        return balance;
+    }
+
+    @Benchmark
+    public String formatCents() {
+        return Money.format(this.cents[0]);
+    }
+
+    @Benchmark
+    public String formatDollars() {
+        return String.format("$%.02f", this.dollars[0]);
+    }
+}
@@ -0,0 +1,84 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import model.Account;
+import model.AccountSnapshot;
+import model.Bank;
+import model.TransactionPage;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Readers of the balances and the newest transactions of a user, from AccountSnapshots, next to a writer
+ * moving money between the accounts of the user; and the same writer alone. The readers take no lock, so
+ * the writer of the group should keep the throughput it has alone, cores permitting.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadWriteBenchmark {
+    private static final int PAGE_SIZE = 10;
+
+    private Bank theBank;
+    private User holder;
+    private Account savings;
+    private Account checking;
+
+    @Setup(Level.Trial)
+    public void setUpUser() {
+        this.theBank = new Bank("Benchmark");
+        this.holder = Fixtures.addUser(this.theBank, "0000");
+        this.checking = Fixtures.addAccount(this.theBank, this.holder, 1000);
+        this.savings = this.theBank.getAccounts().get(0);
+    }
+
+    @Benchmark
+    @Group("snapshots")
+    @GroupThreads(3)
+    public long snapshotRead() {
+        List<AccountSnapshot> snapshots = this.holder.getAccountSnapshots();
+        long total = 0;
+        for (AccountSnapshot snapshot : snapshots) {
+            TransactionPage page = snapshot.getHistoryPage(Long.MIN_VALUE, Long.MAX_VALUE, TransactionPage.FIRST,
+                    PAGE_SIZE);
+            total += snapshot.getBalance() + page.getTransactions().size();
+        }
+        return total;
+    }
+
+    @Benchmark
+    @Group("snapshots")
+    @GroupThreads(1)
+    public boolean snapshotWrite() {
+        return this.transferBackAndForth();
+    }
+
+    @Benchmark
+    @Group("writerAlone")
+    @GroupThreads(1)
+    public boolean writeAlone() {
+        return this.transferBackAndForth();
+    }
+
+    private boolean transferBackAndForth() {
+        return this.theBank.transfer(this.checking, this.savings, 1, "Bench")
+                & this.theBank.transfer(this.savings, this.checking, 1, "Bench");
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import model.Account;
+import model.Bank;
+import model.Money;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mixed workload (40% deposits, 30% withdrawals, 30% transfers between random accounts) on a bank run by
+ * 1 to N shards, against the unsharded bank (shards = 0) where sessions lock the accounts themselves.
+ * Run it with -t set to the number of sessions, e.g. -t 8, and compare the shard counts up to the cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardBenchmark {
+    @Param({"0", "1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"1024"})
+    public int accounts;
+
+    private Bank theBank;
+    private Account[] theAccounts;
+
+    @Setup(Level.Trial)
+    public void setUpBank() {
+        this.theBank = new Bank("Benchmark");
+        Fixtures.addUsers(this.theBank, this.accounts);
+        this.theAccounts = new Account[this.accounts];
+        int i = 0;
+        for (User user : this.theBank.getUsers()) {
+            this.theAccounts[i] = Fixtures.addAccount(this.theBank, user, 0);
+            this.theAccounts[i].addTransaction(Money.of(1000000, 0), "Opening balance");
+            i++;
+        }
+        if (this.shards > 0) {
+            this.theBank.startShards(this.shards);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopShards() {
+        this.theBank.stopShards();
+    }
+
+    @Benchmark
+    public boolean mixed() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Account account = this.theAccounts[random.nextInt(this.accounts)];
+        int operation = random.nextInt(10);
+        if (operation < 4) {
+            this.theBank.deposit(account, 100, "Benchmark deposit");
+            return true;
+        }
+        if (operation < 7) {
+            return this.theBank.withdraw(account, 100, "Benchmark withdrawal");
+        }
+        Account to = this.theAccounts[random.nextInt(this.accounts)];
+        return this.theBank.transfer(account, to, 100, "Benchmark");
+    }
+}
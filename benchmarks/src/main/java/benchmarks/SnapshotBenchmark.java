@@ -0,0 +1,90 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import model.Bank;
+import model.Journal;
+import model.Snapshot;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start of a persisted bank: from a snapshot covering the whole journal, against replaying the journal.
+ * 100000 users with 10 accounts each make the 1M accounts point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+    @Param({"10000", "100000"})
+    public int users;
+
+    /**
+     * Accounts of each user: the savings account every user gets, and accountsPerUser - 1 accounts
+     * with historyLength transactions each
+     */
+    @Param({"2", "10"})
+    public int accountsPerUser;
+
+    @Param({"10", "100"})
+    public int historyLength;
+
+    private Path directory;
+    private Path journal;
+    private Path snapshot;
+
+    @Setup(Level.Trial)
+    public void writeBank() throws IOException {
+        this.directory = Files.createTempDirectory("atm-snapshot-benchmark");
+        this.journal = this.directory.resolve("bank.journal");
+        this.snapshot = this.directory.resolve("bank.snapshot");
+        Bank theBank = Bank.open("Benchmark", this.journal, Journal.Durability.BUFFERED);
+        Fixtures.addUsers(theBank, this.users);
+        for (User user : theBank.getUsers()) {
+            for (int i = 1; i < this.accountsPerUser; i++) {
+                Fixtures.addAccount(theBank, user, this.historyLength);
+            }
+        }
+        Snapshot.write(theBank, this.snapshot);
+        theBank.getJournal().close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBank() throws IOException {
+        Files.deleteIfExists(this.journal);
+        Files.deleteIfExists(this.snapshot);
+        Files.deleteIfExists(this.directory);
+    }
+
+    @Benchmark
+    public Bank openFromSnapshot() throws IOException {
+        Bank theBank = Bank.open("Benchmark", this.journal, this.snapshot, Journal.Durability.BUFFERED);
+        theBank.getJournal().close();
+        return theBank;
+    }
+
+    @Benchmark
+    public Bank openFromJournal() throws IOException {
+        Bank theBank = Bank.open("Benchmark", this.journal, Journal.Durability.BUFFERED);
+        theBank.getJournal().close();
+        return theBank;
+    }
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import model.Bank;
+import model.StatementExporter;
+import model.StatementReport;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Statements of every account of a bank, one file per account and combined, by number of workers.
+ * The time is per export of the whole bank: historyLength transactions in one account per user, and the empty
+ * Savings account addUser opens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StatementBenchmark {
+    @Param({"10000"})
+    public int users;
+
+    @Param({"100"})
+    public int historyLength;
+
+    @Param({"CSV", "FIXED_WIDTH"})
+    public StatementExporter.Format format;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private Bank theBank;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUpBank() throws IOException {
+        this.theBank = new Bank("Benchmark");
+        Fixtures.addUsers(this.theBank, this.users);
+        for (User user : this.theBank.getUsers()) {
+            Fixtures.addAccount(this.theBank, user, this.historyLength);
+        }
+        this.directory = Files.createTempDirectory("atm-statement-benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStatements() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public StatementReport exportEach() throws IOException {
+        return new StatementExporter(this.theBank, this.format, this.workers).exportEach(this.directory.resolve("each"));
+    }
+
+    @Benchmark
+    public StatementReport exportCombined() throws IOException {
+        return new StatementExporter(this.theBank, this.format, this.workers)
+                .exportCombined(this.directory.resolve("statements"));
+    }
+}
@@ -0,0 +1,107 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import model.Account;
+import model.Bank;
+import model.IngestReport;
+import model.Money;
+import model.PinAuthenticator;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Onboarding a file of users, each with an opening balance on Savings and a Checking account: Bank.importUsers
+ * with its worker threads, against calling addUser and opening the accounts one user at a time.
+ * The time is per file, into a new bank each time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UserImportBenchmark {
+    @Param({"10000"})
+    public int users;
+
+    @Param({"1", "1024"})
+    public int hashIterations;
+
+    @Param({"4"})
+    public int workers;
+
+    private Path directory;
+    private Path file;
+    private Bank theBank;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        this.directory = Files.createTempDirectory("atm-import-benchmark");
+        this.file = this.directory.resolve("users.csv");
+        try (BufferedWriter out = Files.newBufferedWriter(this.file, StandardCharsets.UTF_8)) {
+            out.write("firstName,lastName,pin,savingsBalance,otherAccounts");
+            out.newLine();
+            for (int i = 0; i < this.users; i++) {
+                out.write("First" + i + ",Last" + i + "," + (1000 + i % 9000) + ",250.00,Checking:10.00");
+                out.newLine();
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void newBank() {
+        this.theBank = new Bank("Benchmark");
+        this.theBank.setAuthenticator(new PinAuthenticator(this.hashIterations, 5, TimeUnit.MINUTES.toMillis(15)));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(this.directory.resolve("mapping.csv"));
+        Files.delete(this.file);
+        Files.delete(this.directory);
+    }
+
+    @Benchmark
+    public IngestReport importUsers() throws IOException {
+        return this.theBank.importUsers(this.file, this.directory.resolve("mapping.csv"), this.workers);
+    }
+
+    @Benchmark
+    public int addUserOneByOne() {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < this.users; i++) {
+                User user = this.theBank.addUser("First" + i, "Last" + i, Integer.toString(1000 + i % 9000));
+                this.theBank.deposit(this.theBank.findAccount(user.getAcctUUID(0)), Money.of(250, 0), "Opening balance");
+                Account checking = new Account("Checking", user, this.theBank);
+                user.addAccount(checking);
+                this.theBank.addAccount(checking);
+                this.theBank.deposit(checking, Money.of(10, 0), "Opening balance");
+            }
+        } finally {
+            System.setOut(out);
+        }
+        return this.theBank.numberOfUsers();
+    }
+}
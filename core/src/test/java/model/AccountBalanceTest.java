@@ -0,0 +1,51 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The running balance of an Account, and its checkpoints: the balance before any transaction is the
+ * sum of the amounts before it, whichever side of a checkpoint it falls on
+ */
+class AccountBalanceTest {
+    private static final int TRANSACTIONS = 2 * Account.CHECKPOINT_INTERVAL + 100;
+
+    @Test
+    void theRunningBalanceAndTheCheckpointsMatchTheHistory() {
+        Bank theBank = new Bank("Bank of Balances");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Balance", "1234").getAcctUUID(0));
+
+        Random random = new Random(42);
+        long[] prefixSums = new long[TRANSACTIONS + 1];
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            long amount = random.nextInt(20000) - 9000;
+            savings.addTransaction(amount, "Random");
+            prefixSums[i + 1] = prefixSums[i] + amount;
+        }
+
+        assertEquals(TRANSACTIONS, savings.numberOfTransactions());
+        assertEquals(prefixSums[TRANSACTIONS], savings.getBalance());
+        assertTrue(savings.verifyBalance());
+        // Around each checkpoint, and between them
+        int interval = Account.CHECKPOINT_INTERVAL;
+        for (int index : new int[] {0, 1, interval - 1, interval, interval + 1, 2 * interval, 2 * interval + 7,
+                TRANSACTIONS - 1, TRANSACTIONS}) {
+            assertEquals(prefixSums[index], savings.balanceBefore(index), "before " + index);
+        }
+    }
+
+    @Test
+    void anEmptyAccountHasAZeroBalance() {
+        Bank theBank = new Bank("Bank of Balances");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account savings = theBank.findAccount(theBank.addUser("Bob", "Balance", "1234").getAcctUUID(0));
+
+        assertEquals(0, savings.getBalance());
+        assertEquals(0, savings.balanceBefore(0));
+        assertTrue(savings.verifyBalance());
+    }
+}
@@ -0,0 +1,88 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Account snapshots: a snapshot doesn't change as transactions are added, and the snapshots of a user's
+ * accounts are all as of one moment, even with transfers between them going on
+ */
+class AccountSnapshotTest {
+    private static final int TRANSFERS = 20000;
+
+    @Test
+    void aSnapshotKeepsItsBalanceAndHistory() {
+        Bank theBank = AccountSnapshotTest.newBank();
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Snapshot", "1234").getAcctUUID(0));
+        theBank.deposit(savings, Money.of(100, 0), "Pay");
+        theBank.deposit(savings, Money.of(20, 0), "Gift");
+        AccountSnapshot snapshot = savings.getSnapshot();
+
+        theBank.deposit(savings, Money.of(5, 0), "Refund");
+        assertEquals(Money.of(125, 0), savings.getBalance());
+        assertEquals(Money.of(120, 0), snapshot.getBalance());
+        assertEquals(2, snapshot.numberOfTransactions());
+        assertEquals(Money.of(20, 0), snapshot.getTransaction(1).getAmount());
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getTransaction(2));
+        assertEquals(2, snapshot.getHistoryPage(Long.MIN_VALUE, Long.MAX_VALUE, TransactionPage.FIRST, 10)
+                .getTransactions().size());
+        assertEquals(3, savings.getSnapshot().numberOfTransactions());
+    }
+
+    @Test
+    void theAccountsOfAUserAreReadAsOfOneMoment() throws InterruptedException {
+        Bank theBank = AccountSnapshotTest.newBank();
+        User ann = theBank.addUser("Ann", "Snapshot", "1234");
+        Account savings = theBank.findAccount(ann.getAcctUUID(0));
+        Account checking = new Account("Checking", ann, theBank);
+        ann.addAccount(checking);
+        theBank.addAccount(checking);
+        theBank.deposit(savings, Money.of(1000, 0), "Pay");
+
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < TRANSFERS; i++) {
+                    if (i % 2 == 0) {
+                        theBank.transfer(savings, checking, Money.of(1, 0), "Save");
+                    } else {
+                        theBank.transfer(checking, savings, Money.of(1, 0), "Spend");
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "atm-snapshot-writer");
+        writer.start();
+
+        // Money only moves between the two accounts: every reading adds up to the same total
+        while (writer.isAlive()) {
+            List<AccountSnapshot> snapshots = ann.getAccountSnapshots();
+            long total = 0;
+            for (AccountSnapshot snapshot : snapshots) {
+                long sum = 0;
+                for (int i = 0; i < snapshot.numberOfTransactions(); i++) {
+                    sum += snapshot.getTransaction(i).getAmount();
+                }
+                assertEquals(sum, snapshot.getBalance());
+                total += snapshot.getBalance();
+            }
+            assertEquals(Money.of(1000, 0), total);
+        }
+        writer.join();
+        assertNull(failure.get());
+        assertEquals(Money.of(1000, 0), savings.getBalance());
+        assertEquals(0, checking.getBalance());
+    }
+
+    private static Bank newBank() {
+        Bank theBank = new Bank("Bank of Snapshot");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        return theBank;
+    }
+}
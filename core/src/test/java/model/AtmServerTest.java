@@ -0,0 +1,137 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Loopback tests of the AtmServer: many terminal sessions open at the same time, each logging in,
+ * depositing and quitting, and a terminal typing what the menu doesn't expect.
+ */
+class AtmServerTest {
+    /**
+     * Stack size of the client threads
+     */
+    private static final long CLIENT_STACK_SIZE = 128 * 1024;
+
+    @ParameterizedTest
+    @ValueSource(ints = {3000})
+    void concurrentSessionsAllComplete(int sessions) throws Exception {
+        // One user per session, all in the same bank
+        Bank theBank = AtmServerTest.newBank();
+        String[] userIds = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            userIds[i] = theBank.addUser("Load", "User" + i, "1234").getUUID();
+        }
+
+        AtmServer server = new AtmServer(theBank, 0, sessions, 60 * 1000);
+        server.start();
+
+        CountDownLatch connected = new CountDownLatch(sessions);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        ArrayList<Thread> clients = new ArrayList<Thread>();
+        for (int i = 0; i < sessions; i++) {
+            String userId = userIds[i];
+            Thread client = new Thread(null, () -> {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                    // Hold the session open until every client is connected
+                    connected.countDown();
+                    go.await();
+
+                    // Login, deposit $10.00 in the first account, quit, then hang up
+                    AtmServerTest.runScript(socket, userId + "\n1234\n3\n1\n10.00\nload\n5\n");
+                    completed.incrementAndGet();
+                } catch (IOException | InterruptedException e) {
+                    failed.incrementAndGet();
+                    connected.countDown();
+                }
+            }, "atm-client-" + i, CLIENT_STACK_SIZE);
+            client.start();
+            clients.add(client);
+        }
+
+        // Wait for the server to have accepted every session, for 30s at most
+        connected.await();
+        long deadline = System.currentTimeMillis() + 30 * 1000;
+        while (server.getActiveSessions() < sessions - failed.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        int openTogether = server.getActiveSessions();
+        go.countDown();
+        for (Thread client : clients) {
+            client.join();
+        }
+        server.stop();
+
+        assertEquals(sessions, completed.get());
+        assertEquals(0, server.getRejectedSessions());
+        assertEquals(sessions, openTogether);
+        // Every session deposited $10.00
+        for (String userId : userIds) {
+            assertEquals(Money.of(10, 0), theBank.findUser(userId).getAccountBalance(0));
+        }
+    }
+
+    @Test
+    void mistypedInputIsAskedAgain() throws Exception {
+        Bank theBank = AtmServerTest.newBank();
+        User user = theBank.addUser("Ann", "Typo", "1234");
+        AtmServer server = new AtmServer(theBank, 0, 1, 60 * 1000);
+        server.start();
+
+        String screens;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            // An option that isn't a number, one too big for an int, an account that isn't a number,
+            // then a deposit that still goes through in the same session
+            screens = AtmServerTest.runScript(socket,
+                    user.getUUID() + "\n1234\nabc\n99999999999\n3\nxyz\n1\n2.50\ntypo\n5\n");
+        } finally {
+            server.stop();
+        }
+
+        assertEquals(2, AtmServerTest.count(screens, "Invalid option"));
+        assertEquals(1, AtmServerTest.count(screens, "Invalid account"));
+        assertEquals(Money.of(2, 50), user.getAccountBalance(0));
+    }
+
+    private static Bank newBank() {
+        Bank theBank = new Bank("Bank of Load");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        return theBank;
+    }
+
+    /**
+     * Type a whole session, then read the screens until the server closes it
+     * @return the screens
+     */
+    private static String runScript(Socket socket, String script) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(script.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        socket.shutdownOutput();
+        InputStream in = socket.getInputStream();
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + part.length())) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,88 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The audit trail: what the bank publishes to it, and that closing it writes every event claimed
+ */
+class AuditLogTest {
+    private static final int PRODUCERS = 8;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void addUserPublishesTheCreationOnce() throws IOException {
+        Bank theBank = new Bank("Bank of Audit");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        AuditLog auditLog = AuditLog.open(this.directory, 1024, 1 << 20, 4);
+        theBank.setAuditLog(auditLog);
+        User ann = theBank.addUser("Ann", "Audit", "1234");
+        auditLog.close();
+
+        List<String> created = new ArrayList<String>();
+        for (String line : this.lines()) {
+            if (line.contains("\"type\":\"USER_CREATED\"")) {
+                created.add(line);
+            }
+        }
+        assertEquals(1, created.size());
+        assertTrue(created.get(0).contains("\"subject\":\"" + ann.getUUID() + "\""));
+        assertTrue(created.get(0).contains("\"detail\":\"Audit, Ann\""));
+    }
+
+    @Test
+    void closeWritesEveryEventPublishedWhileClosing() throws Exception {
+        AuditLog auditLog = AuditLog.open(this.directory, 1 << 16, 1 << 30, 4);
+        ArrayList<Thread> producers = new ArrayList<Thread>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            String subject = "producer" + i;
+            Thread producer = new Thread(() -> {
+                // Keep publishing through the close, until stopped: events get dropped once it's closed
+                for (long n = 0; !Thread.currentThread().isInterrupted(); n++) {
+                    auditLog.publish(AuditLog.Type.LOGIN, subject, n, null);
+                }
+            }, "atm-audit-producer-" + i);
+            producer.start();
+            producers.add(producer);
+        }
+        Thread.sleep(100);
+        auditLog.close();
+        for (Thread producer : producers) {
+            producer.interrupt();
+            producer.join();
+        }
+
+        // Once closed, nothing more gets in, and every event published is in the files
+        assertFalse(auditLog.publish(AuditLog.Type.LOGIN, "late", 0, null));
+        long events = 0;
+        for (String line : this.lines()) {
+            if (line.startsWith("{\"seq\":")) {
+                events++;
+            }
+        }
+        assertEquals(auditLog.getPublished(), events);
+        assertEquals(auditLog.getPublished(), auditLog.getWritten());
+    }
+
+    private List<String> lines() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "audit-*.jsonl")) {
+            for (Path file : files) {
+                lines.addAll(Files.readAllLines(file));
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,72 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The directory of a Bank: users and accounts found by their uuid, and IDs that can't be one turned away
+ */
+class BankDirectoryTest {
+    private static final int USERS = 2000;
+
+    @Test
+    void everyUserAndAccountIsFoundByItsUuid() {
+        Bank theBank = BankDirectoryTest.newBank();
+        List<User> users = new ArrayList<User>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(theBank.addUser("Directory", "User" + i, "1234"));
+        }
+        Account checking = new Account("Checking", users.get(0), theBank);
+        users.get(0).addAccount(checking);
+        theBank.addAccount(checking);
+
+        assertEquals(USERS, theBank.numberOfUsers());
+        assertEquals(USERS + 1, theBank.getAccounts().size());
+        for (User user : users) {
+            assertSame(user, theBank.findUser(user.getUUID()));
+            Account savings = theBank.findAccount(user.getAcctUUID(0));
+            assertSame(user, savings.getHolder());
+            assertEquals(user.getAcctUUID(0), savings.getUUID());
+        }
+        assertSame(checking, theBank.findAccount(checking.getUUID()));
+    }
+
+    @Test
+    void unknownAndMalformedIdsAreNotFound() {
+        Bank theBank = BankDirectoryTest.newBank();
+        User ann = theBank.addUser("Ann", "Directory", "1234");
+        String userId = ann.getUUID();
+        String accountId = ann.getAcctUUID(0);
+
+        // User and account uuids don't mix
+        assertNull(theBank.findUser(accountId));
+        assertNull(theBank.findAccount(userId));
+
+        assertTrue(theBank.isValidUserId(userId));
+        assertTrue(theBank.isValidAccountId(accountId));
+        assertFalse(theBank.isValidUserId(BankDirectoryTest.withWrongCheckDigit(userId)));
+        assertFalse(theBank.isValidAccountId(BankDirectoryTest.withWrongCheckDigit(accountId)));
+        assertFalse(theBank.isValidUserId("12a4567"));
+        assertFalse(theBank.isValidUserId(""));
+        assertNull(theBank.findUser(BankDirectoryTest.withWrongCheckDigit(userId)));
+        assertNull(theBank.userLogin(BankDirectoryTest.withWrongCheckDigit(userId), "1234"));
+    }
+
+    private static Bank newBank() {
+        Bank theBank = new Bank("Bank of Directories");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        return theBank;
+    }
+
+    private static String withWrongCheckDigit(String id) {
+        char last = id.charAt(id.length() - 1);
+        return id.substring(0, id.length() - 1) + (char) ('0' + (last - '0' + 1) % 10);
+    }
+}
@@ -0,0 +1,85 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * The asynchronous bank service: a request that throws fails alone, and the ones batched with it go through
+ */
+class BankServiceTest {
+    @ParameterizedTest
+    @ValueSource(ints = {0, 2})
+    void aFailingRequestFailsAloneAndTheServiceGoesOn(int numberOfShards) {
+        Bank theBank = BankServiceTest.newBank();
+        Account ann = theBank.findAccount(theBank.addUser("Ann", "Service", "1234").getAcctUUID(0));
+        Account bob = theBank.findAccount(theBank.addUser("Bob", "Service", "5678").getAcctUUID(0));
+        if (numberOfShards > 0) {
+            theBank.startShards(numberOfShards);
+        }
+        try (BankService service = new BankService(theBank)) {
+            // Good and bad requests mixed, most likely in the same batches
+            List<CompletableFuture<?>> good = new ArrayList<CompletableFuture<?>>();
+            List<CompletableFuture<?>> bad = new ArrayList<CompletableFuture<?>>();
+            for (int i = 0; i < 100; i++) {
+                good.add(service.deposit(ann, Money.of(10, 0), "Pay"));
+                bad.add(service.withdraw(ann, -Money.of(1, 0), "Negative"));
+                good.add(service.deposit(bob, Money.of(1, 0), "Pay"));
+                bad.add(service.deposit(bob, Long.MAX_VALUE, "Overflow"));
+                bad.add(service.transfer(ann, bob, -Money.of(1, 0), "Negative"));
+                good.add(service.transfer(ann, bob, Money.of(1, 0), "Rent"));
+            }
+
+            for (CompletableFuture<?> result : good) {
+                result.join();
+            }
+            for (CompletableFuture<?> result : bad) {
+                CompletionException e = assertThrows(CompletionException.class, result::join);
+                assertTrue(e.getCause() instanceof IllegalArgumentException
+                        || e.getCause() instanceof ArithmeticException, e.getCause().toString());
+            }
+            // Nothing of the failed requests went in, and the service still serves
+            assertEquals(Money.of(900, 0), service.balance(ann).join());
+            assertEquals(Money.of(200, 0), service.balance(bob).join());
+            assertTrue(service.withdraw(ann, Money.of(900, 0), "Cash").join());
+            assertFalse(service.withdraw(ann, Money.of(1, 0), "Cash").join());
+            assertEquals(0, service.balance(ann).join());
+        } finally {
+            theBank.stopShards();
+        }
+    }
+
+    @Test
+    void requestsAfterCloseAreRejected() {
+        Bank theBank = BankServiceTest.newBank();
+        Account ann = theBank.findAccount(theBank.addUser("Ann", "Service", "1234").getAcctUUID(0));
+        BankService service = new BankService(theBank);
+        CompletableFuture<Void> before = service.deposit(ann, Money.of(10, 0), "Pay");
+        service.close();
+
+        // What was submitted before the close is served, nothing after
+        before.join();
+        assertEquals(Money.of(10, 0), ann.getBalance());
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> service.deposit(ann, Money.of(10, 0), "Pay").join());
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertEquals(Money.of(10, 0), ann.getBalance());
+    }
+
+    private static Bank newBank() {
+        Bank theBank = new Bank("Bank of Service");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        return theBank;
+    }
+}
@@ -0,0 +1,131 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The cold store: old transactions sealed out of the heap, and read back the same as the ones still in memory
+ */
+class ColdStoreTest {
+    /**
+     * 2026-10-18T00:00:00.000Z
+     */
+    private static final long DAY = 1792281600000L;
+
+    private static final int HOT_TRANSACTIONS = 1000;
+
+    private static final int TRANSACTIONS = 5 * ColdStore.SEGMENT_SIZE + 300;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void setColdStoreSealsTheExistingAccounts() throws IOException {
+        Bank theBank = new Bank("Bank of Cold");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Cold", "1234").getAcctUUID(0));
+        Account checking = theBank.findAccount(theBank.addUser("Bob", "Cold", "5678").getAcctUUID(0));
+        ColdStoreTest.fill(savings);
+        checking.post(Money.of(10, 0), DAY, "Pay");
+        long balance = savings.getBalance();
+
+        try (ColdStore coldStore = ColdStore.create(this.directory.resolve("cold"), HOT_TRANSACTIONS)) {
+            theBank.setColdStore(coldStore);
+            ColdStoreTest.assertSealed(savings, coldStore.getSealedTransactions());
+            assertEquals(1, checking.numberOfHotTransactions());
+            assertEquals(balance, savings.getBalance());
+            ColdStoreTest.assertHistory(savings);
+
+            // New transactions keep the number in memory bounded
+            for (int i = TRANSACTIONS; i < TRANSACTIONS + 2 * ColdStore.SEGMENT_SIZE; i++) {
+                savings.post(ColdStoreTest.amount(i), ColdStoreTest.timestamp(i), ColdStoreTest.memo(i));
+            }
+            ColdStoreTest.assertSealed(savings, coldStore.getSealedTransactions());
+            ColdStoreTest.assertHistory(savings);
+        }
+    }
+
+    @Test
+    void openSealsWhileLoadingTheJournal() throws IOException {
+        Path journalPath = this.directory.resolve("cold.journal");
+        Bank theBank = Bank.open("Bank of Cold", journalPath, Journal.Durability.WRITE);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Cold", "1234").getAcctUUID(0));
+        ColdStoreTest.fill(savings);
+        // The last transaction is a withdrawal, counted against the limits, the rest aren't
+        theBank.deposit(savings, Money.of(1000000, 0), "Pay");
+        assertTrue(theBank.withdraw(savings, Money.of(1, 0), "Cash"));
+        theBank.getJournal().close();
+
+        try (ColdStore coldStore = ColdStore.create(this.directory.resolve("cold"), HOT_TRANSACTIONS)) {
+            Bank reopened = Bank.open("Bank of Cold", journalPath, null, Journal.Durability.WRITE, coldStore);
+            Account copy = reopened.findAccount(savings.getUUID());
+            ColdStoreTest.assertSealed(copy, coldStore.getSealedTransactions());
+            assertEquals(savings.getBalance(), copy.getBalance());
+            assertEquals(savings.getBalanceAsOf(ColdStoreTest.timestamp(100)),
+                    copy.getBalanceAsOf(ColdStoreTest.timestamp(100)));
+            TransactionLog log = copy.getTransactionLog();
+            assertTrue(log.isLimited(copy.numberOfTransactions() - 1));
+            assertFalse(log.isLimited(0));
+            reopened.getJournal().close();
+        }
+    }
+
+    /**
+     * Check that the account keeps between HOT_TRANSACTIONS and HOT_TRANSACTIONS + SEGMENT_SIZE in memory,
+     * and that the others are the ones in the store
+     */
+    private static void assertSealed(Account account, long sealedTransactions) {
+        int hot = account.numberOfHotTransactions();
+        assertTrue(hot >= HOT_TRANSACTIONS && hot < HOT_TRANSACTIONS + ColdStore.SEGMENT_SIZE, "hot: " + hot);
+        assertEquals(account.numberOfTransactions() - hot, sealedTransactions);
+        assertEquals(0, sealedTransactions % ColdStore.SEGMENT_SIZE);
+    }
+
+    /**
+     * Check every transaction of the account, sealed or not, against the ones filled in
+     */
+    private static void assertHistory(Account account) {
+        TransactionLog log = account.getTransactionLog();
+        for (int i = 0; i < account.numberOfTransactions(); i++) {
+            assertEquals(ColdStoreTest.amount(i), log.amount(i));
+            assertEquals(ColdStoreTest.timestamp(i), log.timestamp(i));
+            assertEquals(ColdStoreTest.memo(i), log.memo(i));
+            assertEquals(ColdStoreTest.amount(i), account.getTransaction(i).getAmount());
+        }
+    }
+
+    private static void fill(Account account) {
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            account.post(ColdStoreTest.amount(i), ColdStoreTest.timestamp(i), ColdStoreTest.memo(i));
+        }
+    }
+
+    /**
+     * Credits and debits of all sizes, so that the varints take one byte to many
+     */
+    private static long amount(int i) {
+        long amount = (long) (i % 97) * (i % 5 == 0 ? 1000003 : 7);
+        return i % 3 == 0 ? -amount : amount;
+    }
+
+    /**
+     * Times in order, in pairs a second apart, an hour between every hundred
+     */
+    private static long timestamp(int i) {
+        return DAY + (long) (i / 100) * 3600 * 1000 + (i % 100 / 2) * 1000;
+    }
+
+    /**
+     * A few memos repeating, and now and then one of their own
+     */
+    private static String memo(int i) {
+        return i % 10 == 0 ? "Transfer " + i : "Memo " + i % 7;
+    }
+}
@@ -0,0 +1,116 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Resuming the end-of-day batch after a crash: every posting is made exactly once
+ */
+class EndOfDayBatchTest {
+    private static final int USERS = 2000;
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 18);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void aResumedBatchPostsEachAccountOnce() throws IOException {
+        Path journalPath = this.directory.resolve("bank.journal");
+        Path checkpoint = this.directory.resolve("eod.checkpoint");
+        Bank theBank = Bank.open("Bank of Interest", journalPath, Journal.Durability.BUFFERED);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        for (int i = 0; i < USERS; i++) {
+            User user = theBank.addUser("End", "OfDay" + i, "1234");
+            Account checking = new Account("Checking", user, theBank);
+            user.addAccount(checking);
+            theBank.addAccount(checking);
+        }
+        long total = 0;
+        for (Account account : theBank.getAccounts()) {
+            theBank.deposit(account, Math.floorMod(account.getUUID().hashCode(), 2_000_000), "Pay");
+            total += account.getBalance();
+        }
+
+        List<EndOfDayRule> rules = List.of(EndOfDayRule.interest("Savings", 150),
+                EndOfDayRule.maintenanceFee("Checking", Money.of(5, 0), Money.of(1000, 0)));
+        long expected = 0;
+        int postings = 0;
+        for (Account account : theBank.getAccounts()) {
+            for (EndOfDayRule rule : rules) {
+                long amount = rule.amountFor(account, account.getBalance(), DAY);
+                expected += amount;
+                postings += amount != 0 ? 1 : 0;
+            }
+        }
+
+        // Crash halfway through the accounts
+        AtomicInteger calls = new AtomicInteger();
+        EndOfDayRule crashing = new EndOfDayRule() {
+            @Override
+            public long amountFor(Account account, long balance, LocalDate day) {
+                if (calls.incrementAndGet() == USERS) {
+                    throw new IllegalStateException("Crash");
+                }
+                return 0;
+            }
+
+            @Override
+            public String memoFor(LocalDate day) {
+                return "Nothing " + day;
+            }
+        };
+        List<EndOfDayRule> crashingRules = new ArrayList<EndOfDayRule>(rules);
+        crashingRules.add(crashing);
+        assertThrows(RuntimeException.class, () -> theBank.runEndOfDay(DAY, crashingRules, checkpoint, 4));
+        theBank.getJournal().close();
+
+        // Restart from the journal, and resume
+        Bank restarted = Bank.open("Bank of Interest", journalPath, Journal.Durability.BUFFERED);
+        EndOfDayReport report = restarted.runEndOfDay(DAY, rules, checkpoint, 4);
+        assertTrue(report.isResumed());
+        long after = 0;
+        for (Account account : restarted.getAccounts()) {
+            after += account.getBalance();
+            assertTrue(account.verifyBalance(), account.getSummaryLine());
+            for (EndOfDayRule rule : rules) {
+                assertTrue(EndOfDayBatchTest.count(account, rule.memoFor(DAY)) <= 1, account.getSummaryLine());
+            }
+        }
+        assertEquals(expected, after - total);
+        int posted = 0;
+        for (Account account : restarted.getAccounts()) {
+            for (EndOfDayRule rule : rules) {
+                posted += EndOfDayBatchTest.count(account, rule.memoFor(DAY));
+            }
+        }
+        assertEquals(postings, posted);
+
+        // The day is complete: running it again posts nothing
+        assertEquals(0, restarted.runEndOfDay(DAY, rules, checkpoint, 4).getPostings());
+        restarted.getJournal().close();
+    }
+
+    /**
+     * Count the transactions of an account with a memo
+     */
+    private static int count(Account account, String memo) {
+        TransactionLog transactions = account.getTransactionLog();
+        int count = 0;
+        for (int i = 0; i < transactions.size(); i++) {
+            if (memo.equals(transactions.memo(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
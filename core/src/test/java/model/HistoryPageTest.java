@@ -0,0 +1,83 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Paginated and time-range history: pages go newest first, chain through their cursors without gaps
+ * or repeats, and stay put while new transactions come in
+ */
+class HistoryPageTest {
+    private static final int TRANSACTIONS = 25;
+    private static final long START = 1000;
+
+    @Test
+    void pagesCoverTheHistoryNewestFirst() {
+        Account savings = HistoryPageTest.newAccount();
+        List<Long> amounts = new ArrayList<Long>();
+        List<Integer> sizes = new ArrayList<Integer>();
+        int cursor = TransactionPage.FIRST;
+        TransactionPage page;
+        do {
+            page = savings.getHistoryPage(cursor, 10);
+            sizes.add(page.getTransactions().size());
+            for (Transaction transaction : page.getTransactions()) {
+                amounts.add(transaction.getAmount());
+            }
+            cursor = page.getNextCursor();
+        } while (page.hasMore());
+
+        assertEquals(List.of(10, 10, 5), sizes);
+        assertEquals(TRANSACTIONS, amounts.size());
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            assertEquals(TRANSACTIONS - i, amounts.get(i));
+        }
+    }
+
+    @Test
+    void aTimeRangeIsPagedWithItsBoundsIncluded() {
+        Account savings = HistoryPageTest.newAccount();
+        // Transactions 5 to 12, at 1050 to 1120
+        TransactionPage first = savings.getHistoryPage(START + 50, START + 120, TransactionPage.FIRST, 3);
+        TransactionPage second = savings.getHistoryPage(START + 50, START + 120, first.getNextCursor(), 3);
+        TransactionPage third = savings.getHistoryPage(START + 50, START + 120, second.getNextCursor(), 3);
+
+        assertEquals(START + 120, first.getTransactions().get(0).getTimestamp());
+        assertTrue(second.hasMore());
+        assertEquals(2, third.getTransactions().size());
+        assertEquals(START + 50, third.getTransactions().get(1).getTimestamp());
+        assertFalse(third.hasMore());
+        assertEquals(0, savings.getHistoryPage(START + 1000, START + 2000, TransactionPage.FIRST, 3)
+                .getTransactions().size());
+    }
+
+    @Test
+    void theNextPageDoesntShiftWhenNewTransactionsComeIn() {
+        Account savings = HistoryPageTest.newAccount();
+        TransactionPage first = savings.getHistoryPage(TransactionPage.FIRST, 10);
+        savings.post(100, START + 10 * TRANSACTIONS, "Newer");
+        TransactionPage second = savings.getHistoryPage(first.getNextCursor(), 10);
+
+        assertEquals(15, second.getTransactions().get(0).getAmount());
+        assertThrows(IllegalArgumentException.class, () -> savings.getHistoryPage(TransactionPage.FIRST, 0));
+    }
+
+    /**
+     * An account with amounts 1 to TRANSACTIONS, 10 ms apart from START
+     */
+    private static Account newAccount() {
+        Bank theBank = new Bank("Bank of Pages");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Pages", "1234").getAcctUUID(0));
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            savings.post(i + 1, START + 10 * i, "Deposit " + i);
+        }
+        return savings;
+    }
+}
@@ -0,0 +1,72 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The keyed permutation behind the user and account IDs, and their check digit
+ */
+class IdAllocatorTest {
+    private static final int DIGITS = 4;
+    private static final int DOMAIN = 10000;
+
+    @Test
+    void everyIdOfTheDomainIsGivenOutOnce() {
+        IdAllocator ids = new IdAllocator(DIGITS);
+        BitSet seen = new BitSet(DOMAIN);
+        for (int i = 0; i < DOMAIN; i++) {
+            String id = ids.nextId();
+            assertEquals(ids.getLength(), id.length());
+            assertTrue(ids.isValid(id), id);
+            int value = Integer.parseInt(id.substring(0, DIGITS));
+            assertFalse(seen.get(value), id);
+            seen.set(value);
+        }
+        assertThrows(IllegalStateException.class, ids::nextId);
+    }
+
+    @Test
+    void restoredIdsMapBackToTheirSequenceNumber() {
+        IdAllocator ids = new IdAllocator(DIGITS);
+        String[] given = ids.nextIds(1000);
+        for (int i = 0; i < given.length; i++) {
+            IdAllocator restored = new IdAllocator(DIGITS, ids.getKeys());
+            restored.restored(given[i]);
+            assertEquals(i + 1, restored.getAllocated(), given[i]);
+        }
+
+        // A restored allocator goes on with the next IDs, not the ones already given out
+        IdAllocator restored = new IdAllocator(DIGITS, ids.getKeys());
+        restored.restored(given[given.length - 1]);
+        assertEquals(ids.nextId(), restored.nextId());
+    }
+
+    @Test
+    void singleDigitTyposAreCaught() {
+        IdAllocator ids = new IdAllocator(DIGITS);
+        String id = ids.nextId();
+        for (int i = 0; i < id.length(); i++) {
+            for (char c = '0'; c <= '9'; c++) {
+                if (id.charAt(i) != c) {
+                    char[] typo = id.toCharArray();
+                    typo[i] = c;
+                    assertFalse(ids.isValid(new String(typo)), new String(typo));
+                }
+            }
+        }
+    }
+
+    @Test
+    void aBlockTooBigLeavesTheRemainingIds() {
+        IdAllocator ids = new IdAllocator(DIGITS);
+        ids.nextIds(DOMAIN - 10);
+        assertThrows(IllegalStateException.class, () -> ids.nextIds(20));
+        assertEquals(DOMAIN - 10, ids.getAllocated());
+        assertEquals(10, ids.nextIds(10).length);
+    }
+}
@@ -0,0 +1,117 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Replay of the write-ahead journal: a bank reopened from it is the bank that was closed,
+ * up to the last record written whole
+ */
+class JournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayRestoresUsersAccountsAndBalances() throws IOException {
+        Path journalPath = this.directory.resolve("bank.journal");
+        Bank theBank = Bank.open("Bank of Replay", journalPath, Journal.Durability.WRITE);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        User ann = theBank.addUser("Ann", "Replay", "1234");
+        User bob = theBank.addUser("Bob", "Replay", "5678");
+        Account checking = new Account("Checking", ann, theBank);
+        ann.addAccount(checking);
+        theBank.addAccount(checking);
+        Account annSavings = theBank.findAccount(ann.getAcctUUID(0));
+        Account bobSavings = theBank.findAccount(bob.getAcctUUID(0));
+
+        theBank.deposit(annSavings, Money.of(500, 0), "Pay");
+        assertTrue(theBank.transfer(annSavings, checking, Money.of(120, 50), "Rent"));
+        assertTrue(theBank.transfer(checking, bobSavings, Money.of(20, 0), "Lunch"));
+        assertTrue(theBank.withdraw(annSavings, Money.of(30, 0), "Cash"));
+        assertFalse(theBank.withdraw(bobSavings, Money.of(1000, 0), "Too much"));
+        theBank.getJournal().close();
+
+        Bank replayed = Bank.open("Bank of Replay", journalPath, Journal.Durability.WRITE);
+        assertEquals(theBank.getUsers().size(), replayed.getUsers().size());
+        assertEquals(theBank.getAccounts().size(), replayed.getAccounts().size());
+        for (Account account : theBank.getAccounts()) {
+            Account copy = replayed.findAccount(account.getUUID());
+            assertNotNull(copy, account.getUUID());
+            assertEquals(account.getName(), copy.getName());
+            assertEquals(account.getHolder().getUUID(), copy.getHolder().getUUID());
+            assertEquals(account.getBalance(), copy.getBalance());
+            assertEquals(account.numberOfTransactions(), copy.numberOfTransactions());
+            assertTrue(copy.verifyBalance());
+        }
+        assertNotNull(replayed.userLogin(ann.getUUID(), "1234"));
+        assertNull(replayed.userLogin(bob.getUUID(), "1234"));
+
+        // New IDs go on after the replayed ones
+        User carl = replayed.addUser("Carl", "Replay", "0000");
+        assertNull(theBank.findUser(carl.getUUID()));
+        replayed.getJournal().close();
+    }
+
+    @Test
+    void aTornTailIsCutOffAndAppendedAfter() throws IOException {
+        Path journalPath = this.directory.resolve("torn.journal");
+        Bank theBank = Bank.open("Bank of Crashes", journalPath, Journal.Durability.WRITE);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Torn", "1234").getAcctUUID(0));
+        theBank.deposit(savings, Money.of(100, 0), "Pay");
+        long beforeLast = Files.size(journalPath);
+        theBank.deposit(savings, Money.of(50, 0), "Bonus");
+        theBank.getJournal().close();
+
+        // A crash in the middle of writing the last record
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(journalPath) - 3);
+        }
+        Bank replayed = Bank.open("Bank of Crashes", journalPath, Journal.Durability.WRITE);
+        Account copy = replayed.findAccount(savings.getUUID());
+        assertEquals(Money.of(100, 0), copy.getBalance());
+        assertEquals(1, copy.numberOfTransactions());
+        assertEquals(beforeLast, Files.size(journalPath));
+
+        // New records go after the last valid one, and replay too
+        replayed.deposit(copy, Money.of(7, 0), "After the crash");
+        replayed.getJournal().close();
+        Bank again = Bank.open("Bank of Crashes", journalPath, Journal.Durability.WRITE);
+        assertEquals(Money.of(107, 0), again.findAccount(savings.getUUID()).getBalance());
+        again.getJournal().close();
+    }
+
+    @Test
+    void aCorruptedLastRecordIsCutOff() throws IOException {
+        Path journalPath = this.directory.resolve("corrupted.journal");
+        Bank theBank = Bank.open("Bank of Crashes", journalPath, Journal.Durability.WRITE);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Corrupted", "1234").getAcctUUID(0));
+        theBank.deposit(savings, Money.of(100, 0), "Pay");
+        theBank.deposit(savings, Money.of(50, 0), "Bonus");
+        theBank.getJournal().close();
+
+        // The last byte, in the memo of the last record, doesn't match the CRC any more
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) (last.get(0) ^ 0xFF)).rewind();
+            channel.write(last, channel.size() - 1);
+        }
+        Bank replayed = Bank.open("Bank of Crashes", journalPath, Journal.Durability.WRITE);
+        assertEquals(Money.of(100, 0), replayed.findAccount(savings.getUUID()).getBalance());
+        replayed.getJournal().close();
+    }
+}
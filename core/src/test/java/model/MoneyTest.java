@@ -0,0 +1,38 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Parsing amounts typed by the user into cents, up to the largest amount a long holds
+ */
+class MoneyTest {
+    @Test
+    void parsesDollarsAndCents() {
+        assertEquals(1200, Money.parse("12"));
+        assertEquals(1250, Money.parse("12.5"));
+        assertEquals(1250, Money.parse("$12.50"));
+        assertEquals(-310, Money.parse("-3.10"));
+        assertEquals(7, Money.parse(".07"));
+    }
+
+    @Test
+    void rejectsWhatIsNotAnAmount() {
+        assertThrows(NumberFormatException.class, () -> Money.parse(""));
+        assertThrows(NumberFormatException.class, () -> Money.parse("$"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1.234"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("12a"));
+    }
+
+    @Test
+    void theLargestAmountParsesAndOneCentMoreOverflows() {
+        assertEquals(Long.MAX_VALUE, Money.parse("92233720368547758.07"));
+        assertEquals(-Long.MAX_VALUE, Money.parse("-92233720368547758.07"));
+        // The overflow is in the cents, after the dollars fit
+        assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547758.08"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547758.1"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547759"));
+    }
+}
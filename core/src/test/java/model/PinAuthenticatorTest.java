@@ -0,0 +1,143 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Lockout of the IDs with too many failed logins
+ */
+class PinAuthenticatorTest {
+    private static final int MAX_FAILURES = 3;
+
+    private Bank theBank;
+    private User ann;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        this.theBank = new Bank("Bank of Locks");
+        this.theBank.setAuthenticator(new PinAuthenticator(1, MAX_FAILURES, 60 * 1000));
+        this.ann = this.theBank.addUser("Ann", "Lock", "1234");
+        this.bob = this.theBank.addUser("Bob", "Lock", "5678");
+    }
+
+    @Test
+    void tooManyFailuresLockOutEvenTheRightPin() {
+        for (int i = 0; i < MAX_FAILURES - 1; i++) {
+            assertNull(this.theBank.userLogin(this.ann.getUUID(), "0000"));
+        }
+        assertFalse(this.theBank.getAuthenticator().isLockedOut(this.ann.getUUID()));
+
+        assertNull(this.theBank.userLogin(this.ann.getUUID(), "0000"));
+        assertTrue(this.theBank.getAuthenticator().isLockedOut(this.ann.getUUID()));
+        assertNull(this.theBank.userLogin(this.ann.getUUID(), "1234"));
+    }
+
+    @Test
+    void lockoutIsPerUser() {
+        for (int i = 0; i < MAX_FAILURES; i++) {
+            this.theBank.userLogin(this.ann.getUUID(), "0000");
+        }
+        assertFalse(this.theBank.getAuthenticator().isLockedOut(this.bob.getUUID()));
+        assertSame(this.bob, this.theBank.userLogin(this.bob.getUUID(), "5678"));
+    }
+
+    @Test
+    void successResetsOnlyItsOwnCounter() {
+        for (int i = 0; i < MAX_FAILURES - 1; i++) {
+            this.theBank.userLogin(this.ann.getUUID(), "0000");
+            this.theBank.userLogin(this.bob.getUUID(), "0000");
+        }
+        assertNotNull(this.theBank.userLogin(this.ann.getUUID(), "1234"));
+
+        // Ann starts over, Bob still has one attempt left
+        this.theBank.userLogin(this.ann.getUUID(), "0000");
+        this.theBank.userLogin(this.bob.getUUID(), "0000");
+        assertFalse(this.theBank.getAuthenticator().isLockedOut(this.ann.getUUID()));
+        assertTrue(this.theBank.getAuthenticator().isLockedOut(this.bob.getUUID()));
+    }
+
+    @Test
+    void unknownIdsAreNotTracked() {
+        String unknown = this.theBank.getNewUserUUID();
+        for (int i = 0; i < MAX_FAILURES; i++) {
+            assertNull(this.theBank.userLogin(unknown, "0000"));
+        }
+        assertFalse(this.theBank.getAuthenticator().isLockedOut(unknown));
+    }
+
+    @Test
+    void parallelGuessesGetNoMoreThanMaxFailuresTries() throws InterruptedException {
+        int guessers = 64;
+        AtomicInteger checked = new AtomicInteger();
+        // A user whose pin check is slow, so that the guesses overlap
+        User slow = new User("Slow", "Lock", "1234", this.theBank) {
+            @Override
+            public boolean validatePin(String aPin) {
+                checked.incrementAndGet();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.validatePin(aPin);
+            }
+        };
+        PinAuthenticator authenticator = this.theBank.getAuthenticator();
+
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < guessers; i++) {
+            String guess = String.format("%04d", 5000 + i);
+            Thread thread = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (authenticator.authenticate(slow.getUUID(), slow, guess)) {
+                    accepted.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(MAX_FAILURES, checked.get());
+        assertEquals(0, accepted.get());
+        assertTrue(authenticator.isLockedOut(slow.getUUID()));
+    }
+
+    @Test
+    void theWindowSlides() throws InterruptedException {
+        PinAuthenticator authenticator = new PinAuthenticator(1, MAX_FAILURES, 1000);
+        authenticator.authenticate(this.ann.getUUID(), this.ann, "0000");
+        Thread.sleep(600);
+        for (int i = 1; i < MAX_FAILURES; i++) {
+            authenticator.authenticate(this.ann.getUUID(), this.ann, "0000");
+        }
+        assertTrue(authenticator.isLockedOut(this.ann.getUUID()));
+
+        // Once the first failure is out of the window, one more attempt, not a fresh count
+        Thread.sleep(500);
+        assertFalse(authenticator.isLockedOut(this.ann.getUUID()));
+        assertFalse(authenticator.authenticate(this.ann.getUUID(), this.ann, "0000"));
+        assertTrue(authenticator.isLockedOut(this.ann.getUUID()));
+        assertFalse(authenticator.authenticate(this.ann.getUUID(), this.ann, "1234"));
+    }
+}
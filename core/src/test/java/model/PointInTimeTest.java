@@ -0,0 +1,125 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Point-in-time balances, net flows and daily rollups, checked against sums over the history
+ */
+class PointInTimeTest {
+    /**
+     * 2026-10-18T00:00:00.000Z
+     */
+    private static final long DAY = 1792281600000L;
+
+    private static final long MINUTE = 60 * 1000;
+
+    /**
+     * Enough transactions to go over a few balance checkpoints
+     */
+    private static final int TRANSACTIONS = 3 * Account.CHECKPOINT_INTERVAL + 17;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void balancesAndNetFlowsMatchTheHistory() {
+        Bank theBank = PointInTimeTest.newBank();
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "History", "1234").getAcctUUID(0));
+        Random random = new Random(18);
+        long[] amounts = new long[TRANSACTIONS];
+        long[] timestamps = new long[TRANSACTIONS];
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            amounts[i] = random.nextInt(20000) - 9000;
+            // Several transactions at the same time now and then
+            timestamps[i] = DAY + (i - i % 3) * MINUTE;
+            savings.post(amounts[i], timestamps[i], "Transaction " + i);
+        }
+
+        assertEquals(0, savings.getBalanceAsOf(DAY - 1));
+        long end = timestamps[TRANSACTIONS - 1];
+        assertEquals(savings.getBalance(), savings.getBalanceAsOf(end));
+        assertEquals(savings.getBalance(), savings.getBalanceAsOf(Long.MAX_VALUE));
+        for (int n = 0; n < 500; n++) {
+            long from = DAY - MINUTE + (long) (random.nextDouble() * (end - DAY + 2 * MINUTE));
+            long to = from + (long) (random.nextDouble() * (end - from + MINUTE));
+            assertEquals(PointInTimeTest.sum(amounts, timestamps, Long.MIN_VALUE, from), savings.getBalanceAsOf(from));
+            assertEquals(PointInTimeTest.sum(amounts, timestamps, from, to), savings.getNetFlow(from, to));
+        }
+        // On the exact time of a transaction, every transaction at that time is in
+        assertEquals(PointInTimeTest.sum(amounts, timestamps, Long.MIN_VALUE, DAY + 3 * MINUTE),
+                savings.getBalanceAsOf(DAY + 3 * MINUTE));
+        assertEquals(amounts[3] + amounts[4] + amounts[5], savings.getNetFlow(DAY + 3 * MINUTE, DAY + 3 * MINUTE));
+    }
+
+    @Test
+    void theTotalBalanceAddsUpEveryAccount() {
+        Bank theBank = PointInTimeTest.newBank();
+        Account ann = theBank.findAccount(theBank.addUser("Ann", "History", "1234").getAcctUUID(0));
+        Account bob = theBank.findAccount(theBank.addUser("Bob", "History", "5678").getAcctUUID(0));
+        ann.post(Money.of(100, 0), DAY, "Pay");
+        bob.post(Money.of(50, 0), DAY + MINUTE, "Pay");
+        ann.post(-Money.of(30, 0), DAY + 2 * MINUTE, "Rent");
+
+        assertEquals(0, theBank.getTotalBalanceAsOf(DAY - 1));
+        assertEquals(Money.of(100, 0), theBank.getTotalBalanceAsOf(DAY));
+        assertEquals(Money.of(150, 0), theBank.getTotalBalanceAsOf(DAY + MINUTE));
+        assertEquals(Money.of(120, 0), theBank.getTotalBalanceAsOf(DAY + 2 * MINUTE));
+    }
+
+    @Test
+    void dailyRollupsAreRebuiltFromTheJournal() throws IOException {
+        Path journalPath = this.directory.resolve("rollups.journal");
+        Bank theBank = Bank.open("Bank of History", journalPath, Journal.Durability.WRITE);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "History", "1234").getAcctUUID(0));
+        savings.post(Money.of(100, 0), DAY + MINUTE, "Pay");
+        savings.post(-Money.of(30, 0), DAY + 2 * MINUTE, "Rent");
+        savings.post(-Money.of(5, 0), DAY + 25 * 60 * MINUTE, "Fee");
+        theBank.getJournal().close();
+
+        LocalDate first = LocalDate.of(2026, 10, 18);
+        Bank reopened = Bank.open("Bank of History", journalPath, Journal.Durability.WRITE);
+        for (Bank bank : new Bank[] {theBank, reopened}) {
+            DailyRollup day = bank.getDailyRollups().get(first);
+            assertEquals(Money.of(100, 0), day.getCredits());
+            assertEquals(Money.of(30, 0), day.getDebits());
+            assertEquals(Money.of(70, 0), day.getNet());
+            assertEquals(2, day.getTransactions());
+
+            List<DailyRollup> days = bank.getDailyRollups().between(first.minusDays(1), first.plusDays(5));
+            assertEquals(2, days.size());
+            assertEquals(first.plusDays(1), days.get(1).getDay());
+            assertEquals(-Money.of(5, 0), days.get(1).getNet());
+            assertEquals(0, bank.getDailyRollups().get(first.minusDays(1)).getTransactions());
+        }
+        reopened.getJournal().close();
+    }
+
+    /**
+     * Sum the amounts with a time between `from` and `to`, both included, Long.MIN_VALUE for no start
+     */
+    private static long sum(long[] amounts, long[] timestamps, long from, long to) {
+        long sum = 0;
+        for (int i = 0; i < amounts.length; i++) {
+            boolean afterFrom = from == Long.MIN_VALUE || timestamps[i] >= from;
+            if (afterFrom && timestamps[i] <= to) {
+                sum += amounts[i];
+            }
+        }
+        return sum;
+    }
+
+    private static Bank newBank() {
+        Bank theBank = new Bank("Bank of History");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        return theBank;
+    }
+}
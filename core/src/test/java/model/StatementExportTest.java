@@ -0,0 +1,109 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Statement export: the lines of a statement, the period, and the combined file matching the per-account ones
+ */
+class StatementExportTest {
+    /**
+     * 2026-10-18T09:00:00.000Z
+     */
+    private static final long DAY = 1792314000000L;
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    /**
+     * More than one part of accounts, so that the combined file is put together from several
+     */
+    private static final int USERS = 150;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void csvLinesHaveTheRunningBalanceAndQuotedMemos() throws IOException {
+        Bank theBank = StatementExportTest.newBank();
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Export", "1234").getAcctUUID(0));
+        savings.post(Money.of(100, 0), DAY, "Pay");
+        savings.post(-Money.of(12, 50), DAY + HOUR, "Lunch, \"with Bob\"");
+
+        StatementReport report = theBank.exportStatements(this.directory, StatementExporter.Format.CSV, 2);
+        List<String> lines = Files.readAllLines(this.directory.resolve(savings.getUUID() + ".csv"));
+        assertEquals(List.of(
+                "account,date,amount,balance,memo",
+                savings.getUUID() + ",,,0.00,Opening balance",
+                savings.getUUID() + ",2026-10-18T09:00:00.000Z,100.00,100.00,Pay",
+                savings.getUUID() + ",2026-10-18T10:00:00.000Z,-12.50,87.50,\"Lunch, \"\"with Bob\"\"\""), lines);
+        assertEquals(1, report.getAccounts());
+        assertEquals(2, report.getTransactions());
+    }
+
+    @Test
+    void aPeriodOpensWithTheBalanceBeforeIt() throws IOException {
+        Bank theBank = StatementExportTest.newBank();
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Export", "1234").getAcctUUID(0));
+        for (int i = 0; i < 5; i++) {
+            savings.post(Money.of(10, 0), DAY + i * HOUR, "Deposit " + i);
+        }
+
+        new StatementExporter(theBank, StatementExporter.Format.CSV, 1)
+                .exportEach(this.directory, DAY + HOUR, DAY + 3 * HOUR);
+        List<String> lines = Files.readAllLines(this.directory.resolve(savings.getUUID() + ".csv"));
+        assertEquals(List.of(
+                "account,date,amount,balance,memo",
+                savings.getUUID() + ",2026-10-18T10:00:00.000Z,,10.00,Opening balance",
+                savings.getUUID() + ",2026-10-18T10:00:00.000Z,10.00,20.00,Deposit 1",
+                savings.getUUID() + ",2026-10-18T11:00:00.000Z,10.00,30.00,Deposit 2",
+                savings.getUUID() + ",2026-10-18T12:00:00.000Z,10.00,40.00,Deposit 3"), lines);
+    }
+
+    @Test
+    void theCombinedFileIsEveryStatementInAccountOrder() throws IOException {
+        Bank theBank = StatementExportTest.newBank();
+        for (int i = 0; i < USERS; i++) {
+            Account savings = theBank.findAccount(theBank.addUser("User" + i, "Export", "1234").getAcctUUID(0));
+            for (int j = 0; j <= i % 7; j++) {
+                savings.post(Money.of(i, j), DAY + j * HOUR, "Deposit " + j);
+            }
+        }
+
+        for (StatementExporter.Format format : StatementExporter.Format.values()) {
+            Path each = this.directory.resolve(format.name());
+            Path combined = this.directory.resolve(format.name() + ".combined");
+            theBank.exportStatements(each, format, 4);
+            StatementReport report = theBank.exportCombinedStatement(combined, format, 4);
+
+            // The same lines, the header only once
+            List<String> expected = new ArrayList<String>();
+            for (Account account : theBank.getAccounts()) {
+                String extension = format == StatementExporter.Format.CSV ? ".csv" : ".txt";
+                List<String> lines = Files.readAllLines(each.resolve(account.getUUID() + extension));
+                expected.addAll(expected.isEmpty() ? lines : lines.subList(1, lines.size()));
+            }
+            assertEquals(expected, Files.readAllLines(combined));
+            assertEquals(theBank.getAccounts().size(), report.getAccounts());
+            assertEquals(Files.size(combined), report.getBytes());
+            if (format == StatementExporter.Format.FIXED_WIDTH) {
+                // account 12, date 24, amount and balance 16 each, memo 48, one space between columns
+                for (String line : expected) {
+                    assertEquals(12 + 1 + 24 + 1 + 16 + 1 + 16 + 1 + 48, line.length());
+                }
+            }
+        }
+    }
+
+    private static Bank newBank() {
+        Bank theBank = new Bank("Bank of Export");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        return theBank;
+    }
+}
@@ -0,0 +1,112 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Bulk ingestion: records split by account across workers are posted to each account in file order,
+ * and bad records are rejected without holding up the others
+ */
+class TransactionIngestorTest {
+    private static final int ACCOUNTS = 8;
+    private static final int RECORDS = 4000;
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void eachAccountGetsItsRecordsInFileOrder() throws IOException {
+        Bank theBank = TransactionIngestorTest.newBank();
+        Account[] accounts = TransactionIngestorTest.addAccounts(theBank);
+        StringBuilder csv = new StringBuilder("account,amount,memo,timestamp\n");
+        long[] expected = new long[ACCOUNTS];
+        for (int i = 0; i < RECORDS; i++) {
+            int a = i % ACCOUNTS;
+            // Interleaved, so that every batch has records of every account
+            csv.append(accounts[a].getUUID()).append(",1.0").append(i % 10).append(",Record ").append(i)
+                    .append(',').append(START + i).append('\n');
+            expected[a] += 100 + i % 10;
+        }
+        Path file = this.directory.resolve("records.csv");
+        Files.writeString(file, csv);
+
+        IngestReport report = theBank.ingestTransactions(file, TransactionIngestor.Format.CSV, 4);
+
+        assertEquals(RECORDS, report.getRead());
+        assertEquals(RECORDS, report.getAccepted());
+        for (int a = 0; a < ACCOUNTS; a++) {
+            assertEquals(expected[a], accounts[a].getBalance());
+            assertEquals(RECORDS / ACCOUNTS, accounts[a].numberOfTransactions());
+            for (int t = 0; t < accounts[a].numberOfTransactions(); t++) {
+                assertEquals(START + (long) t * ACCOUNTS + a, accounts[a].getTransaction(t).getTimestamp());
+            }
+        }
+    }
+
+    @Test
+    void badRecordsAreRejectedAndTheOthersPosted() throws IOException {
+        Bank theBank = TransactionIngestorTest.newBank();
+        Account[] accounts = TransactionIngestorTest.addAccounts(theBank);
+        String id = accounts[0].getUUID();
+        Path file = this.directory.resolve("bad.csv");
+        Files.writeString(file, String.join("\n",
+                id + ",10.00,Pay, with a comma," + START,
+                "0000000000,5.00,Unknown account," + START,
+                id + ",abc,Not an amount," + START,
+                id + ",-50.00,Overdraw," + (START + 1),
+                id + ",1.00,Older than the last one," + (START - 1),
+                id + ",-2.50,Card,2023-11-14T22:13:20.001Z",
+                ""));
+
+        IngestReport report = theBank.ingestTransactions(file, TransactionIngestor.Format.CSV, 2);
+
+        assertEquals(6, report.getRead());
+        assertEquals(2, report.getAccepted());
+        assertEquals(4, report.getRejected());
+        assertEquals(4, report.getRejections().size());
+        assertEquals(Money.of(7, 50), accounts[0].getBalance());
+    }
+
+    @Test
+    void readsTheBinaryFormat() throws IOException {
+        Bank theBank = TransactionIngestorTest.newBank();
+        Account[] accounts = TransactionIngestorTest.addAccounts(theBank);
+        Path file = this.directory.resolve("records.bin");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            for (int i = 0; i < RECORDS; i++) {
+                out.writeUTF(accounts[i % ACCOUNTS].getUUID());
+                out.writeLong(Money.of(1, 0));
+                out.writeLong(START + i);
+                out.writeUTF("Binary " + i);
+            }
+        }
+
+        IngestReport report = theBank.ingestTransactions(file, TransactionIngestor.Format.BINARY, 3);
+
+        assertEquals(RECORDS, report.getAccepted());
+        for (Account account : accounts) {
+            assertEquals(Money.of(RECORDS / ACCOUNTS, 0), account.getBalance());
+        }
+    }
+
+    private static Bank newBank() {
+        Bank theBank = new Bank("Bank of Ingestion");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        return theBank;
+    }
+
+    private static Account[] addAccounts(Bank theBank) {
+        Account[] accounts = new Account[ACCOUNTS];
+        for (int a = 0; a < ACCOUNTS; a++) {
+            accounts[a] = theBank.findAccount(theBank.addUser("Ingest", "User" + a, "1234").getAcctUUID(0));
+        }
+        return accounts;
+    }
+}
@@ -0,0 +1,74 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The columnar TransactionLog: what goes in comes out by index, repeated memos share one dictionary entry,
+ * and a View taken earlier keeps reading the transactions it had while the log grows
+ */
+class TransactionLogTest {
+    private static final int TRANSACTIONS = 1000;
+
+    @Test
+    void transactionsComeBackByIndex() {
+        TransactionLog log = new TransactionLog();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            log.append(i - 500, 1_000_000L + i, "Memo " + (i % 3), false);
+        }
+
+        assertEquals(TRANSACTIONS, log.size());
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            assertEquals(i - 500, log.amount(i));
+            assertEquals(1_000_000L + i, log.timestamp(i));
+            assertEquals("Memo " + (i % 3), log.memo(i));
+        }
+        Transaction transaction = log.get(7, null);
+        assertEquals(-493, transaction.getAmount());
+        assertEquals(1_000_007L, transaction.getTimestamp());
+        assertTrue(transaction.getSummaryLine().endsWith("Memo 1"));
+    }
+
+    @Test
+    void repeatedMemosShareOneEntry() {
+        TransactionLog log = new TransactionLog();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            log.append(100, i, i % 2 == 0 ? "Transfer to account #1234567890 for: Rent" : "Pay", false);
+        }
+
+        assertEquals(2, log.numberOfMemos());
+        assertSame(log.memo(0), log.memo(2));
+        assertEquals(log.memoIdAt(1), log.memoIdAt(TRANSACTIONS - 1));
+    }
+
+    @Test
+    void aViewKeepsItsTransactionsWhileTheLogGrows() {
+        TransactionLog log = new TransactionLog();
+        log.append(1, 1, "First", false);
+        TransactionLog.View view = log.view();
+        for (int i = 1; i < TRANSACTIONS; i++) {
+            log.append(i + 1, i + 1, "Memo " + i, false);
+        }
+
+        assertEquals(1, view.amount(0));
+        assertEquals("First", view.memo(0));
+        assertEquals(TRANSACTIONS, log.amount(TRANSACTIONS - 1));
+    }
+
+    @Test
+    void findsTheFirstTransactionAtOrAfterATime() {
+        TransactionLog log = new TransactionLog();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            // Two transactions per millisecond
+            log.append(1, i / 2, "Tick", false);
+        }
+
+        assertEquals(0, log.firstAtOrAfter(-1));
+        assertEquals(0, log.firstAtOrAfter(0));
+        assertEquals(20, log.firstAtOrAfter(10));
+        assertEquals(TRANSACTIONS, log.firstAtOrAfter(TRANSACTIONS));
+    }
+}
@@ -0,0 +1,175 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Transfers between accounts. The stress tests have many threads move money at random between
+ * a few accounts, then check that no money was created or lost, that no account went
+ * below zero and that every cached balance matches its transactions.
+ */
+class TransferTest {
+    private static final int THREADS = 8;
+    private static final int ACCOUNTS = 8;
+    private static final int TRANSFERS_PER_THREAD = 20000;
+    private static final long OPENING_BALANCE = Money.of(1000, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void transfersUnderTheAccountLocksConserveMoney() throws InterruptedException {
+        this.stress(0);
+    }
+
+    @Test
+    void transfersOnShardsConserveMoney() throws InterruptedException {
+        this.stress(4);
+    }
+
+    @Test
+    void anOverflowingTransferIsNeitherAppliedNorJournaled() throws IOException {
+        Path journalPath = this.directory.resolve("overflow.journal");
+        Bank theBank = Bank.open("Bank of Overflow", journalPath, Journal.Durability.WRITE);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account from = theBank.findAccount(theBank.addUser("Ann", "Overflow", "1234").getAcctUUID(0));
+        Account to = theBank.findAccount(theBank.addUser("Bob", "Overflow", "5678").getAcctUUID(0));
+        theBank.deposit(from, Money.of(10, 0), "Pay");
+        theBank.deposit(to, Long.MAX_VALUE - 100, "Jackpot");
+
+        assertThrows(ArithmeticException.class, () -> theBank.transfer(from, to, Money.of(5, 0), "Overflow"));
+        assertEquals(Money.of(10, 0), from.getBalance());
+        assertEquals(1, from.numberOfTransactions());
+        assertEquals(1, to.numberOfTransactions());
+        theBank.getJournal().close();
+
+        Bank replayed = Bank.open("Bank of Overflow", journalPath, Journal.Durability.WRITE);
+        assertEquals(Money.of(10, 0), replayed.findAccount(from.getUUID()).getBalance());
+        assertEquals(Long.MAX_VALUE - 100, replayed.findAccount(to.getUUID()).getBalance());
+        replayed.getJournal().close();
+    }
+
+    @Test
+    void aTransferBetweenShardsThatWouldOverflowIsRefunded() throws IOException {
+        Path journalPath = this.directory.resolve("refund.journal");
+        Bank theBank = Bank.open("Bank of Refunds", journalPath, Journal.Durability.WRITE);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account from = theBank.findAccount(theBank.addUser("Ann", "Refund", "1234").getAcctUUID(0));
+        // A holder on the other shard, as the shards are picked by the hash of the holder's uuid
+        User ann = from.getHolder();
+        User bob = theBank.addUser("Bob", "Refund", "5678");
+        while (Math.floorMod(bob.getUUID().hashCode(), 2) == Math.floorMod(ann.getUUID().hashCode(), 2)) {
+            bob = theBank.addUser("Bob", "Refund", "5678");
+        }
+        Account target = theBank.findAccount(bob.getAcctUUID(0));
+        theBank.startShards(2);
+        theBank.deposit(from, Money.of(10, 0), "Pay");
+        theBank.deposit(target, Long.MAX_VALUE - 100, "Jackpot");
+
+        assertThrows(ArithmeticException.class, () -> theBank.transfer(from, target, Money.of(5, 0), "Overflow"));
+        assertEquals(Money.of(10, 0), from.getBalance());
+        assertEquals(3, from.numberOfTransactions());
+        assertEquals(Long.MAX_VALUE - 100, target.getBalance());
+        assertTrue(from.verifyBalance());
+        theBank.stopShards();
+        theBank.getJournal().close();
+
+        Bank replayed = Bank.open("Bank of Refunds", journalPath, Journal.Durability.WRITE);
+        assertEquals(Money.of(10, 0), replayed.findAccount(from.getUUID()).getBalance());
+        assertEquals(3, replayed.findAccount(from.getUUID()).numberOfTransactions());
+        assertEquals(Long.MAX_VALUE - 100, replayed.findAccount(target.getUUID()).getBalance());
+        replayed.getJournal().close();
+    }
+
+    @Test
+    void aTransferCutBetweenItsLegsIsSettledOnOpen() throws IOException {
+        Path journalPath = this.directory.resolve("unsettled.journal");
+        Bank theBank = Bank.open("Bank of Crashes", journalPath, Journal.Durability.WRITE);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account from = theBank.findAccount(theBank.addUser("Ann", "Unsettled", "1234").getAcctUUID(0));
+        Account to = theBank.findAccount(theBank.addUser("Bob", "Unsettled", "5678").getAcctUUID(0));
+        theBank.deposit(from, Money.of(100, 0), "Pay");
+
+        // A crash after the debit of a transfer between shards, before its credit
+        assertEquals(1, theBank.postTransferOut(from, to, Money.of(30, 0), "Rent"));
+        theBank.getJournal().close();
+
+        Bank replayed = Bank.open("Bank of Crashes", journalPath, Journal.Durability.WRITE);
+        assertEquals(Money.of(70, 0), replayed.findAccount(from.getUUID()).getBalance());
+        assertEquals(Money.of(30, 0), replayed.findAccount(to.getUUID()).getBalance());
+        replayed.getJournal().close();
+
+        // The credit is in the journal now: it's applied once, not settled again
+        Bank again = Bank.open("Bank of Crashes", journalPath, Journal.Durability.WRITE);
+        assertEquals(Money.of(30, 0), again.findAccount(to.getUUID()).getBalance());
+        assertEquals(1, again.findAccount(to.getUUID()).numberOfTransactions());
+        again.getJournal().close();
+    }
+
+    /**
+     * Run the transfers from THREADS threads, then check every account
+     * @param numberOfShards number of shards, 0 for none
+     */
+    private void stress(int numberOfShards) throws InterruptedException {
+        // Few accounts, so that threads keep fighting over the same ones
+        Bank theBank = new Bank("Bank of Stress");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account[] accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            User user = theBank.addUser("Stress", "User" + i, "1234");
+            accounts[i] = new Account("Checking", user, theBank);
+            user.addAccount(accounts[i]);
+            theBank.addAccount(accounts[i]);
+            accounts[i].addTransaction(OPENING_BALANCE, "Opening balance");
+        }
+        if (numberOfShards > 0) {
+            theBank.startShards(numberOfShards);
+        }
+
+        AtomicLong done = new AtomicLong();
+        AtomicLong refused = new AtomicLong();
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom rng = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    Account from = accounts[rng.nextInt(ACCOUNTS)];
+                    Account to = accounts[rng.nextInt(ACCOUNTS)];
+                    // Up to $300.00, so that some transfers overdraw and must be refused
+                    long amount = rng.nextLong(Money.of(300, 0));
+                    if (theBank.transfer(from, to, amount, "stress")) {
+                        done.incrementAndGet();
+                    } else {
+                        refused.incrementAndGet();
+                    }
+                }
+            }, "stress-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        theBank.stopShards();
+
+        // Check that the money is conserved and every account is consistent
+        long total = 0;
+        for (Account account : accounts) {
+            total += account.getBalance();
+            assertTrue(account.getBalance() >= 0, account.getSummaryLine());
+            assertTrue(account.verifyBalance(), account.getSummaryLine());
+        }
+        assertEquals(OPENING_BALANCE * ACCOUNTS, total);
+        assertEquals((long) THREADS * TRANSFERS_PER_THREAD, done.get() + refused.get());
+        assertTrue(done.get() > 0);
+    }
+}
@@ -0,0 +1,120 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Bulk user import: the users and accounts opened, the mapping file, and resuming after a failure midway
+ */
+class UserImportTest {
+    /**
+     * A few batches of records
+     */
+    private static final int RECORDS = 3000;
+
+    /**
+     * Where the first import stops, in the middle of a batch
+     */
+    private static final int FIRST_PART = 1500;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void usersAccountsAndMappingAreWritten() throws IOException {
+        Bank theBank = UserImportTest.newBank();
+        Path users = this.directory.resolve("users.csv");
+        Files.writeString(users, String.join("\n",
+                "firstName,lastName,pin,savingsBalance,otherAccounts",
+                "Ann,Import,1234,250.00,Checking:100.00;Business:0",
+                "Bob,Import,,10.00",
+                "Cid,Import,5678,-1.00",
+                "Dan,Import,9012,"));
+        Path mapping = this.directory.resolve("mapping.csv");
+
+        IngestReport report = theBank.importUsers(users, mapping, 2);
+
+        assertEquals(4, report.getRead());
+        assertEquals(2, report.getAccepted());
+        assertEquals(2, report.getRejected());
+        List<String> lines = Files.readAllLines(mapping);
+        assertEquals(3, lines.size());
+        assertEquals("record,user,accounts", lines.get(0));
+        String[] ann = lines.get(1).split(",");
+        assertEquals("1", ann[0]);
+        User user = theBank.findUser(ann[1]);
+        assertEquals("Ann", user.getFirstName());
+        assertEquals(3, user.numberOfAccounts());
+        assertEquals(Money.of(250, 0), theBank.findAccount(user.getAcctUUID(0)).getBalance());
+        assertEquals(Money.of(100, 0), theBank.findAccount(user.getAcctUUID(1)).getBalance());
+        assertEquals("Savings:" + user.getAcctUUID(0) + ";Checking:" + user.getAcctUUID(1) + ";Business:"
+                + user.getAcctUUID(2), ann[2]);
+        assertTrue(lines.get(2).startsWith("4,"));
+        assertNotNull(theBank.userLogin(ann[1], "1234"));
+    }
+
+    @Test
+    void resumeImportsOnlyTheRecordsNotAdded() throws IOException {
+        Path journalPath = this.directory.resolve("import.journal");
+        Path users = this.directory.resolve("users.csv");
+        Path firstPart = this.directory.resolve("first.csv");
+        Path mapping = this.directory.resolve("mapping.csv");
+        StringBuilder csv = new StringBuilder();
+        for (int i = 1; i <= RECORDS; i++) {
+            csv.append("User").append(i).append(",Import,1234,").append(i).append(".00,Checking:1.00\n");
+            if (i == FIRST_PART) {
+                Files.writeString(firstPart, csv);
+            }
+        }
+        Files.writeString(users, csv);
+
+        // An import that stops after FIRST_PART records, and the lines of a batch written ahead but never
+        // added, the last one cut short, then the bank goes down
+        Bank theBank = Bank.open("Bank of Import", journalPath, Journal.Durability.WRITE);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        theBank.importUsers(firstPart, mapping, 2);
+        Files.writeString(mapping, (FIRST_PART + 1) + ",0000000000,Savings:0000000000;Checking:0000000001\n"
+                + (FIRST_PART + 2) + ",12345", StandardOpenOption.APPEND);
+        theBank.getJournal().close();
+
+        Bank reopened = Bank.open("Bank of Import", journalPath, Journal.Durability.WRITE);
+        reopened.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        IngestReport report = reopened.resumeImportUsers(users, mapping, 2);
+
+        assertEquals(RECORDS - FIRST_PART, report.getRead());
+        assertEquals(RECORDS - FIRST_PART, report.getAccepted());
+        // Every record once, in the bank and in the mapping, in file order
+        assertEquals(RECORDS, reopened.getUsers().size());
+        Set<String> names = new HashSet<String>();
+        for (User user : reopened.getUsers()) {
+            assertTrue(names.add(user.getFirstName()), "twice: " + user.getFirstName());
+        }
+        List<String> lines = Files.readAllLines(mapping);
+        assertEquals(RECORDS + 1, lines.size());
+        for (int i = 1; i <= RECORDS; i++) {
+            String[] fields = lines.get(i).split(",");
+            assertEquals(String.valueOf(i), fields[0]);
+            User user = reopened.findUser(fields[1]);
+            assertEquals("User" + i, user.getFirstName());
+            assertEquals(Money.of(i, 0), reopened.findAccount(user.getAcctUUID(0)).getBalance());
+        }
+        reopened.getJournal().close();
+    }
+
+    private static Bank newBank() {
+        Bank theBank = new Bank("Bank of Import");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        return theBank;
+    }
+}
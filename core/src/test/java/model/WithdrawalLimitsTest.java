@@ -0,0 +1,84 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Withdrawal limits: only withdrawals and outgoing transfers count against them, not fees or other debits,
+ * whether they are counted as they happen or from the history after a restart
+ */
+class WithdrawalLimitsTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void feesDontCountAgainstTheLimits() {
+        Bank theBank = WithdrawalLimitsTest.newBank();
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Limits", "1234").getAcctUUID(0));
+        theBank.deposit(savings, Money.of(1000, 0), "Pay");
+
+        assertTrue(theBank.withdraw(savings, Money.of(10, 0), "Cash"));
+        // Debits that aren't withdrawals, e.g. an end-of-day fee, as they happen
+        savings.addTransaction(-Money.of(5, 0), "Monthly fee");
+        savings.addTransaction(-Money.of(5, 0), "Monthly fee");
+        assertTrue(theBank.withdraw(savings, Money.of(10, 0), "Cash"));
+        assertFalse(theBank.withdraw(savings, Money.of(10, 0), "Cash"));
+    }
+
+    @Test
+    void outgoingTransfersCountAndIncomingOnesDont() {
+        Bank theBank = WithdrawalLimitsTest.newBank();
+        Account ann = theBank.findAccount(theBank.addUser("Ann", "Limits", "1234").getAcctUUID(0));
+        Account bob = theBank.findAccount(theBank.addUser("Bob", "Limits", "5678").getAcctUUID(0));
+        theBank.deposit(ann, Money.of(1000, 0), "Pay");
+        theBank.deposit(bob, Money.of(1000, 0), "Pay");
+
+        assertTrue(theBank.transfer(bob, ann, Money.of(10, 0), "Lunch"));
+        assertTrue(theBank.transfer(ann, bob, Money.of(10, 0), "Rent"));
+        assertTrue(theBank.withdraw(ann, Money.of(10, 0), "Cash"));
+        assertFalse(theBank.transfer(ann, bob, Money.of(10, 0), "Rent"));
+    }
+
+    @Test
+    void theHistoryIsCountedTheSameWayAfterARestart() throws IOException {
+        Path journalPath = this.directory.resolve("limits.journal");
+        Path snapshotPath = this.directory.resolve("limits.snapshot");
+        Bank theBank = Bank.open("Bank of Limits", journalPath, Journal.Durability.WRITE);
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        Account savings = theBank.findAccount(theBank.addUser("Ann", "Limits", "1234").getAcctUUID(0));
+        theBank.deposit(savings, Money.of(1000, 0), "Pay");
+        assertTrue(theBank.withdraw(savings, Money.of(10, 0), "Cash"));
+        // The same memo as a withdrawal, but a fee
+        savings.addTransaction(-Money.of(5, 0), "Cash");
+        savings.addTransaction(-Money.of(5, 0), "Cash");
+        Snapshot.write(theBank, snapshotPath);
+        assertTrue(theBank.withdraw(savings, Money.of(10, 0), "After the snapshot"));
+        theBank.getJournal().close();
+
+        // From the journal alone, then from the snapshot and the rest of the journal: 2 withdrawals count
+        for (Path snapshot : new Path[] {null, snapshotPath}) {
+            Bank reopened = Bank.open("Bank of Limits", journalPath, snapshot, Journal.Durability.WRITE);
+            Account copy = reopened.findAccount(savings.getUUID());
+            reopened.setWithdrawalLimits("Savings", WithdrawalLimits.parse("1440:100.00/3"));
+            assertTrue(copy.isWithinLimits(Money.of(10, 0)));
+            reopened.setWithdrawalLimits("Savings", WithdrawalLimits.parse("1440:100.00/2"));
+            assertFalse(copy.isWithinLimits(Money.of(10, 0)));
+            reopened.getJournal().close();
+        }
+    }
+
+    /**
+     * A bank allowing 2 withdrawals a day on savings accounts
+     */
+    private static Bank newBank() {
+        Bank theBank = new Bank("Bank of Limits");
+        theBank.setAuthenticator(new PinAuthenticator(1, 5, 60 * 1000));
+        theBank.setWithdrawalLimits("Savings", WithdrawalLimits.parse("1440:100.00/2"));
+        return theBank;
+    }
+}
@@ -1,24 +1,36 @@
 package model;
 
-import java.text.MessageFormat;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.InputMismatchException;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
 // Interface of the bank
 public class ATM {
-    public static void main(String[] args) {
+    /**
+     * Returned by readAmount when the input is not an amount
+     */
+    private static final long INVALID_AMOUNT = Long.MIN_VALUE;
+
+    /**
+     * Returned by readChoice when the input is not a whole number: no menu offers it
+     */
+    private static final int INVALID_CHOICE = 0;
+
+    /**
+     * Number of transactions shown at a time in the history
+     */
+    private static final int HISTORY_PAGE_SIZE = 10;
+
+    public static void main(String[] args) throws IOException {
         // Initialize Scanner
         Scanner scanner = new Scanner(System.in);
 
         // Initialize Bank
-        Bank theBank = new Bank("Bank of Center");
-
-        // Add a User, which also creates an account
-        User aUser = theBank.addUser("Lily", "Rose", "1234");
-
-        // Add a checking account for this user
-        Account anAccount = new Account("Checking", aUser, theBank);
-        aUser.addAccount(anAccount);
-        theBank.addAccount(anAccount);
+        Bank theBank = ATM.setUpBank();
 
         // Login prompt
         User curUser;
@@ -31,6 +43,142 @@ public class ATM {
         }
     }
 
+    /**
+     * Create the bank with its first user. If the system property atm.journal names a journal file,
+     * the bank is rebuilt from it and persisted in it, with the durability given by atm.durability
+     * (FSYNC by default); otherwise the bank lives in memory only. If atm.snapshot names a snapshot file too,
+     * startup loads it and only replays the journal after it, and a new snapshot is written every
+     * atm.snapshotMinutes (10 by default).
+     * The metrics of the bank are exposed through JMX, and printed to System.err every atm.metricsSeconds if set.
+     * If atm.shards is set, the accounts are split into that many shards, each run by its own thread.
+     * If atm.coldStore names a file, accounts keep only their last atm.hotTransactions (4096 by default)
+     * transactions in memory and seal the older ones into that file.
+     * Every atm.limits.(account name) property sets the withdrawal limits of the accounts with that name,
+     * e.g. -Datm.limits.Savings=1440:500.00/5 for at most $500 in 5 debits a day, see WithdrawalLimits.parse.
+     * If atm.auditDirectory names a directory, users created, logins and transactions are recorded in rotating
+     * files there, see AuditLog.
+     * @return the Bank object
+     * @throws IOException if the journal can't be read or written
+     */
+    public static Bank setUpBank() throws IOException {
+        // Initialize Bank
+        Bank theBank;
+        ColdStore coldStore = null;
+        String coldStorePath = System.getProperty("atm.coldStore");
+        if (coldStorePath != null) {
+            coldStore = ColdStore.create(Paths.get(coldStorePath),
+                    Integer.parseInt(System.getProperty("atm.hotTransactions", "4096")));
+        }
+        String journalPath = System.getProperty("atm.journal");
+        if (journalPath != null) {
+            Journal.Durability durability = Journal.Durability.valueOf(System.getProperty("atm.durability", "FSYNC"));
+            String snapshotPath = System.getProperty("atm.snapshot");
+            theBank = Bank.open("Bank of Center", Paths.get(journalPath),
+                    snapshotPath == null ? null : Paths.get(snapshotPath), durability, coldStore);
+            ATM.startAuditLog(theBank);
+            ATM.closeOnExit(theBank);
+            if (snapshotPath != null) {
+                long minutes = Long.parseLong(System.getProperty("atm.snapshotMinutes", "10"));
+                Snapshot.schedule(theBank, Paths.get(snapshotPath), minutes, TimeUnit.MINUTES);
+            }
+            if (theBank.numberOfUsers() > 0) {
+                // Everything is back from the journal
+                return ATM.startServices(theBank);
+            }
+        } else {
+            theBank = new Bank("Bank of Center");
+            ATM.startAuditLog(theBank);
+            ATM.closeOnExit(theBank);
+            if (coldStore != null) {
+                theBank.setColdStore(coldStore);
+            }
+        }
+
+        // Add a User, which also creates an account
+        User aUser = theBank.addUser("Lily", "Rose", "1234");
+        System.out.printf("New user %s, %s, with ID %s created.%n",
+                aUser.getLastName(), aUser.getFirstName(), aUser.getUUID());
+
+        // Add a checking account for this user
+        Account anAccount = new Account("Checking", aUser, theBank);
+        aUser.addAccount(anAccount);
+        theBank.addAccount(anAccount);
+
+        return ATM.startServices(theBank);
+    }
+
+    /**
+     * Start recording the events of the bank in rotating files if atm.auditDirectory is set
+     * @param theBank the bank
+     * @throws IOException if the audit log can't be created
+     */
+    private static void startAuditLog(Bank theBank) throws IOException {
+        String auditDirectory = System.getProperty("atm.auditDirectory");
+        if (auditDirectory == null) {
+            return;
+        }
+        AuditLog auditLog = AuditLog.open(Paths.get(auditDirectory), 1 << 16, 64L << 20, 16);
+        theBank.setAuditLog(auditLog);
+    }
+
+    /**
+     * On the way out, close the journal, then the audit log, in one shutdown hook: shutdown hooks run in no
+     * particular order. A BUFFERED journal still has records in memory, and the audit log events in its ring.
+     * @param theBank the bank
+     */
+    private static void closeOnExit(Bank theBank) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // The operations already on the shards go to the journal first
+            theBank.stopShards();
+            Journal journal = theBank.getJournal();
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("error: journal not written: " + e.getMessage());
+                }
+            }
+            AuditLog auditLog = theBank.getAuditLog();
+            if (auditLog != null) {
+                try {
+                    auditLog.close();
+                } catch (IOException e) {
+                    System.err.println("error: audit log not written: " + e.getMessage());
+                }
+            }
+        }, "atm-close"));
+    }
+
+    /**
+     * Set the withdrawal limits given by the atm.limits.* properties, register the metrics of the bank with JMX,
+     * schedule their dump if atm.metricsSeconds is set, and start the shards if atm.shards is set
+     * @param theBank the bank
+     * @return the bank
+     */
+    private static Bank startServices(Bank theBank) {
+        for (String property : System.getProperties().stringPropertyNames()) {
+            if (property.startsWith("atm.limits.")) {
+                theBank.setWithdrawalLimits(property.substring("atm.limits.".length()),
+                        WithdrawalLimits.parse(System.getProperty(property)));
+            }
+        }
+        String shards = System.getProperty("atm.shards");
+        if (shards != null) {
+            theBank.startShards(Integer.parseInt(shards));
+        }
+        try {
+            theBank.getMetrics().registerMBeans(theBank.getName());
+        } catch (JMException e) {
+            // The ATM works without them
+            System.err.println("error: metrics not registered with JMX: " + e.getMessage());
+        }
+        String seconds = System.getProperty("atm.metricsSeconds");
+        if (seconds != null) {
+            theBank.getMetrics().schedule(System.err, Long.parseLong(seconds), TimeUnit.SECONDS);
+        }
+        return theBank;
+    }
+
     /**
      * Print the ATM's login menu
      * @param theBank the Bank object whose accounts associated
@@ -38,80 +186,104 @@ public class ATM {
      * @return authenticated User object
      */
     public static User mainMenuPrompt(Bank theBank, Scanner scanner) {
+        return ATM.mainMenuPrompt(theBank, scanner, System.out);
+    }
+
+    /**
+     * Print the ATM's login menu
+     * @param theBank the Bank object whose accounts associated
+     * @param scanner Scanner object for user input
+     * @param out where to print, e.g. System.out or a terminal's connection
+     * @return authenticated User object
+     */
+    public static User mainMenuPrompt(Bank theBank, Scanner scanner, PrintStream out) {
         // Initialize
+        AtmEngine engine = new AtmEngine(theBank);
         String userId;
         String pin;
-        User authUser;
+        AtmResult result;
 
         // Prompt the user for login Id & pin until success
         do {
-            System.out.printf("%n%nWelcome to %s%n%n", theBank.getName());
-                System.out.println("Enter user ID: ");
-                userId = scanner.next();
-                System.out.println("Enter the pin: ");
-                pin = scanner.next();
-
-                // Try to get the userId and pin corresponding to the input
-            authUser = theBank.userLogin(userId, pin);
-            if (authUser == null) {
-                System.out.printf("Incorrect user ID/pin combination." +
+            out.printf("%n%nWelcome to %s%n%n", theBank.getName());
+            out.println("Enter user ID: ");
+            userId = scanner.next();
+            out.println("Enter the pin: ");
+            pin = scanner.next();
+
+            // Try to get the userId and pin corresponding to the input
+            result = engine.execute(AtmCommand.login(userId, pin));
+            if (result.getStatus() == AtmResult.Status.INVALID_USER_ID) {
+                out.println("Invalid user ID, please check it and try again.");
+            } else if (!result.isOk()) {
+                out.printf("Incorrect user ID/pin combination." +
                         "Please try again."); // Don't give too much information, just say the combination is wrong
             }
-        } while (authUser == null); // Continue looping until login success
+        } while (!result.isOk()); // Continue looping until login success
 
-        return authUser;
+        return result.getUser();
     }
 
     public static void printUserMenu(User theUser, Scanner scanner) {
+        ATM.printUserMenu(theUser, scanner, System.out);
+    }
+
+    /**
+     * Print the user's menu and process the options until the user quits
+     * @param theUser the logged-in User object
+     * @param scanner the Scanner for user input
+     * @param out where to print, e.g. System.out or a terminal's connection
+     */
+    public static void printUserMenu(User theUser, Scanner scanner, PrintStream out) {
+        AtmEngine engine = new AtmEngine(theUser.getBank(), theUser);
 
         // Print a summary of the user's accounts
-        theUser.printAccountsSummary();
+        theUser.printAccountsSummary(out);
 
         // Initialize
         int option;
 
-        // User's menu
+        // Re-display the menu until the user quits: a loop, so that long sessions don't grow the stack
         do {
-            System.out.printf("Welcome %s, what would you like to do?%n", theUser.getFirstName());
-
-            System.out.println(" 1) Show account transaction history");
-            System.out.println(" 2) Withdraw");
-            System.out.println(" 3) Deposit");
-            System.out.println(" 4) Transfer");
-            System.out.println(" 5) Quit");
-            System.out.println();
-            System.out.print("Enter option: ");
-            option = scanner.nextInt();
-
-            // Tell user it's wrong if No login for 2, 3, 4, or out of the range of options
-            if (option < 1 || option > 5) {
-                System.out.println("Invalid option. Please choose 1~5");
+            // User's menu
+            do {
+                out.printf("Welcome %s, what would you like to do?%n", theUser.getFirstName());
+
+                out.println(" 1) Show account transaction history");
+                out.println(" 2) Withdraw");
+                out.println(" 3) Deposit");
+                out.println(" 4) Transfer");
+                out.println(" 5) Quit");
+                out.println();
+                out.print("Enter option: ");
+                option = ATM.readChoice(scanner);
+
+                // Tell user it's wrong if No login for 2, 3, 4, or out of the range of options
+                if (option < 1 || option > 5) {
+                    out.println("Invalid option. Please choose 1~5");
+                }
+            } while (option < 1 || option > 5);
+
+            // Process the option
+            switch (option) {
+                case 1:
+                    ATM.showTransactionHistory(engine, scanner, out);
+                    break;
+                case 2:
+                    ATM.withdrawFunds(engine, scanner, out);
+                    break;
+                case 3:
+                    ATM.depositFunds(engine, scanner, out);
+                    break;
+                case 4:
+                    ATM.transferFunds(engine, scanner, out);
+                    break;
+                case 5:
+                    engine.execute(AtmCommand.quit());
+                    scanner.nextLine();
+                    break;
             }
-        } while (option < 1 || option > 5);
-
-        // Process the option
-        switch (option) {
-            case 1:
-                ATM.showTransactionHistory(theUser, scanner);
-                break;
-            case 2:
-                ATM.withdrawFunds(theUser, scanner);
-                break;
-            case 3:
-                ATM.depositFunds(theUser, scanner);
-                break;
-            case 4:
-                ATM.transferFunds(theUser, scanner);
-                break;
-            case 5:
-                scanner.nextLine();
-                break;
-        }
-
-        // Re-display the menu until the user quit, by a recursive call
-        if (option !=5 ) {
-            ATM.printUserMenu(theUser, scanner);
-        }
+        } while (option != 5);
     }
 
     /**
@@ -120,21 +292,46 @@ public class ATM {
      * @param scanner the Scanner for user input
      */
     public static void showTransactionHistory(User theUser, Scanner scanner) {
-        // Ask the user which account he/she wants to look at:
-        int theAcct;
-        do {
-            System.out.printf("Enter the number (1~%d) of the account," + " which transactions you want to see: ",
-                    theUser.numberOfAccounts());
-            theAcct = scanner.nextInt()-1;
+        ATM.showTransactionHistory(theUser, scanner, System.out);
+    }
 
-            // If User enter wrong number
-            if (theAcct < 0 || theAcct >= theUser.numberOfAccounts()) {
-                System.out.println("Invalid account. Please try again.");
-            }
-        } while (theAcct < 0 || theAcct >= theUser.numberOfAccounts());
+    /**
+     * Show the transaction histories of an account
+     * @param theUser the logged-in user
+     * @param scanner the Scanner for user input
+     * @param out where to print, e.g. System.out or a terminal's connection
+     */
+    public static void showTransactionHistory(User theUser, Scanner scanner, PrintStream out) {
+        ATM.showTransactionHistory(new AtmEngine(theUser.getBank(), theUser), scanner, out);
+    }
+
+    private static void showTransactionHistory(AtmEngine engine, Scanner scanner, PrintStream out) {
+        User theUser = engine.getUser();
 
-        // Print the transaction histories
-        theUser.printAcctTransHistory(theAcct);
+        // Ask the user which account he/she wants to look at:
+        int theAcct = ATM.readAccount(theUser, scanner, out, "which transactions you want to see");
+
+        // Print the transaction histories, a page at a time
+        out.printf("%nTransaction history for account %s:%n", theUser.getAcctUUID(theAcct));
+        TransactionPage page = engine.execute(AtmCommand.history(theAcct, TransactionPage.FIRST, HISTORY_PAGE_SIZE))
+                .getPage();
+        if (page.getTransactions().isEmpty()) {
+            out.println("No transactions yet for this account.");
+        }
+        while (true) {
+            for (Transaction transaction : page.getTransactions()) {
+                out.println(transaction.getSummaryLine());
+            }
+            if (!page.hasMore()) {
+                break;
+            }
+            out.print("Enter m for more, anything else to go back: ");
+            if (!scanner.next().equalsIgnoreCase("m")) {
+                break;
+            }
+            page = engine.execute(AtmCommand.history(theAcct, page.getNextCursor(), HISTORY_PAGE_SIZE)).getPage();
+        }
+        out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
     }
 
     /**
@@ -143,63 +340,51 @@ public class ATM {
      * @param scanner the Scanner for user input
      */
     public static void transferFunds(User theUser, Scanner scanner) {
+        ATM.transferFunds(theUser, scanner, System.out);
+    }
+
+    /**
+     * Process the transaction from one account to another of the same user
+     * @param theUser the logged-in User object
+     * @param scanner the Scanner for user input
+     * @param out where to print, e.g. System.out or a terminal's connection
+     */
+    public static void transferFunds(User theUser, Scanner scanner, PrintStream out) {
+        ATM.transferFunds(new AtmEngine(theUser.getBank(), theUser), scanner, out);
+    }
+
+    private static void transferFunds(AtmEngine engine, Scanner scanner, PrintStream out) {
         // Initialize
+        User theUser = engine.getUser();
         int fromAccount;
         int toAccount;
-        double amount;
-        double accountBalance; // Don't allow user to transfer too much at a time
+        long amount;
+        long accountBalance; // Don't allow user to transfer too much at a time
         String memo;
 
-        // Get the account to transfer from
-        do {
-            System.out.printf("Enter the number (1~%d) of the account you want to transfer FROM: ",
-                    theUser.numberOfAccounts());
-            fromAccount = scanner.nextInt()-1;
-
-            // If User enter wrong number
-            if (fromAccount < 0 || fromAccount >= theUser.numberOfAccounts()) {
-                System.out.println("Invalid account. Please try again.");
-            }
-        } while (fromAccount < 0 || fromAccount >= theUser.numberOfAccounts());
+        // Get the account to transfer from, and to
+        fromAccount = ATM.readAccount(theUser, scanner, out, "you want to transfer FROM");
         accountBalance = theUser.getAccountBalance(fromAccount);
-
-        // Get the account to transfer to
-        do {
-            System.out.printf("Enter the number (1~%d) of the account you want to transfer TO: ",
-                    theUser.numberOfAccounts());
-            toAccount = scanner.nextInt()-1;
-
-            // If User enter wrong number
-            if (toAccount < 0 || toAccount >= theUser.numberOfAccounts()) {
-                System.out.println("Invalid account. Please try again.");
-            }
-        } while (toAccount < 0 || toAccount >= theUser.numberOfAccounts());
+        toAccount = ATM.readAccount(theUser, scanner, out, "you want to transfer TO");
 
         // Get the amount to transfer
-        do {
-            System.out.printf("Enter the amount to transfer (max $%.02f): $", accountBalance);
-            amount = scanner.nextDouble();
-
-            // If User enter wrong number
-            if (amount < 0) {
-                System.out.println("Amount should not be less than 0.");
-            } else if (amount > accountBalance) {
-                System.out.printf("Amount must not be greater than%n" + "the balance of $%.02f.%n", accountBalance);
-            }
-        } while (amount < 0 || amount > accountBalance);
+        amount = ATM.readAmount(scanner, out, "transfer", accountBalance);
 
         // Gobble up rest of previous input, 加上这句才会被记录用户输入memo, 否则会被跳过
         scanner.nextLine();
 
         // Get a memo
-        System.out.println("Enter a memo: ");
+        out.println("Enter a memo: ");
         memo = scanner.nextLine();
 
-        // Finally, do the transfer
-        theUser.addAcctTransaction(fromAccount, -1*amount,
-                MessageFormat.format("Transfer to account #{0} for: {1}", theUser.getAcctUUID(toAccount), memo));
-        theUser.addAcctTransaction(toAccount, amount,
-                MessageFormat.format("Transfer from account #{0} for: {1}", theUser.getAcctUUID(fromAccount), memo));
+        // Finally, do the transfer: the balance is checked again with both legs,
+        // as another session may have used the money while we were asking for the memo
+        AtmResult result = engine.execute(AtmCommand.transfer(fromAccount, toAccount, amount, memo));
+        if (result.getStatus() == AtmResult.Status.INSUFFICIENT_FUNDS) {
+            out.println("Insufficient funds, the transfer was cancelled.");
+        } else if (result.getStatus() == AtmResult.Status.LIMIT_EXCEEDED) {
+            out.println("Withdrawal limit reached, the transfer was cancelled.");
+        }
     }
 
     /**
@@ -208,47 +393,48 @@ public class ATM {
      * @param scanner the Scanner for user input
      */
     public static void withdrawFunds(User theUser, Scanner scanner) {
+        ATM.withdrawFunds(theUser, scanner, System.out);
+    }
+
+    /**
+     * Process a withdraw
+     * @param theUser the logged-in User object
+     * @param scanner the Scanner for user input
+     * @param out where to print, e.g. System.out or a terminal's connection
+     */
+    public static void withdrawFunds(User theUser, Scanner scanner, PrintStream out) {
+        ATM.withdrawFunds(new AtmEngine(theUser.getBank(), theUser), scanner, out);
+    }
+
+    private static void withdrawFunds(AtmEngine engine, Scanner scanner, PrintStream out) {
         // Initialize
+        User theUser = engine.getUser();
         int account;
-        double amount;
-        double accountBalance;
+        long amount;
+        long accountBalance;
         String memo;
 
         // Get the account to withdraw
-        do {
-            System.out.printf("Enter the number (1~%d) of the account you want to withdraw FROM: ",
-                    theUser.numberOfAccounts());
-            account = scanner.nextInt()-1;
-
-            // If User enter wrong number
-            if (account < 0 || account >= theUser.numberOfAccounts()) {
-                System.out.println("Invalid account. Please try again.");
-            }
-        } while (account < 0 || account >= theUser.numberOfAccounts());
+        account = ATM.readAccount(theUser, scanner, out, "you want to withdraw FROM");
         accountBalance = theUser.getAccountBalance(account);
 
         // Get the amount the user want to withdraw
-        do {
-            System.out.printf("Enter the amount to withdraw (max $%.02f): $", accountBalance);
-            amount = scanner.nextDouble();
-
-            // If User enter wrong number
-            if (amount < 0) {
-                System.out.println("Amount should not be less than 0.");
-            } else if (amount > accountBalance) {
-                System.out.printf("Amount must not be greater than%n" + "the balance of $%.02f.%n", accountBalance);
-            }
-        } while (amount < 0 || amount > accountBalance);
+        amount = ATM.readAmount(scanner, out, "withdraw", accountBalance);
 
         // Gobble up rest of previous input
         scanner.nextLine();
 
         // Get a memo
-        System.out.println("Enter a memo: ");
+        out.println("Enter a memo: ");
         memo = scanner.nextLine();
 
-        // Take into account the withdraw history
-        theUser.addAcctTransaction(account, -1*amount, memo);
+        // Take into account the withdraw history, if the money is still there
+        AtmResult result = engine.execute(AtmCommand.withdraw(account, amount, memo));
+        if (result.getStatus() == AtmResult.Status.INSUFFICIENT_FUNDS) {
+            out.println("Insufficient funds, the withdrawal was cancelled.");
+        } else if (result.getStatus() == AtmResult.Status.LIMIT_EXCEEDED) {
+            out.println("Withdrawal limit reached, the withdrawal was cancelled.");
+        }
     }
 
     /**
@@ -257,33 +443,41 @@ public class ATM {
      * @param scanner the Scanner for user input
      */
     public static void depositFunds(User theUser, Scanner scanner) {
+        ATM.depositFunds(theUser, scanner, System.out);
+    }
+
+    /**
+     * Process a deposit
+     * @param theUser the logged-in User object
+     * @param scanner the Scanner for user input
+     * @param out where to print, e.g. System.out or a terminal's connection
+     */
+    public static void depositFunds(User theUser, Scanner scanner, PrintStream out) {
+        ATM.depositFunds(new AtmEngine(theUser.getBank(), theUser), scanner, out);
+    }
+
+    private static void depositFunds(AtmEngine engine, Scanner scanner, PrintStream out) {
         // Initialize
+        User theUser = engine.getUser();
         int account;
-        double amount;
-        double accountBalance;
+        long amount;
+        long accountBalance;
         String memo;
 
         // Get the account to deposit
-        do {
-            System.out.printf("Enter the number (1~%d) of the account you want to deposit TO: ",
-                    theUser.numberOfAccounts());
-            account = scanner.nextInt()-1;
-
-            // If User enter wrong number
-            if (account < 0 || account >= theUser.numberOfAccounts()) {
-                System.out.println("Invalid account. Please try again.");
-            }
-        } while (account < 0 || account >= theUser.numberOfAccounts());
+        account = ATM.readAccount(theUser, scanner, out, "you want to deposit TO");
         accountBalance = theUser.getAccountBalance(account);
 
         // Get the amount the user want to deposit
         do {
-            System.out.printf("Enter the amount to deposit (current balance is $%.02f): $", accountBalance);
-            amount = scanner.nextDouble();
+            out.printf("Enter the amount to deposit (current balance is $%s): $", Money.format(accountBalance));
+            amount = ATM.readAmount(scanner);
 
             // If User enter wrong number
-            if (amount < 0) {
-                System.out.println("Amount should not be less than 0.");
+            if (amount == INVALID_AMOUNT) {
+                out.println("Invalid amount. Please enter dollars and cents, like 12.50");
+            } else if (amount < 0) {
+                out.println("Amount should not be less than 0.");
             }
         } while (amount < 0);
 
@@ -291,11 +485,87 @@ public class ATM {
         scanner.nextLine();
 
         // Get a memo
-        System.out.println("Enter a memo: ");
+        out.println("Enter a memo: ");
         memo = scanner.nextLine();
 
         // Take into account the withdraw history
-        theUser.addAcctTransaction(account, amount, memo);
+        engine.execute(AtmCommand.deposit(account, amount, memo));
+    }
+
+    /**
+     * Ask for the number of one of the user's accounts until it's a valid one
+     * @param theUser the logged-in user
+     * @param scanner the Scanner for user input
+     * @param out where to print
+     * @param purpose end of the question, e.g. "you want to withdraw FROM"
+     * @return the index of the account in the user's list
+     */
+    private static int readAccount(User theUser, Scanner scanner, PrintStream out, String purpose) {
+        int account;
+        do {
+            out.printf("Enter the number (1~%d) of the account %s: ", theUser.numberOfAccounts(), purpose);
+            account = ATM.readChoice(scanner)-1;
+
+            // If User enter wrong number
+            if (account < 0 || account >= theUser.numberOfAccounts()) {
+                out.println("Invalid account. Please try again.");
+            }
+        } while (account < 0 || account >= theUser.numberOfAccounts());
+        return account;
+    }
+
+    /**
+     * Ask for an amount to take from an account until it's a valid one, not above the balance
+     * @param scanner the Scanner for user input
+     * @param out where to print
+     * @param action what the amount is for, e.g. "withdraw"
+     * @param accountBalance the balance of the account, in cents
+     * @return the amount in cents
+     */
+    private static long readAmount(Scanner scanner, PrintStream out, String action, long accountBalance) {
+        long amount;
+        do {
+            out.printf("Enter the amount to %s (max $%s): $", action, Money.format(accountBalance));
+            amount = ATM.readAmount(scanner);
+
+            // If User enter wrong number
+            if (amount == INVALID_AMOUNT) {
+                out.println("Invalid amount. Please enter dollars and cents, like 12.50");
+            } else if (amount < 0) {
+                out.println("Amount should not be less than 0.");
+            } else if (amount > accountBalance) {
+                out.printf("Amount must not be greater than%n" + "the balance of $%s.%n", Money.format(accountBalance));
+            }
+        } while (amount < 0 || amount > accountBalance);
+        return amount;
+    }
+
+    /**
+     * Read a menu option or an account number typed by the user
+     * @param scanner the Scanner for user input
+     * @return the number, or INVALID_CHOICE if it's not a whole number, which is skipped
+     */
+    private static int readChoice(Scanner scanner) {
+        try {
+            return scanner.nextInt();
+        } catch (InputMismatchException e) {
+            // Skip the bad token, or the next read would fail on it again
+            scanner.next();
+            return INVALID_CHOICE;
+        }
+    }
+
+    /**
+     * Read an amount typed by the user, parsed straight into cents
+     * @param scanner the Scanner for user input
+     * @return the amount in cents, or INVALID_AMOUNT if it's not an amount
+     */
+    private static long readAmount(Scanner scanner) {
+        try {
+            return Money.parse(scanner.next());
+        } catch (NumberFormatException | ArithmeticException e) {
+            return INVALID_AMOUNT;
+        }
     }
 
 }
@@ -1,6 +1,8 @@
 package model;
 
-import java.util.ArrayList;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Account {
     /**
@@ -19,9 +21,58 @@ public class Account {
     private User holder;
 
     /**
-     * The list of the transactions of the account
+     * The transactions of the account, stored column by column
      */
-    private ArrayList<Transaction> transactions;
+    private TransactionLog transactions;
+
+    /**
+     * The balance of the account in cents, updated by every new transaction.
+     * Written under `lock`, volatile so that it can be read without it
+     */
+    private volatile long balance;
+
+    /**
+     * The balance and the history as of the last transaction, replaced by every transaction:
+     * what readers go through without the lock
+     */
+    private volatile AccountSnapshot snapshot;
+
+    /**
+     * Guards the transactions, the balance and the checkpoints, so that sessions can share the account
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Number of transactions between two balance checkpoints
+     */
+    public static final int CHECKPOINT_INTERVAL = 1024;
+
+    /**
+     * The balance after every CHECKPOINT_INTERVAL transactions:
+     * checkpoints[k] is the balance after the first (k+1) * CHECKPOINT_INTERVAL transactions
+     */
+    private long[] checkpoints;
+
+    /**
+     * Number of checkpoints recorded in `checkpoints`
+     */
+    private int numberOfCheckpoints;
+
+    /**
+     * The bank that issued the account
+     */
+    private Bank bank;
+
+    /**
+     * Where new transactions are written ahead, set once the account is added to a bank with a journal
+     */
+    private Journal journal;
+
+    /**
+     * The recent debits counted against the withdrawal limits of the bank for this account name, guarded by
+     * `lock`. Null until the first check, or after a restore: rebuilt from the history when needed.
+     */
+    private LimitCounters limits;
 
     /**
      *
@@ -37,71 +88,644 @@ public class Account {
 
         // Get new account uuid
         this.uuid = theBank.getNewAccountUUID();
+        this.bank = theBank;
 
         // initialize transactions
-        this.transactions = new ArrayList<Transaction>();
+        this.transactions = new TransactionLog();
+        this.lock = new ReentrantLock();
+        this.balance = 0;
+        this.checkpoints = new long[4];
+        this.numberOfCheckpoints = 0;
+        this.snapshot = new AccountSnapshot(this, 0, 0, this.transactions.view());
+    }
 
+    /**
+     * Rebuild an account that already exists, e.g. from the journal
+     * @param uuid the uuid of the account
+     * @param name the name of the account
+     * @param holder the user that holds this account
+     * @param theBank the bank that issued the account
+     */
+    Account(String uuid, String name, User holder, Bank theBank) {
+        this.name = name;
+        this.holder = holder;
+        this.uuid = uuid;
+        this.bank = theBank;
+        this.transactions = new TransactionLog();
+        this.lock = new ReentrantLock();
+        this.balance = 0;
+        this.checkpoints = new long[4];
+        this.numberOfCheckpoints = 0;
+        this.snapshot = new AccountSnapshot(this, 0, 0, this.transactions.view());
     }
 
     public String getUUID() {
         return this.uuid;
     }
 
+    /**
+     * Get the name of the account, e.g. "Savings"
+     * @return the name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Get the user that holds this account
+     * @return the holder
+     */
+    public User getHolder() {
+        return this.holder;
+    }
+
     /**
      * Get summary of the account
      * @return the string summary
      */
     public String getSummaryLine() {
+        return this.snapshot.getSummaryLine();
+    }
 
-        // Get the account's balance
-        double balance = this.getBalance();
+    /**
+     * Get the account as of its last transaction, to read its balance and history together without locking it
+     * @return the snapshot
+     */
+    public AccountSnapshot getSnapshot() {
+        return this.snapshot;
+    }
 
-        // For User friendly, format the message depending on the balance
-        if (balance >= 0) {
-            return String.format("%s : $%.02f : %s", this.uuid, balance, this.name);
-        } else {
-            return String.format("%s : $(%.02f) : %s", this.uuid, balance, this.name);
-        }
+    /**
+     * Getting the balance, kept up to date by addTransaction
+     * @return the balance in cents
+     */
+    public long getBalance() {
+        return this.balance;
     }
 
     /**
-     * Getting the balance by adding the amount of transactions
-     * @return the balance in $
+     * Audit the cached balance: replay the transactions since the last checkpoint
+     * and compare with the balance we have, without going through the full history
+     * @return whether the cached balance matches the replay
      */
-    public double getBalance() {
-        double balance = 0;
-        for (Transaction transaction : this.transactions) {
-            balance += transaction.getAmount();
+    public boolean verifyBalance() {
+        this.lock.lock();
+        try {
+            // Start from the last checkpoint, or from 0 if there is none yet
+            int lastCheckpoint = this.numberOfCheckpoints;
+            long replayed = lastCheckpoint == 0 ? 0 : this.checkpoints[lastCheckpoint - 1];
+
+            // Replay only the tail, in the same order as addTransaction did
+            for (int i = lastCheckpoint * CHECKPOINT_INTERVAL; i < this.transactions.size(); i++) {
+                replayed += this.transactions.amount(i);
+            }
+            return replayed == this.balance;
+        } finally {
+            this.lock.unlock();
         }
-        return balance;
     }
 
     /**
      * Print the transaction histories of the account
      */
     public void printTransHistory() {
-        System.out.printf("%nTransaction history for account %s:%n",
-                this.uuid);
-        if (this.transactions.size() > 0) {
-            // Loop through and show from recent history to old ones
-            for (int i = this.transactions.size() - 1; i >= 0; i--) {
-                System.out.println(this.transactions.get(i).getSummaryLine());
+        this.printTransHistory(System.out);
+    }
+
+    /**
+     * Print the transaction histories of the account
+     * @param out where to print, e.g. System.out or a terminal's connection
+     */
+    public void printTransHistory(PrintStream out) {
+        // From a snapshot: no lock, and no copy of the history, however long the printing takes
+        this.snapshot.printTransHistory(out);
+    }
+
+    /**
+     * Get a transaction of the account
+     * @param index the index of the transaction, 0 is the oldest
+     * @return a Transaction view of the entry
+     */
+    public Transaction getTransaction(int index) {
+        return this.snapshot.getTransaction(index);
+    }
+
+    /**
+     * Get the number of transactions of the account
+     * @return the number of transactions
+     */
+    public int numberOfTransactions() {
+        this.lock.lock();
+        try {
+            return this.transactions.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Get a page of the transaction history, newest first
+     * @param cursor TransactionPage.FIRST for the newest page, or the next cursor of the previous page
+     * @param pageSize the max number of transactions in the page
+     * @return the page
+     */
+    public TransactionPage getHistoryPage(int cursor, int pageSize) {
+        return this.getHistoryPage(Long.MIN_VALUE, Long.MAX_VALUE, cursor, pageSize);
+    }
+
+    /**
+     * Get a page of the transactions between two times, newest first. The bounds are found by
+     * binary search over the log, so this doesn't depend on the length of the history.
+     * @param from the start time in epoch milliseconds, included
+     * @param to the end time in epoch milliseconds, included
+     * @param cursor TransactionPage.FIRST for the newest page, or the next cursor of the previous page
+     * @param pageSize the max number of transactions in the page
+     * @return the page
+     */
+    public TransactionPage getHistoryPage(long from, long to, int cursor, int pageSize) {
+        return this.snapshot.getHistoryPage(from, to, cursor, pageSize);
+    }
+
+    /**
+     * Get the time of the most recent transaction
+     * @return the timestamp in epoch milliseconds, Long.MIN_VALUE if there is no transaction yet
+     */
+    public long getLastTimestamp() {
+        this.lock.lock();
+        try {
+            int size = this.transactions.size();
+            return size == 0 ? Long.MIN_VALUE : this.transactions.timestamp(size - 1);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Add the new transaction history to the log `transactions` once it happened
+     * @param amount amount of the transaction in cents
+     * @param memo memo of the transaction
+     */
+    public void addTransaction(long amount, String memo) {
+        // Wait for the journal after releasing the lock, so that other writers can join the same fsync
+        long seq = this.post(amount, System.currentTimeMillis(), memo);
+        this.bank.awaitDurable(seq);
+    }
+
+    /**
+     * Add a transaction, writing it ahead to the journal if there is one, without waiting for the journal
+     * @param amount amount of the transaction in cents
+     * @param timestamp the time of the transaction, in epoch milliseconds
+     * @param memo memo of the transaction
+     * @return the journal sequence number to wait for, 0 if there is no journal
+     */
+    long post(long amount, long timestamp, String memo) {
+        return this.post(amount, timestamp, memo, false);
+    }
+
+    /**
+     * Add a transaction, writing it ahead to the journal if there is one, without waiting for the journal
+     * @param amount amount of the transaction in cents
+     * @param timestamp the time of the transaction, in epoch milliseconds
+     * @param memo memo of the transaction
+     * @param limited whether it's a debit counted against the withdrawal limits: a withdrawal, not a fee
+     * @return the journal sequence number to wait for, 0 if there is no journal
+     */
+    private long post(long amount, long timestamp, String memo, boolean limited) {
+        this.lock.lock();
+        try {
+            // Check the new balance first, so that an overflow leaves the account untouched
+            long newBalance = Money.add(this.balance, amount);
+
+            // Keep the log in time order even if the clock goes back, time range queries rely on it
+            timestamp = Math.max(timestamp, this.getLastTimestamp());
+
+            // Write ahead: the journal has it before memory does
+            long seq = 0;
+            if (this.journal != null) {
+                seq = this.journal.appendTransaction(this, this.transactions.size(), amount, timestamp, memo,
+                        limited);
             }
-            System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
-        } else {
-            System.out.println("No transactions yet for this account.");
-            System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
+            this.apply(newBalance, amount, timestamp, memo, limited);
+            this.bank.audit(AuditLog.Type.TRANSACTION, this.uuid, amount, memo);
+            return seq;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Add a transaction that is already in the journal (replayed from it, or written by the caller)
+     * @param amount amount of the transaction in cents
+     * @param timestamp the time of the transaction, in epoch milliseconds
+     * @param memo memo of the transaction
+     * @param limited whether it's a debit counted against the withdrawal limits: a withdrawal or an outgoing
+     *                transfer, not a fee or an ingested debit
+     */
+    void applyTransaction(long amount, long timestamp, String memo, boolean limited) {
+        this.lock.lock();
+        try {
+            this.apply(Money.add(this.balance, amount), amount, timestamp, memo, limited);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Apply a transaction in memory, called with the lock held
+     * @param newBalance the balance after the transaction
+     * @param amount amount of the transaction in cents
+     * @param timestamp the time of the transaction, in epoch milliseconds
+     * @param memo memo of the transaction
+     * @param limited whether it's a debit counted against the withdrawal limits
+     */
+    private void apply(long newBalance, long amount, long timestamp, String memo, boolean limited) {
+        this.bank.getDailyRollups().record(timestamp, amount);
+        if (limited && this.limits != null) {
+            this.limits.record(-amount, timestamp);
         }
+        this.store(newBalance, amount, timestamp, memo, limited);
     }
 
     /**
-     * Add the new transaction history to the ArrayList `transactions` once it happened
-     * @param amount amount of the transaction
+     * Give an account that isn't in the bank yet its opening balance, as a transaction. Nothing else is recorded:
+     * the journal gets the transaction with the account, and recordExistingTransactions adds it to the daily
+     * rollups and the audit trail once the account is in the bank.
+     * @param balance the opening balance in cents
+     * @param timestamp the time of the transaction, in epoch milliseconds
      * @param memo memo of the transaction
      */
-    public void addTransaction(double amount, String memo) {
-        // Create new transaction object to add to our list
-        Transaction newTransaction = new Transaction(amount, memo, this);
-        this.transactions.add(newTransaction);
+    void open(long balance, long timestamp, String memo) {
+        this.lock.lock();
+        try {
+            this.store(Money.add(this.balance, balance), balance, timestamp, memo, false);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Add the transactions the account got before it was in the bank to the daily rollups and the audit trail
+     */
+    void recordExistingTransactions() {
+        this.lock.lock();
+        try {
+            DailyRollups rollups = this.bank.getDailyRollups();
+            for (int i = 0; i < this.transactions.size(); i++) {
+                rollups.record(this.transactions.timestamp(i), this.transactions.amount(i));
+                this.bank.audit(AuditLog.Type.TRANSACTION, this.uuid, this.transactions.amount(i),
+                        this.transactions.memo(i));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Store a transaction in memory, called with the lock held
+     * @param newBalance the balance after the transaction
+     * @param amount amount of the transaction in cents
+     * @param timestamp the time of the transaction, in epoch milliseconds
+     * @param memo memo of the transaction
+     * @param limited whether it's a debit counted against the withdrawal limits
+     */
+    private void store(long newBalance, long amount, long timestamp, String memo, boolean limited) {
+        // Append the new transaction to our log, no Transaction object is needed
+        this.transactions.append(amount, timestamp, memo, limited);
+
+        // Keep the balance up to date, and record a checkpoint every CHECKPOINT_INTERVAL transactions
+        this.balance = newBalance;
+        if (this.transactions.size() % CHECKPOINT_INTERVAL == 0) {
+            if (this.numberOfCheckpoints == this.checkpoints.length) {
+                this.checkpoints = Arrays.copyOf(this.checkpoints, this.numberOfCheckpoints * 2);
+            }
+            this.checkpoints[this.numberOfCheckpoints++] = this.balance;
+        }
+        this.sealColdTransactions();
+        this.publishSnapshot();
+    }
+
+    /**
+     * Replace the snapshot with the current balance and history, called with the lock held
+     */
+    private void publishSnapshot() {
+        this.snapshot = new AccountSnapshot(this, this.transactions.size(), this.balance, this.transactions.view());
+    }
+
+    /**
+     * Replace the transactions of the account with whole columns loaded from a snapshot,
+     * recomputing the balance and the checkpoints
+     * @param amounts the amounts in cents
+     * @param timestamps the timestamps in epoch milliseconds
+     * @param memoIds the index of the memo of each transaction in `memos`
+     * @param size the number of transactions
+     * @param memos the distinct memos
+     * @param limitedMemos whether the transactions with each memo are counted against the withdrawal limits
+     */
+    void restoreTransactions(long[] amounts, long[] timestamps, int[] memoIds, int size, String[] memos,
+                             boolean[] limitedMemos) {
+        this.lock.lock();
+        try {
+            this.transactions.load(amounts, timestamps, memoIds, size, memos, limitedMemos);
+            long newBalance = 0;
+            this.numberOfCheckpoints = 0;
+            DailyRollups rollups = this.bank.getDailyRollups();
+            for (int i = 0; i < size; i++) {
+                newBalance = Money.add(newBalance, amounts[i]);
+                rollups.record(timestamps[i], amounts[i]);
+                if ((i + 1) % CHECKPOINT_INTERVAL == 0) {
+                    if (this.numberOfCheckpoints == this.checkpoints.length) {
+                        this.checkpoints = Arrays.copyOf(this.checkpoints, this.numberOfCheckpoints * 2);
+                    }
+                    this.checkpoints[this.numberOfCheckpoints++] = newBalance;
+                }
+            }
+            this.balance = newBalance;
+            this.limits = null;
+            this.sealColdTransactions();
+            this.publishSnapshot();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Move the oldest transactions out of the heap if the bank has a cold store and the account has more
+     * in memory than the store allows. The balance and the checkpoints stay in memory.
+     */
+    void sealColdTransactions() {
+        ColdStore coldStore = this.bank.getColdStore();
+        if (coldStore == null) {
+            return;
+        }
+        this.lock.lock();
+        try {
+            TransactionLog.View view = this.transactions.view();
+            this.transactions.seal(coldStore);
+            if (this.transactions.view() != view) {
+                // Let the arrays given back go: the last snapshot still points to them
+                this.publishSnapshot();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of transactions of the account still in memory
+     * @return the number of transactions not sealed into the cold store
+     */
+    public int numberOfHotTransactions() {
+        this.lock.lock();
+        try {
+            return this.transactions.hotSize();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Find the first transaction at or after a time
+     * @param timestamp the time in epoch milliseconds
+     * @return the index of the first transaction with a timestamp >= `timestamp`, numberOfTransactions() if none
+     */
+    int firstTransactionAtOrAfter(long timestamp) {
+        this.lock.lock();
+        try {
+            return this.transactions.firstAtOrAfter(timestamp);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Get the balance before a transaction, from the checkpoint before it
+     * @param index the index of the transaction, numberOfTransactions() for the current balance
+     * @return the balance in cents after the transactions before `index`
+     */
+    long balanceBefore(int index) {
+        this.lock.lock();
+        try {
+            return this.balanceBeforeLocked(index);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Get the balance before a transaction, called with the lock held: the checkpoints are prefix sums
+     * of the amounts every CHECKPOINT_INTERVAL transactions, so at most CHECKPOINT_INTERVAL - 1 are added
+     */
+    private long balanceBeforeLocked(int index) {
+        int checkpoint = Math.min(index / CHECKPOINT_INTERVAL, this.numberOfCheckpoints);
+        long balance = checkpoint == 0 ? 0 : this.checkpoints[checkpoint - 1];
+        for (int i = checkpoint * CHECKPOINT_INTERVAL; i < index; i++) {
+            balance += this.transactions.amount(i);
+        }
+        return balance;
+    }
+
+    /**
+     * Get the balance the account had at a point in time. The log is in time order, so the last transaction
+     * at or before `timestamp` is found by binary search, and the balance after it from the checkpoints.
+     * @param timestamp the time in epoch milliseconds
+     * @return the balance in cents after every transaction at or before `timestamp`, 0 before the first one
+     */
+    public long getBalanceAsOf(long timestamp) {
+        this.lock.lock();
+        try {
+            return this.balanceBeforeLocked(this.endOf(timestamp));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Get the money that went in and out of the account between two times
+     * @param from the start time in epoch milliseconds, included
+     * @param to the end time in epoch milliseconds, included
+     * @return the sum of the amounts of the transactions between the two times, in cents
+     */
+    public long getNetFlow(long from, long to) {
+        if (from > to) {
+            return 0;
+        }
+        this.lock.lock();
+        try {
+            return this.balanceBeforeLocked(this.endOf(to))
+                    - this.balanceBeforeLocked(this.transactions.firstAtOrAfter(from));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Get the index after the last transaction at or before a time, called with the lock held
+     */
+    private int endOf(long timestamp) {
+        return timestamp == Long.MAX_VALUE ? this.transactions.size() : this.transactions.firstAtOrAfter(timestamp + 1);
+    }
+
+    /**
+     * Copy a run of transactions out of the log, so that they can be read without holding the lock
+     * @param start the index of the first transaction to copy
+     * @param end the index after the last one
+     * @param amounts where to copy the amounts, from index 0
+     * @param timestamps where to copy the timestamps
+     * @param memos where to copy the memos
+     * @return the number of transactions copied, less than end - start if the log is shorter
+     */
+    int copyTransactions(int start, int end, long[] amounts, long[] timestamps, String[] memos) {
+        this.lock.lock();
+        try {
+            end = Math.min(end, this.transactions.size());
+            for (int i = start; i < end; i++) {
+                amounts[i - start] = this.transactions.amount(i);
+                timestamps[i - start] = this.transactions.timestamp(i);
+                memos[i - start] = this.transactions.memo(i);
+            }
+            return Math.max(0, end - start);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Get the log of the transactions, to be read with the lock held
+     * @return the transaction log
+     */
+    TransactionLog getTransactionLog() {
+        return this.transactions;
+    }
+
+    /**
+     * Start writing the transactions of this account to a journal. The transactions it already has
+     * are written first, so that the journal gets all of them.
+     * @param journal the journal
+     * @param writeExisting whether to write the transactions the account already has
+     * @return the journal sequence number to wait for, 0 if nothing was written
+     */
+    long attachJournal(Journal journal, boolean writeExisting) {
+        this.lock.lock();
+        try {
+            long seq = 0;
+            if (writeExisting) {
+                for (int i = 0; i < this.transactions.size(); i++) {
+                    seq = journal.appendTransaction(this, i, this.transactions.amount(i),
+                            this.transactions.timestamp(i), this.transactions.memo(i), this.transactions.isLimited(i));
+                }
+            }
+            this.journal = journal;
+            return seq;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Withdraw from the account, checking the balance and adding the transaction as one step
+     * @param amount amount to withdraw in cents, not negative
+     * @param memo memo of the transaction
+     * @return true if it's done, false if the balance is too low or a withdrawal limit is reached
+     */
+    public boolean withdraw(long amount, String memo) {
+        long seq = this.postWithdrawal(amount, memo);
+        if (seq < 0) {
+            return false;
+        }
+        this.bank.awaitDurable(seq);
+        return true;
+    }
+
+    /**
+     * Withdraw from the account if the balance covers it, without waiting for the journal
+     * @param amount amount to withdraw in cents, not negative
+     * @param memo memo of the transaction
+     * @return the journal sequence number to wait for (0 if there is no journal), or -1 if the balance is too low
+     *         or a withdrawal limit is reached
+     */
+    long postWithdrawal(long amount, String memo) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Negative amount: " + amount);
+        }
+        this.lock.lock();
+        try {
+            if (amount > this.balance || !this.isWithinLimits(amount)) {
+                return -1;
+            }
+            return this.post(-amount, System.currentTimeMillis(), memo, true);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Look for a transaction among the recent ones, newest first
+     * @param timestamp how far back to look, in epoch milliseconds
+     * @param memo the memo of the transaction
+     * @return true if a transaction at or after `timestamp` has this memo
+     */
+    boolean hasTransactionSince(long timestamp, String memo) {
+        this.lock.lock();
+        try {
+            for (int i = this.transactions.size() - 1; i >= 0 && this.transactions.timestamp(i) >= timestamp; i--) {
+                if (memo.equals(this.transactions.memoAt(this.transactions.memoIdAt(i)))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Check whether a withdrawal or an outgoing transfer would stay within the withdrawal limits the bank
+     * has for this account name, in constant time. The balance is not checked.
+     * @param amount amount of the debit in cents, not negative
+     * @return true if there are no limits, or the debit stays within all of them
+     */
+    public boolean isWithinLimits(long amount) {
+        WithdrawalLimits profile = this.bank.getWithdrawalLimits(this.name);
+        if (profile == null) {
+            return true;
+        }
+        this.lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (this.limits == null || this.limits.getProfile() != profile) {
+                this.limits = this.countDebitsSince(profile, now);
+            }
+            return this.limits.allows(amount, now);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Count the recent withdrawals and outgoing transfers against a new profile, once per profile and account,
+     * called with the lock held. Fees and ingested debits don't count.
+     * @param profile the limits
+     * @param now the time in epoch milliseconds
+     * @return the counters
+     */
+    private LimitCounters countDebitsSince(WithdrawalLimits profile, long now) {
+        LimitCounters counters = new LimitCounters(profile);
+        // Twice the longest window covers the last bucket of each ring; older debits are skipped by the counters
+        long longest = profile.getLongestWindowMillis();
+        int size = this.transactions.size();
+        for (int i = this.transactions.firstAtOrAfter(now - 2 * longest); i < size; i++) {
+            if (this.transactions.isLimited(i)) {
+                counters.record(-this.transactions.amount(i), this.transactions.timestamp(i));
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Get the lock guarding this account, for operations spanning several accounts
+     * @return the lock
+     */
+    ReentrantLock getLock() {
+        return this.lock;
     }
 }
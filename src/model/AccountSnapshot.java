@@ -0,0 +1,133 @@
+package model;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An account as of one version: its balance and its history, both as they were after its first `version`
+ * transactions. Every transaction publishes a new snapshot; taking one is a single volatile read, and reading
+ * it takes no lock, so readers never hold up deposits, withdrawals or transfers, and always see a balance
+ * that matches the history they list.
+ *
+ * A snapshot only costs its few fields: it reads the log of the account through a TransactionLog.View, which
+ * shares the arrays of the log, append-only, instead of copying them.
+ */
+public class AccountSnapshot {
+    private Account account;
+    private int size;
+    private long balance;
+    private TransactionLog.View view;
+
+    AccountSnapshot(Account account, int version, long balance, TransactionLog.View view) {
+        this.account = account;
+        this.size = version;
+        this.balance = balance;
+        this.view = view;
+    }
+
+    /**
+     * Get the account of the snapshot
+     * @return the account
+     */
+    public Account getAccount() {
+        return this.account;
+    }
+
+    /**
+     * Get the version of the snapshot: the number of transactions of the account it includes.
+     * Later snapshots of the same account have higher versions.
+     * @return the version
+     */
+    public long getVersion() {
+        return this.size;
+    }
+
+    /**
+     * Get the balance as of the snapshot
+     * @return the balance in cents
+     */
+    public long getBalance() {
+        return this.balance;
+    }
+
+    /**
+     * Get the number of transactions as of the snapshot, the same as the version
+     * @return the number of transactions
+     */
+    public int numberOfTransactions() {
+        return this.size;
+    }
+
+    /**
+     * Get a transaction of the snapshot
+     * @param index the index of the transaction, 0 is the oldest
+     * @return a Transaction view of the entry
+     */
+    public Transaction getTransaction(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("No transaction " + index + " in account " + this.account.getUUID()
+                    + " as of version " + this.size);
+        }
+        return this.view.get(index, this.account);
+    }
+
+    /**
+     * Get summary of the account as of the snapshot
+     * @return the string summary
+     */
+    public String getSummaryLine() {
+        // For User friendly, format the message depending on the balance
+        if (this.balance >= 0) {
+            return String.format("%s : $%s : %s", this.account.getUUID(), Money.format(this.balance),
+                    this.account.getName());
+        } else {
+            return String.format("%s : $(%s) : %s", this.account.getUUID(), Money.format(this.balance),
+                    this.account.getName());
+        }
+    }
+
+    /**
+     * Get a page of the transactions between two times as of the snapshot, newest first, see
+     * Account.getHistoryPage. Pages taken from the same snapshot never shift, whatever is added since.
+     * @param from the start time in epoch milliseconds, included
+     * @param to the end time in epoch milliseconds, included
+     * @param cursor TransactionPage.FIRST for the newest page, or the next cursor of the previous page
+     * @param pageSize the max number of transactions in the page
+     * @return the page
+     */
+    public TransactionPage getHistoryPage(long from, long to, int cursor, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        int first = this.view.firstAtOrAfter(from, this.size);
+        int end = to == Long.MAX_VALUE ? this.size : this.view.firstAtOrAfter(to + 1, this.size);
+        end = Math.min(end, cursor);
+        int start = Math.max(first, end - pageSize);
+
+        List<Transaction> page = new ArrayList<Transaction>(Math.max(0, end - start));
+        for (int i = end - 1; i >= start; i--) {
+            page.add(this.view.get(i, this.account));
+        }
+        return new TransactionPage(page, start, start > first);
+    }
+
+    /**
+     * Print the transaction history as of the snapshot, newest first
+     * @param out where to print, e.g. System.out or a terminal's connection
+     */
+    public void printTransHistory(PrintStream out) {
+        out.printf("%nTransaction history for account %s:%n",
+                this.account.getUUID());
+        if (this.size > 0) {
+            // Loop through and show from recent history to old ones
+            for (int i = this.size - 1; i >= 0; i--) {
+                out.println(this.view.get(i, this.account).getSummaryLine());
+            }
+            out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
+        } else {
+            out.println("No transactions yet for this account.");
+            out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package model;
+
+/**
+ * A command of an ATM session, as AtmEngine takes it. Accounts are numbered from 0 in the order of the
+ * user's accounts, amounts are in cents.
+ *
+ * Commands also have a one-line text form, used by the replay scripts:
+ * <pre>
+ * login userId pin
+ * deposit account amount memo...
+ * withdraw account amount memo...
+ * transfer fromAccount toAccount amount memo...
+ * history account [pageSize]
+ * quit
+ * </pre>
+ * where amounts are in dollars ("12.50") and accounts are numbered from 1, like on the ATM's screens.
+ */
+public class AtmCommand {
+    /**
+     * What a command asks for
+     */
+    public enum Type {
+        LOGIN,
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER,
+        HISTORY,
+        QUIT
+    }
+
+    private static final AtmCommand QUIT = new AtmCommand(Type.QUIT, null, null, -1, -1, 0, null, 0, 0);
+
+    private Type type;
+    private String userId;
+    private String pin;
+    private int account;
+    private int toAccount;
+    private long amount;
+    private String memo;
+    private int cursor;
+    private int pageSize;
+
+    private AtmCommand(Type type, String userId, String pin, int account, int toAccount, long amount,
+                       String memo, int cursor, int pageSize) {
+        this.type = type;
+        this.userId = userId;
+        this.pin = pin;
+        this.account = account;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.memo = memo;
+        this.cursor = cursor;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Log in
+     * @param userId the user ID typed
+     * @param pin the pin typed
+     * @return the command
+     */
+    public static AtmCommand login(String userId, String pin) {
+        return new AtmCommand(Type.LOGIN, userId, pin, -1, -1, 0, null, 0, 0);
+    }
+
+    /**
+     * Deposit to an account of the logged-in user
+     * @param account the index of the account
+     * @param amount the amount in cents
+     * @param memo the memo
+     * @return the command
+     */
+    public static AtmCommand deposit(int account, long amount, String memo) {
+        return new AtmCommand(Type.DEPOSIT, null, null, account, -1, amount, memo, 0, 0);
+    }
+
+    /**
+     * Withdraw from an account of the logged-in user
+     * @param account the index of the account
+     * @param amount the amount in cents
+     * @param memo the memo
+     * @return the command
+     */
+    public static AtmCommand withdraw(int account, long amount, String memo) {
+        return new AtmCommand(Type.WITHDRAW, null, null, account, -1, amount, memo, 0, 0);
+    }
+
+    /**
+     * Transfer between two accounts of the logged-in user
+     * @param fromAccount the index of the account to transfer from
+     * @param toAccount the index of the account to transfer to
+     * @param amount the amount in cents
+     * @param memo the memo
+     * @return the command
+     */
+    public static AtmCommand transfer(int fromAccount, int toAccount, long amount, String memo) {
+        return new AtmCommand(Type.TRANSFER, null, null, fromAccount, toAccount, amount, memo, 0, 0);
+    }
+
+    /**
+     * Get a page of the history of an account of the logged-in user
+     * @param account the index of the account
+     * @param cursor TransactionPage.FIRST for the newest page, or the next cursor of the previous page
+     * @param pageSize the max number of transactions in the page
+     * @return the command
+     */
+    public static AtmCommand history(int account, int cursor, int pageSize) {
+        return new AtmCommand(Type.HISTORY, null, null, account, -1, 0, null, cursor, pageSize);
+    }
+
+    /**
+     * Log out
+     * @return the command
+     */
+    public static AtmCommand quit() {
+        return QUIT;
+    }
+
+    /**
+     * Parse the text form of a command
+     * @param line the command, e.g. "withdraw 1 20.00 Groceries"
+     * @param pageSize the page size of history commands that don't give one
+     * @return the command
+     * @throws IllegalArgumentException if the line is not a command
+     */
+    public static AtmCommand parse(String line, int pageSize) {
+        String[] words = line.trim().split("\\s+", 5);
+        try {
+            switch (words[0].toLowerCase()) {
+                case "login":
+                    return AtmCommand.login(words[1], words[2]);
+                case "deposit":
+                    return AtmCommand.deposit(Integer.parseInt(words[1]) - 1, Money.parse(words[2]),
+                            AtmCommand.memo(line, 3));
+                case "withdraw":
+                    return AtmCommand.withdraw(Integer.parseInt(words[1]) - 1, Money.parse(words[2]),
+                            AtmCommand.memo(line, 3));
+                case "transfer":
+                    return AtmCommand.transfer(Integer.parseInt(words[1]) - 1, Integer.parseInt(words[2]) - 1,
+                            Money.parse(words[3]), AtmCommand.memo(line, 4));
+                case "history":
+                    return AtmCommand.history(Integer.parseInt(words[1]) - 1, TransactionPage.FIRST,
+                            words.length > 2 ? Integer.parseInt(words[2]) : pageSize);
+                case "quit":
+                    return AtmCommand.quit();
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + line);
+            }
+        } catch (ArrayIndexOutOfBoundsException | ArithmeticException e) {
+            throw new IllegalArgumentException("Incomplete or invalid command: " + line, e);
+        }
+    }
+
+    /**
+     * Get what follows the first `numberOfWords` words of a line, as typed
+     */
+    private static String memo(String line, int numberOfWords) {
+        String[] parts = line.trim().split("\\s+", numberOfWords + 1);
+        return parts.length > numberOfWords ? parts[numberOfWords] : "";
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    public String getUserId() {
+        return this.userId;
+    }
+
+    public String getPin() {
+        return this.pin;
+    }
+
+    public int getAccount() {
+        return this.account;
+    }
+
+    public int getToAccount() {
+        return this.toAccount;
+    }
+
+    public long getAmount() {
+        return this.amount;
+    }
+
+    public String getMemo() {
+        return this.memo;
+    }
+
+    public int getCursor() {
+        return this.cursor;
+    }
+
+    public int getPageSize() {
+        return this.pageSize;
+    }
+}
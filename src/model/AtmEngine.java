@@ -0,0 +1,157 @@
+package model;
+
+/**
+ * The ATM without its screen: a state machine for one session, which takes commands and returns results.
+ * The console menus of ATM, the terminal server and the replay tool are front ends of it.
+ *
+ * A session is either logged out, where only login is accepted, or logged in, where the money commands
+ * are accepted until quit logs out. One engine serves one session at a time: it is not thread-safe,
+ * but any number of engines can run on the same Bank concurrently.
+ */
+public class AtmEngine {
+    private Bank theBank;
+
+    /**
+     * The logged-in user, null when logged out
+     */
+    private User user;
+
+    /**
+     * Create the engine of a new session, logged out
+     * @param theBank the bank
+     */
+    public AtmEngine(Bank theBank) {
+        this(theBank, null);
+    }
+
+    /**
+     * Create the engine of a session of a user already logged in
+     * @param theBank the bank
+     * @param user the user
+     */
+    AtmEngine(Bank theBank, User user) {
+        this.theBank = theBank;
+        this.user = user;
+    }
+
+    /**
+     * Get the logged-in user
+     * @return the user, null when logged out
+     */
+    public User getUser() {
+        return this.user;
+    }
+
+    /**
+     * Run a command
+     * @param command the command
+     * @return the result
+     */
+    public AtmResult execute(AtmCommand command) {
+        if (command.getType() == AtmCommand.Type.LOGIN) {
+            return this.login(command);
+        }
+        if (this.user == null) {
+            return AtmResult.of(AtmResult.Status.WRONG_STATE);
+        }
+        switch (command.getType()) {
+            case DEPOSIT:
+                return this.deposit(command);
+            case WITHDRAW:
+                return this.withdraw(command);
+            case TRANSFER:
+                return this.transfer(command);
+            case HISTORY:
+                return this.history(command);
+            case QUIT:
+            default:
+                this.user = null;
+                return AtmResult.of(AtmResult.Status.OK);
+        }
+    }
+
+    private AtmResult login(AtmCommand command) {
+        if (this.user != null) {
+            return AtmResult.of(AtmResult.Status.WRONG_STATE);
+        }
+        // A mistyped ID fails its check digit: no need to look it up or to count it as a failed login
+        if (!this.theBank.isValidUserId(command.getUserId())) {
+            return AtmResult.of(AtmResult.Status.INVALID_USER_ID);
+        }
+        User authUser = this.theBank.userLogin(command.getUserId(), command.getPin());
+        if (authUser == null) {
+            return AtmResult.of(AtmResult.Status.LOGIN_FAILED);
+        }
+        this.user = authUser;
+        return AtmResult.loggedIn(authUser);
+    }
+
+    private AtmResult deposit(AtmCommand command) {
+        AtmResult invalid = this.check(command.getAccount(), command.getAmount());
+        if (invalid != null) {
+            return invalid;
+        }
+        this.user.addAcctTransaction(command.getAccount(), command.getAmount(), command.getMemo());
+        return AtmResult.balance(AtmResult.Status.OK, this.user.getAccountBalance(command.getAccount()));
+    }
+
+    private AtmResult withdraw(AtmCommand command) {
+        AtmResult invalid = this.check(command.getAccount(), command.getAmount());
+        if (invalid != null) {
+            return invalid;
+        }
+        // Withdraw as a negative transaction, if the money is still there
+        boolean done = this.user.withdrawFromAcct(command.getAccount(), command.getAmount(), command.getMemo());
+        return AtmResult.balance(this.status(done, command), this.user.getAccountBalance(command.getAccount()));
+    }
+
+    private AtmResult transfer(AtmCommand command) {
+        AtmResult invalid = this.check(command.getAccount(), command.getAmount());
+        if (invalid == null && !this.isAccount(command.getToAccount())) {
+            invalid = AtmResult.of(AtmResult.Status.INVALID_ACCOUNT);
+        }
+        if (invalid != null) {
+            return invalid;
+        }
+        boolean done = this.user.transferBetweenAccts(command.getAccount(), command.getToAccount(),
+                command.getAmount(), command.getMemo());
+        return AtmResult.balance(this.status(done, command), this.user.getAccountBalance(command.getAccount()));
+    }
+
+    /**
+     * Tell why a withdrawal or a transfer wasn't done: a limit, or else the balance
+     */
+    private AtmResult.Status status(boolean done, AtmCommand command) {
+        if (done) {
+            return AtmResult.Status.OK;
+        }
+        return this.user.isWithinAcctLimits(command.getAccount(), command.getAmount())
+                ? AtmResult.Status.INSUFFICIENT_FUNDS : AtmResult.Status.LIMIT_EXCEEDED;
+    }
+
+    private AtmResult history(AtmCommand command) {
+        if (!this.isAccount(command.getAccount())) {
+            return AtmResult.of(AtmResult.Status.INVALID_ACCOUNT);
+        }
+        return AtmResult.page(this.user.getAcctHistoryPage(command.getAccount(), command.getCursor(),
+                command.getPageSize()));
+    }
+
+    /**
+     * Check the account and the amount of a command
+     * @return the result to return if one is wrong, null if both are right
+     */
+    private AtmResult check(int account, long amount) {
+        if (!this.isAccount(account)) {
+            return AtmResult.of(AtmResult.Status.INVALID_ACCOUNT);
+        }
+        if (amount < 0) {
+            return AtmResult.of(AtmResult.Status.INVALID_AMOUNT);
+        }
+        return null;
+    }
+
+    private boolean isAccount(int account) {
+        return account >= 0 && account < this.user.numberOfAccounts();
+    }
+}
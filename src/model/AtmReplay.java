@@ -0,0 +1,142 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Load tool for the AtmEngine: runs session scripts against a bank from many threads, at machine speed,
+ * and reports the commands per second.
+ *
+ * With a script file (one command per line in the text form of AtmCommand, # for comments), every thread
+ * replays the whole script the given number of times, each with its own engine, against the bank of
+ * ATM.setUpBank (so -Datm.journal=... replays against a persisted bank whose user IDs are known).
+ * With "synthetic" instead, a bank of users with two accounts each is made up, and every session is
+ * login, deposit, withdraw, transfer, history and quit for a random user.
+ */
+public class AtmReplay {
+    /**
+     * Users of the synthetic bank per thread
+     */
+    private static final int SYNTHETIC_USERS_PER_THREAD = 16;
+
+    private static final String SYNTHETIC_PIN = "1234";
+
+    /**
+     * Run the replay
+     * @param args the script file or "synthetic", the number of threads (4 by default),
+     *             the number of sessions or script runs per thread (1000 by default)
+     * @throws Exception if the script or the bank can't be read, or a thread is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: AtmReplay <script file|synthetic> [threads] [sessions per thread]");
+            return;
+        }
+        int numberOfThreads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int sessionsPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        Bank theBank;
+        List<AtmCommand> script = null;
+        String[] userIds = null;
+        if (args[0].equals("synthetic")) {
+            theBank = new Bank("Bank of Replay");
+            userIds = AtmReplay.addSyntheticUsers(theBank, numberOfThreads * SYNTHETIC_USERS_PER_THREAD);
+        } else {
+            theBank = ATM.setUpBank();
+            script = new ArrayList<AtmCommand>();
+            for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+                if (!line.isBlank() && !line.trim().startsWith("#")) {
+                    script.add(AtmCommand.parse(line, 10));
+                }
+            }
+        }
+
+        // Results of all the commands, by status
+        AtomicLongArray statuses = new AtomicLongArray(AtmResult.Status.values().length);
+        CountDownLatch go = new CountDownLatch(1);
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numberOfThreads; t++) {
+            List<AtmCommand> theScript = script;
+            String[] theUserIds = userIds;
+            Thread thread = new Thread(() -> {
+                AtmEngine engine = new AtmEngine(theBank);
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int s = 0; s < sessionsPerThread; s++) {
+                    List<AtmCommand> session = theScript != null ? theScript : AtmReplay.syntheticSession(theUserIds);
+                    for (AtmCommand command : session) {
+                        statuses.incrementAndGet(engine.execute(command).getStatus().ordinal());
+                    }
+                    if (engine.getUser() != null) {
+                        // Scripts that don't quit still start the next run logged out
+                        engine.execute(AtmCommand.quit());
+                    }
+                }
+            }, "atm-replay-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long commands = 0;
+        for (int i = 0; i < statuses.length(); i++) {
+            commands += statuses.get(i);
+        }
+        System.out.printf("%d threads, %d sessions, %d commands in %.2fs: %.0f commands/s, %.0f sessions/s%n",
+                numberOfThreads, (long) numberOfThreads * sessionsPerThread, commands, seconds, commands / seconds,
+                numberOfThreads * sessionsPerThread / seconds);
+        for (AtmResult.Status status : AtmResult.Status.values()) {
+            if (statuses.get(status.ordinal()) > 0) {
+                System.out.printf("  %-18s %d%n", status, statuses.get(status.ordinal()));
+            }
+        }
+        theBank.getMetrics().dump(System.out);
+    }
+
+    /**
+     * Add users with a Savings and a Checking account, the Savings one funded
+     * @return the IDs of the users
+     */
+    private static String[] addSyntheticUsers(Bank theBank, int numberOfUsers) {
+        String[] userIds = new String[numberOfUsers];
+        for (int i = 0; i < numberOfUsers; i++) {
+            User user = theBank.addUser("Replay", "User" + i, SYNTHETIC_PIN);
+            Account checking = new Account("Checking", user, theBank);
+            user.addAccount(checking);
+            theBank.addAccount(checking);
+            user.addAcctTransaction(0, Money.of(1000, 0), "Opening deposit");
+            userIds[i] = user.getUUID();
+        }
+        return userIds;
+    }
+
+    /**
+     * Make the commands of a session of a random synthetic user
+     */
+    private static List<AtmCommand> syntheticSession(String[] userIds) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ArrayList<AtmCommand> session = new ArrayList<AtmCommand>(6);
+        session.add(AtmCommand.login(userIds[random.nextInt(userIds.length)], SYNTHETIC_PIN));
+        session.add(AtmCommand.deposit(1, random.nextLong(1, 10000), "Replay deposit"));
+        session.add(AtmCommand.withdraw(1, random.nextLong(1, 10000), "Replay withdrawal"));
+        session.add(AtmCommand.transfer(random.nextInt(2), random.nextInt(2), random.nextLong(1, 10000), "Replay"));
+        session.add(AtmCommand.history(random.nextInt(2), TransactionPage.FIRST, 10));
+        session.add(AtmCommand.quit());
+        return session;
+    }
+}
@@ -0,0 +1,133 @@
+package model;
+
+/**
+ * The result of an AtmCommand
+ */
+public class AtmResult {
+    /**
+     * How a command went
+     */
+    public enum Status {
+        /**
+         * Done
+         */
+        OK,
+        /**
+         * The user ID is not well formed or its check digit is wrong
+         */
+        INVALID_USER_ID,
+        /**
+         * Wrong user ID/pin combination, or too many failed attempts for this ID
+         */
+        LOGIN_FAILED,
+        /**
+         * The command needs a logged-in user, or a login was sent while already logged in
+         */
+        WRONG_STATE,
+        /**
+         * No such account for the user
+         */
+        INVALID_ACCOUNT,
+        /**
+         * The amount is negative
+         */
+        INVALID_AMOUNT,
+        /**
+         * The balance is too low for the withdrawal or the transfer
+         */
+        INSUFFICIENT_FUNDS,
+        /**
+         * The withdrawal or the transfer would go over a withdrawal limit of the account
+         */
+        LIMIT_EXCEEDED
+    }
+
+    private static final AtmResult[] WITHOUT_DETAILS = new AtmResult[Status.values().length];
+
+    static {
+        for (Status status : Status.values()) {
+            WITHOUT_DETAILS[status.ordinal()] = new AtmResult(status, null, 0, null);
+        }
+    }
+
+    private Status status;
+    private User user;
+    private long balance;
+    private TransactionPage page;
+
+    private AtmResult(Status status, User user, long balance, TransactionPage page) {
+        this.status = status;
+        this.user = user;
+        this.balance = balance;
+        this.page = page;
+    }
+
+    /**
+     * A result with nothing but its status
+     */
+    static AtmResult of(Status status) {
+        return WITHOUT_DETAILS[status.ordinal()];
+    }
+
+    /**
+     * The result of a successful login
+     */
+    static AtmResult loggedIn(User user) {
+        return new AtmResult(Status.OK, user, 0, null);
+    }
+
+    /**
+     * The result of a deposit, withdrawal or transfer, with the balance of the account the money came from or went to
+     */
+    static AtmResult balance(Status status, long balance) {
+        return new AtmResult(status, null, balance, null);
+    }
+
+    /**
+     * The result of a history command
+     */
+    static AtmResult page(TransactionPage page) {
+        return new AtmResult(Status.OK, null, 0, page);
+    }
+
+    /**
+     * Get how the command went
+     * @return the status
+     */
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Whether the command was done
+     * @return true if the status is OK
+     */
+    public boolean isOk() {
+        return this.status == Status.OK;
+    }
+
+    /**
+     * Get the user logged in by a login command
+     * @return the user, null for other commands
+     */
+    public User getUser() {
+        return this.user;
+    }
+
+    /**
+     * Get the balance after a deposit, withdrawal or transfer: of the account deposited to,
+     * withdrawn from or transferred from
+     * @return the balance in cents
+     */
+    public long getBalance() {
+        return this.balance;
+    }
+
+    /**
+     * Get the page of a history command
+     * @return the page, null for other commands
+     */
+    public TransactionPage getPage() {
+        return this.page;
+    }
+}
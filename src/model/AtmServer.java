@@ -0,0 +1,264 @@
+package model;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP server mode of the ATM: every connection is a terminal session running the same
+ * login / user menu flow as the console, and all the sessions share one Bank.
+ * Each session gets its own virtual thread when the runtime has them (Java 21+),
+ * otherwise its own small-stack platform thread.
+ */
+public class AtmServer {
+    /**
+     * Stack size of the session threads when virtual threads are not available
+     */
+    private static final long SESSION_STACK_SIZE = 256 * 1024;
+
+    /**
+     * The bank shared by all the sessions
+     */
+    private Bank theBank;
+
+    /**
+     * Port to listen on, 0 to pick any free port
+     */
+    private int port;
+
+    /**
+     * Max number of sessions at the same time, connections above are turned away
+     */
+    private int maxSessions;
+
+    /**
+     * A session waiting longer than this for input is closed, in milliseconds (0 means never)
+     */
+    private int idleTimeoutMillis;
+
+    private ServerSocket serverSocket;
+    private ExecutorService sessions;
+    private Thread acceptor;
+    private Semaphore sessionPermits;
+    private Set<Socket> openSockets;
+    private AtomicInteger activeSessions;
+    private AtomicInteger peakSessions;
+    private AtomicInteger rejectedSessions;
+
+    /**
+     * Create a server, call start() to accept connections
+     * @param theBank the bank shared by all the sessions
+     * @param port port to listen on, 0 to pick any free port
+     * @param maxSessions max number of sessions at the same time
+     * @param idleTimeoutMillis idle time after which a session is closed, 0 for never
+     */
+    public AtmServer(Bank theBank, int port, int maxSessions, int idleTimeoutMillis) {
+        this.theBank = theBank;
+        this.port = port;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.sessionPermits = new Semaphore(maxSessions);
+        this.openSockets = ConcurrentHashMap.newKeySet();
+        this.activeSessions = new AtomicInteger();
+        this.peakSessions = new AtomicInteger();
+        this.rejectedSessions = new AtomicInteger();
+    }
+
+    /**
+     * Start listening and accepting sessions in the background
+     * @throws IOException if the port can't be bound
+     */
+    public void start() throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(this.port), this.maxSessions);
+        this.sessions = AtmServer.newSessionExecutor();
+        this.acceptor = new Thread(this::acceptLoop, "atm-acceptor");
+        this.acceptor.start();
+    }
+
+    /**
+     * Get the port the server listens on, useful when it was started on port 0
+     * @return the port
+     */
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get the number of sessions currently open
+     * @return the number of sessions
+     */
+    public int getActiveSessions() {
+        return this.activeSessions.get();
+    }
+
+    /**
+     * Get the highest number of sessions open at the same time so far
+     * @return the peak number of sessions
+     */
+    public int getPeakSessions() {
+        return this.peakSessions.get();
+    }
+
+    /**
+     * Get the number of connections turned away because maxSessions was reached
+     * @return the number of rejected connections
+     */
+    public int getRejectedSessions() {
+        return this.rejectedSessions.get();
+    }
+
+    /**
+     * Stop accepting connections and close every open session
+     */
+    public void stop() {
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+        for (Socket socket : this.openSockets) {
+            AtmServer.closeQuietly(socket);
+        }
+        this.sessions.shutdownNow();
+        try {
+            this.sessions.awaitTermination(10, TimeUnit.SECONDS);
+            this.acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accept connections until the server socket is closed
+     */
+    private void acceptLoop() {
+        while (!this.serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = this.serverSocket.accept();
+            } catch (IOException e) {
+                // The server socket was closed by stop()
+                break;
+            }
+
+            // Turn the terminal away if we already have too many sessions
+            if (!this.sessionPermits.tryAcquire()) {
+                this.rejectedSessions.incrementAndGet();
+                try {
+                    socket.getOutputStream().write(
+                            "Too many sessions, please try again later.\n".getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    // The terminal is gone anyway
+                }
+                AtmServer.closeQuietly(socket);
+                continue;
+            }
+
+            this.openSockets.add(socket);
+            this.sessions.execute(() -> this.runSession(socket));
+        }
+    }
+
+    /**
+     * Run one terminal session: login, then the user menu, until the terminal disconnects or is idle too long
+     * @param socket the connection of the terminal
+     */
+    private void runSession(Socket socket) {
+        int active = this.activeSessions.incrementAndGet();
+        this.peakSessions.accumulateAndGet(active, Math::max);
+
+        Scanner scanner = null;
+        try {
+            socket.setSoTimeout(this.idleTimeoutMillis);
+            scanner = new Scanner(socket.getInputStream(), StandardCharsets.UTF_8);
+            // Not buffered, so that prompts without a newline reach the terminal right away
+            PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+
+            try {
+                // Same flow as the console: stay in login until success, then in the menu until quit
+                while (true) {
+                    try {
+                        User curUser = ATM.mainMenuPrompt(this.theBank, scanner, out);
+                        ATM.printUserMenu(curUser, scanner, out);
+                    } catch (InputMismatchException e) {
+                        // Typed input the prompt didn't expect: not a disconnect, skip it and start over
+                        scanner.next();
+                        out.println("Invalid input. Please try again.");
+                    }
+                }
+            } catch (NoSuchElementException e) {
+                // The end of the input: the terminal disconnected or timed out
+                if (scanner.ioException() instanceof SocketTimeoutException) {
+                    out.printf("%nSession timed out.%n");
+                }
+            }
+        } catch (IOException e) {
+            // Broken connection, just end the session
+        } finally {
+            this.openSockets.remove(socket);
+            AtmServer.closeQuietly(socket);
+            this.activeSessions.decrementAndGet();
+            this.sessionPermits.release();
+        }
+    }
+
+    /**
+     * Create the executor running the sessions, one thread per session
+     * @return the executor
+     */
+    private static ExecutorService newSessionExecutor() {
+        try {
+            // Java 21+: one virtual thread per session, looked up so that we still run on older runtimes
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Older runtime: platform threads with a small stack, so that thousands of them fit
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(null, task, "atm-session-" + count.incrementAndGet(), SESSION_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * Run the ATM as a TCP server
+     * @param args port, max sessions and idle timeout in seconds, all optional
+     * @throws IOException if the port can't be bound
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int maxSessions = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int idleTimeoutSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+        AtmServer server = new AtmServer(ATM.setUpBank(), port, maxSessions, idleTimeoutSeconds * 1000);
+        server.start();
+        System.out.printf("ATM server listening on port %d (max %d sessions, idle timeout %ds)%n",
+                server.getPort(), maxSessions, idleTimeoutSeconds);
+    }
+}
@@ -0,0 +1,394 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The audit trail of a Bank: users created, logins, and transactions, written as JSON lines to rotating files.
+ *
+ * Sessions never wait for the disk, nor for each other. They publish events into a ring of `capacity`
+ * preallocated slots, stored column by column: a producer claims the next sequence number with a CAS,
+ * fills the slot, and marks it published for that sequence number. Publishing allocates nothing and takes
+ * no lock. A single consumer thread takes the published events in order, as many at a time as are ready,
+ * and writes them in one write per batch.
+ *
+ * On close, the consumer seals the claim counter once it has taken every claimed event, with a CAS that fails
+ * if a producer claimed another one meanwhile: no event can be claimed after the last drain.
+ *
+ * When the ring is full, because the consumer can't keep up, an event is dropped rather than holding up
+ * the session: publish returns false and the event is counted. The consumer then writes a DROPPED event with
+ * the number of events lost, so that the gap shows in the trail.
+ *
+ * Files are named audit-NNNNNN.jsonl in the directory, a new one is started once the current one reaches
+ * maxFileBytes, and only the newest maxFiles are kept. One line per event:
+ * {"seq":41,"time":1760778000000,"type":"TRANSACTION","subject":"1234567890","amount":-2000,"detail":"Rent"}
+ * where subject is the uuid of the user or account, amount is in cents and detail is a memo or a name.
+ * PINs are never logged.
+ */
+public class AuditLog implements Closeable {
+    /**
+     * Types of the events
+     */
+    public enum Type {
+        /**
+         * A user was created, the detail is the name
+         */
+        USER_CREATED,
+        /**
+         * A user logged in
+         */
+        LOGIN,
+        /**
+         * A login was refused, the detail says if the ID was locked out
+         */
+        LOGIN_FAILED,
+        /**
+         * A transaction was added to an account
+         */
+        TRANSACTION,
+        /**
+         * Events were lost because the ring was full, the amount is how many
+         */
+        DROPPED
+    }
+
+    /**
+     * Max number of events written in one batch
+     */
+    private static final int MAX_BATCH = 1024;
+
+    /**
+     * How long the consumer sleeps when there is nothing to write
+     */
+    private static final long IDLE_NANOS = 200_000;
+
+    private static final Type[] TYPES = Type.values();
+
+    /**
+     * Set in `claimed` by the consumer once closed and drained: nothing can be claimed any more
+     */
+    private static final long SEALED = 1L << 62;
+
+    private Path directory;
+    private long maxFileBytes;
+    private int maxFiles;
+
+    /**
+     * The ring: slot s holds the event of sequence number seq when seq % capacity == s
+     * and published[s] == seq + 1
+     */
+    private int mask;
+    private AtomicLongArray published;
+    private int[] types;
+    private long[] times;
+    private String[] subjects;
+    private long[] amounts;
+    private String[] details;
+
+    /**
+     * Next sequence number to claim, plus SEALED once closed and drained
+     */
+    private AtomicLong claimed;
+
+    /**
+     * Next sequence number the consumer will take: the slots of the ones below are free
+     */
+    private volatile long consumed;
+
+    /**
+     * Sequence number below which every event is written
+     */
+    private volatile long written;
+
+    private AtomicLong dropped;
+    private volatile boolean closing;
+    private volatile IOException failure;
+    private Thread consumer;
+
+    /**
+     * The file being written, its number and size
+     */
+    private FileChannel file;
+    private long fileNumber;
+    private long fileBytes;
+
+    /**
+     * Start an audit log writing into a directory, after the files already there
+     * @param directory the directory of the files, created if needed
+     * @param capacity number of events the ring holds, rounded up to a power of 2
+     * @param maxFileBytes size from which a new file is started
+     * @param maxFiles number of files kept, the oldest are deleted
+     * @return the audit log, its consumer running
+     * @throws IOException if the directory or the first file can't be created
+     */
+    public static AuditLog open(Path directory, int capacity, long maxFileBytes, int maxFiles) throws IOException {
+        if (capacity < 2 || capacity > (1 << 30) || maxFileBytes < 1 || maxFiles < 1) {
+            throw new IllegalArgumentException("Invalid audit log settings");
+        }
+        Files.createDirectories(directory);
+        AuditLog log = new AuditLog(directory, Integer.highestOneBit(capacity - 1) << 1, maxFileBytes, maxFiles);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "audit-*.jsonl")) {
+            for (Path file : files) {
+                log.fileNumber = Math.max(log.fileNumber, AuditLog.numberOf(file));
+            }
+        }
+        log.nextFile();
+        log.consumer.start();
+        return log;
+    }
+
+    private AuditLog(Path directory, int capacity, long maxFileBytes, int maxFiles) {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        this.types = new int[capacity];
+        this.times = new long[capacity];
+        this.subjects = new String[capacity];
+        this.amounts = new long[capacity];
+        this.details = new String[capacity];
+        this.claimed = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.consumer = new Thread(this::consume, "atm-audit");
+        this.consumer.setDaemon(true);
+    }
+
+    /**
+     * Publish an event, without waiting: dropped if the ring is full or the log closed
+     * @param type the type of the event
+     * @param subject the uuid of the user or the account
+     * @param amount the amount in cents, 0 if none
+     * @param detail a memo or a name, null for none
+     * @return false if the event was dropped
+     */
+    public boolean publish(Type type, String subject, long amount, String detail) {
+        long seq;
+        do {
+            seq = this.claimed.get();
+            if (seq >= SEALED || seq - this.consumed > this.mask || this.closing) {
+                this.dropped.incrementAndGet();
+                return false;
+            }
+        } while (!this.claimed.compareAndSet(seq, seq + 1));
+
+        int slot = (int) seq & this.mask;
+        this.types[slot] = type.ordinal();
+        this.times[slot] = System.currentTimeMillis();
+        this.subjects[slot] = subject;
+        this.amounts[slot] = amount;
+        this.details[slot] = detail;
+        // Release: the consumer sees the fields once it sees the slot published
+        this.published.lazySet(slot, seq + 1);
+        return true;
+    }
+
+    /**
+     * Get the number of events published, not counting those dropped
+     * @return the number of events
+     */
+    public long getPublished() {
+        return this.claimed.get() & ~SEALED;
+    }
+
+    /**
+     * Get the number of events dropped because the ring was full, or the log closed
+     * @return the number of events
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Get the number of events written to the files
+     * @return the number of events
+     */
+    public long getWritten() {
+        return this.written;
+    }
+
+    /**
+     * Wait until every event published so far is written
+     * @throws IOException if writing failed
+     */
+    public void flush() throws IOException {
+        long target = this.getPublished();
+        while (this.written < target && this.failure == null && this.consumer.isAlive()) {
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * Stop taking events, write those already published, and close the file
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void close() throws IOException {
+        this.closing = true;
+        LockSupport.unpark(this.consumer);
+        try {
+            this.consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * The consumer: write the events in order, in batches, until closed and drained
+     */
+    private void consume() {
+        StringBuilder lines = new StringBuilder();
+        long droppedWritten = 0;
+        try {
+            while (true) {
+                long next = this.consumed;
+                int ready = 0;
+                while (ready < MAX_BATCH && this.published.get((int) (next + ready) & this.mask) == next + ready + 1) {
+                    ready++;
+                }
+
+                lines.setLength(0);
+                for (int i = 0; i < ready; i++) {
+                    int slot = (int) (next + i) & this.mask;
+                    AuditLog.appendLine(lines, next + i, this.times[slot], TYPES[this.types[slot]],
+                            this.subjects[slot], this.amounts[slot], this.details[slot]);
+                    // Don't keep the strings alive until the slot is reused
+                    this.subjects[slot] = null;
+                    this.details[slot] = null;
+                }
+                if (ready > 0) {
+                    // The slots are free as soon as they are read
+                    this.consumed = next + ready;
+                }
+                long dropped = this.dropped.get();
+                if (dropped > droppedWritten) {
+                    AuditLog.appendLine(lines, -1, System.currentTimeMillis(), Type.DROPPED, null,
+                            dropped - droppedWritten, null);
+                    droppedWritten = dropped;
+                }
+
+                if (lines.length() > 0) {
+                    this.write(lines);
+                    this.written = next + ready;
+                } else if (this.closing && this.claimed.compareAndSet(next, next | SEALED)) {
+                    // Closed, and every claimed event is written: a producer that saw `closing` unset
+                    // too late fails its CAS now, and drops its event
+                    break;
+                } else {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+            }
+            this.file.force(true);
+            this.file.close();
+        } catch (IOException e) {
+            this.failure = e;
+            this.closing = true;
+        }
+    }
+
+    /**
+     * Write a batch of lines, starting a new file first if the current one is full
+     */
+    private void write(CharSequence lines) throws IOException {
+        if (this.fileBytes >= this.maxFileBytes) {
+            this.file.close();
+            this.nextFile();
+        }
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(lines));
+        while (buffer.hasRemaining()) {
+            this.fileBytes += this.file.write(buffer);
+        }
+    }
+
+    /**
+     * Start the next file, and delete the ones beyond maxFiles
+     */
+    private void nextFile() throws IOException {
+        this.fileNumber++;
+        this.file = FileChannel.open(this.pathOf(this.fileNumber), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        this.fileBytes = 0;
+        long oldest = this.fileNumber - this.maxFiles;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "audit-*.jsonl")) {
+            for (Path file : files) {
+                if (AuditLog.numberOf(file) <= oldest) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private Path pathOf(long number) {
+        return this.directory.resolve(String.format("audit-%06d.jsonl", number));
+    }
+
+    /**
+     * Get the number of a file, 0 if it isn't named like an audit file
+     */
+    private static long numberOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring("audit-".length(), name.length() - ".jsonl".length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Write an event as a JSON line
+     * @param seq the sequence number, -1 for none (DROPPED events)
+     */
+    private static void appendLine(StringBuilder out, long seq, long time, Type type, String subject, long amount,
+                                   String detail) {
+        out.append('{');
+        if (seq >= 0) {
+            out.append("\"seq\":").append(seq).append(',');
+        }
+        out.append("\"time\":").append(time).append(",\"type\":\"").append(type.name()).append('"');
+        if (subject != null) {
+            out.append(",\"subject\":");
+            AuditLog.appendString(out, subject);
+        }
+        out.append(",\"amount\":").append(amount);
+        if (detail != null) {
+            out.append(",\"detail\":");
+            AuditLog.appendString(out, detail);
+        }
+        out.append("}\n");
+    }
+
+    /**
+     * Write a JSON string, escaping quotes, backslashes and control characters
+     */
+    private static void appendString(StringBuilder out, String text) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -1,8 +1,22 @@
 package model;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * The bank, shared by all the ATM sessions.
+ * Users and accounts are added under the Bank's monitor and looked up without locking,
+ * money moves under the locks of the accounts involved.
+ */
 public class Bank {
     private String name;
     private ArrayList<User> users;
@@ -11,6 +25,73 @@ public class Bank {
      */
     private ArrayList<Account> accounts;
 
+    /**
+     * Directory of the users by their uuid, kept in sync with `users`
+     */
+    private ConcurrentHashMap<String, User> usersById;
+
+    /**
+     * Directory of the accounts by their uuid, kept in sync with `accounts`
+     */
+    private ConcurrentHashMap<String, Account> accountsById;
+
+    /**
+     * Number of digits of the user and account uuids, without their check digit
+     */
+    private static final int USER_ID_DIGITS = 6;
+    private static final int ACCOUNT_ID_DIGITS = 9;
+
+    /**
+     * Give out the uuids of new users and accounts
+     */
+    private volatile IdAllocator userIds;
+    private volatile IdAllocator accountIds;
+
+    /**
+     * Whether the keys of the uuid allocators came from a journal or a snapshot, rather than being new
+     */
+    private boolean idKeysRestored;
+
+    /**
+     * Where new users, accounts and transactions are written ahead, null to keep everything in memory only
+     */
+    private volatile Journal journal;
+
+    /**
+     * Hashes the pins of new users and checks the logins
+     */
+    private volatile PinAuthenticator authenticator;
+
+    /**
+     * Latencies and failures of the logins and of the operations of the users
+     */
+    private Metrics metrics;
+
+    /**
+     * Totals of the transactions of all the accounts, per day
+     */
+    private DailyRollups dailyRollups;
+
+    /**
+     * Where the accounts seal their old transactions, null to keep them all in memory
+     */
+    private volatile ColdStore coldStore;
+
+    /**
+     * Where users created, logins and transactions are recorded, null for nowhere
+     */
+    private volatile AuditLog auditLog;
+
+    /**
+     * The limits of the debits of the accounts, by account name, e.g. "Savings"
+     */
+    private ConcurrentHashMap<String, WithdrawalLimits> withdrawalLimits;
+
+    /**
+     * The shards running deposits, withdrawals and transfers, null to run them on the calling threads
+     */
+    private volatile BankShards shards;
+
     /**
      * Create a new Bank object with empty list of users and accounts
      * @param name bank's name
@@ -19,6 +100,245 @@ public class Bank {
         this.name = name;
         this.users = new ArrayList<User>();
         this.accounts = new ArrayList<Account>();
+        this.usersById = new ConcurrentHashMap<String, User>();
+        this.accountsById = new ConcurrentHashMap<String, Account>();
+        this.userIds = new IdAllocator(USER_ID_DIGITS);
+        this.accountIds = new IdAllocator(ACCOUNT_ID_DIGITS);
+        this.authenticator = new PinAuthenticator();
+        this.metrics = new Metrics();
+        this.dailyRollups = new DailyRollups();
+        this.withdrawalLimits = new ConcurrentHashMap<String, WithdrawalLimits>();
+    }
+
+    /**
+     * Open a bank persisted in a journal: replay the journal to rebuild its users, accounts and transactions,
+     * then keep writing new ones to it
+     * @param name bank's name
+     * @param journalPath the journal file, created if it doesn't exist
+     * @param durability how far new records must go before an operation returns
+     * @return the Bank object
+     * @throws IOException if the journal can't be read or written
+     */
+    public static Bank open(String name, Path journalPath, Journal.Durability durability) throws IOException {
+        return Bank.open(name, journalPath, null, durability);
+    }
+
+    /**
+     * Open a bank persisted in a snapshot and a journal: load the snapshot, replay only the part of the
+     * journal written after it, then keep writing new records to the journal
+     * @param name bank's name
+     * @param journalPath the journal file, created if it doesn't exist
+     * @param snapshotPath the snapshot file, ignored if null or if it doesn't exist yet
+     * @param durability how far new records must go before an operation returns
+     * @return the Bank object
+     * @throws IOException if the snapshot or the journal can't be read, or the journal can't be written
+     */
+    public static Bank open(String name, Path journalPath, Path snapshotPath, Journal.Durability durability)
+            throws IOException {
+        return Bank.open(name, journalPath, snapshotPath, durability, null);
+    }
+
+    /**
+     * Open a bank persisted in a snapshot and a journal, keeping only the recent transactions of each account
+     * in memory: the others are sealed into a cold store as the snapshot and the journal are loaded
+     * @param name bank's name
+     * @param journalPath the journal file, created if it doesn't exist
+     * @param snapshotPath the snapshot file, ignored if null or if it doesn't exist yet
+     * @param durability how far new records must go before an operation returns
+     * @param coldStore where to seal old transactions, a new one, or null to keep them all in memory
+     * @return the Bank object
+     * @throws IOException if the snapshot or the journal can't be read, or the journal can't be written
+     */
+    public static Bank open(String name, Path journalPath, Path snapshotPath, Journal.Durability durability,
+            ColdStore coldStore) throws IOException {
+        Bank theBank = new Bank(name);
+        theBank.coldStore = coldStore;
+        long from = 0;
+        if (snapshotPath != null && Files.exists(snapshotPath)) {
+            from = Snapshot.load(snapshotPath, theBank);
+        }
+        Journal journal = Journal.open(journalPath, durability, theBank, from);
+        synchronized (theBank) {
+            for (Account account : theBank.accounts) {
+                account.attachJournal(journal, false);
+            }
+            theBank.journal = journal;
+
+            // Transfers between shards a crash cut after their debit: the debit commits them, post the credit
+            long seq = 0;
+            for (Journal.UnsettledTransfer transfer : journal.takeUnsettledTransfers()) {
+                Account source = theBank.findAccount(transfer.fromId);
+                Account target = theBank.findAccount(transfer.toId);
+                if (target == null) {
+                    throw new IOException("Transfer to unknown account " + transfer.toId);
+                }
+                try {
+                    seq = theBank.settleTransfer(source, transfer.fromIndex, target, transfer.amount, transfer.memo);
+                } catch (ArithmeticException e) {
+                    seq = theBank.refundTransfer(source, transfer.fromIndex, target, transfer.amount, transfer.memo);
+                }
+            }
+            journal.awaitDurable(seq);
+            if (!theBank.idKeysRestored) {
+                // A new bank: its uuid keys go first, so that a replay knows them before any uuid
+                journal.awaitDurable(journal.appendIdKeys(theBank.userIds.getKeys(), theBank.accountIds.getKeys()));
+                theBank.idKeysRestored = true;
+            }
+        }
+        return theBank;
+    }
+
+    /**
+     * Get the journal of the bank
+     * @return the journal, or null if the bank is in memory only
+     */
+    public Journal getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * Wait until a journal record is as durable as the journal's durability mode asks
+     * @param seq the sequence number of the record, 0 if nothing was written
+     */
+    void awaitDurable(long seq) {
+        Journal journal = this.journal;
+        if (seq > 0 && journal != null) {
+            journal.awaitDurable(seq);
+        }
+    }
+
+    /**
+     * Get the authentication service of the bank
+     * @return the authenticator
+     */
+    public PinAuthenticator getAuthenticator() {
+        return this.authenticator;
+    }
+
+    /**
+     * Replace the authentication service, e.g. to change the hash cost of new pins or the lockout policy
+     * @param authenticator the authenticator
+     */
+    public void setAuthenticator(PinAuthenticator authenticator) {
+        this.authenticator = authenticator;
+    }
+
+    /**
+     * Get the metrics of the operations of the bank
+     * @return the metrics
+     */
+    public Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Get the store the accounts seal their old transactions into
+     * @return the cold store, null if every transaction stays in memory
+     */
+    public ColdStore getColdStore() {
+        return this.coldStore;
+    }
+
+    /**
+     * Get the audit log of the bank
+     * @return the audit log, null if events are not recorded
+     */
+    public AuditLog getAuditLog() {
+        return this.auditLog;
+    }
+
+    /**
+     * Start recording users created, logins and transactions in an audit log
+     * @param auditLog the audit log, null to stop recording
+     */
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    /**
+     * Publish an event to the audit log if there is one, without waiting
+     * @param type the type of the event
+     * @param subject the uuid of the user or the account
+     * @param amount the amount in cents, 0 if none
+     * @param detail a memo or a name, null for none
+     */
+    void audit(AuditLog.Type type, String subject, long amount, String detail) {
+        AuditLog auditLog = this.auditLog;
+        if (auditLog != null) {
+            auditLog.publish(type, subject, amount, detail);
+        }
+    }
+
+    /**
+     * Publish the creation of a user to the audit log if there is one, once the user is in the bank
+     * and its journal record written. Without an audit log, its name isn't even put together.
+     * @param user the user
+     */
+    private void auditUserCreated(User user) {
+        AuditLog auditLog = this.auditLog;
+        if (auditLog != null) {
+            auditLog.publish(AuditLog.Type.USER_CREATED, user.getUUID(), 0,
+                    user.getLastName() + ", " + user.getFirstName());
+        }
+    }
+
+    /**
+     * Start keeping only the recent transactions of each account in memory, sealing the accounts that
+     * already have more right away
+     * @param coldStore a new cold store
+     */
+    public void setColdStore(ColdStore coldStore) {
+        if (this.coldStore != null) {
+            throw new IllegalStateException("The bank already has a cold store");
+        }
+        this.coldStore = coldStore;
+        for (Account account : this.getAccounts()) {
+            account.sealColdTransactions();
+        }
+    }
+
+    /**
+     * Get the limits of the withdrawals and outgoing transfers of the accounts with a name
+     * @param accountName the name of the accounts, e.g. "Savings"
+     * @return the limits, null if there are none
+     */
+    public WithdrawalLimits getWithdrawalLimits(String accountName) {
+        return this.withdrawalLimits.get(accountName);
+    }
+
+    /**
+     * Limit the withdrawals and outgoing transfers of the accounts with a name, already open or not.
+     * Each account counts its recent debits against the new limits from its next debit on.
+     * @param accountName the name of the accounts, e.g. "Savings"
+     * @param limits the limits, null to remove them
+     */
+    public void setWithdrawalLimits(String accountName, WithdrawalLimits limits) {
+        if (limits == null) {
+            this.withdrawalLimits.remove(accountName);
+        } else {
+            this.withdrawalLimits.put(accountName, limits);
+        }
+    }
+
+    /**
+     * Get the per-day totals of the transactions of all the accounts
+     * @return the daily rollups
+     */
+    public DailyRollups getDailyRollups() {
+        return this.dailyRollups;
+    }
+
+    /**
+     * Get the money the bank held at a point in time, the sum of the balances of all the accounts then
+     * @param timestamp the time in epoch milliseconds
+     * @return the total balance in cents
+     */
+    public long getTotalBalanceAsOf(long timestamp) {
+        long total = 0;
+        for (Account account : this.getAccounts()) {
+            total += account.getBalanceAsOf(timestamp);
+        }
+        return total;
     }
 
     /**
@@ -30,70 +350,89 @@ public class Bank {
     }
 
     /**
-     * Generate a new uuid for a user
+     * Generate a new uuid for a user: 7 digits, the last one a check digit.
+     * Unique by construction, no lookup or retry needed.
      * @return the uuid
+     * @throws IllegalStateException if all the user uuids are taken
      */
     public String getNewUserUUID() {
-        // Make sure first it doesn't exist already in the accounts
-        // initialize
-        String uuid;
-        Random rng = new Random();
-        int len = 6;
-        boolean nonUnique; // A boolean flag
-
-        // Keep generating a new ID until we found a unique id:, until the condition is false
-        do {
-            // 1. Generate an ID 10 exclusive 0 inclusive, for len's time
-            uuid = "";
-            nonUnique = false;
-            for (int c = 0; c < len; c++) {
-                uuid += ((Integer)rng.nextInt(10)).toString();
-            }
-
-            // 2. Check in all the users to see if it's unique
-            for (User user : this.users) {
-                // If the generated ID is equal to one user's uuid
-                if (uuid.compareTo(user.getUUID()) == 0) {
-                    nonUnique = true;
-                    break; // break so continue the loop until we found it
-                }
-            }
-        } while (nonUnique); // while nonUnique = true
-
-        return uuid;
+        return this.userIds.nextId();
     }
 
     /**
-     * Generate a new uuid for an account
+     * Generate a new uuid for an account: 10 digits, the last one a check digit.
+     * Unique by construction, no lookup or retry needed.
      * @return the uuid
+     * @throws IllegalStateException if all the account uuids are taken
      */
     public String getNewAccountUUID() {
+        return this.accountIds.nextId();
+    }
 
-        String uuid;
-        Random rng = new Random();
-        int len = 10;
-        boolean nonUnique; // A boolean flag
-
-        // Keep generating a new ID until we found a unique id:, until the condition is false
-        do {
-            // 1. Generate an ID 10 exclusive 0 inclusive, for len's time
-            uuid = "";
-            nonUnique = false;
-            for (int c = 0; c < len; c++) {
-                uuid += ((Integer)rng.nextInt(10)).toString();
-            }
-
-            // 2. Check in all the accounts to see if it's unique
-            for (Account account : this.accounts) {
-                // If the generated ID is equal to one account's uuid
-                if (uuid.compareTo(account.getUUID()) == 0) {
-                    nonUnique = true;
-                    break; // break so continue the loop until we found it
-                }
-            }
-        } while (nonUnique); // while nonUnique = true
+    /**
+     * Generate a block of new user uuids at once, for a bulk import, see getNewUserUUID
+     * @param count number of uuids
+     * @return the uuids
+     * @throws IllegalStateException if there are not enough user uuids left
+     */
+    String[] getNewUserUUIDs(int count) {
+        return this.userIds.nextIds(count);
+    }
+
+    /**
+     * Generate a block of new account uuids at once, for a bulk import, see getNewAccountUUID
+     * @param count number of uuids
+     * @return the uuids
+     * @throws IllegalStateException if there are not enough account uuids left
+     */
+    String[] getNewAccountUUIDs(int count) {
+        return this.accountIds.nextIds(count);
+    }
 
-        return uuid;
+    /**
+     * Check that a user ID is well formed and its check digit right, without looking it up
+     * @param userId the user ID typed
+     * @return true if it could be the uuid of a user
+     */
+    public boolean isValidUserId(String userId) {
+        return this.userIds.isValid(userId);
+    }
+
+    /**
+     * Check that an account ID is well formed and its check digit right, without looking it up
+     * @param accountId the account ID typed
+     * @return true if it could be the uuid of an account
+     */
+    public boolean isValidAccountId(String accountId) {
+        return this.accountIds.isValid(accountId);
+    }
+
+    /**
+     * Get the keys of the user uuid allocator, to persist them
+     * @return the keys
+     */
+    long[] getUserIdKeys() {
+        return this.userIds.getKeys();
+    }
+
+    /**
+     * Get the keys of the account uuid allocator, to persist them
+     * @return the keys
+     */
+    long[] getAccountIdKeys() {
+        return this.accountIds.getKeys();
+    }
+
+    /**
+     * Go on with the uuids of a Bank restored from a journal or a snapshot: called before any of its users
+     * or accounts is restored
+     * @param userKeys the keys of the user uuid allocator
+     * @param accountKeys the keys of the account uuid allocator
+     */
+    synchronized void restoreIdKeys(long[] userKeys, long[] accountKeys) {
+        this.userIds = new IdAllocator(USER_ID_DIGITS, userKeys);
+        this.accountIds = new IdAllocator(ACCOUNT_ID_DIGITS, accountKeys);
+        this.idKeysRestored = true;
     }
 
     /**
@@ -101,7 +440,122 @@ public class Bank {
      * @param account the account to add
      */
     public void addAccount(Account account) {
+        long seq;
+        synchronized (this) {
+            seq = this.addAccountLocked(account);
+        }
+        this.awaitDurable(seq);
+    }
+
+    /**
+     * Add an account, called with the Bank's monitor held
+     * @param account the account to add
+     * @return the journal sequence number to wait for, 0 if there is no journal
+     */
+    private long addAccountLocked(Account account) {
+        // Write ahead: the account, then any transaction it already has
+        long seq = 0;
+        if (this.journal != null) {
+            seq = this.journal.appendAccount(account);
+            seq = Math.max(seq, account.attachJournal(this.journal, true));
+        }
+
+        this.accounts.add(account);
+        this.accountsById.put(account.getUUID(), account);
+        return seq;
+    }
+
+    /**
+     * Add the users of a bulk import and their accounts, already added to their holder and with their opening
+     * transactions: one hold of the monitor and one journal wait for all of them. The opening transactions go
+     * to the daily rollups and the audit trail here, once the accounts are in the bank.
+     * @param users the users
+     * @param accounts the accounts of the users
+     */
+    void addImportedUsers(List<User> users, List<Account> accounts) {
+        long seq = 0;
+        synchronized (this) {
+            // Write ahead: the holders before their accounts
+            for (User user : users) {
+                if (this.journal != null) {
+                    seq = Math.max(seq, this.journal.appendUser(user));
+                }
+                this.users.add(user);
+                this.usersById.put(user.getUUID(), user);
+                this.auditUserCreated(user);
+            }
+            for (Account account : accounts) {
+                seq = Math.max(seq, this.addAccountLocked(account));
+            }
+        }
+        // The opening transactions count once the accounts are in the bank
+        for (Account account : accounts) {
+            account.recordExistingTransactions();
+        }
+        this.awaitDurable(seq);
+    }
+
+    /**
+     * Add a user replayed from the journal, without writing it again
+     * @param user the user
+     */
+    synchronized void restoreUser(User user) {
+        this.users.add(user);
+        this.usersById.put(user.getUUID(), user);
+        this.userIds.restored(user.getUUID());
+    }
+
+    /**
+     * Add an account replayed from the journal to the bank and to its holder, without writing it again
+     * @param account the account
+     */
+    synchronized void restoreAccount(Account account) {
+        account.getHolder().addAccount(account);
         this.accounts.add(account);
+        this.accountsById.put(account.getUUID(), account);
+        this.accountIds.restored(account.getUUID());
+    }
+
+    /**
+     * Get all the users of the bank
+     * @return a copy of the list of users
+     */
+    public synchronized List<User> getUsers() {
+        return new ArrayList<User>(this.users);
+    }
+
+    /**
+     * Get all the accounts of the bank
+     * @return a copy of the list of accounts
+     */
+    public synchronized List<Account> getAccounts() {
+        return new ArrayList<Account>(this.accounts);
+    }
+
+    /**
+     * Get the number of users of the bank
+     * @return the number of users
+     */
+    public synchronized int numberOfUsers() {
+        return this.users.size();
+    }
+
+    /**
+     * Find an account of this bank by its uuid
+     * @param uuid the uuid of the account
+     * @return the Account object, or null if no account has this uuid
+     */
+    public Account findAccount(String uuid) {
+        return this.accountsById.get(uuid);
+    }
+
+    /**
+     * Find a user of this bank by its uuid
+     * @param uuid the uuid of the user
+     * @return the User object, or null if no user has this uuid
+     */
+    public User findUser(String uuid) {
+        return this.usersById.get(uuid);
     }
 
     /**
@@ -112,19 +566,29 @@ public class Bank {
      * @return User object
      */
     public User addUser(String firstName, String lastName, String pin) {
-
-        // Create a new User object and add it to the users list
+        // Create a new User object, with a savings account, outside the monitor: hashing the pin is slow on
+        // purpose, and the uuids need no lock
         User newUser = new User(firstName, lastName, pin, this);
-        this.users.add(newUser);
-
-        // Create a savings account for the user
         Account newAccount = new Account("Savings", newUser, this);
-
-        // Add account to bank and holder list, link it with it's holder and bank
+        // Link the account with it's holder
         newUser.addAccount(newAccount);
-        // Add an account to this bank
-        this.accounts.add(newAccount);
 
+        long seq = 0;
+        synchronized (this) {
+            // Add the user to the users list
+            if (this.journal != null) {
+                seq = this.journal.appendUser(newUser);
+            }
+            this.users.add(newUser);
+            this.usersById.put(newUser.getUUID(), newUser);
+
+            // Add an account to this bank
+            seq = Math.max(seq, this.addAccountLocked(newAccount));
+        }
+        this.auditUserCreated(newUser);
+
+        // Wait for the journal outside the monitor, so that other sessions can share the fsync
+        this.awaitDurable(seq);
         return newUser;
     }
 
@@ -135,15 +599,411 @@ public class Bank {
      * @return the User object, if the log in success, if no, return null
      */
     public User userLogin(String userId, String pin) {
-        // Find the User id
-        for (User user : users) {
-            if (user.getUUID().equals(userId) && user.validatePin(pin)) {
-                return user;
-            }
+        // Find the User id, then let the authenticator check the pin of that user only:
+        // it turns away IDs with too many failed attempts before hashing anything
+        long start = System.nanoTime();
+        User user = this.usersById.get(userId);
+        boolean authenticated = this.authenticator.authenticate(userId, user, pin);
+        this.metrics.record(Metrics.Operation.LOGIN, start, authenticated);
+        if (authenticated) {
+            this.audit(AuditLog.Type.LOGIN, userId, 0, null);
+            return user;
         }
+        this.audit(AuditLog.Type.LOGIN_FAILED, userId, 0,
+                this.authenticator.isLockedOut(userId) ? "locked out" : null);
 
         // If we haven't found the user or the pin is incorrect
         return null;
     }
 
+    /**
+     * Move money from an account to another one. The balance check and both legs of the transfer
+     * happen as one step: nobody can see or change either account in between.
+     * @param from the account to take the money from
+     * @param to the account to put the money in
+     * @param amount amount to transfer in cents, not negative
+     * @param memo memo of the transfer, added to both legs
+     * @return true if it's done, false if the balance of `from` is too low or a withdrawal limit is reached
+     */
+    public boolean transfer(Account from, Account to, long amount, String memo) {
+        long seq = Bank.await(this.submitTransfer(from, to, amount, memo));
+        if (seq < 0) {
+            return false;
+        }
+        this.awaitDurable(seq);
+        return true;
+    }
+
+    /**
+     * Transfer money between two accounts if the balance of the first one covers it, without waiting for the journal
+     * @param from the account the money comes from
+     * @param to the account the money goes to
+     * @param amount the amount in cents, not negative
+     * @param memo memo of the transfer
+     * @return the journal sequence number to wait for (0 if there is no journal), or -1 if the balance is too low
+     *         or a withdrawal limit is reached
+     */
+    long postTransfer(Account from, Account to, long amount, String memo) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Negative amount: " + amount);
+        }
+        String fromMemo = MessageFormat.format("Transfer to account #{0} for: {1}", to.getUUID(), memo);
+        String toMemo = MessageFormat.format("Transfer from account #{0} for: {1}", from.getUUID(), memo);
+
+        // Always lock the two accounts in the order of their uuid, so that two opposite transfers can't deadlock
+        ReentrantLock first = from.getUUID().compareTo(to.getUUID()) <= 0 ? from.getLock() : to.getLock();
+        ReentrantLock second = first == from.getLock() ? to.getLock() : from.getLock();
+        long seq = 0;
+        first.lock();
+        second.lock();
+        try {
+            if (amount > from.getBalance() || !from.isWithinLimits(amount)) {
+                return -1;
+            }
+            // Check both new balances first, so that an overflow leaves both accounts, and the journal, untouched
+            long fromBalance = Money.add(from.getBalance(), -amount);
+            Money.add(from == to ? fromBalance : to.getBalance(), amount);
+
+            // Both legs get the same time, not before the last transaction of either account
+            long now = Math.max(System.currentTimeMillis(), Math.max(from.getLastTimestamp(), to.getLastTimestamp()));
+            Journal journal = this.journal;
+            if (journal != null) {
+                // Write ahead both legs as one record, a crash can't keep only one of them
+                if (this.findAccount(from.getUUID()) != from || this.findAccount(to.getUUID()) != to) {
+                    throw new IllegalArgumentException("Transfer between accounts of another bank");
+                }
+                int fromIndex = from.numberOfTransactions();
+                int toIndex = from == to ? fromIndex + 1 : to.numberOfTransactions();
+                seq = journal.appendTransfer(from, fromIndex, fromMemo, to, toIndex, toMemo, amount, now);
+            }
+            // Readers of all the accounts of a holder see both legs or none
+            User fromHolder = from.getHolder();
+            User toHolder = to.getHolder();
+            fromHolder.beginTransfer();
+            if (toHolder != fromHolder) {
+                toHolder.beginTransfer();
+            }
+            try {
+                from.applyTransaction(-amount, now, fromMemo, true);
+                to.applyTransaction(amount, now, toMemo, false);
+                this.audit(AuditLog.Type.TRANSACTION, from.getUUID(), -amount, fromMemo);
+                this.audit(AuditLog.Type.TRANSACTION, to.getUUID(), amount, toMemo);
+            } finally {
+                if (toHolder != fromHolder) {
+                    toHolder.endTransfer();
+                }
+                fromHolder.endTransfer();
+            }
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+        return seq;
+    }
+
+    /**
+     * Post the debit of a transfer between two holders, without waiting for the journal: the first leg of a
+     * transfer between shards, run by the shard of `from`. Its journal record commits the transfer, and
+     * settleTransfer, or refundTransfer if the credit would overflow, must follow.
+     * @param from the account the money comes from
+     * @param to the account the money goes to, of another holder
+     * @param amount the amount in cents, not negative
+     * @param memo memo of the transfer
+     * @return the index of the debit in `from`, or -1 if the balance is too low or a withdrawal limit is reached
+     */
+    int postTransferOut(Account from, Account to, long amount, String memo) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Negative amount: " + amount);
+        }
+        String fromMemo = MessageFormat.format("Transfer to account #{0} for: {1}", to.getUUID(), memo);
+        ReentrantLock lock = from.getLock();
+        lock.lock();
+        try {
+            if (amount > from.getBalance() || !from.isWithinLimits(amount)) {
+                return -1;
+            }
+            Money.add(from.getBalance(), -amount);
+            long now = Math.max(System.currentTimeMillis(), from.getLastTimestamp());
+            int fromIndex = from.numberOfTransactions();
+            Journal journal = this.journal;
+            if (journal != null) {
+                if (this.findAccount(from.getUUID()) != from || this.findAccount(to.getUUID()) != to) {
+                    throw new IllegalArgumentException("Transfer between accounts of another bank");
+                }
+                journal.appendTransferOut(from, fromIndex, fromMemo, to, memo, amount, now);
+            }
+            from.applyTransaction(-amount, now, fromMemo, true);
+            this.audit(AuditLog.Type.TRANSACTION, from.getUUID(), -amount, fromMemo);
+            return fromIndex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Post the credit of a transfer posted with postTransferOut, run by the shard of `to`
+     * @param from the account the money came from
+     * @param fromIndex the index of the debit in `from`
+     * @param to the account the money goes to
+     * @param amount the amount in cents
+     * @param memo memo of the transfer
+     * @return the journal sequence number to wait for, 0 if there is no journal
+     * @throws ArithmeticException if the balance of `to` would overflow, before anything is written
+     */
+    long settleTransfer(Account from, int fromIndex, Account to, long amount, String memo) {
+        String toMemo = MessageFormat.format("Transfer from account #{0} for: {1}", from.getUUID(), memo);
+        return this.settle(from, fromIndex, to, amount, toMemo);
+    }
+
+    /**
+     * Give back the debit of a transfer posted with postTransferOut whose credit can't be posted,
+     * run by the shard of `from`
+     * @param from the account the money came from
+     * @param fromIndex the index of the debit in `from`
+     * @param to the account the money was going to
+     * @param amount the amount in cents
+     * @param memo memo of the transfer
+     * @return the journal sequence number to wait for, 0 if there is no journal
+     */
+    long refundTransfer(Account from, int fromIndex, Account to, long amount, String memo) {
+        String refundMemo = MessageFormat.format("Refund of transfer to account #{0} for: {1}", to.getUUID(), memo);
+        return this.settle(from, fromIndex, from, amount, refundMemo);
+    }
+
+    /**
+     * Post the second leg of a transfer between shards: a credit, journaled with the debit it settles
+     */
+    private long settle(Account from, int fromIndex, Account account, long amount, String memo) {
+        ReentrantLock lock = account.getLock();
+        lock.lock();
+        try {
+            // Check the new balance first, so that an overflow leaves the account, and the journal, untouched
+            Money.add(account.getBalance(), amount);
+            long now = Math.max(System.currentTimeMillis(), account.getLastTimestamp());
+            long seq = 0;
+            Journal journal = this.journal;
+            if (journal != null) {
+                seq = journal.appendTransferSettle(from, fromIndex, account, account.numberOfTransactions(),
+                        amount, now, memo);
+            }
+            account.applyTransaction(amount, now, memo, false);
+            this.audit(AuditLog.Type.TRANSACTION, account.getUUID(), amount, memo);
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for the transfers between shards in progress to be settled, if the bank is sharded
+     */
+    void awaitCrossShardTransfers() {
+        BankShards shards = this.shards;
+        if (shards != null) {
+            shards.awaitCrossShardTransfers();
+        }
+    }
+
+    /**
+     * Deposit to an account, through its shard if the bank is sharded
+     * @param account the account
+     * @param amount the amount in cents
+     * @param memo memo of the transaction
+     */
+    public void deposit(Account account, long amount, String memo) {
+        this.awaitDurable(Bank.await(this.submitDeposit(account, amount, memo)));
+    }
+
+    /**
+     * Withdraw from an account if its balance is high enough, through its shard if the bank is sharded
+     * @param account the account
+     * @param amount the amount in cents, not negative
+     * @param memo memo of the transaction
+     * @return true if it's done, false if the balance is too low or a withdrawal limit is reached
+     */
+    public boolean withdraw(Account account, long amount, String memo) {
+        long seq = Bank.await(this.submitWithdrawal(account, amount, memo));
+        if (seq < 0) {
+            return false;
+        }
+        this.awaitDurable(seq);
+        return true;
+    }
+
+    /**
+     * Deposit to an account without waiting for the journal: on the calling thread, or on the shard of the
+     * account if the bank is sharded
+     * @return the journal sequence number to wait for, once done; failed with what the operation threw,
+     *         e.g. for a negative amount
+     */
+    CompletableFuture<Long> submitDeposit(Account account, long amount, String memo) {
+        BankShards shards = this.shards;
+        try {
+            if (shards != null) {
+                return shards.deposit(account, amount, memo);
+            }
+            return CompletableFuture.completedFuture(account.post(amount, System.currentTimeMillis(), memo));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Withdraw from an account without waiting for the journal, see submitDeposit
+     * @return the journal sequence number to wait for, or BankShards.NOT_DONE if the balance is too low, once done
+     */
+    CompletableFuture<Long> submitWithdrawal(Account account, long amount, String memo) {
+        BankShards shards = this.shards;
+        try {
+            if (shards != null) {
+                return shards.withdraw(account, amount, memo);
+            }
+            return CompletableFuture.completedFuture(account.postWithdrawal(amount, memo));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Transfer between two accounts without waiting for the journal, see submitDeposit
+     * @return the journal sequence number to wait for, or BankShards.NOT_DONE if the balance is too low, once done
+     */
+    CompletableFuture<Long> submitTransfer(Account from, Account to, long amount, String memo) {
+        BankShards shards = this.shards;
+        try {
+            if (shards != null) {
+                return shards.transfer(from, to, amount, memo);
+            }
+            return CompletableFuture.completedFuture(this.postTransfer(from, to, amount, memo));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Wait for an operation sent to a shard, throwing what it threw
+     * @param result the result of the operation
+     * @return the journal sequence number of the operation, or BankShards.NOT_DONE
+     */
+    private static long await(CompletableFuture<Long> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Partition the accounts into shards, each owned by one thread: from now on deposits, withdrawals
+     * and transfers made through the Bank run on the threads of the shards of their accounts
+     * @param numberOfShards number of shards, e.g. the number of cores
+     */
+    public synchronized void startShards(int numberOfShards) {
+        if (this.shards != null) {
+            throw new IllegalStateException("The bank is already sharded");
+        }
+        this.shards = new BankShards(this, numberOfShards);
+    }
+
+    /**
+     * Stop the threads of the shards, once the operations already sent to them are done.
+     * Deposits, withdrawals and transfers then run on the calling threads again.
+     */
+    public synchronized void stopShards() {
+        BankShards shards = this.shards;
+        if (shards != null) {
+            this.shards = null;
+            shards.shutdown();
+        }
+    }
+
+    /**
+     * Post a file of back office transactions (payroll, card settlements) to their accounts.
+     * The file is streamed, and its records are split by account across worker threads,
+     * keeping the order of the records of each account. See TransactionIngestor for the formats.
+     * @param path the file
+     * @param format the format of the file
+     * @param numberOfWorkers number of threads posting the records
+     * @return the report: throughput, and the records rejected with the reason
+     * @throws IOException if the file can't be read, or posting failed
+     */
+    public IngestReport ingestTransactions(Path path, TransactionIngestor.Format format, int numberOfWorkers)
+            throws IOException {
+        return new TransactionIngestor(this, numberOfWorkers).ingest(path, format);
+    }
+
+    /**
+     * Open the accounts of a file of new customers, e.g. migrated from another bank, and write the uuids given
+     * to them. The file is streamed, and PINs are hashed in parallel. See UserImporter for the formats.
+     * @param path the file of users
+     * @param mapping the file to write the uuids of the users and of their accounts to
+     * @param numberOfWorkers number of threads hashing the PINs
+     * @return the report: throughput, and the records rejected with the reason
+     * @throws IOException if a file can't be read or written, or adding the users failed
+     */
+    public IngestReport importUsers(Path path, Path mapping, int numberOfWorkers) throws IOException {
+        return new UserImporter(this, numberOfWorkers).importUsers(path, mapping);
+    }
+
+    /**
+     * Import the rest of a file of new customers after an import that failed midway, see
+     * UserImporter.resumeImportUsers
+     * @param path the file of users, the same as the import that failed
+     * @param mapping the mapping file of the import that failed, appended to
+     * @param numberOfWorkers number of threads hashing the PINs
+     * @return the report of the records not imported before
+     * @throws IOException if a file can't be read or written, or adding the users failed
+     */
+    public IngestReport resumeImportUsers(Path path, Path mapping, int numberOfWorkers) throws IOException {
+        return new UserImporter(this, numberOfWorkers).resumeImportUsers(path, mapping);
+    }
+
+    /**
+     * Write the statement of every account, one file per account, in parallel.
+     * See StatementExporter for the formats, and for statements of a period.
+     * @param directory where to write the files, named after the account uuid
+     * @param format the format of the statements
+     * @param numberOfWorkers number of threads writing statements
+     * @return the report: accounts, bytes and throughput
+     * @throws IOException if a file can't be written
+     */
+    public StatementReport exportStatements(Path directory, StatementExporter.Format format, int numberOfWorkers)
+            throws IOException {
+        return new StatementExporter(this, format, numberOfWorkers).exportEach(directory);
+    }
+
+    /**
+     * Write the statements of every account into one file, in parallel. See StatementExporter for the formats.
+     * @param path the file, replaced only once complete
+     * @param format the format of the statements
+     * @param numberOfWorkers number of threads writing statements
+     * @return the report: accounts, bytes and throughput
+     * @throws IOException if the file can't be written
+     */
+    public StatementReport exportCombinedStatement(Path path, StatementExporter.Format format, int numberOfWorkers)
+            throws IOException {
+        return new StatementExporter(this, format, numberOfWorkers).exportCombined(path);
+    }
+
+    /**
+     * Run the end-of-day batch of a day over every account, in parallel, or resume it after a crash.
+     * See EndOfDayBatch for the checkpoint, and EndOfDayRule for interest and fees.
+     * @param day the day
+     * @param rules the rules, applied in this order to each account
+     * @param checkpoint where the progress of the batch is recorded, null for nowhere
+     * @param parallelism number of threads
+     * @return the report: accounts, postings and throughput
+     * @throws IOException if the checkpoint can't be read or written
+     */
+    public EndOfDayReport runEndOfDay(LocalDate day, List<EndOfDayRule> rules, Path checkpoint, int parallelism)
+            throws IOException {
+        return new EndOfDayBatch(this, rules, parallelism).run(day, checkpoint);
+    }
+
 }
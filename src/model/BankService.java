@@ -0,0 +1,462 @@
+package model;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous front of a Bank: every call returns a CompletableFuture at once, so that a client can
+ * pipeline many requests instead of waiting for each one in turn.
+ *
+ * Requests go through a bounded queue to one dispatcher thread, which takes them by batches of whatever
+ * arrived together. It posts the money operations of a batch without waiting for the journal (on the shards
+ * if the bank runs them), then hands the batch to a completer thread, which waits once for the journal record
+ * of the last operation of the batch and completes the whole batch in order: one fsync, one wake-up for
+ * up to MAX_BATCH requests. Reads of a batch (balances, history pages) run on the completer after the writes
+ * before them, so a client sees the writes it submitted before a read.
+ *
+ * When `queueCapacity` requests are in progress, new ones fail at once with a RejectedExecutionException
+ * instead of piling up: the client decides whether to back off or give up.
+ *
+ * Stages added to the futures without an executor run on the completer thread: use the *Async variants
+ * for anything slow.
+ */
+public class BankService implements Closeable {
+    /**
+     * Default max number of requests in progress
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    /**
+     * Max number of requests completed by one journal wait
+     */
+    static final int MAX_BATCH = 256;
+
+    /**
+     * Number of threads checking pins: logins hash, they don't go through the dispatcher
+     */
+    private static final int LOGIN_THREADS = 2;
+
+    private static final Request<?> STOP = new Balance(null);
+
+    private Bank theBank;
+    private Semaphore inProgress;
+    private ArrayBlockingQueue<Request<?>> queue;
+    private Thread dispatcher;
+    private ExecutorService completer;
+    private ExecutorService logins;
+    private volatile boolean closed;
+
+    /**
+     * Start a service with the default queue capacity
+     * @param theBank the bank
+     */
+    public BankService(Bank theBank) {
+        this(theBank, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Start a service
+     * @param theBank the bank
+     * @param queueCapacity max number of requests in progress, past which new ones are rejected
+     */
+    public BankService(Bank theBank, int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        this.theBank = theBank;
+        this.inProgress = new Semaphore(queueCapacity);
+        // One more slot for STOP
+        this.queue = new ArrayBlockingQueue<Request<?>>(queueCapacity + 1);
+        this.completer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "atm-service-completer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger count = new AtomicInteger();
+        this.logins = Executors.newFixedThreadPool(LOGIN_THREADS, task -> {
+            Thread thread = new Thread(task, "atm-service-login-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatch, "atm-service");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Log a user in
+     * @param userId uuid of the user
+     * @param pin pin of the user
+     * @return the user, or null if the id or the pin is wrong
+     */
+    public CompletableFuture<User> login(String userId, String pin) {
+        if (this.closed || !this.inProgress.tryAcquire()) {
+            return this.rejected();
+        }
+        CompletableFuture<User> result;
+        try {
+            result = CompletableFuture.supplyAsync(() -> this.theBank.userLogin(userId, pin), this.logins);
+        } catch (RejectedExecutionException e) {
+            this.inProgress.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((user, error) -> this.inProgress.release());
+        return result;
+    }
+
+    /**
+     * Get the balance of an account
+     * @param account the account
+     * @return the balance in cents, with the writes submitted before
+     */
+    public CompletableFuture<Long> balance(Account account) {
+        return this.submit(new Balance(account));
+    }
+
+    /**
+     * Deposit to an account
+     * @param account the account
+     * @param amount amount in cents
+     * @param memo memo of the transaction
+     * @return completed once the deposit is durable
+     */
+    public CompletableFuture<Void> deposit(Account account, long amount, String memo) {
+        return this.submit(new Deposit(account, amount, memo));
+    }
+
+    /**
+     * Withdraw from an account
+     * @param account the account
+     * @param amount amount in cents, not negative
+     * @param memo memo of the transaction
+     * @return true once the withdrawal is durable, false if the balance is too low
+     */
+    public CompletableFuture<Boolean> withdraw(Account account, long amount, String memo) {
+        return this.submit(new Withdrawal(account, amount, memo));
+    }
+
+    /**
+     * Move money between two accounts, see Bank.transfer
+     * @param from the account the money comes from
+     * @param to the account the money goes to
+     * @param amount amount in cents, not negative
+     * @param memo memo of both legs
+     * @return true once the transfer is durable, false if the balance of `from` is too low
+     */
+    public CompletableFuture<Boolean> transfer(Account from, Account to, long amount, String memo) {
+        return this.submit(new Transfer(from, to, amount, memo));
+    }
+
+    /**
+     * Get a page of the history of an account, newest first
+     * @param account the account
+     * @param cursor TransactionPage.FIRST for the newest page, or the next cursor of the previous page
+     * @param pageSize max number of transactions in the page
+     * @return the page, with the writes submitted before
+     */
+    public CompletableFuture<TransactionPage> history(Account account, int cursor, int pageSize) {
+        return this.submit(new History(account, cursor, pageSize));
+    }
+
+    /**
+     * Queue a request, or reject it if the service is closed or full
+     */
+    private <T> CompletableFuture<T> submit(Request<T> request) {
+        if (this.closed || !this.inProgress.tryAcquire()) {
+            return this.rejected();
+        }
+        request.result.whenComplete((value, error) -> this.inProgress.release());
+        this.queue.add(request);
+        if (this.closed && this.queue.remove(request)) {
+            // The dispatcher is gone or going: it won't see this one
+            request.result.completeExceptionally(new RejectedExecutionException("Bank service closed"));
+        }
+        return request.result;
+    }
+
+    private <T> CompletableFuture<T> rejected() {
+        return CompletableFuture.failedFuture(new RejectedExecutionException(
+                this.closed ? "Bank service closed" : "Bank service overloaded"));
+    }
+
+    /**
+     * Loop of the dispatcher thread: take what arrived, post it, hand it to the completer
+     */
+    private void dispatch() {
+        List<Request<?>> batch = new ArrayList<Request<?>>(MAX_BATCH);
+        // Completed once the previous batch is: batches complete in the order they were taken
+        CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            this.queue.drainTo(batch, MAX_BATCH - 1);
+            List<CompletableFuture<?>> posted = new ArrayList<CompletableFuture<?>>(batch.size() + 1);
+            posted.add(previous);
+            List<Request<?>> requests = new ArrayList<Request<?>>(batch.size());
+            for (Request<?> request : batch) {
+                if (request == STOP) {
+                    stopping = true;
+                    continue;
+                }
+                this.post(request);
+                if (request.posted != null) {
+                    posted.add(request.posted);
+                }
+                requests.add(request);
+            }
+            batch.clear();
+            if (stopping) {
+                // Requests that slipped in before close() turned them away: serve them rather than drop them
+                this.queue.drainTo(requests);
+                for (Request<?> request : requests) {
+                    if (request.posted == null) {
+                        this.post(request);
+                        if (request.posted != null) {
+                            posted.add(request.posted);
+                        }
+                    }
+                }
+            }
+            if (!requests.isEmpty()) {
+                previous = CompletableFuture.allOf(posted.toArray(new CompletableFuture<?>[0]))
+                        .whenCompleteAsync((done, error) -> this.complete(requests), this.completer);
+            }
+        }
+    }
+
+    /**
+     * Post a request, failing only this one if it throws: the dispatcher must go on serving the others
+     */
+    private void post(Request<?> request) {
+        try {
+            request.post(this.theBank);
+        } catch (RuntimeException e) {
+            request.posted = CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Wait once for the journal records of a batch, then complete its requests in order
+     */
+    private void complete(List<Request<?>> requests) {
+        long seq = 0;
+        for (Request<?> request : requests) {
+            seq = Math.max(seq, request.seq());
+        }
+        try {
+            this.theBank.awaitDurable(seq);
+        } catch (RuntimeException | Error e) {
+            for (Request<?> request : requests) {
+                request.result.completeExceptionally(e);
+            }
+            return;
+        }
+        Metrics metrics = this.theBank.getMetrics();
+        for (Request<?> request : requests) {
+            request.complete(metrics);
+        }
+    }
+
+    /**
+     * Stop taking requests, complete the ones in progress and stop the threads
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.queue.add(STOP);
+        try {
+            this.dispatcher.join();
+            this.completer.shutdown();
+            this.completer.awaitTermination(1, TimeUnit.MINUTES);
+            this.logins.shutdown();
+            this.logins.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A request in the queue. Money operations are posted by the dispatcher and give a journal sequence
+     * number (`posted`); the completer reads what the others need and completes `result`.
+     */
+    private abstract static class Request<T> {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final long start = System.nanoTime();
+        CompletableFuture<Long> posted;
+
+        /**
+         * Start the request on the dispatcher thread; reads do nothing here
+         */
+        void post(Bank theBank) {
+        }
+
+        /**
+         * Get the journal record to wait for, once posted
+         */
+        long seq() {
+            if (this.posted == null || this.posted.isCompletedExceptionally()) {
+                return 0;
+            }
+            return this.posted.join();
+        }
+
+        /**
+         * Complete the result on the completer thread, once the journal has the batch
+         */
+        abstract void complete(Metrics metrics);
+    }
+
+    /**
+     * A money operation: done, refused for a too low balance, or failed
+     */
+    private abstract static class Posting<T> extends Request<T> {
+        private Metrics.Operation operation;
+
+        Posting(Metrics.Operation operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        void complete(Metrics metrics) {
+            long seq;
+            try {
+                seq = this.posted.join();
+            } catch (CompletionException e) {
+                this.result.completeExceptionally(e.getCause());
+                return;
+            }
+            boolean done = seq != BankShards.NOT_DONE;
+            metrics.record(this.operation, this.start, done);
+            this.result.complete(this.value(done));
+        }
+
+        /**
+         * Get the result of the request
+         * @param done false if the balance was too low
+         */
+        abstract T value(boolean done);
+    }
+
+    private static class Deposit extends Posting<Void> {
+        private Account account;
+        private long amount;
+        private String memo;
+
+        Deposit(Account account, long amount, String memo) {
+            super(Metrics.Operation.DEPOSIT);
+            this.account = account;
+            this.amount = amount;
+            this.memo = memo;
+        }
+
+        @Override
+        void post(Bank theBank) {
+            this.posted = theBank.submitDeposit(this.account, this.amount, this.memo);
+        }
+
+        @Override
+        Void value(boolean done) {
+            return null;
+        }
+    }
+
+    private static class Withdrawal extends Posting<Boolean> {
+        private Account account;
+        private long amount;
+        private String memo;
+
+        Withdrawal(Account account, long amount, String memo) {
+            super(Metrics.Operation.WITHDRAW);
+            this.account = account;
+            this.amount = amount;
+            this.memo = memo;
+        }
+
+        @Override
+        void post(Bank theBank) {
+            this.posted = theBank.submitWithdrawal(this.account, this.amount, this.memo);
+        }
+
+        @Override
+        Boolean value(boolean done) {
+            return done;
+        }
+    }
+
+    private static class Transfer extends Posting<Boolean> {
+        private Account from;
+        private Account to;
+        private long amount;
+        private String memo;
+
+        Transfer(Account from, Account to, long amount, String memo) {
+            super(Metrics.Operation.TRANSFER);
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+            this.memo = memo;
+        }
+
+        @Override
+        void post(Bank theBank) {
+            this.posted = theBank.submitTransfer(this.from, this.to, this.amount, this.memo);
+        }
+
+        @Override
+        Boolean value(boolean done) {
+            return done;
+        }
+    }
+
+    private static class Balance extends Request<Long> {
+        private Account account;
+
+        Balance(Account account) {
+            this.account = account;
+        }
+
+        @Override
+        void complete(Metrics metrics) {
+            this.result.complete(this.account.getBalance());
+        }
+    }
+
+    private static class History extends Request<TransactionPage> {
+        private Account account;
+        private int cursor;
+        private int pageSize;
+
+        History(Account account, int cursor, int pageSize) {
+            this.account = account;
+            this.cursor = cursor;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        void complete(Metrics metrics) {
+            try {
+                this.result.complete(this.account.getHistoryPage(this.cursor, this.pageSize));
+                metrics.record(Metrics.Operation.HISTORY, this.start, true);
+            } catch (RuntimeException e) {
+                this.result.completeExceptionally(e);
+            }
+        }
+    }
+}
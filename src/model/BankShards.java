@@ -0,0 +1,244 @@
+package model;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Partitioned execution of the money operations of a Bank: accounts are split into shards by the uuid of
+ * their holder, and each shard is owned by one thread that runs the operations of its accounts one at a time,
+ * taken from its mailbox. Sessions hand operations over instead of competing for the accounts, so the
+ * account locks taken inside a shard are never contended.
+ *
+ * A transfer between two accounts of the same shard runs on that shard. A transfer between shards takes
+ * two phases, each run by the shard owning the account it changes: the shard of the account the money comes
+ * from checks the balance and posts the debit, whose journal record commits the transfer; then the shard of
+ * the other account posts the credit. If the credit would overflow, the first shard refunds the debit.
+ * The accounts of a holder share a shard, so a transfer between shards is always between two holders,
+ * and each of them sees its accounts change in one step. Shard threads never wait for the journal:
+ * operations return their journal sequence number, and the session waits for it.
+ */
+class BankShards {
+    /**
+     * Returned instead of a journal sequence number when the balance is too low or a withdrawal limit is reached
+     */
+    static final long NOT_DONE = -1;
+
+    /**
+     * Max number of operations in progress per shard: sessions block when the shards are this far behind.
+     * The mailboxes themselves are unbounded, so that a shard handing a phase over to another never blocks.
+     */
+    private static final int OPERATIONS_PER_SHARD = 4096;
+
+    private Bank theBank;
+    private Shard[] shards;
+    private Semaphore admission;
+
+    /**
+     * The results of the transfers between shards in progress
+     */
+    private Set<CompletableFuture<Long>> crossShardTransfers;
+
+    /**
+     * Start the threads of the shards
+     * @param theBank the bank
+     * @param numberOfShards number of shards
+     */
+    BankShards(Bank theBank, int numberOfShards) {
+        if (numberOfShards < 1) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.theBank = theBank;
+        this.shards = new Shard[numberOfShards];
+        this.admission = new Semaphore(numberOfShards * OPERATIONS_PER_SHARD);
+        this.crossShardTransfers = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < numberOfShards; i++) {
+            this.shards[i] = new Shard("atm-shard-" + i);
+        }
+    }
+
+    /**
+     * Get the shard owning an account: the shard of its holder
+     */
+    private Shard shardOf(Account account) {
+        return this.shards[Math.floorMod(account.getHolder().getUUID().hashCode(), this.shards.length)];
+    }
+
+    /**
+     * Make the result of a new operation, once there is room for it
+     */
+    private CompletableFuture<Long> admit() {
+        this.admission.acquireUninterruptibly();
+        CompletableFuture<Long> result = new CompletableFuture<Long>();
+        result.whenComplete((seq, error) -> this.admission.release());
+        return result;
+    }
+
+    /**
+     * Deposit to an account on its shard
+     * @return the journal sequence number to wait for
+     */
+    CompletableFuture<Long> deposit(Account account, long amount, String memo) {
+        CompletableFuture<Long> result = this.admit();
+        this.shardOf(account).send(result, () ->
+                result.complete(account.post(amount, System.currentTimeMillis(), memo)));
+        return result;
+    }
+
+    /**
+     * Withdraw from an account on its shard, if the balance covers it
+     * @return the journal sequence number to wait for, or NOT_DONE if the balance is too low
+     */
+    CompletableFuture<Long> withdraw(Account account, long amount, String memo) {
+        CompletableFuture<Long> result = this.admit();
+        this.shardOf(account).send(result, () -> result.complete(account.postWithdrawal(amount, memo)));
+        return result;
+    }
+
+    /**
+     * Transfer between two accounts, in one step on their shard if they share one, in two phases otherwise
+     * @return the journal sequence number to wait for, or NOT_DONE if the balance is too low
+     */
+    CompletableFuture<Long> transfer(Account from, Account to, long amount, String memo) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Negative amount: " + amount);
+        }
+        CompletableFuture<Long> result = this.admit();
+        Shard fromShard = this.shardOf(from);
+        Shard toShard = this.shardOf(to);
+        if (fromShard == toShard) {
+            fromShard.send(result, () -> result.complete(this.theBank.postTransfer(from, to, amount, memo)));
+            return result;
+        }
+
+        this.crossShardTransfers.add(result);
+        result.whenComplete((seq, error) -> this.crossShardTransfers.remove(result));
+        fromShard.send(result, () -> {
+            // Phase 1, on the shard of `from`: the debit, or give up
+            int fromIndex = this.theBank.postTransferOut(from, to, amount, memo);
+            if (fromIndex < 0) {
+                result.complete(NOT_DONE);
+                return;
+            }
+            // Phase 2, on the shard of `to`: the credit. Its journal record comes after the debit's,
+            // so waiting for it waits for both.
+            toShard.send(result, () -> {
+                try {
+                    result.complete(this.theBank.settleTransfer(from, fromIndex, to, amount, memo));
+                } catch (ArithmeticException e) {
+                    // Nothing was written for `to`: back on the shard of `from`, give the money back
+                    fromShard.send(result, () -> {
+                        this.theBank.refundTransfer(from, fromIndex, to, amount, memo);
+                        result.completeExceptionally(e);
+                    });
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Wait for the transfers between shards in progress to be settled, e.g. so that a snapshot doesn't
+     * catch one with its debit but not its credit. Transfers started meanwhile are not waited for.
+     */
+    void awaitCrossShardTransfers() {
+        for (CompletableFuture<?> transfer : this.crossShardTransfers.toArray(new CompletableFuture<?>[0])) {
+            // Only its end matters here: its session gets the result or the error
+            transfer.handle((seq, error) -> null).join();
+        }
+    }
+
+    /**
+     * Stop the shards once the operations in progress are done, transfers between shards included.
+     * Operations sent later fail with an IllegalStateException.
+     */
+    void shutdown() {
+        // Every operation in progress holds a permit until its result completes: taking them all waits for them
+        int permits = this.shards.length * OPERATIONS_PER_SHARD;
+        this.admission.acquireUninterruptibly(permits);
+        for (Shard shard : this.shards) {
+            shard.stop();
+        }
+        for (Shard shard : this.shards) {
+            shard.join();
+        }
+        // Let late operations in, to be refused by their stopped shard
+        this.admission.release(permits);
+    }
+
+    /**
+     * A shard: its thread and its mailbox
+     */
+    private static class Shard implements Runnable {
+        private static final Runnable STOP = () -> { };
+
+        private LinkedBlockingQueue<Runnable> mailbox;
+        private Thread thread;
+
+        /**
+         * Set once the thread is draining its mailbox for the last time: later operations are refused,
+         * they must not run on another thread than the shard's
+         */
+        private volatile boolean stopped;
+
+        Shard(String name) {
+            this.mailbox = new LinkedBlockingQueue<Runnable>();
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        /**
+         * Put an operation in the mailbox. If it throws, its result completes with the exception;
+         * if the shard is stopped, it completes with an IllegalStateException and the operation never runs.
+         */
+        void send(CompletableFuture<?> result, Runnable operation) {
+            Runnable task = () -> {
+                try {
+                    operation.run();
+                } catch (RuntimeException | Error e) {
+                    result.completeExceptionally(e);
+                }
+            };
+            this.mailbox.add(task);
+            if (this.stopped && this.mailbox.remove(task)) {
+                result.completeExceptionally(new IllegalStateException("Shard stopped: " + this.thread.getName()));
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                try {
+                    task = this.mailbox.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == STOP) {
+                    this.stopped = true;
+                    // Operations sent before `stopped` was seen: run them rather than drop them
+                    for (Runnable late = this.mailbox.poll(); late != null; late = this.mailbox.poll()) {
+                        late.run();
+                    }
+                    return;
+                }
+                task.run();
+            }
+        }
+
+        void stop() {
+            this.mailbox.add(STOP);
+        }
+
+        void join() {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
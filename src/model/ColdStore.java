@@ -0,0 +1,175 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Where the accounts of a Bank put their old transactions, so that the heap holds only the recent ones.
+ *
+ * Once an account has more than `hotTransactions` in memory, its oldest ones are sealed by blocks of
+ * Account.CHECKPOINT_INTERVAL into a segment: a compact columnar encoding (variable-length deltas of
+ * the timestamps, variable-length amounts and memo ids) about a third of the size of the heap columns.
+ * The segments of all the accounts are appended to one file, mapped in windows of WINDOW_SIZE bytes, so
+ * that the number of mappings doesn't grow with the number of accounts. Segments are read in place from
+ * the mapping, only when a history, an audit or a point-in-time query reaches them.
+ *
+ * The store is not a source of truth: everything in it is also in the journal or the snapshot, and the file
+ * starts empty every time the bank is opened. Sealed segments are never freed while the bank runs.
+ */
+public class ColdStore implements Closeable {
+    /**
+     * Size of the parts of the file mapped at a time. A segment never straddles two windows.
+     */
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Number of transactions in a segment: sealing stops at a checkpoint, so the balance checkpoints
+     * and the tail replayed by Account.verifyBalance never need a cold segment
+     */
+    static final int SEGMENT_SIZE = Account.CHECKPOINT_INTERVAL;
+
+    private Path path;
+    private FileChannel channel;
+    private int hotTransactions;
+
+    /**
+     * The windows mapped so far, replaced by a longer copy when a window is added
+     */
+    private volatile MappedByteBuffer[] windows;
+
+    /**
+     * Where the next segment goes, guarded by `this`
+     */
+    private long end;
+
+    /**
+     * Number of transactions sealed, guarded by `this`
+     */
+    private long sealedTransactions;
+
+    /**
+     * Create a store, replacing the file if it exists
+     * @param path the file of the segments
+     * @param hotTransactions the number of transactions an account keeps in memory, at least; it keeps
+     *                        fewer than hotTransactions + SEGMENT_SIZE
+     * @return the store
+     * @throws IOException if the file can't be created
+     */
+    public static ColdStore create(Path path, int hotTransactions) throws IOException {
+        if (hotTransactions < 0) {
+            throw new IllegalArgumentException("Negative number of hot transactions: " + hotTransactions);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new ColdStore(path, channel, hotTransactions);
+    }
+
+    private ColdStore(Path path, FileChannel channel, int hotTransactions) {
+        this.path = path;
+        this.channel = channel;
+        this.hotTransactions = hotTransactions;
+        this.windows = new MappedByteBuffer[0];
+    }
+
+    /**
+     * Get the number of transactions an account keeps in memory, at least
+     * @return the heap ceiling of an account, in transactions, not counting the block being filled
+     */
+    public int getHotTransactions() {
+        return this.hotTransactions;
+    }
+
+    /**
+     * Get the number of transactions sealed so far, by all the accounts
+     * @return the number of transactions in the store
+     */
+    public synchronized long getSealedTransactions() {
+        return this.sealedTransactions;
+    }
+
+    /**
+     * Get the size of the segments sealed so far
+     * @return the number of bytes used in the file
+     */
+    public synchronized long getSize() {
+        return this.end;
+    }
+
+    /**
+     * Append a segment
+     * @param segment the encoded segment, from its position to its limit
+     * @param transactions number of transactions in the segment
+     * @return the position of the segment in the store
+     */
+    synchronized long append(ByteBuffer segment, int transactions) {
+        int length = segment.remaining();
+        if (length > WINDOW_SIZE) {
+            throw new IllegalArgumentException("Segment too large: " + length);
+        }
+        if (this.end % WINDOW_SIZE + length > WINDOW_SIZE) {
+            // Start the next window rather than straddle two
+            this.end += WINDOW_SIZE - this.end % WINDOW_SIZE;
+        }
+        long position = this.end;
+        ByteBuffer window = this.window(position).duplicate();
+        window.position((int) (position % WINDOW_SIZE));
+        window.put(segment);
+        this.end += length;
+        this.sealedTransactions += transactions;
+        return position;
+    }
+
+    /**
+     * Get a segment, read in place from the mapping
+     * @param position the position returned by append
+     * @param length the length of the segment
+     * @return a buffer over the segment, positioned at its start
+     */
+    ByteBuffer read(long position, int length) {
+        MappedByteBuffer[] windows = this.windows;
+        int w = (int) (position / WINDOW_SIZE);
+        // The caller got `position` from an append that happened before, under the account lock
+        // or published since by an AccountSnapshot
+        ByteBuffer window = (w < windows.length ? windows[w] : this.window(position)).duplicate();
+        int start = (int) (position % WINDOW_SIZE);
+        window.position(start).limit(start + length);
+        return window.slice();
+    }
+
+    /**
+     * Get the window holding a position, mapping the windows up to it if needed
+     */
+    private synchronized MappedByteBuffer window(long position) {
+        int w = (int) (position / WINDOW_SIZE);
+        MappedByteBuffer[] windows = this.windows;
+        if (w >= windows.length) {
+            windows = Arrays.copyOf(windows, w + 1);
+            for (int i = this.windows.length; i <= w; i++) {
+                try {
+                    // Mapping read-write grows the file, sparse until written
+                    windows[i] = this.channel.map(FileChannel.MapMode.READ_WRITE, (long) i * WINDOW_SIZE, WINDOW_SIZE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cold store " + this.path + " can't grow", e);
+                }
+            }
+            this.windows = windows;
+        }
+        return windows[w];
+    }
+
+    /**
+     * Close the file. The accounts using the store must not be read after this.
+     * @throws IOException if the file can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,66 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * Totals of the transactions of one day (UTC) across all the accounts of a Bank
+ */
+public class DailyRollup {
+    private LocalDate day;
+    private long credits;
+    private long debits;
+    private long transactions;
+
+    DailyRollup(LocalDate day, long credits, long debits, long transactions) {
+        this.day = day;
+        this.credits = credits;
+        this.debits = debits;
+        this.transactions = transactions;
+    }
+
+    /**
+     * Get the day
+     * @return the day, in UTC
+     */
+    public LocalDate getDay() {
+        return this.day;
+    }
+
+    /**
+     * Get the money that came into accounts that day
+     * @return the sum of the positive amounts, in cents
+     */
+    public long getCredits() {
+        return this.credits;
+    }
+
+    /**
+     * Get the money that went out of accounts that day
+     * @return the sum of the negative amounts, as a positive number of cents
+     */
+    public long getDebits() {
+        return this.debits;
+    }
+
+    /**
+     * Get the net flow of the day: both legs of a transfer cancel out
+     * @return credits - debits, in cents
+     */
+    public long getNet() {
+        return this.credits - this.debits;
+    }
+
+    /**
+     * Get the number of transactions of the day
+     * @return the number of transactions, a transfer counts twice
+     */
+    public long getTransactions() {
+        return this.transactions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d transactions, in $%s, out $%s, net $%s", this.day, this.transactions,
+                Money.format(this.credits), Money.format(this.debits), Money.format(this.getNet()));
+    }
+}
@@ -0,0 +1,104 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-day totals of the transactions of a Bank, kept up to date as transactions are added to any account,
+ * so that a day or a range of days is answered without going through the accounts.
+ *
+ * Nothing is persisted: the rollups are rebuilt as the snapshot and the journal are loaded.
+ * Days are in UTC, like the dates of the statements.
+ */
+public class DailyRollups {
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    /**
+     * Totals of a day, added to by many accounts at once
+     */
+    private static class Day {
+        final long epochDay;
+        final LongAdder credits = new LongAdder();
+        final LongAdder debits = new LongAdder();
+        final LongAdder transactions = new LongAdder();
+
+        Day(long epochDay) {
+            this.epochDay = epochDay;
+        }
+    }
+
+    private ConcurrentHashMap<Long, Day> days;
+
+    /**
+     * The day of the last transaction recorded: nearly all transactions are today's, skip the map for them
+     */
+    private volatile Day lastDay;
+
+    DailyRollups() {
+        this.days = new ConcurrentHashMap<Long, Day>();
+    }
+
+    /**
+     * Add a transaction to the totals of its day
+     * @param timestamp the time of the transaction, in epoch milliseconds
+     * @param amount the amount in cents
+     */
+    void record(long timestamp, long amount) {
+        long epochDay = Math.floorDiv(timestamp, MILLIS_PER_DAY);
+        Day day = this.lastDay;
+        if (day == null || day.epochDay != epochDay) {
+            day = this.days.computeIfAbsent(epochDay, Day::new);
+            this.lastDay = day;
+        }
+        if (amount >= 0) {
+            day.credits.add(amount);
+        } else {
+            day.debits.add(-amount);
+        }
+        day.transactions.increment();
+    }
+
+    /**
+     * Get the totals of a day
+     * @param day the day, in UTC
+     * @return the totals, all 0 if there was no transaction that day
+     */
+    public DailyRollup get(LocalDate day) {
+        Day totals = this.days.get(day.toEpochDay());
+        if (totals == null) {
+            return new DailyRollup(day, 0, 0, 0);
+        }
+        return new DailyRollup(day, totals.credits.sum(), totals.debits.sum(), totals.transactions.sum());
+    }
+
+    /**
+     * Get the totals of a range of days
+     * @param from the first day, included
+     * @param to the last day, included
+     * @return the totals of each day with transactions, in day order
+     */
+    public List<DailyRollup> between(LocalDate from, LocalDate to) {
+        ArrayList<DailyRollup> rollups = new ArrayList<DailyRollup>();
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        if (last - first < this.days.size()) {
+            // Fewer days asked than known: look them up
+            for (long epochDay = first; epochDay <= last; epochDay++) {
+                if (this.days.containsKey(epochDay)) {
+                    rollups.add(this.get(LocalDate.ofEpochDay(epochDay)));
+                }
+            }
+        } else {
+            for (Long epochDay : this.days.keySet()) {
+                if (epochDay >= first && epochDay <= last) {
+                    rollups.add(this.get(LocalDate.ofEpochDay(epochDay)));
+                }
+            }
+            rollups.sort((a, b) -> a.getDay().compareTo(b.getDay()));
+        }
+        return rollups;
+    }
+}
@@ -0,0 +1,317 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The end-of-day batch: runs interest and fee rules over every account of a Bank, in parallel.
+ *
+ * Accounts are taken in chunks of CHUNK_SIZE, split recursively across a fork-join pool. A chunk takes
+ * the lock of each of its accounts once, computes every rule from the balance (kept up to date by the
+ * account, no history is read) and posts the results without waiting for the journal, then waits once
+ * for the whole chunk.
+ *
+ * With a checkpoint file, the chunks done are recorded in it (at most every CHECKPOINT_MILLIS, always once
+ * their postings are durable), and a run of the same day after a crash skips them. The chunks that were in
+ * progress are run again, skipping the postings already made: they are found by their memo, among the
+ * transactions of the account since the first run started. Running a day that is complete does nothing.
+ */
+public class EndOfDayBatch {
+    /**
+     * Number of accounts per chunk, the unit of work and of the checkpoint
+     */
+    static final int CHUNK_SIZE = 256;
+
+    /**
+     * Min time between two checkpoint writes
+     */
+    private static final long CHECKPOINT_MILLIS = 1000;
+
+    private Bank theBank;
+    private List<EndOfDayRule> rules;
+    private int parallelism;
+
+    /**
+     * Create a batch
+     * @param theBank the bank
+     * @param rules the rules, applied in this order to each account
+     * @param parallelism number of threads
+     */
+    public EndOfDayBatch(Bank theBank, List<EndOfDayRule> rules, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.theBank = theBank;
+        this.rules = new ArrayList<EndOfDayRule>(rules);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Run the batch of a day without a checkpoint
+     * @param day the day
+     * @return the report: accounts, postings and throughput
+     */
+    public EndOfDayReport run(LocalDate day) {
+        try {
+            return this.run(day, null);
+        } catch (IOException e) {
+            // There is no file to write
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Run the batch of a day, or resume it if the checkpoint is of a run of the same day
+     * @param day the day
+     * @param checkpoint the checkpoint file, replaced by one for this day if it is of another day;
+     *                   null for none
+     * @return the report: accounts, postings and throughput
+     * @throws IOException if the checkpoint can't be read or written
+     */
+    public EndOfDayReport run(LocalDate day, Path checkpoint) throws IOException {
+        long start = System.nanoTime();
+        List<Account> accounts = this.theBank.getAccounts();
+        Run run = checkpoint != null && Files.exists(checkpoint) ? Run.load(checkpoint, day) : null;
+        EndOfDayReport report = new EndOfDayReport(day, run != null);
+        if (run == null) {
+            run = new Run(day, System.currentTimeMillis(), accounts.size(), new BitSet(), false);
+        } else if (run.complete) {
+            report.recordSkipped(run.accounts);
+            report.setElapsedNanos(System.nanoTime() - start);
+            return report;
+        } else if (run.accounts % CHUNK_SIZE != 0) {
+            // Accounts opened since may have joined the last chunk: run it again
+            run.done.clear(run.accounts / CHUNK_SIZE);
+        }
+        run.accounts = accounts.size();
+        for (int c = run.done.nextSetBit(0); c >= 0; c = run.done.nextSetBit(c + 1)) {
+            report.recordSkipped(Math.min(CHUNK_SIZE, accounts.size() - c * CHUNK_SIZE));
+        }
+        // On disk before the first posting, so that a crash can't lose the start time of the run
+        if (checkpoint != null) {
+            run.write(checkpoint);
+        }
+
+        Worker worker = new Worker(this, run, accounts, report, checkpoint, report.isResumed());
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try {
+            pool.invoke(new Chunks(worker, 0, (accounts.size() + CHUNK_SIZE - 1) / CHUNK_SIZE));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+
+        if (checkpoint != null) {
+            synchronized (run) {
+                run.complete = true;
+                run.write(checkpoint);
+            }
+        }
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * The state of a run of a day, as in the checkpoint file
+     */
+    private static class Run {
+        LocalDate day;
+        long startedMillis;
+        int accounts;
+        BitSet done;
+        boolean complete;
+        long lastWrite;
+
+        Run(LocalDate day, long startedMillis, int accounts, BitSet done, boolean complete) {
+            this.day = day;
+            this.startedMillis = startedMillis;
+            this.accounts = accounts;
+            this.done = done;
+            this.complete = complete;
+        }
+
+        /**
+         * Read a checkpoint
+         * @return the run, or null if the checkpoint is of another day
+         */
+        static Run load(Path path, LocalDate day) throws IOException {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(path)) {
+                properties.load(in);
+            }
+            try {
+                if (!day.toString().equals(properties.getProperty("day"))) {
+                    return null;
+                }
+                return new Run(day, Long.parseLong(properties.getProperty("started")),
+                        Integer.parseInt(properties.getProperty("accounts")),
+                        BitSet.valueOf(Base64.getDecoder().decode(properties.getProperty("done"))),
+                        Boolean.parseBoolean(properties.getProperty("complete")));
+            } catch (RuntimeException e) {
+                throw new IOException("Not an end-of-day checkpoint: " + path, e);
+            }
+        }
+
+        /**
+         * Write the checkpoint, durably, replacing the previous one only once complete
+         */
+        synchronized void write(Path path) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("day", this.day.toString());
+            properties.setProperty("started", Long.toString(this.startedMillis));
+            properties.setProperty("accounts", Integer.toString(this.accounts));
+            properties.setProperty("done", Base64.getEncoder().encodeToString(this.done.toByteArray()));
+            properties.setProperty("complete", Boolean.toString(this.complete));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            properties.store(bytes, "End-of-day batch");
+
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.lastWrite = System.currentTimeMillis();
+        }
+
+        /**
+         * Record a chunk as done, and write the checkpoint if the last write is old enough
+         */
+        synchronized void markDone(int chunk, Path path) {
+            this.done.set(chunk);
+            if (path != null && System.currentTimeMillis() - this.lastWrite >= CHECKPOINT_MILLIS) {
+                try {
+                    this.write(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the chunks of a run
+     */
+    private static class Worker {
+        private Bank theBank;
+        private EndOfDayRule[] rules;
+        private String[] memos;
+        private Run run;
+        private List<Account> accounts;
+        private EndOfDayReport report;
+        private Path checkpoint;
+        private boolean resumed;
+
+        Worker(EndOfDayBatch batch, Run run, List<Account> accounts, EndOfDayReport report, Path checkpoint,
+               boolean resumed) {
+            this.theBank = batch.theBank;
+            this.rules = batch.rules.toArray(new EndOfDayRule[0]);
+            this.memos = new String[this.rules.length];
+            for (int r = 0; r < this.rules.length; r++) {
+                this.memos[r] = this.rules[r].memoFor(run.day);
+            }
+            this.run = run;
+            this.accounts = accounts;
+            this.report = report;
+            this.checkpoint = checkpoint;
+            this.resumed = resumed;
+        }
+
+        boolean isDone(int chunk) {
+            synchronized (this.run) {
+                return this.run.done.get(chunk);
+            }
+        }
+
+        /**
+         * Apply the rules to the accounts of a chunk, wait for the journal, and record the chunk as done
+         */
+        void runChunk(int chunk) {
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(from + CHUNK_SIZE, this.accounts.size());
+            long seq = 0;
+            long postings = 0;
+            long credits = 0;
+            long debits = 0;
+            for (int i = from; i < to; i++) {
+                Account account = this.accounts.get(i);
+                account.getLock().lock();
+                try {
+                    long balance = account.getBalance();
+                    for (int r = 0; r < this.rules.length; r++) {
+                        long amount = this.rules[r].amountFor(account, balance, this.run.day);
+                        if (amount == 0) {
+                            continue;
+                        }
+                        if (this.resumed && account.hasTransactionSince(this.run.startedMillis, this.memos[r])) {
+                            // Posted by the run that crashed
+                            continue;
+                        }
+                        seq = Math.max(seq, account.post(amount, System.currentTimeMillis(), this.memos[r]));
+                        postings++;
+                        if (amount > 0) {
+                            credits += amount;
+                        } else {
+                            debits -= amount;
+                        }
+                    }
+                } finally {
+                    account.getLock().unlock();
+                }
+            }
+            // One journal wait for the chunk, before the checkpoint can say it's done
+            this.theBank.awaitDurable(seq);
+            this.report.recordChunk(to - from, postings, credits, debits);
+            this.run.markDone(chunk, this.checkpoint);
+        }
+    }
+
+    /**
+     * A range of chunks, split in halves down to one chunk
+     */
+    private static class Chunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Worker worker;
+        private int from;
+        private int to;
+
+        Chunks(Worker worker, int from, int to) {
+            this.worker = worker;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                int middle = (this.from + this.to) >>> 1;
+                RecursiveAction.invokeAll(new Chunks(this.worker, this.from, middle),
+                        new Chunks(this.worker, middle, this.to));
+            } else if (this.from < this.to && !this.worker.isDone(this.from)) {
+                this.worker.runChunk(this.from);
+            }
+        }
+    }
+}
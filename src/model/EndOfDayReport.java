@@ -0,0 +1,117 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * Outcome of an end-of-day batch: how many accounts were processed or found already done,
+ * what was posted, and how fast
+ */
+public class EndOfDayReport {
+    private LocalDate day;
+    private boolean resumed;
+    private long accounts;
+    private long skippedAccounts;
+    private long postings;
+    private long credits;
+    private long debits;
+    private long elapsedNanos;
+
+    EndOfDayReport(LocalDate day, boolean resumed) {
+        this.day = day;
+        this.resumed = resumed;
+    }
+
+    synchronized void recordChunk(long accounts, long postings, long credits, long debits) {
+        this.accounts += accounts;
+        this.postings += postings;
+        this.credits += credits;
+        this.debits += debits;
+    }
+
+    synchronized void recordSkipped(long accounts) {
+        this.skippedAccounts += accounts;
+    }
+
+    synchronized void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the day of the batch
+     * @return the day
+     */
+    public LocalDate getDay() {
+        return this.day;
+    }
+
+    /**
+     * Tell whether the batch picked up where a previous run of the same day stopped
+     * @return true if it resumed from a checkpoint
+     */
+    public boolean isResumed() {
+        return this.resumed;
+    }
+
+    /**
+     * Get the number of accounts processed by this run
+     * @return the number of accounts
+     */
+    public synchronized long getAccounts() {
+        return this.accounts;
+    }
+
+    /**
+     * Get the number of accounts a previous run of the same day had already processed
+     * @return the number of accounts skipped
+     */
+    public synchronized long getSkippedAccounts() {
+        return this.skippedAccounts;
+    }
+
+    /**
+     * Get the number of transactions posted
+     * @return the number of postings
+     */
+    public synchronized long getPostings() {
+        return this.postings;
+    }
+
+    /**
+     * Get the total credited, e.g. interest
+     * @return the amount in cents
+     */
+    public synchronized long getCredits() {
+        return this.credits;
+    }
+
+    /**
+     * Get the total debited, e.g. fees
+     * @return the amount in cents, not negative
+     */
+    public synchronized long getDebits() {
+        return this.debits;
+    }
+
+    /**
+     * Get the time the run took
+     * @return the time in seconds
+     */
+    public synchronized double getSeconds() {
+        return this.elapsedNanos / 1e9;
+    }
+
+    /**
+     * Get the throughput of the run
+     * @return the number of accounts processed per second
+     */
+    public synchronized double getAccountsPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.accounts / (this.elapsedNanos / 1e9);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s%s: %d accounts (%d already done), %d postings, +%s -%s in %.2fs (%.0f accounts/s)",
+                this.day, this.resumed ? " resumed" : "", this.accounts, this.skippedAccounts, this.postings,
+                Money.format(this.credits), Money.format(this.debits), this.getSeconds(), this.getAccountsPerSecond());
+    }
+}
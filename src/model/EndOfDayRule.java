@@ -0,0 +1,85 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * A rule of the end-of-day batch: what to post on an account for a day, given its balance.
+ * Rules are called in parallel on different accounts, and must not keep state between calls.
+ */
+public interface EndOfDayRule {
+    /**
+     * Days in a year for the daily interest rate
+     */
+    int DAYS_PER_YEAR = 365;
+
+    /**
+     * Get the amount to post on an account
+     * @param account the account
+     * @param balance the balance of the account at the start of its batch, before any rule
+     * @param day the day of the batch
+     * @return the amount in cents: positive for a credit, negative for a debit, 0 to post nothing
+     */
+    long amountFor(Account account, long balance, LocalDate day);
+
+    /**
+     * Get the memo of the postings of a day. It is also how a resumed batch recognises the postings
+     * it already made, so it must differ from one rule and one day to the other.
+     * @param day the day of the batch
+     * @return the memo
+     */
+    String memoFor(LocalDate day);
+
+    /**
+     * Daily interest on positive balances: balance * basisPoints / 10000 / DAYS_PER_YEAR, rounded down to the cent
+     * @param accountName the accounts earning interest, e.g. "Savings", null for all of them
+     * @param basisPoints yearly rate in hundredths of a percent, e.g. 150 for 1.5%
+     * @return the rule
+     */
+    static EndOfDayRule interest(String accountName, int basisPoints) {
+        if (basisPoints < 0) {
+            throw new IllegalArgumentException("Negative rate: " + basisPoints);
+        }
+        return new EndOfDayRule() {
+            @Override
+            public long amountFor(Account account, long balance, LocalDate day) {
+                if (balance <= 0 || (accountName != null && !accountName.equals(account.getName()))) {
+                    return 0;
+                }
+                return Math.multiplyExact(balance, (long) basisPoints) / (10_000L * DAYS_PER_YEAR);
+            }
+
+            @Override
+            public String memoFor(LocalDate day) {
+                return "Interest " + day;
+            }
+        };
+    }
+
+    /**
+     * Maintenance fee charged on the accounts below a minimum balance, never taking the balance below 0
+     * @param accountName the accounts paying the fee, e.g. "Checking", null for all of them
+     * @param fee the fee in cents
+     * @param minimumBalance the balance in cents from which the account pays no fee
+     * @return the rule
+     */
+    static EndOfDayRule maintenanceFee(String accountName, long fee, long minimumBalance) {
+        if (fee < 0) {
+            throw new IllegalArgumentException("Negative fee: " + fee);
+        }
+        return new EndOfDayRule() {
+            @Override
+            public long amountFor(Account account, long balance, LocalDate day) {
+                if (balance >= minimumBalance || balance <= 0
+                        || (accountName != null && !accountName.equals(account.getName()))) {
+                    return 0;
+                }
+                return -Math.min(fee, balance);
+            }
+
+            @Override
+            public String memoFor(LocalDate day) {
+                return "Maintenance fee " + day;
+            }
+        };
+    }
+}
@@ -0,0 +1,255 @@
+package model;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out unique, hard to guess numeric IDs in O(1), without looking up or retrying.
+ *
+ * The n-th ID is a keyed permutation of n over [0, 10^digits): a Feistel network on the two halves of the
+ * decimal number (mixed radix, so odd numbers of digits work too). Different sequence numbers always give
+ * different IDs, and without the keys the next ID can't be told from the previous ones. A Luhn check digit
+ * is appended, so that a mistyped digit or two swapped neighbours are caught without a lookup.
+ *
+ * The only state is the keys and a sequence counter. The keys are persisted with the Bank; the counter is
+ * not: it is recovered from the IDs restored, through the inverse permutation.
+ */
+public class IdAllocator {
+    /**
+     * Number of Feistel rounds, even so that the halves end up in their original radix
+     */
+    private static final int ROUNDS = 8;
+
+    private int digits;
+    private long domain;
+    private long leftRadix;
+    private long rightRadix;
+    private long[] keys;
+
+    /**
+     * Sequence number of the next ID to give out
+     */
+    private AtomicLong next;
+
+    /**
+     * Create an allocator with new random keys
+     * @param digits number of digits of the IDs, without the check digit (2 to 18)
+     */
+    public IdAllocator(int digits) {
+        this(digits, IdAllocator.newKeys());
+    }
+
+    /**
+     * Create an allocator with given keys, to go on with the IDs of a restored Bank
+     * @param digits number of digits of the IDs, without the check digit (2 to 18)
+     * @param keys the round keys, ROUNDS of them
+     */
+    IdAllocator(int digits, long[] keys) {
+        if (digits < 2 || digits > 18 || keys.length != ROUNDS) {
+            throw new IllegalArgumentException("Invalid ID allocator settings");
+        }
+        this.digits = digits;
+        this.domain = IdAllocator.powerOfTen(digits);
+        this.leftRadix = IdAllocator.powerOfTen((digits + 1) / 2);
+        this.rightRadix = IdAllocator.powerOfTen(digits / 2);
+        this.keys = keys.clone();
+        this.next = new AtomicLong();
+    }
+
+    /**
+     * Make new random round keys
+     * @return the keys
+     */
+    static long[] newKeys() {
+        SecureRandom random = new SecureRandom();
+        long[] keys = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            keys[i] = random.nextLong();
+        }
+        return keys;
+    }
+
+    /**
+     * Get the round keys, to persist them
+     * @return a copy of the keys
+     */
+    long[] getKeys() {
+        return this.keys.clone();
+    }
+
+    /**
+     * Get the number of digits of the IDs, check digit included
+     * @return the length of an ID
+     */
+    public int getLength() {
+        return this.digits + 1;
+    }
+
+    /**
+     * Get the number of IDs given out or restored so far
+     * @return the sequence number of the next ID
+     */
+    public long getAllocated() {
+        return this.next.get();
+    }
+
+    /**
+     * Give out a new ID
+     * @return the ID, getLength() digits
+     * @throws IllegalStateException if every ID is taken
+     */
+    public String nextId() {
+        long sequence = this.next.getAndIncrement();
+        if (sequence >= this.domain) {
+            throw new IllegalStateException("No IDs left, all " + this.domain + " are taken");
+        }
+        return this.format(this.permute(sequence));
+    }
+
+    /**
+     * Give out a block of new IDs at once, e.g. for a bulk import: one update of the sequence counter
+     * @param count number of IDs
+     * @return the IDs, getLength() digits each
+     * @throws IllegalStateException if there are fewer than `count` IDs left
+     */
+    public String[] nextIds(int count) {
+        // Check before taking the block: a request too big must leave the IDs that remain to the next ones
+        long first;
+        do {
+            first = this.next.get();
+            if (first + count > this.domain) {
+                throw new IllegalStateException("Not " + count + " IDs left, " + Math.max(this.domain - first, 0)
+                        + " of " + this.domain + " remain");
+            }
+        } while (!this.next.compareAndSet(first, first + count));
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = this.format(this.permute(first + i));
+        }
+        return ids;
+    }
+
+    /**
+     * Take note of an ID restored from a journal or a snapshot, so that it is never given out again
+     * @param id the ID
+     */
+    void restored(String id) {
+        if (!this.isValid(id)) {
+            return;
+        }
+        long sequence = this.unpermute(Long.parseLong(id, 0, this.digits, 10));
+        this.next.accumulateAndGet(sequence + 1, Math::max);
+    }
+
+    /**
+     * Check the length, the characters and the check digit of an ID, without looking it up
+     * @param id the ID typed
+     * @return true if it could be an ID given out by this allocator
+     */
+    public boolean isValid(String id) {
+        if (id == null || id.length() != this.digits + 1) {
+            return false;
+        }
+        for (int i = 0; i <= this.digits; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return IdAllocator.luhn(id, this.digits) == id.charAt(this.digits) - '0';
+    }
+
+    /**
+     * Write a number as its digits, zero padded, followed by the check digit
+     */
+    private String format(long value) {
+        char[] id = new char[this.digits + 1];
+        for (int i = this.digits - 1; i >= 0; i--) {
+            id[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        id[this.digits] = (char) ('0' + IdAllocator.luhn(new String(id, 0, this.digits), this.digits));
+        return new String(id);
+    }
+
+    /**
+     * Apply the Feistel network: the number is split into a left half in [0, a) and a right half in [0, b),
+     * each round makes (right, left + F(right) mod a), whose halves are in [0, b) and [0, a)
+     */
+    private long permute(long value) {
+        long a = this.leftRadix;
+        long b = this.rightRadix;
+        long left = value / b;
+        long right = value % b;
+        for (int round = 0; round < ROUNDS; round++) {
+            long mixed = Math.floorMod(left + IdAllocator.mix(right, this.keys[round]), a);
+            left = right;
+            right = mixed;
+            // The halves swapped radix
+            long t = a;
+            a = b;
+            b = t;
+        }
+        return left * b + right;
+    }
+
+    /**
+     * Undo the Feistel network, the rounds in reverse order
+     */
+    private long unpermute(long value) {
+        // After an even number of rounds the radixes are back in place
+        long a = this.leftRadix;
+        long b = this.rightRadix;
+        long left = value / b;
+        long right = value % b;
+        for (int round = ROUNDS - 1; round >= 0; round--) {
+            // Before this round, the halves were in [0, b) and [0, a): left was `right` (in [0, b))
+            long previousRight = left;
+            long previousLeft = Math.floorMod(right - IdAllocator.mix(previousRight, this.keys[round]), b);
+            left = previousLeft;
+            right = previousRight;
+            long t = a;
+            a = b;
+            b = t;
+        }
+        return left * b + right;
+    }
+
+    /**
+     * Round function: a keyed 64-bit mix, positive
+     */
+    private static long mix(long value, long key) {
+        long z = value ^ key;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return (z ^ (z >>> 31)) >>> 1;
+    }
+
+    /**
+     * Compute the Luhn check digit of the first `length` digits of an ID
+     */
+    private static int luhn(CharSequence id, int length) {
+        int sum = 0;
+        boolean doubled = true; // The rightmost digit of the payload is doubled
+        for (int i = length - 1; i >= 0; i--) {
+            int d = id.charAt(i) - '0';
+            if (doubled) {
+                d *= 2;
+                if (d > 9) {
+                    d -= 9;
+                }
+            }
+            sum += d;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    private static long powerOfTen(int exponent) {
+        long p = 1;
+        for (int i = 0; i < exponent; i++) {
+            p *= 10;
+        }
+        return p;
+    }
+}
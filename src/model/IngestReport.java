@@ -0,0 +1,133 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a batch ingestion of transactions, or of an import of users: how many records were read,
+ * posted or imported, and rejected, how fast, and why the first rejected rows were rejected
+ */
+public class IngestReport {
+    /**
+     * A rejected record and the reason
+     */
+    public static class Rejection {
+        private long recordNumber;
+        private String reason;
+
+        Rejection(long recordNumber, String reason) {
+            this.recordNumber = recordNumber;
+            this.reason = reason;
+        }
+
+        /**
+         * Get the number of the record in the file, 1 is the first one (the CSV header is not counted)
+         * @return the record number
+         */
+        public long getRecordNumber() {
+            return this.recordNumber;
+        }
+
+        /**
+         * Get why the record was rejected
+         * @return the reason
+         */
+        public String getReason() {
+            return this.reason;
+        }
+
+        @Override
+        public String toString() {
+            return "record " + this.recordNumber + ": " + this.reason;
+        }
+    }
+
+    /**
+     * Number of rejections kept with their reason, the others are only counted
+     */
+    private int maxRejectionsKept;
+
+    private long read;
+    private long accepted;
+    private long rejected;
+    private long elapsedNanos;
+    private ArrayList<Rejection> rejections;
+
+    IngestReport(int maxRejectionsKept) {
+        this.maxRejectionsKept = maxRejectionsKept;
+        this.rejections = new ArrayList<Rejection>();
+    }
+
+    synchronized void recordRead(long count) {
+        this.read += count;
+    }
+
+    synchronized void recordAccepted(long count) {
+        this.accepted += count;
+    }
+
+    synchronized void recordRejected(long recordNumber, String reason) {
+        this.rejected++;
+        if (this.rejections.size() < this.maxRejectionsKept) {
+            this.rejections.add(new Rejection(recordNumber, reason));
+        }
+    }
+
+    synchronized void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the number of records read from the file
+     * @return the number of records
+     */
+    public synchronized long getRead() {
+        return this.read;
+    }
+
+    /**
+     * Get the number of records posted to their account, or of users imported
+     * @return the number of records
+     */
+    public synchronized long getAccepted() {
+        return this.accepted;
+    }
+
+    /**
+     * Get the number of records rejected
+     * @return the number of records
+     */
+    public synchronized long getRejected() {
+        return this.rejected;
+    }
+
+    /**
+     * Get the first rejected records, with the reason
+     * @return the rejections, at most the number asked when ingesting
+     */
+    public synchronized List<Rejection> getRejections() {
+        return new ArrayList<Rejection>(this.rejections);
+    }
+
+    /**
+     * Get the time the ingestion took
+     * @return the time in seconds
+     */
+    public synchronized double getSeconds() {
+        return this.elapsedNanos / 1e9;
+    }
+
+    /**
+     * Get the throughput of the ingestion
+     * @return the number of records read per second
+     */
+    public synchronized double getRecordsPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.read / (this.elapsedNanos / 1e9);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d records read, %d accepted, %d rejected in %.2fs (%.0f records/s)",
+                this.read, this.accepted, this.rejected, this.getSeconds(), this.getRecordsPerSecond());
+    }
+}
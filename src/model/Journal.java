@@ -0,0 +1,757 @@
+package model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the Bank: every new user, account and transaction is appended to a
+ * binary file before it is applied in memory, and the file is replayed at startup to rebuild the Bank.
+ *
+ * Appends from all the sessions go into a shared buffer. Whoever waits for its record to be durable
+ * first becomes the leader: it writes everything pending, forces it to disk if the durability mode asks
+ * for it, and wakes up the others, so concurrent writers share one write and one fsync (group commit).
+ *
+ * File layout: magic, version, then records of
+ * [int length of body][int CRC32 of body][body = byte type + fields].
+ * A torn record at the end (crash in the middle of a write) is detected by its length or CRC and cut off.
+ *
+ * A transfer is one TRANSFER record with both legs, or, between two shards, a TRANSFER_OUT record written
+ * with the first leg by the shard of the account the money comes from, then a TRANSFER_SETTLE record written
+ * with the second leg by the shard of the other account. The TRANSFER_OUT record commits the transfer:
+ * the transfers a crash cut between the two are found by the replay, and settled when the Bank opens.
+ */
+public class Journal {
+    /**
+     * How far a record must have gone before the operation that wrote it returns
+     */
+    public enum Durability {
+        /**
+         * Records stay in memory until BUFFER_FLUSH_SIZE bytes are pending or flush() is called:
+         * fastest, but a crash loses the last records
+         */
+        BUFFERED,
+        /**
+         * Records are written to the file (OS page cache) before returning: survives a crash of the process
+         */
+        WRITE,
+        /**
+         * Records are written and forced to disk before returning: survives a power loss
+         */
+        FSYNC
+    }
+
+    private static final int MAGIC = 0x41544D4A; // "ATMJ"
+    private static final int VERSION = 5;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * In BUFFERED mode, pending records are written once they reach this size
+     */
+    private static final int BUFFER_FLUSH_SIZE = 64 * 1024;
+
+    static final byte USER = 1;
+    static final byte ACCOUNT = 2;
+    static final byte TRANSACTION = 3;
+    static final byte TRANSFER = 4;
+    static final byte ID_KEYS = 5;
+    static final byte TRANSFER_OUT = 6;
+    static final byte TRANSFER_SETTLE = 7;
+    static final byte WITHDRAWAL = 8;
+
+    /**
+     * A transfer between shards whose first leg is in the journal but not its second one
+     */
+    static class UnsettledTransfer {
+        final String fromId;
+        final int fromIndex;
+        final String toId;
+        final long amount;
+        final String memo;
+
+        UnsettledTransfer(String fromId, int fromIndex, String toId, long amount, String memo) {
+            this.fromId = fromId;
+            this.fromIndex = fromIndex;
+            this.toId = toId;
+            this.amount = amount;
+            this.memo = memo;
+        }
+    }
+
+    /**
+     * Per-thread buffer where records are encoded before going into the shared buffer
+     */
+    private static final ThreadLocal<ByteBuffer> SCRATCH =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(4096));
+
+    private FileChannel channel;
+    private Durability durability;
+
+    /**
+     * Records appended but not written yet, and the buffer the leader is writing (or an empty spare)
+     */
+    private ByteBuffer pending;
+    private ByteBuffer writing;
+
+    /**
+     * Sequence number of the last appended record, and of the last one written as durably as asked
+     */
+    private long appendedSeq;
+    private long durableSeq;
+
+    /**
+     * Whether a leader is currently writing
+     */
+    private boolean flushing;
+
+    /**
+     * Set when a write fails: the journal no longer matches memory, so nothing more can be appended
+     */
+    private IOException failure;
+
+    /**
+     * The transfers the replay found unsettled, until the Bank takes them
+     */
+    private List<UnsettledTransfer> unsettled;
+
+    /**
+     * Open a journal for appending, positioned after its last valid record
+     * @param channel the journal file
+     * @param durability the durability mode
+     */
+    private Journal(FileChannel channel, Durability durability) {
+        this.channel = channel;
+        this.durability = durability;
+        this.pending = ByteBuffer.allocateDirect(2 * BUFFER_FLUSH_SIZE);
+        this.writing = ByteBuffer.allocateDirect(2 * BUFFER_FLUSH_SIZE);
+    }
+
+    /**
+     * Open a journal file, replay it into a Bank, and get it ready for new records
+     * @param path the journal file, created if it doesn't exist
+     * @param durability the durability mode for new records
+     * @param theBank the empty Bank to rebuild from the journal
+     * @return the journal, positioned after its last valid record
+     * @throws IOException if the file can't be read or written, or its content is not a journal
+     */
+    public static Journal open(Path path, Durability durability, Bank theBank) throws IOException {
+        return Journal.open(path, durability, theBank, 0);
+    }
+
+    /**
+     * Open a journal file, replay it into a Bank from a given position, and get it ready for new records
+     * @param path the journal file, created if it doesn't exist
+     * @param durability the durability mode for new records
+     * @param theBank the Bank to rebuild, empty or loaded from a snapshot
+     * @param from where to start replaying, e.g. the position covered by a snapshot, 0 for the beginning
+     * @return the journal, positioned after its last valid record
+     * @throws IOException if the file can't be read or written, or its content is not a journal
+     */
+    public static Journal open(Path path, Durability durability, Bank theBank, long from) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end;
+            LinkedHashMap<String, UnsettledTransfer> unsettled = new LinkedHashMap<String, UnsettledTransfer>();
+            if (channel.size() == 0) {
+                // New journal, write its header
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                channel.force(true);
+                end = HEADER_SIZE;
+            } else {
+                end = Journal.replay(channel, theBank, from, unsettled);
+            }
+
+            // Cut off a torn record left by a crash, and append after the last valid one
+            channel.truncate(end);
+            channel.position(end);
+            Journal journal = new Journal(channel, durability);
+            journal.unsettled = new ArrayList<UnsettledTransfer>(unsettled.values());
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Take the transfers between shards the replay found with their first leg only, to settle them
+     * @return the transfers, in journal order; empty the next time
+     */
+    List<UnsettledTransfer> takeUnsettledTransfers() {
+        List<UnsettledTransfer> transfers = this.unsettled;
+        this.unsettled = new ArrayList<UnsettledTransfer>();
+        return transfers;
+    }
+
+    /**
+     * Apply every valid record of a journal to a Bank
+     * @param channel the journal file
+     * @param theBank the Bank to rebuild
+     * @param from where to start replaying, 0 for the beginning
+     * @param unsettled where to put the transfers between shards found without their second leg,
+     *                  by uuid of `from` and index of the first leg
+     * @return the position after the last valid record
+     * @throws IOException if the file can't be read or is not a journal
+     */
+    private static long replay(FileChannel channel, Bank theBank, long from,
+                               Map<String, UnsettledTransfer> unsettled) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        Journal.readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a journal of this version");
+        }
+
+        long position = Math.max(from, HEADER_SIZE);
+        long size = channel.size();
+        if (position > size) {
+            throw new IOException("Journal is shorter than the snapshot it goes with");
+        }
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        ByteBuffer body = ByteBuffer.allocate(4096);
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_SIZE <= size) {
+            recordHeader.clear();
+            Journal.readFully(channel, recordHeader, position);
+            recordHeader.flip();
+            int length = recordHeader.getInt();
+            int checksum = recordHeader.getInt();
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > size) {
+                break; // Torn record
+            }
+
+            if (body.capacity() < length) {
+                body = ByteBuffer.allocate(length);
+            }
+            body.clear().limit(length);
+            Journal.readFully(channel, body, position + RECORD_HEADER_SIZE);
+            body.flip();
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break; // Torn record
+            }
+
+            Journal.apply(body, theBank, unsettled);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Apply one record to a Bank. Records already there are skipped, so that replaying
+     * on top of a Bank that already has some of them is harmless.
+     * @param body the record, positioned on its type
+     * @param theBank the Bank to rebuild
+     * @param unsettled the transfers between shards without their second leg so far
+     * @throws IOException if the record doesn't fit the Bank
+     */
+    private static void apply(ByteBuffer body, Bank theBank, Map<String, UnsettledTransfer> unsettled)
+            throws IOException {
+        byte type = body.get();
+        switch (type) {
+            case USER: {
+                String uuid = Journal.getString(body);
+                String firstName = Journal.getString(body);
+                String lastName = Journal.getString(body);
+                byte[] pinHash = new byte[body.getInt()];
+                body.get(pinHash);
+                byte[] pinSalt = new byte[body.getInt()];
+                body.get(pinSalt);
+                int pinIterations = body.getInt();
+                if (theBank.findUser(uuid) == null) {
+                    theBank.restoreUser(new User(uuid, firstName, lastName, pinHash, pinSalt, pinIterations, theBank));
+                }
+                break;
+            }
+            case ACCOUNT: {
+                String uuid = Journal.getString(body);
+                String name = Journal.getString(body);
+                String holderId = Journal.getString(body);
+                User holder = theBank.findUser(holderId);
+                if (holder == null) {
+                    throw new IOException("Account " + uuid + " of unknown user " + holderId);
+                }
+                if (theBank.findAccount(uuid) == null) {
+                    theBank.restoreAccount(new Account(uuid, name, holder, theBank));
+                }
+                break;
+            }
+            case TRANSACTION: {
+                Journal.applyLeg(body, theBank, false);
+                break;
+            }
+            case WITHDRAWAL: {
+                Journal.applyLeg(body, theBank, true);
+                break;
+            }
+            case TRANSFER: {
+                // Both legs in one record, so that a crash can't keep only one of them
+                Journal.applyLeg(body, theBank, true);
+                Journal.applyLeg(body, theBank, false);
+                break;
+            }
+            case TRANSFER_OUT: {
+                // The first leg commits the transfer, the second one is still to come
+                String fromId = Journal.getString(body.duplicate());
+                int fromIndex = Journal.applyLeg(body, theBank, true);
+                String toId = Journal.getString(body);
+                String memo = Journal.getString(body);
+                long amount = body.getLong();
+                unsettled.put(fromId + "#" + fromIndex, new UnsettledTransfer(fromId, fromIndex, toId, amount, memo));
+                break;
+            }
+            case TRANSFER_SETTLE: {
+                String fromId = Journal.getString(body);
+                int fromIndex = body.getInt();
+                unsettled.remove(fromId + "#" + fromIndex);
+                Journal.applyLeg(body, theBank, false);
+                break;
+            }
+            case ID_KEYS: {
+                long[] userKeys = Journal.getLongs(body);
+                long[] accountKeys = Journal.getLongs(body);
+                theBank.restoreIdKeys(userKeys, accountKeys);
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Apply one transaction of a record to its account, unless the account already has it
+     * @param body the record, positioned on the transaction
+     * @param theBank the Bank to rebuild
+     * @param limited whether the transaction is a debit counted against the withdrawal limits
+     * @return the index of the transaction in its account
+     * @throws IOException if the account is unknown or transactions are missing before this one
+     */
+    private static int applyLeg(ByteBuffer body, Bank theBank, boolean limited) throws IOException {
+        String accountId = Journal.getString(body);
+        int index = body.getInt();
+        long amount = body.getLong();
+        long timestamp = body.getLong();
+        String memo = Journal.getString(body);
+        Account account = theBank.findAccount(accountId);
+        if (account == null) {
+            throw new IOException("Transaction of unknown account " + accountId);
+        }
+        int known = account.numberOfTransactions();
+        if (index > known) {
+            throw new IOException("Missing transactions " + known + "~" + (index - 1) + " of account " + accountId);
+        }
+        if (index == known) {
+            account.applyTransaction(amount, timestamp, memo, limited);
+        }
+        return index;
+    }
+
+    /**
+     * Append a new user
+     * @param user the user
+     * @return the sequence number to pass to awaitDurable
+     */
+    long appendUser(User user) {
+        ByteBuffer body = Journal.startRecord(USER);
+        body = Journal.putString(body, user.getUUID());
+        body = Journal.putString(body, user.getFirstName());
+        body = Journal.putString(body, user.getLastName());
+        byte[] pinHash = user.getPinHash();
+        byte[] pinSalt = user.getPinSalt();
+        body = Journal.ensureRemaining(body, 12 + pinHash.length + pinSalt.length);
+        body.putInt(pinHash.length).put(pinHash);
+        body.putInt(pinSalt.length).put(pinSalt);
+        body.putInt(user.getPinIterations());
+        return this.append(body);
+    }
+
+    /**
+     * Append the keys of the uuid allocators of a new Bank, before any user or account
+     * @param userKeys the keys of the user uuid allocator
+     * @param accountKeys the keys of the account uuid allocator
+     * @return the sequence number to pass to awaitDurable
+     */
+    long appendIdKeys(long[] userKeys, long[] accountKeys) {
+        ByteBuffer body = Journal.startRecord(ID_KEYS);
+        body = Journal.ensureRemaining(body, 8 + 8 * (userKeys.length + accountKeys.length));
+        body.putInt(userKeys.length);
+        for (long key : userKeys) {
+            body.putLong(key);
+        }
+        body.putInt(accountKeys.length);
+        for (long key : accountKeys) {
+            body.putLong(key);
+        }
+        return this.append(body);
+    }
+
+    /**
+     * Append a new account
+     * @param account the account
+     * @return the sequence number to pass to awaitDurable
+     */
+    long appendAccount(Account account) {
+        ByteBuffer body = Journal.startRecord(ACCOUNT);
+        body = Journal.putString(body, account.getUUID());
+        body = Journal.putString(body, account.getName());
+        body = Journal.putString(body, account.getHolder().getUUID());
+        return this.append(body);
+    }
+
+    /**
+     * Append a new transaction
+     * @param account the account of the transaction
+     * @param index the index of the transaction in the account, 0 is the oldest
+     * @param amount the amount in cents
+     * @param timestamp the time of the transaction, in epoch milliseconds
+     * @param memo the memo
+     * @param limited whether it's a debit counted against the withdrawal limits, written as a WITHDRAWAL record
+     * @return the sequence number to pass to awaitDurable
+     */
+    long appendTransaction(Account account, int index, long amount, long timestamp, String memo, boolean limited) {
+        ByteBuffer body = Journal.startRecord(limited ? WITHDRAWAL : TRANSACTION);
+        body = Journal.putLeg(body, account, index, amount, timestamp, memo);
+        return this.append(body);
+    }
+
+    /**
+     * Append both legs of a transfer as one record
+     * @param from the account the money comes from
+     * @param fromIndex the index of the first leg in `from`
+     * @param fromMemo the memo of the first leg
+     * @param to the account the money goes to
+     * @param toIndex the index of the second leg in `to`
+     * @param toMemo the memo of the second leg
+     * @param amount the amount transferred in cents
+     * @param timestamp the time of the transfer, in epoch milliseconds
+     * @return the sequence number to pass to awaitDurable
+     */
+    long appendTransfer(Account from, int fromIndex, String fromMemo,
+                        Account to, int toIndex, String toMemo, long amount, long timestamp) {
+        ByteBuffer body = Journal.startRecord(TRANSFER);
+        body = Journal.putLeg(body, from, fromIndex, -amount, timestamp, fromMemo);
+        body = Journal.putLeg(body, to, toIndex, amount, timestamp, toMemo);
+        return this.append(body);
+    }
+
+    /**
+     * Append the first leg of a transfer between shards: it commits the transfer, settled by a later
+     * TRANSFER_SETTLE record
+     * @param from the account the money comes from
+     * @param fromIndex the index of the leg in `from`
+     * @param fromMemo the memo of the leg
+     * @param to the account the money goes to
+     * @param memo the memo of the transfer, as typed
+     * @param amount the amount transferred in cents
+     * @param timestamp the time of the leg, in epoch milliseconds
+     * @return the sequence number to pass to awaitDurable
+     */
+    long appendTransferOut(Account from, int fromIndex, String fromMemo, Account to, String memo,
+                           long amount, long timestamp) {
+        ByteBuffer body = Journal.startRecord(TRANSFER_OUT);
+        body = Journal.putLeg(body, from, fromIndex, -amount, timestamp, fromMemo);
+        body = Journal.putString(body, to.getUUID());
+        body = Journal.putString(body, memo);
+        body = Journal.ensureRemaining(body, 8);
+        body.putLong(amount);
+        return this.append(body);
+    }
+
+    /**
+     * Append the second leg of a transfer between shards: the credit of the account the money goes to,
+     * or the refund of the account it came from
+     * @param from the account the money came from
+     * @param fromIndex the index of the first leg in `from`
+     * @param account the account credited
+     * @param index the index of the leg in `account`
+     * @param amount the amount in cents
+     * @param timestamp the time of the leg, in epoch milliseconds
+     * @param memo the memo of the leg
+     * @return the sequence number to pass to awaitDurable
+     */
+    long appendTransferSettle(Account from, int fromIndex, Account account, int index, long amount,
+                              long timestamp, String memo) {
+        ByteBuffer body = Journal.startRecord(TRANSFER_SETTLE);
+        body = Journal.putString(body, from.getUUID());
+        body = Journal.ensureRemaining(body, 4);
+        body.putInt(fromIndex);
+        body = Journal.putLeg(body, account, index, amount, timestamp, memo);
+        return this.append(body);
+    }
+
+    private static ByteBuffer putLeg(ByteBuffer body, Account account, int index,
+                                     long amount, long timestamp, String memo) {
+        body = Journal.putString(body, account.getUUID());
+        body = Journal.ensureRemaining(body, 20);
+        body.putInt(index).putLong(amount).putLong(timestamp);
+        return Journal.putString(body, memo);
+    }
+
+    /**
+     * Copy an encoded record into the shared buffer
+     * @param body the scratch buffer holding the record header placeholder and body
+     * @return the sequence number of the record
+     */
+    private long append(ByteBuffer body) {
+        // Fill in the header now that we know the body
+        int length = body.position() - RECORD_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), RECORD_HEADER_SIZE, length);
+        body.putInt(0, length).putInt(4, (int) crc.getValue());
+        body.flip();
+
+        synchronized (this) {
+            this.checkNotFailed();
+            if (this.pending.remaining() < body.remaining()) {
+                this.makeRoom(body.remaining());
+            }
+            this.pending.put(body);
+            long seq = ++this.appendedSeq;
+
+            // In BUFFERED mode nobody waits, so write once enough is pending
+            if (this.durability == Durability.BUFFERED && this.pending.position() >= BUFFER_FLUSH_SIZE) {
+                this.writePendingLocked();
+            }
+            return seq;
+        }
+    }
+
+    /**
+     * Make room in the pending buffer for a record, called with the monitor held
+     * @param size size of the record
+     */
+    private void makeRoom(int size) {
+        // Wait for a running leader, then write what's pending ourselves
+        while (this.flushing) {
+            this.awaitLeader();
+        }
+        this.writePendingLocked();
+        if (this.pending.capacity() < size) {
+            this.pending = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    /**
+     * Write everything pending while holding the monitor (no fsync), marking it durable if
+     * the durability mode doesn't ask for more
+     */
+    private void writePendingLocked() {
+        this.pending.flip();
+        try {
+            while (this.pending.hasRemaining()) {
+                this.channel.write(this.pending);
+            }
+        } catch (IOException e) {
+            this.failure = e;
+            throw new UncheckedIOException("Journal write failed", e);
+        } finally {
+            this.pending.clear();
+        }
+        if (this.durability != Durability.FSYNC) {
+            this.durableSeq = this.appendedSeq;
+        }
+    }
+
+    /**
+     * Wait until a record is as durable as the durability mode asks. Several threads waiting at
+     * the same time share the same write and fsync.
+     * @param seq the sequence number returned when the record was appended
+     */
+    void awaitDurable(long seq) {
+        if (this.durability == Durability.BUFFERED) {
+            return;
+        }
+        ByteBuffer batch;
+        long target;
+        synchronized (this) {
+            while (true) {
+                this.checkNotFailed();
+                if (this.durableSeq >= seq) {
+                    return;
+                }
+                if (!this.flushing) {
+                    break;
+                }
+                this.awaitLeader();
+            }
+
+            // We are the leader: take everything pending, others keep appending into the other buffer
+            this.flushing = true;
+            batch = this.pending;
+            this.pending = this.writing;
+            target = this.appendedSeq;
+        }
+
+        IOException error = null;
+        batch.flip();
+        try {
+            while (batch.hasRemaining()) {
+                this.channel.write(batch);
+            }
+            if (this.durability == Durability.FSYNC) {
+                this.channel.force(false);
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+
+        synchronized (this) {
+            batch.clear();
+            this.writing = batch;
+            this.flushing = false;
+            if (error != null) {
+                this.failure = error;
+            } else {
+                this.durableSeq = Math.max(this.durableSeq, target);
+            }
+            this.notifyAll();
+            this.checkNotFailed();
+        }
+    }
+
+    /**
+     * Write and force everything appended so far
+     * @throws IOException if the journal can't be written
+     */
+    public void flush() throws IOException {
+        long seq;
+        synchronized (this) {
+            seq = this.appendedSeq;
+            while (this.flushing) {
+                this.awaitLeader();
+            }
+            if (this.pending.position() > 0) {
+                this.writePendingLocked();
+            }
+        }
+        this.channel.force(false);
+        synchronized (this) {
+            this.durableSeq = Math.max(this.durableSeq, seq);
+        }
+    }
+
+    /**
+     * Write and force everything appended so far, and get the position of the end of the journal
+     * @return the position after the last record written
+     * @throws IOException if the journal can't be written
+     */
+    public long flushedPosition() throws IOException {
+        synchronized (this) {
+            this.flush();
+            return this.channel.position();
+        }
+    }
+
+    /**
+     * Flush and close the journal
+     * @throws IOException if the journal can't be written
+     */
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Get the durability mode
+     * @return the durability mode
+     */
+    public Durability getDurability() {
+        return this.durability;
+    }
+
+    private void awaitLeader() {
+        try {
+            this.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal", e);
+        }
+    }
+
+    private void checkNotFailed() {
+        if (this.failure != null) {
+            throw new UncheckedIOException("Journal is unusable after a failed write", this.failure);
+        }
+    }
+
+    /**
+     * Start encoding a record in this thread's scratch buffer, leaving room for its header
+     * @param type the record type
+     * @return the scratch buffer
+     */
+    private static ByteBuffer startRecord(byte type) {
+        ByteBuffer body = SCRATCH.get();
+        body.clear();
+        body.position(RECORD_HEADER_SIZE);
+        body.put(type);
+        return body;
+    }
+
+    /**
+     * Make sure the scratch buffer has room left, growing it if needed
+     * @param body the scratch buffer
+     * @param size the number of bytes about to be put
+     * @return the scratch buffer, maybe a new bigger one
+     */
+    private static ByteBuffer ensureRemaining(ByteBuffer body, int size) {
+        if (body.remaining() >= size) {
+            return body;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(body.capacity() * 2, body.position() + size));
+        body.flip();
+        bigger.put(body);
+        SCRATCH.set(bigger);
+        return bigger;
+    }
+
+    private static ByteBuffer putString(ByteBuffer body, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        body = Journal.ensureRemaining(body, 4 + bytes.length);
+        body.putInt(bytes.length).put(bytes);
+        return body;
+    }
+
+    private static long[] getLongs(ByteBuffer body) {
+        long[] values = new long[body.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = body.getLong();
+        }
+        return values;
+    }
+
+    private static String getString(ByteBuffer body) {
+        byte[] bytes = new byte[body.getInt()];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of journal");
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, for recording on hot paths:
+ * recording is a few atomic increments, no lock and no allocation.
+ *
+ * Buckets are log-linear: every power of two is split into 16 buckets, so a percentile is off by
+ * at most 1/16 (about 6%) of its value, whatever the range, with a fixed array of 960 counters.
+ */
+public class LatencyHistogram {
+    /**
+     * Sub-buckets per power of two, as a number of bits
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUMBER_OF_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private AtomicLongArray buckets;
+    private AtomicLong count;
+    private AtomicLong total;
+    private AtomicLong max;
+
+    /**
+     * Create an empty histogram
+     */
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+        this.count = new AtomicLong();
+        this.total = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Record a latency
+     * @param nanos the latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        this.buckets.incrementAndGet(LatencyHistogram.bucketOf(value));
+        this.count.incrementAndGet();
+        this.total.addAndGet(value);
+        long currentMax = this.max.get();
+        while (value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+            currentMax = this.max.get();
+        }
+    }
+
+    /**
+     * Get the number of latencies recorded
+     * @return the count
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Get the mean latency
+     * @return the mean in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMean() {
+        long n = this.count.get();
+        return n == 0 ? 0 : this.total.get() / n;
+    }
+
+    /**
+     * Get the highest latency recorded
+     * @return the max in nanoseconds
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Get a percentile of the latencies. Reads the counters one by one while others may be recording,
+     * so under load it is a close estimate rather than an exact snapshot.
+     * @param percentile the percentile, e.g. 99.9
+     * @return the upper bound of the bucket holding the percentile in nanoseconds, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = 0;
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            n += this.buckets.get(i);
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.upperBoundOf(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Get the bucket of a value: values under 2 * SUB_BUCKETS have their own bucket,
+     * then each power of two has SUB_BUCKETS buckets
+     */
+    private static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Get the highest value of a bucket
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
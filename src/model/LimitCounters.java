@@ -0,0 +1,133 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The debits of one account counted against a WithdrawalLimits profile: for each window, a ring of
+ * buckets + 1 time buckets with the total and the number of debits of each, and the running totals of
+ * the ring. Moving the ring forward clears the buckets that fell out of the window, at most once each,
+ * so checks and updates take constant time. Guarded by the lock of the account.
+ */
+class LimitCounters {
+    private WithdrawalLimits profile;
+
+    /**
+     * Per window: length of a bucket in milliseconds
+     */
+    private long[] bucketMillis;
+
+    /**
+     * Per window: number of the newest bucket (time / bucketMillis), Long.MIN_VALUE before the first debit
+     */
+    private long[] newest;
+
+    /**
+     * Per window: total and number of the debits of each bucket, bucket b being in slot b % slots
+     */
+    private long[][] amounts;
+    private int[][] counts;
+
+    /**
+     * Per window: total and number of the debits in the ring
+     */
+    private long[] totalAmounts;
+    private long[] totalCounts;
+
+    /**
+     * Create empty counters
+     * @param profile the limits to count against
+     */
+    LimitCounters(WithdrawalLimits profile) {
+        int n = profile.numberOfWindows();
+        this.profile = profile;
+        this.bucketMillis = new long[n];
+        this.newest = new long[n];
+        this.amounts = new long[n][];
+        this.counts = new int[n][];
+        this.totalAmounts = new long[n];
+        this.totalCounts = new long[n];
+        for (int w = 0; w < n; w++) {
+            int buckets = profile.getBuckets(w);
+            // Round up, so that `buckets` buckets cover at least the window
+            this.bucketMillis[w] = (profile.getWindowMillis(w) + buckets - 1) / buckets;
+            this.newest[w] = Long.MIN_VALUE;
+            // One more bucket than the window needs, for the one being filled
+            this.amounts[w] = new long[buckets + 1];
+            this.counts[w] = new int[buckets + 1];
+        }
+    }
+
+    /**
+     * Get the profile the counters count against
+     * @return the profile
+     */
+    WithdrawalLimits getProfile() {
+        return this.profile;
+    }
+
+    /**
+     * Check whether one more debit is within all the windows
+     * @param amount the amount of the debit in cents, not negative
+     * @param timestamp the time of the debit, in epoch milliseconds
+     * @return false if it would go over a limit
+     */
+    boolean allows(long amount, long timestamp) {
+        for (int w = 0; w < this.bucketMillis.length; w++) {
+            this.advance(w, Math.floorDiv(timestamp, this.bucketMillis[w]));
+            if (this.totalCounts[w] + 1 > this.profile.getMaxCount(w)
+                    || amount > this.profile.getMaxAmount(w) - this.totalAmounts[w]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count a debit
+     * @param amount the amount of the debit in cents, not negative
+     * @param timestamp the time of the debit, in epoch milliseconds
+     */
+    void record(long amount, long timestamp) {
+        for (int w = 0; w < this.bucketMillis.length; w++) {
+            long bucket = Math.floorDiv(timestamp, this.bucketMillis[w]);
+            this.advance(w, bucket);
+            int slots = this.counts[w].length;
+            if (bucket <= this.newest[w] - slots) {
+                // Older than the ring
+                continue;
+            }
+            int slot = (int) Math.floorMod(bucket, (long) slots);
+            this.amounts[w][slot] += amount;
+            this.counts[w][slot]++;
+            this.totalAmounts[w] += amount;
+            this.totalCounts[w]++;
+        }
+    }
+
+    /**
+     * Move the ring of a window forward to a bucket, clearing the buckets that fall out of it
+     */
+    private void advance(int w, long bucket) {
+        long newest = this.newest[w];
+        if (bucket <= newest) {
+            return;
+        }
+        int slots = this.counts[w].length;
+        if (newest == Long.MIN_VALUE || bucket - newest >= slots) {
+            // Everything falls out
+            Arrays.fill(this.amounts[w], 0);
+            Arrays.fill(this.counts[w], 0);
+            this.totalAmounts[w] = 0;
+            this.totalCounts[w] = 0;
+        } else {
+            for (long b = newest + 1; b <= bucket; b++) {
+                int slot = (int) Math.floorMod(b, (long) slots);
+                this.totalAmounts[w] -= this.amounts[w][slot];
+                this.totalCounts[w] -= this.counts[w][slot];
+                this.amounts[w][slot] = 0;
+                this.counts[w][slot] = 0;
+            }
+        }
+        this.newest[w] = bucket;
+    }
+}
@@ -0,0 +1,109 @@
+package model;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms and failure counters of the operations of a Bank.
+ * Every operation records into its own OperationStats, exposed through JMX and a periodic text dump.
+ */
+public class Metrics {
+    /**
+     * The operations measured
+     */
+    public enum Operation {
+        LOGIN,
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER,
+        HISTORY
+    }
+
+    private OperationStats[] stats;
+
+    /**
+     * Create the metrics, all empty
+     */
+    public Metrics() {
+        Operation[] operations = Operation.values();
+        this.stats = new OperationStats[operations.length];
+        for (Operation operation : operations) {
+            this.stats[operation.ordinal()] = new OperationStats();
+        }
+    }
+
+    /**
+     * Record one run of an operation
+     * @param operation the operation
+     * @param startNanos System.nanoTime() when it started
+     * @param succeeded false if it was refused, e.g. a wrong pin or insufficient funds
+     */
+    void record(Operation operation, long startNanos, boolean succeeded) {
+        this.stats[operation.ordinal()].record(startNanos, succeeded);
+    }
+
+    /**
+     * Get the metrics of an operation
+     * @param operation the operation
+     * @return its latencies and failures
+     */
+    public OperationStats get(Operation operation) {
+        return this.stats[operation.ordinal()];
+    }
+
+    /**
+     * Register an MBean per operation with the platform MBean server, as
+     * model:type=Operations,bank=(bank name),name=(operation)
+     * @param bankName the name of the bank, to tell banks apart
+     * @throws JMException if an MBean can't be registered, e.g. the name is taken
+     */
+    public void registerMBeans(String bankName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Operation operation : Operation.values()) {
+            ObjectName name = new ObjectName("model:type=Operations,bank=" + ObjectName.quote(bankName)
+                    + ",name=" + operation.name().toLowerCase(Locale.ROOT));
+            server.registerMBean(this.get(operation), name);
+        }
+    }
+
+    /**
+     * Print a table of the metrics, one line per operation
+     * @param out where to print
+     */
+    public void dump(PrintStream out) {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-9s %10s %9s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "failures", "mean(us)", "p50(us)", "p99(us)", "p999(us)", "max(us)"));
+        for (Operation operation : Operation.values()) {
+            OperationStats s = this.get(operation);
+            table.append(String.format("%-9s %10d %9d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    operation.name().toLowerCase(Locale.ROOT), s.getCount(), s.getFailures(), s.getMeanMicros(),
+                    s.getP50Micros(), s.getP99Micros(), s.getP999Micros(), s.getMaxMicros()));
+        }
+        out.print(table);
+    }
+
+    /**
+     * Print the metrics periodically, in the background
+     * @param out where to print
+     * @param period time between two dumps
+     * @param unit unit of `period`
+     * @return the scheduler, shut it down to stop the dumps
+     */
+    public ScheduledExecutorService schedule(PrintStream out, long period, TimeUnit unit) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "atm-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> this.dump(out), period, period, unit);
+        return scheduler;
+    }
+}
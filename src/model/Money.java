@@ -0,0 +1,141 @@
+package model;
+
+/**
+ * Amounts of money as a primitive long number of cents.
+ * A double can't hold most cents exactly, so summing a long history of them drifts;
+ * with cents in a long the sums are exact, and nothing gets boxed or allocated.
+ * This class only has static helpers, a money value is just a long.
+ */
+public final class Money {
+    /**
+     * Number of cents in a dollar
+     */
+    public static final long CENTS_PER_DOLLAR = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Make an amount from dollars and cents
+     * @param dollars the dollars
+     * @param cents the cents, 0~99
+     * @return the amount in cents
+     */
+    public static long of(long dollars, int cents) {
+        return Math.addExact(Math.multiplyExact(dollars, CENTS_PER_DOLLAR), cents);
+    }
+
+    /**
+     * Add two amounts
+     * @param a an amount in cents
+     * @param b another amount in cents
+     * @return a + b, throws ArithmeticException if it overflows
+     */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * Subtract an amount from another
+     * @param a an amount in cents
+     * @param b the amount in cents to take away
+     * @return a - b, throws ArithmeticException if it overflows
+     */
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Compare two amounts
+     * @param a an amount in cents
+     * @param b another amount in cents
+     * @return negative, 0 or positive as a is less than, equal to or greater than b
+     */
+    public static int compare(long a, long b) {
+        return Long.compare(a, b);
+    }
+
+    /**
+     * Parse an amount typed by the user, like "12", "12.5", "$12.50" or "-3.10",
+     * straight into cents without going through a double
+     * @param text the text to parse
+     * @return the amount in cents
+     * @throws NumberFormatException if the text is not an amount with at most 2 decimals
+     * @throws ArithmeticException if the amount doesn't fit in a long number of cents
+     */
+    public static long parse(CharSequence text) {
+        int i = 0;
+        int end = text.length();
+        boolean negative = false;
+
+        // Optional sign, then optional dollar sign
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        if (i < end && text.charAt(i) == '$') {
+            i++;
+        }
+
+        // The dollars
+        long cents = 0;
+        int digits = 0;
+        while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            cents = Math.addExact(Math.multiplyExact(cents, 10), text.charAt(i) - '0');
+            digits++;
+            i++;
+        }
+        cents = Math.multiplyExact(cents, CENTS_PER_DOLLAR);
+
+        // The cents, at most 2 decimals
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            int decimals = 0;
+            while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                if (decimals == 2) {
+                    throw new NumberFormatException("More than 2 decimals: " + text);
+                }
+                cents = Math.addExact(cents, (text.charAt(i) - '0') * (decimals == 0 ? 10 : 1));
+                decimals++;
+                digits++;
+                i++;
+            }
+        }
+
+        if (digits == 0 || i != end) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Format an amount as dollars with 2 decimals, like "12.50" or "-3.10"
+     * @param cents the amount in cents
+     * @return the formatted amount
+     */
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    /**
+     * Append an amount as dollars with 2 decimals to a StringBuilder
+     * @param sb where to append
+     * @param cents the amount in cents
+     * @return the same StringBuilder
+     */
+    public static StringBuilder appendTo(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+        }
+        // Work on the negative value, so that Long.MIN_VALUE works too
+        long negative = cents < 0 ? cents : -cents;
+        long remainder = -(negative % CENTS_PER_DOLLAR);
+        sb.append(-(negative / CENTS_PER_DOLLAR));
+        sb.append('.');
+        if (remainder < 10) {
+            sb.append('0');
+        }
+        sb.append(remainder);
+        return sb;
+    }
+}
@@ -0,0 +1,71 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies and failures of one ATM operation
+ */
+public class OperationStats implements OperationStatsMBean {
+    private LatencyHistogram latencies;
+    private AtomicLong failures;
+
+    OperationStats() {
+        this.latencies = new LatencyHistogram();
+        this.failures = new AtomicLong();
+    }
+
+    /**
+     * Record one run of the operation
+     * @param startNanos System.nanoTime() when it started
+     * @param succeeded false if it was refused, e.g. a wrong pin or insufficient funds
+     */
+    void record(long startNanos, boolean succeeded) {
+        this.latencies.record(System.nanoTime() - startNanos);
+        if (!succeeded) {
+            this.failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the latency histogram of the operation
+     * @return the histogram, in nanoseconds
+     */
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    @Override
+    public long getCount() {
+        return this.latencies.getCount();
+    }
+
+    @Override
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return this.latencies.getMean() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return this.latencies.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return this.latencies.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return this.latencies.getPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return this.latencies.getMax() / 1000.0;
+    }
+}
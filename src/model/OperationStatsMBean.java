@@ -0,0 +1,20 @@
+package model;
+
+/**
+ * JMX view of the metrics of one ATM operation, latencies in microseconds
+ */
+public interface OperationStatsMBean {
+    long getCount();
+
+    long getFailures();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,268 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks PINs for Bank.userLogin, built to hold up under a storm of logins.
+ *
+ * PINs are hashed with a salted, iterated SHA-256: hash = SHA-256(salt + pin), then SHA-256(hash)
+ * again (iterations - 1) times. The salt and the number of iterations are stored next to the hash in
+ * the User, so the cost can be raised for new users without breaking the old ones. 0 iterations means
+ * the original unsalted MD5 hash. Digesters are created once per thread and reused.
+ *
+ * Failed attempts are counted per user ID, so that brute-force traffic against an ID is turned away before
+ * any hashing. An ID is locked out while it has maxFailures failed attempts within the last lockoutMillis:
+ * a sliding window, so no more than maxFailures wrong pins are ever checked within any lockoutMillis.
+ * An attempt takes its place in the window before its pin is hashed, atomically with the check, so that
+ * parallel guesses can't all get past the check before any of them fails; a successful login gives its place
+ * back and clears the failures of its ID.
+ *
+ * Each ID has its own entry, keyed by the exact ID, and failures against one ID never lock out another.
+ * Only the IDs of existing users are counted (there is nothing to guess for the others, and they are turned
+ * away without hashing anyway), so the table holds at most one entry per user, dropped once it has nothing
+ * left to count.
+ */
+public class PinAuthenticator {
+    /**
+     * Default number of hash iterations for new PINs
+     */
+    public static final int DEFAULT_ITERATIONS = 1024;
+
+    /**
+     * Size of the salt of new PINs, in bytes
+     */
+    private static final int SALT_SIZE = 16;
+
+    private static final ThreadLocal<MessageDigest> SHA256 =
+            ThreadLocal.withInitial(() -> PinAuthenticator.digest("SHA-256"));
+    private static final ThreadLocal<MessageDigest> MD5 =
+            ThreadLocal.withInitial(() -> PinAuthenticator.digest("MD5"));
+
+    private int iterations;
+    private int maxFailures;
+    private long lockoutMillis;
+    private SecureRandom random;
+
+    /**
+     * For each user ID with failed attempts or attempts in progress, their times.
+     * Only read and written inside compute calls of the map, which lock the entry.
+     */
+    private ConcurrentHashMap<String, Attempts> attempts;
+
+    /**
+     * The attempts of a user ID: the times of its last maxFailures failures, in a ring, and the number
+     * of attempts whose pin is being checked
+     */
+    private static class Attempts {
+        final long[] failedAt;
+        int next;
+        int failed;
+        int inProgress;
+
+        Attempts(int maxFailures) {
+            this.failedAt = new long[maxFailures];
+        }
+
+        /**
+         * Count the failures since a time
+         */
+        int failedSince(long since) {
+            int count = 0;
+            for (int i = 0; i < this.failed; i++) {
+                if (this.failedAt[i] > since) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        void recordFailure(long now) {
+            this.failedAt[this.next] = now;
+            this.next = (this.next + 1) % this.failedAt.length;
+            this.failed = Math.min(this.failed + 1, this.failedAt.length);
+        }
+
+        boolean isEmpty(long since) {
+            return this.inProgress == 0 && this.failedSince(since) == 0;
+        }
+    }
+
+    /**
+     * Create an authenticator with the default settings: DEFAULT_ITERATIONS,
+     * and 5 failed attempts within any 15 minutes lock an ID, until the first of them is 15 minutes old
+     */
+    public PinAuthenticator() {
+        this(DEFAULT_ITERATIONS, 5, 15 * 60 * 1000);
+    }
+
+    /**
+     * Create an authenticator
+     * @param iterations number of hash iterations for new PINs, at least 1
+     * @param maxFailures number of failed attempts after which an ID is locked
+     * @param lockoutMillis length of the sliding window failed attempts are counted in
+     */
+    public PinAuthenticator(int iterations, int maxFailures, long lockoutMillis) {
+        if (iterations < 1 || maxFailures < 1 || lockoutMillis < 1) {
+            throw new IllegalArgumentException("Invalid authenticator settings");
+        }
+        this.iterations = iterations;
+        this.maxFailures = maxFailures;
+        this.lockoutMillis = lockoutMillis;
+        this.random = new SecureRandom();
+        this.attempts = new ConcurrentHashMap<String, Attempts>();
+    }
+
+    /**
+     * Get the number of hash iterations used for new PINs
+     * @return the number of iterations
+     */
+    public int getIterations() {
+        return this.iterations;
+    }
+
+    /**
+     * Make a new random salt
+     * @return the salt
+     */
+    public byte[] newSalt() {
+        byte[] salt = new byte[SALT_SIZE];
+        this.random.nextBytes(salt);
+        return salt;
+    }
+
+    /**
+     * Make new random salts at once, e.g. for a bulk import: one call to the shared random generator
+     * @param count number of salts
+     * @return the salts
+     */
+    byte[][] newSalts(int count) {
+        byte[] bytes = new byte[count * SALT_SIZE];
+        this.random.nextBytes(bytes);
+        byte[][] salts = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            salts[i] = Arrays.copyOfRange(bytes, i * SALT_SIZE, (i + 1) * SALT_SIZE);
+        }
+        return salts;
+    }
+
+    /**
+     * Check a login attempt: reject it without hashing if the ID is locked out, otherwise check the pin
+     * and count the attempt
+     * @param userId the user ID typed
+     * @param user the user with that ID, null if there is none
+     * @param pin the pin typed
+     * @return true if the user exists, is not locked out and the pin matches
+     */
+    public boolean authenticate(String userId, User user, String pin) {
+        if (user == null || !this.reserve(userId)) {
+            return false;
+        }
+        boolean valid = false;
+        try {
+            valid = user.validatePin(pin);
+        } finally {
+            this.release(userId, valid);
+        }
+        return valid;
+    }
+
+    /**
+     * Whether an ID is currently locked out after too many failed attempts
+     * @param userId the user ID
+     * @return true if logins with this ID are rejected for now
+     */
+    public boolean isLockedOut(String userId) {
+        long since = System.currentTimeMillis() - this.lockoutMillis;
+        boolean[] locked = new boolean[1];
+        this.attempts.computeIfPresent(userId, (id, entry) -> {
+            locked[0] = entry.failedSince(since) >= this.maxFailures;
+            // Nothing left to count: drop the entry
+            return entry.isEmpty(since) ? null : entry;
+        });
+        return locked[0];
+    }
+
+    /**
+     * Take a place in the window for an attempt, unless the failures and the attempts in progress already
+     * fill it
+     * @return false if the ID is locked out
+     */
+    private boolean reserve(String userId) {
+        long since = System.currentTimeMillis() - this.lockoutMillis;
+        boolean[] reserved = new boolean[1];
+        this.attempts.compute(userId, (id, entry) -> {
+            if (entry == null) {
+                entry = new Attempts(this.maxFailures);
+            }
+            if (entry.failedSince(since) + entry.inProgress < this.maxFailures) {
+                entry.inProgress++;
+                reserved[0] = true;
+            }
+            return entry;
+        });
+        return reserved[0];
+    }
+
+    /**
+     * End an attempt: record it if it failed, clear the failures of the ID if it succeeded
+     */
+    private void release(String userId, boolean succeeded) {
+        long now = System.currentTimeMillis();
+        this.attempts.computeIfPresent(userId, (id, entry) -> {
+            entry.inProgress--;
+            if (succeeded) {
+                entry.failed = 0;
+            } else {
+                entry.recordFailure(now);
+            }
+            return entry.isEmpty(now - this.lockoutMillis) ? null : entry;
+        });
+    }
+
+    /**
+     * Hash a pin
+     * @param pin the pin
+     * @param salt the salt
+     * @param iterations number of iterations, 0 for the original unsalted MD5 hash
+     * @return the hash
+     */
+    public static byte[] hash(String pin, byte[] salt, int iterations) {
+        if (iterations == 0) {
+            return MD5.get().digest(pin.getBytes());
+        }
+        MessageDigest sha = SHA256.get();
+        sha.update(salt);
+        sha.update(pin.getBytes(StandardCharsets.UTF_8));
+        byte[] hash = sha.digest();
+        for (int i = 1; i < iterations; i++) {
+            hash = sha.digest(hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Check a pin against a stored hash, in constant time
+     * @param pin the pin to check
+     * @param salt the salt stored with the hash
+     * @param iterations the number of iterations stored with the hash
+     * @param expected the stored hash
+     * @return whether the pin matches
+     */
+    public static boolean matches(String pin, byte[] salt, int iterations, byte[] expected) {
+        return MessageDigest.isEqual(PinAuthenticator.hash(pin, salt, iterations), expected);
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java runtime has to provide MD5 and SHA-256
+            throw new IllegalStateException("error: caught NoSuchAlgorithmException", e);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compact binary snapshot of a Bank, written to and read from memory-mapped files,
+ * so that startup loads the snapshot and only replays the journal written after it.
+ *
+ * File layout: magic, version, journal position covered, keys of the user and account uuid allocators,
+ * number of users, number of accounts,
+ * then the users (uuid, names, pin hash with its salt and iterations), then the accounts (uuid, name, holder uuid,
+ * memo dictionary with whether each memo counts against the withdrawal limits, then their transactions as whole
+ * columns of amounts, timestamps and memo ids).
+ * Records of the journal after the covered position may already be in the snapshot:
+ * the journal replay skips what the Bank already has.
+ */
+public class Snapshot {
+    private static final int MAGIC = 0x41544D53; // "ATMS"
+    private static final int VERSION = 4;
+
+    /**
+     * Size of the part of the file mapped at a time
+     */
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Write a snapshot of a Bank. It goes to a temporary file first and replaces `path` only once complete,
+     * so a crash while writing leaves the previous snapshot in place.
+     * @param theBank the bank, with a journal
+     * @param path the snapshot file
+     * @throws IOException if the snapshot can't be written
+     */
+    public static void write(Bank theBank, Path path) throws IOException {
+        Journal journal = theBank.getJournal();
+        if (journal == null) {
+            throw new IllegalStateException("A snapshot goes with a journal, the bank has none");
+        }
+
+        // Everything in the journal up to here will be in the snapshot: its users and accounts are in the lists
+        // we copy next, and its transactions were applied under the account locks we take below
+        long journalPosition = journal.flushedPosition();
+        // A transfer between shards is committed by the record of its debit, its credit may come after:
+        // wait for it, so that the replay from here never misses the credit of a debit in the snapshot
+        theBank.awaitCrossShardTransfers();
+        List<User> users;
+        List<Account> accounts;
+        synchronized (theBank) {
+            users = theBank.getUsers();
+            accounts = theBank.getAccounts();
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedOutput out = new MappedOutput(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(journalPosition);
+            for (long[] keys : new long[][] {theBank.getUserIdKeys(), theBank.getAccountIdKeys()}) {
+                out.putInt(keys.length);
+                for (long key : keys) {
+                    out.putLong(key);
+                }
+            }
+            out.putInt(users.size());
+            out.putInt(accounts.size());
+
+            for (User user : users) {
+                out.putString(user.getUUID());
+                out.putString(user.getFirstName());
+                out.putString(user.getLastName());
+                byte[] pinHash = user.getPinHash();
+                out.putInt(pinHash.length);
+                out.putBytes(pinHash);
+                byte[] pinSalt = user.getPinSalt();
+                out.putInt(pinSalt.length);
+                out.putBytes(pinSalt);
+                out.putInt(user.getPinIterations());
+            }
+
+            for (Account account : accounts) {
+                out.putString(account.getUUID());
+                out.putString(account.getName());
+                out.putString(account.getHolder().getUUID());
+                account.getLock().lock();
+                try {
+                    TransactionLog log = account.getTransactionLog();
+                    out.putInt(log.numberOfMemos());
+                    for (int m = 0; m < log.numberOfMemos(); m++) {
+                        out.putString(log.memoAt(m));
+                        out.putInt(log.isLimitedMemo(m) ? 1 : 0);
+                    }
+                    int size = log.size();
+                    out.putInt(size);
+                    for (int i = 0; i < size; i++) {
+                        out.putLong(log.amount(i));
+                    }
+                    for (int i = 0; i < size; i++) {
+                        out.putLong(log.timestamp(i));
+                    }
+                    for (int i = 0; i < size; i++) {
+                        out.putInt(log.memoIdAt(i));
+                    }
+                } finally {
+                    account.getLock().unlock();
+                }
+            }
+
+            out.finish();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load a snapshot into an empty Bank
+     * @param path the snapshot file
+     * @param theBank the empty bank
+     * @return the journal position covered by the snapshot, where the replay must start
+     * @throws IOException if the snapshot can't be read or is not a snapshot
+     */
+    public static long load(Path path, Bank theBank) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedInput in = new MappedInput(channel);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not a snapshot of this version: " + path);
+            }
+            long journalPosition = in.getLong();
+            long[][] idKeys = new long[2][];
+            for (int k = 0; k < idKeys.length; k++) {
+                idKeys[k] = new long[in.getInt()];
+                for (int i = 0; i < idKeys[k].length; i++) {
+                    idKeys[k][i] = in.getLong();
+                }
+            }
+            theBank.restoreIdKeys(idKeys[0], idKeys[1]);
+            int numberOfUsers = in.getInt();
+            int numberOfAccounts = in.getInt();
+
+            for (int u = 0; u < numberOfUsers; u++) {
+                String uuid = in.getString();
+                String firstName = in.getString();
+                String lastName = in.getString();
+                byte[] pinHash = in.getBytes(in.getInt());
+                byte[] pinSalt = in.getBytes(in.getInt());
+                int pinIterations = in.getInt();
+                theBank.restoreUser(new User(uuid, firstName, lastName, pinHash, pinSalt, pinIterations, theBank));
+            }
+
+            for (int a = 0; a < numberOfAccounts; a++) {
+                String uuid = in.getString();
+                String name = in.getString();
+                String holderId = in.getString();
+                User holder = theBank.findUser(holderId);
+                if (holder == null) {
+                    throw new IOException("Account " + uuid + " of unknown user " + holderId);
+                }
+
+                String[] memos = new String[in.getInt()];
+                boolean[] limitedMemos = new boolean[memos.length];
+                for (int m = 0; m < memos.length; m++) {
+                    memos[m] = in.getString();
+                    limitedMemos[m] = in.getInt() != 0;
+                }
+                int size = in.getInt();
+                long[] amounts = new long[size];
+                long[] timestamps = new long[size];
+                int[] memoIds = new int[size];
+                for (int i = 0; i < size; i++) {
+                    amounts[i] = in.getLong();
+                }
+                for (int i = 0; i < size; i++) {
+                    timestamps[i] = in.getLong();
+                }
+                for (int i = 0; i < size; i++) {
+                    memoIds[i] = in.getInt();
+                }
+
+                Account account = new Account(uuid, name, holder, theBank);
+                account.restoreTransactions(amounts, timestamps, memoIds, size, memos, limitedMemos);
+                theBank.restoreAccount(account);
+            }
+            return journalPosition;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot: " + path, e);
+        }
+    }
+
+    /**
+     * Write a snapshot of a Bank periodically, in the background
+     * @param theBank the bank, with a journal
+     * @param path the snapshot file
+     * @param period time between two snapshots
+     * @param unit unit of `period`
+     * @return the scheduler, shut it down to stop the snapshots
+     */
+    public static ScheduledExecutorService schedule(Bank theBank, Path path, long period, TimeUnit unit) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "atm-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                Snapshot.write(theBank, path);
+            } catch (IOException e) {
+                // Keep the previous snapshot and try again next time, the journal still has everything
+                System.err.println("error: snapshot failed: " + e.getMessage());
+            }
+        }, period, period, unit);
+        return scheduler;
+    }
+
+    /**
+     * Writes a file through memory-mapped windows of WINDOW_SIZE bytes, mapping the next one when full
+     */
+    private static class MappedOutput {
+        private FileChannel channel;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedOutput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.windowStart = 0;
+            this.window = channel.map(FileChannel.MapMode.READ_WRITE, 0, WINDOW_SIZE);
+        }
+
+        /**
+         * Make sure the current window has room for `size` bytes, mapping the next window if needed
+         */
+        private void ensure(int size) throws IOException {
+            if (this.window.remaining() >= size) {
+                return;
+            }
+            long position = this.windowStart + this.window.position();
+            this.window.force();
+            this.windowStart = position;
+            this.window = this.channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(WINDOW_SIZE, size));
+        }
+
+        void putInt(int value) throws IOException {
+            this.ensure(4);
+            this.window.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            this.ensure(8);
+            this.window.putLong(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            this.ensure(bytes.length);
+            this.window.put(bytes);
+        }
+
+        void putString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            this.putInt(bytes.length);
+            this.putBytes(bytes);
+        }
+
+        /**
+         * Force the last window and cut the file to what was actually written
+         */
+        void finish() throws IOException {
+            long size = this.windowStart + this.window.position();
+            this.window.force();
+            this.channel.truncate(size);
+            this.channel.force(true);
+        }
+    }
+
+    /**
+     * Reads a file through memory-mapped windows of WINDOW_SIZE bytes, mapping the next one when needed
+     */
+    private static class MappedInput {
+        private FileChannel channel;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long size;
+
+        MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowStart = 0;
+            this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW_SIZE, this.size));
+        }
+
+        /**
+         * Make sure the current window has `size` bytes left, mapping the next window if needed
+         */
+        private void ensure(int needed) throws IOException {
+            if (this.window.remaining() >= needed) {
+                return;
+            }
+            long position = this.windowStart + this.window.position();
+            if (position + needed > this.size) {
+                throw new BufferUnderflowException();
+            }
+            this.windowStart = position;
+            this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(Math.max(WINDOW_SIZE, needed), this.size - position));
+        }
+
+        int getInt() throws IOException {
+            this.ensure(4);
+            return this.window.getInt();
+        }
+
+        long getLong() throws IOException {
+            this.ensure(8);
+            return this.window.getLong();
+        }
+
+        byte[] getBytes(int length) throws IOException {
+            this.ensure(length);
+            byte[] bytes = new byte[length];
+            this.window.get(bytes);
+            return bytes;
+        }
+
+        String getString() throws IOException {
+            return new String(this.getBytes(this.getInt()), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,613 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the statements of all the accounts of a Bank, either one file per account or one combined file.
+ *
+ * Accounts are split into parts of ACCOUNTS_PER_PART consecutive accounts, exported in parallel by worker
+ * threads. A worker copies the transactions of an account out of its log CHUNK_SIZE at a time (the account
+ * lock is only held for the copy), renders them straight to bytes in its own reusable buffer, and writes the
+ * buffer to a FileChannel when it is full: no String per line, and the memory used doesn't depend on the
+ * number of accounts or the length of their history. For the combined file, every part goes to a part file
+ * first, and the parts are appended in account order with FileChannel.transferTo, which copies them inside
+ * the kernel; only a few parts per worker are written ahead of the one being appended.
+ *
+ * Every statement starts with an "Opening balance" line (the balance before the period, without an amount),
+ * followed by the transactions of the period, oldest first, with the balance after each of them.
+ * Dates are ISO-8601 instants in UTC with milliseconds ("2026-10-18T09:00:00.000Z").
+ *
+ * CSV format: a header line, then account,date,amount,balance,memo. Memos with a comma, a quote or a line
+ * break are quoted, doubling their quotes.
+ * Fixed-width format: a header line, then the account on 12 bytes, the date on 24, the amount and the
+ * balance right aligned on 16 each, and the memo on 48 (cut, line breaks turned into spaces), one space
+ * between columns.
+ */
+public class StatementExporter {
+    /**
+     * File formats the exporter writes
+     */
+    public enum Format {
+        CSV,
+        FIXED_WIDTH
+    }
+
+    /**
+     * Number of transactions copied out of an account at a time
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Size of the output buffer of a worker
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Number of consecutive accounts a worker takes at a time
+     */
+    private static final int ACCOUNTS_PER_PART = 64;
+
+    /**
+     * Number of part files per worker written ahead of the one appended to the combined file
+     */
+    private static final int PARTS_AHEAD_PER_WORKER = 4;
+
+    /**
+     * Number of rendered memos a worker keeps, memos repeat a lot within an account
+     */
+    private static final int MEMO_CACHE_SIZE = 4096;
+
+    /**
+     * Widths of the columns of the fixed-width format, in bytes
+     */
+    private static final int ACCOUNT_WIDTH = 12;
+    private static final int DATE_WIDTH = 24;
+    private static final int AMOUNT_WIDTH = 16;
+    private static final int MEMO_WIDTH = 48;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private static final String OPENING_MEMO = "Opening balance";
+
+    private Bank theBank;
+    private Format format;
+    private int numberOfWorkers;
+
+    /**
+     * Create an exporter for a bank
+     * @param theBank the bank owning the accounts
+     * @param format the format of the statements
+     * @param numberOfWorkers number of threads writing statements
+     */
+    public StatementExporter(Bank theBank, Format format, int numberOfWorkers) {
+        if (numberOfWorkers < 1) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        this.theBank = theBank;
+        this.format = format;
+        this.numberOfWorkers = numberOfWorkers;
+    }
+
+    /**
+     * Write the whole history of every account, one file per account
+     * @param directory where to write the files, named after the account uuid, created if needed
+     * @return the report of the export
+     * @throws IOException if a file can't be written
+     */
+    public StatementReport exportEach(Path directory) throws IOException {
+        return this.exportEach(directory, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Write the statement of a period of every account, one file per account
+     * @param directory where to write the files, named after the account uuid, created if needed
+     * @param from the start of the period in epoch milliseconds, included
+     * @param to the end of the period in epoch milliseconds, included
+     * @return the report of the export
+     * @throws IOException if a file can't be written
+     */
+    public StatementReport exportEach(Path directory, long from, long to) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        List<Account> accounts = this.theBank.getAccounts();
+        StatementReport report = new StatementReport();
+        String extension = this.format == Format.CSV ? ".csv" : ".txt";
+        this.run(StatementExporter.numberOfParts(accounts), null, (part, worker) -> {
+            for (Account account : StatementExporter.partOf(accounts, part)) {
+                try (FileChannel channel = FileChannel.open(directory.resolve(account.getUUID() + extension),
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    worker.start(channel);
+                    worker.putBytes(this.header());
+                    long transactions = worker.writeStatement(account, from, to);
+                    report.recordAccount(transactions, worker.finish());
+                }
+            }
+        }, null);
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Write the whole history of every account into one file
+     * @param path the file, replaced only once complete
+     * @return the report of the export
+     * @throws IOException if the file can't be written
+     */
+    public StatementReport exportCombined(Path path) throws IOException {
+        return this.exportCombined(path, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Write the statement of a period of every account into one file, in the order of Bank.getAccounts()
+     * @param path the file, replaced only once complete
+     * @param from the start of the period in epoch milliseconds, included
+     * @param to the end of the period in epoch milliseconds, included
+     * @return the report of the export
+     * @throws IOException if the file can't be written
+     */
+    public StatementReport exportCombined(Path path, long from, long to) throws IOException {
+        long start = System.nanoTime();
+        List<Account> accounts = this.theBank.getAccounts();
+        StatementReport report = new StatementReport();
+        int numberOfParts = StatementExporter.numberOfParts(accounts);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Semaphore partsAhead = new Semaphore(this.numberOfWorkers * PARTS_AHEAD_PER_WORKER);
+
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.wrap(this.header());
+            while (header.hasRemaining()) {
+                report.recordBytes(out.write(header));
+            }
+
+            this.run(numberOfParts, partsAhead, (part, worker) -> {
+                try (FileChannel channel = FileChannel.open(StatementExporter.partPath(temporary, part),
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    worker.start(channel);
+                    for (Account account : StatementExporter.partOf(accounts, part)) {
+                        long before = worker.position();
+                        long transactions = worker.writeStatement(account, from, to);
+                        report.recordAccount(transactions, worker.position() - before);
+                    }
+                    worker.finish();
+                }
+            }, part -> {
+                // Parts are appended in order, as soon as each is complete
+                Path partPath = StatementExporter.partPath(temporary, part);
+                try (FileChannel in = FileChannel.open(partPath, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    for (long position = 0; position < size; ) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+                Files.delete(partPath);
+                partsAhead.release();
+            });
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            for (int part = 0; part < numberOfParts; part++) {
+                Files.deleteIfExists(StatementExporter.partPath(temporary, part));
+            }
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Work done on a part by a worker
+     */
+    private interface PartTask {
+        void export(int part, Worker worker) throws IOException;
+    }
+
+    /**
+     * Work done on a part by the calling thread, in part order, once the part is exported
+     */
+    private interface PartAction {
+        void accept(int part) throws IOException;
+    }
+
+    /**
+     * Export the parts on the worker threads
+     * @param numberOfParts number of parts
+     * @param admission if not null, a permit is taken before each part, for `afterPart` to give back
+     * @param task what the workers do with a part
+     * @param afterPart what the calling thread does with each part once exported, may be null
+     * @throws IOException if a part failed, the other workers are stopped
+     */
+    private void run(int numberOfParts, Semaphore admission, PartTask task, PartAction afterPart) throws IOException {
+        // Parts are taken in order, so with `admission` the part waited for is always taken by a worker
+        AtomicInteger next = new AtomicInteger();
+        ArrayList<CompletableFuture<Void>> done = new ArrayList<CompletableFuture<Void>>(numberOfParts);
+        for (int part = 0; part < numberOfParts; part++) {
+            done.add(new CompletableFuture<Void>());
+        }
+
+        ArrayList<Thread> workers = new ArrayList<Thread>();
+        for (int w = 0; w < Math.min(this.numberOfWorkers, numberOfParts); w++) {
+            Thread thread = new Thread(() -> {
+                Worker worker = new Worker();
+                while (true) {
+                    if (admission != null) {
+                        try {
+                            admission.acquire();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    int part = next.getAndIncrement();
+                    if (part >= numberOfParts) {
+                        return;
+                    }
+                    try {
+                        task.export(part, worker);
+                        done.get(part).complete(null);
+                    } catch (IOException | RuntimeException | Error e) {
+                        done.get(part).completeExceptionally(e);
+                        return;
+                    }
+                }
+            }, "atm-statement-" + w);
+            thread.start();
+            workers.add(thread);
+        }
+
+        try {
+            for (int part = 0; part < numberOfParts; part++) {
+                try {
+                    done.get(part).join();
+                } catch (CompletionException e) {
+                    throw new IOException("Statement export failed: " + e.getCause().getMessage(), e.getCause());
+                }
+                if (afterPart != null) {
+                    afterPart.accept(part);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Stop the workers before giving up
+            next.set(numberOfParts);
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            StatementExporter.joinAll(workers);
+            throw e;
+        }
+        StatementExporter.joinAll(workers);
+    }
+
+    private static void joinAll(List<Thread> workers) {
+        boolean interrupted = false;
+        for (Thread worker : workers) {
+            while (true) {
+                try {
+                    worker.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int numberOfParts(List<Account> accounts) {
+        return (accounts.size() + ACCOUNTS_PER_PART - 1) / ACCOUNTS_PER_PART;
+    }
+
+    private static List<Account> partOf(List<Account> accounts, int part) {
+        return accounts.subList(part * ACCOUNTS_PER_PART, Math.min(accounts.size(), (part + 1) * ACCOUNTS_PER_PART));
+    }
+
+    private static Path partPath(Path temporary, int part) {
+        return temporary.resolveSibling(temporary.getFileName() + ".part" + part);
+    }
+
+    /**
+     * Get the header line of the format
+     */
+    private byte[] header() {
+        String header;
+        if (this.format == Format.CSV) {
+            header = "account,date,amount,balance,memo\n";
+        } else {
+            header = String.format("%-" + ACCOUNT_WIDTH + "s %-" + DATE_WIDTH + "s %" + AMOUNT_WIDTH + "s %"
+                    + AMOUNT_WIDTH + "s %-" + MEMO_WIDTH + "s\n", "account", "date", "amount", "balance", "memo");
+        }
+        return header.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * What a worker thread reuses from one statement to the next: its output buffer, the chunk of
+     * transactions copied out of the account, the rendered memos and the rendered current day
+     */
+    private class Worker {
+        private ByteBuffer buffer;
+        private FileChannel channel;
+
+        /**
+         * Bytes written to `channel` so far, not counting what's still in the buffer
+         */
+        private long written;
+
+        private long[] amounts;
+        private long[] timestamps;
+        private String[] memos;
+        private HashMap<String, byte[]> renderedMemos;
+
+        /**
+         * Room to render a number, right aligned
+         */
+        private byte[] digits;
+
+        /**
+         * The day of the last date written, and its "yyyy-mm-ddT"
+         */
+        private long day;
+        private byte[] dayPrefix;
+
+        Worker() {
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.amounts = new long[CHUNK_SIZE];
+            this.timestamps = new long[CHUNK_SIZE];
+            this.memos = new String[CHUNK_SIZE];
+            this.renderedMemos = new HashMap<String, byte[]>();
+            this.digits = new byte[24];
+            this.day = Long.MIN_VALUE;
+        }
+
+        /**
+         * Start writing to a file
+         */
+        void start(FileChannel channel) {
+            this.channel = channel;
+            this.written = 0;
+            this.buffer.clear();
+        }
+
+        /**
+         * Get the number of bytes written since start, buffered ones included
+         */
+        long position() {
+            return this.written + this.buffer.position();
+        }
+
+        /**
+         * Write what's left in the buffer
+         * @return the number of bytes written since start
+         */
+        long finish() throws IOException {
+            this.flush();
+            this.channel = null;
+            return this.written;
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.written += this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+
+        /**
+         * Make sure the buffer has room for `size` bytes, at most BUFFER_SIZE
+         */
+        private void ensure(int size) throws IOException {
+            if (this.buffer.remaining() < size) {
+                this.flush();
+            }
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!this.buffer.hasRemaining()) {
+                    this.flush();
+                }
+                int length = Math.min(bytes.length - offset, this.buffer.remaining());
+                this.buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        /**
+         * Write the statement of an account: its opening line, then its transactions of the period
+         * @return the number of transactions written
+         */
+        long writeStatement(Account account, long from, long to) throws IOException {
+            int first = from == Long.MIN_VALUE ? 0 : account.firstTransactionAtOrAfter(from);
+            // Transactions arriving during the export are left for the next statement
+            int end = to == Long.MAX_VALUE ? account.numberOfTransactions() : account.firstTransactionAtOrAfter(to + 1);
+            long balance = account.balanceBefore(first);
+            byte[] accountId = account.getUUID().getBytes(StandardCharsets.US_ASCII);
+
+            this.putLine(accountId, from, false, 0, balance, this.memo(OPENING_MEMO));
+            for (int start = first; start < end; start += CHUNK_SIZE) {
+                int size = account.copyTransactions(start, Math.min(end, start + CHUNK_SIZE),
+                        this.amounts, this.timestamps, this.memos);
+                for (int i = 0; i < size; i++) {
+                    balance += this.amounts[i];
+                    this.putLine(accountId, this.timestamps[i], true, this.amounts[i], balance, this.memo(this.memos[i]));
+                }
+            }
+            return Math.max(0, end - first);
+        }
+
+        /**
+         * Write a line of a statement
+         * @param timestamp the date of the line, Long.MIN_VALUE for none
+         * @param hasAmount whether the line has an amount, the opening line hasn't
+         */
+        private void putLine(byte[] accountId, long timestamp, boolean hasAmount, long amount, long balance,
+                byte[] memo) throws IOException {
+            // Everything but the memo fits in the buffer once flushed
+            this.ensure(ACCOUNT_WIDTH + accountId.length + DATE_WIDTH + 2 * this.digits.length + 4);
+            boolean csv = StatementExporter.this.format == Format.CSV;
+            if (csv) {
+                this.buffer.put(accountId).put((byte) ',');
+                if (timestamp != Long.MIN_VALUE) {
+                    this.putDate(timestamp);
+                }
+                this.buffer.put((byte) ',');
+                if (hasAmount) {
+                    this.putAmount(amount, 0);
+                }
+                this.buffer.put((byte) ',');
+                this.putAmount(balance, 0);
+                this.buffer.put((byte) ',');
+            } else {
+                this.buffer.put(accountId);
+                this.pad(Math.max(ACCOUNT_WIDTH - accountId.length, 0) + 1);
+                if (timestamp != Long.MIN_VALUE) {
+                    this.putDate(timestamp);
+                } else {
+                    this.pad(DATE_WIDTH);
+                }
+                this.buffer.put((byte) ' ');
+                if (hasAmount) {
+                    this.putAmount(amount, AMOUNT_WIDTH);
+                } else {
+                    this.pad(AMOUNT_WIDTH);
+                }
+                this.buffer.put((byte) ' ');
+                this.putAmount(balance, AMOUNT_WIDTH);
+                this.buffer.put((byte) ' ');
+            }
+            this.putBytes(memo);
+            this.ensure(1);
+            this.buffer.put((byte) '\n');
+        }
+
+        private void pad(int width) {
+            for (int i = 0; i < width; i++) {
+                this.buffer.put((byte) ' ');
+            }
+        }
+
+        /**
+         * Write an amount as dollars with 2 decimals, right aligned on `width` bytes (0 for no padding),
+         * like Money.format but without going through a String
+         */
+        private void putAmount(long cents, int width) {
+            // Work on the negative value, so that Long.MIN_VALUE works too
+            long negative = cents < 0 ? cents : -cents;
+            long remainder = -(negative % Money.CENTS_PER_DOLLAR);
+            int p = this.digits.length;
+            this.digits[--p] = (byte) ('0' + remainder % 10);
+            this.digits[--p] = (byte) ('0' + remainder / 10);
+            this.digits[--p] = '.';
+            long dollars = negative / Money.CENTS_PER_DOLLAR;
+            do {
+                this.digits[--p] = (byte) ('0' - dollars % 10);
+                dollars /= 10;
+            } while (dollars != 0);
+            if (cents < 0) {
+                this.digits[--p] = '-';
+            }
+            int length = this.digits.length - p;
+            this.pad(width - length);
+            this.buffer.put(this.digits, p, length);
+        }
+
+        /**
+         * Write a date as an ISO-8601 instant in UTC with milliseconds. Only the day goes through java.time,
+         * and once per day: the lines of a statement are in time order.
+         */
+        private void putDate(long timestamp) {
+            long day = Math.floorDiv(timestamp, MILLIS_PER_DAY);
+            if (day != this.day) {
+                this.day = day;
+                this.dayPrefix = (LocalDate.ofEpochDay(day) + "T").getBytes(StandardCharsets.US_ASCII);
+            }
+            int millis = (int) Math.floorMod(timestamp, MILLIS_PER_DAY);
+            this.buffer.put(this.dayPrefix);
+            this.putTwoDigits(millis / 3600000);
+            this.buffer.put((byte) ':');
+            this.putTwoDigits(millis / 60000 % 60);
+            this.buffer.put((byte) ':');
+            this.putTwoDigits(millis / 1000 % 60);
+            this.buffer.put((byte) '.');
+            this.buffer.put((byte) ('0' + millis % 1000 / 100));
+            this.putTwoDigits(millis % 100);
+            this.buffer.put((byte) 'Z');
+        }
+
+        private void putTwoDigits(int value) {
+            this.buffer.put((byte) ('0' + value / 10));
+            this.buffer.put((byte) ('0' + value % 10));
+        }
+
+        /**
+         * Get a memo rendered for the format, from the cache if it was already rendered
+         */
+        private byte[] memo(String memo) {
+            byte[] rendered = this.renderedMemos.get(memo);
+            if (rendered == null) {
+                if (this.renderedMemos.size() == MEMO_CACHE_SIZE) {
+                    this.renderedMemos.clear();
+                }
+                rendered = StatementExporter.this.format == Format.CSV
+                        ? StatementExporter.csvField(memo) : StatementExporter.fixedWidthField(memo);
+                this.renderedMemos.put(memo, rendered);
+            }
+            return rendered;
+        }
+    }
+
+    /**
+     * Render a memo as a CSV field, quoted if needed
+     */
+    private static byte[] csvField(String memo) {
+        if (memo.indexOf(',') >= 0 || memo.indexOf('"') >= 0 || memo.indexOf('\n') >= 0 || memo.indexOf('\r') >= 0) {
+            memo = "\"" + memo.replace("\"", "\"\"") + "\"";
+        }
+        return memo.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Render a memo on exactly MEMO_WIDTH bytes: control characters become spaces, and a memo too long is
+     * cut before the character that doesn't fit
+     */
+    private static byte[] fixedWidthField(String memo) {
+        StringBuilder sb = new StringBuilder(memo.length());
+        for (int i = 0; i < memo.length(); i++) {
+            char c = memo.charAt(i);
+            sb.append(c < ' ' ? ' ' : c);
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        if (length > MEMO_WIDTH) {
+            length = MEMO_WIDTH;
+            // Don't cut a multi-byte character: back up to the start of the one at the cut
+            while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+                length--;
+            }
+        }
+        byte[] field = new byte[MEMO_WIDTH];
+        System.arraycopy(bytes, 0, field, 0, length);
+        for (int i = length; i < MEMO_WIDTH; i++) {
+            field[i] = ' ';
+        }
+        return field;
+    }
+}
@@ -0,0 +1,83 @@
+package model;
+
+/**
+ * Outcome of a statement export: how many accounts, transactions and bytes were written, and how fast
+ */
+public class StatementReport {
+    private long accounts;
+    private long transactions;
+    private long bytes;
+    private long elapsedNanos;
+
+    StatementReport() {
+    }
+
+    synchronized void recordAccount(long transactions, long bytes) {
+        this.accounts++;
+        this.transactions += transactions;
+        this.bytes += bytes;
+    }
+
+    synchronized void recordBytes(long bytes) {
+        this.bytes += bytes;
+    }
+
+    synchronized void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the number of account statements written
+     * @return the number of accounts
+     */
+    public synchronized long getAccounts() {
+        return this.accounts;
+    }
+
+    /**
+     * Get the number of transaction lines written
+     * @return the number of transactions
+     */
+    public synchronized long getTransactions() {
+        return this.transactions;
+    }
+
+    /**
+     * Get the size of the output
+     * @return the number of bytes written
+     */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Get the time the export took
+     * @return the time in seconds
+     */
+    public synchronized double getSeconds() {
+        return this.elapsedNanos / 1e9;
+    }
+
+    /**
+     * Get the output throughput of the export
+     * @return the number of megabytes (10^6 bytes) written per second
+     */
+    public synchronized double getMegabytesPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.bytes / 1e6 / (this.elapsedNanos / 1e9);
+    }
+
+    /**
+     * Get the account throughput of the export
+     * @return the number of account statements written per second
+     */
+    public synchronized double getAccountsPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.accounts / (this.elapsedNanos / 1e9);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d accounts, %d transactions, %d bytes in %.2fs (%.1f MB/s, %.0f accounts/s)",
+                this.accounts, this.transactions, this.bytes, this.getSeconds(), this.getMegabytesPerSecond(),
+                this.getAccountsPerSecond());
+    }
+}
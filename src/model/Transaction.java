@@ -4,8 +4,14 @@ import java.util.Date;
 
 public class Transaction {
 
-    private double amount;
-    private Date timestamp;
+    /**
+     * The amount in cents
+     */
+    private long amount;
+    /**
+     * The time of the transaction, in epoch milliseconds
+     */
+    private long timestamp;
     /**
      * To note why for this transaction
      */
@@ -17,45 +23,69 @@ public class Transaction {
 
     /**
      * Create a new transaction
-     * @param amount the amount transacted
+     * @param amount the amount transacted in cents
      * @param inAccount the account affected
      */
-    public Transaction(double amount, Account inAccount) {
+    public Transaction(long amount, Account inAccount) {
         this.amount = amount;
         this.inAccount = inAccount;
-        this.timestamp = new Date(); // Today
+        this.timestamp = System.currentTimeMillis(); // Now
         this.memo = "";
     }
 
     /**
      * Same as above, but with a memo
-     * @param amount amount transacted
+     * @param amount amount transacted in cents
      * @param memo the memo for this transaction
      * @param inAccount account affected
      */
-    public Transaction(double amount, String memo, Account inAccount) {
+    public Transaction(long amount, String memo, Account inAccount) {
         // Call the above constructor first
         this(amount, inAccount);
         this.memo = memo;
     }
 
+    /**
+     * Create a view of a transaction already stored in an account's log
+     * @param amount amount transacted in cents
+     * @param timestamp the time of the transaction, in epoch milliseconds
+     * @param memo the memo for this transaction
+     * @param inAccount account affected
+     */
+    Transaction(long amount, long timestamp, String memo, Account inAccount) {
+        this.amount = amount;
+        this.timestamp = timestamp;
+        this.memo = memo;
+        this.inAccount = inAccount;
+    }
+
     /**
      * Get the amount of the transaction
-     * @return the amount
+     * @return the amount in cents
      */
-    public double getAmount() {
+    public long getAmount() {
         return this.amount;
     }
 
+    /**
+     * Get the time of the transaction
+     * @return the timestamp in epoch milliseconds
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
     /**
      * Getting a string summarizing of the transaction
      * @return the summary string
      */
     public String getSummaryLine() {
         if (this.amount >= 0) {
-            return String.format("%n%s : $%.02f : %s", this.timestamp.toString(), this.amount, this.memo);
+            return String.format("%n%s : $%s : %s", new Date(this.timestamp).toString(),
+                    Money.format(this.amount), this.memo);
         } else {
-            return String.format("%n%s : $(%.02f) : %s", this.timestamp.toString(), -this.amount, this.memo);
+            return String.format("%n%s : $(%s) : %s", new Date(this.timestamp).toString(),
+                    Money.format(-this.amount), this.memo);
         }
     }
 
@@ -0,0 +1,368 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Posts large batches of back office transactions (payroll, card settlements) read from a file.
+ * The file is streamed, never loaded whole. Records are split by account across worker threads,
+ * so that the records of one account are always posted in file order by the same worker, and each
+ * worker posts whole batches: one lock per run of records of the same account, one journal wait per batch.
+ *
+ * CSV format, one record per line: accountUUID,amount,memo,timestamp
+ * where amount is in dollars ("12.50", "-3.10"), the memo may contain commas, and timestamp is either epoch
+ * milliseconds, an ISO-8601 instant ("2026-10-18T09:00:00Z"), or empty for now. A first line starting with
+ * "account" is a header and is skipped.
+ *
+ * Binary format, records until the end of the file: UTF accountUUID, long amount in cents,
+ * long epoch milliseconds timestamp, UTF memo (as written by DataOutputStream).
+ *
+ * A record is rejected, and the others still posted, if it can't be parsed, its account doesn't exist,
+ * it would overdraw the account or overflow its balance, or it is older than the last transaction of the account
+ * (the history of an account stays in time order).
+ */
+public class TransactionIngestor {
+    /**
+     * File formats the ingestor reads
+     */
+    public enum Format {
+        CSV,
+        BINARY
+    }
+
+    /**
+     * Number of records in a batch
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * Number of batches waiting per worker: bounds the memory used whatever the size of the file
+     */
+    private static final int QUEUED_BATCHES = 4;
+
+    /**
+     * Number of rejections kept with their reason in the report
+     */
+    private static final int MAX_REJECTIONS_KEPT = 1000;
+
+    private Bank theBank;
+    private int numberOfWorkers;
+
+    /**
+     * Create an ingestor for a bank
+     * @param theBank the bank owning the accounts
+     * @param numberOfWorkers number of threads posting the records
+     */
+    public TransactionIngestor(Bank theBank, int numberOfWorkers) {
+        if (numberOfWorkers < 1) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        this.theBank = theBank;
+        this.numberOfWorkers = numberOfWorkers;
+    }
+
+    /**
+     * A batch of records, stored column by column
+     */
+    private static class Batch {
+        /**
+         * Sent to a worker to tell it there is nothing more
+         */
+        static final Batch END = new Batch(0);
+
+        String[] accounts;
+        long[] amounts;
+        long[] timestamps;
+        String[] memos;
+        long[] recordNumbers;
+        int size;
+
+        Batch(int capacity) {
+            this.accounts = new String[capacity];
+            this.amounts = new long[capacity];
+            this.timestamps = new long[capacity];
+            this.memos = new String[capacity];
+            this.recordNumbers = new long[capacity];
+        }
+
+        boolean isFull() {
+            return this.size == this.accounts.length;
+        }
+
+        void add(String account, long amount, long timestamp, String memo, long recordNumber) {
+            this.accounts[this.size] = account;
+            this.amounts[this.size] = amount;
+            this.timestamps[this.size] = timestamp;
+            this.memos[this.size] = memo;
+            this.recordNumbers[this.size] = recordNumber;
+            this.size++;
+        }
+    }
+
+    /**
+     * Ingest a file of transactions
+     * @param path the file
+     * @param format the format of the file
+     * @return the report of the ingestion
+     * @throws IOException if the file can't be read, or a worker failed to post (e.g. the journal failed)
+     */
+    public IngestReport ingest(Path path, Format format) throws IOException {
+        IngestReport report = new IngestReport(MAX_REJECTIONS_KEPT);
+        long start = System.nanoTime();
+
+        // One queue and one worker per partition
+        ArrayList<BlockingQueue<Batch>> queues = new ArrayList<BlockingQueue<Batch>>();
+        ArrayList<Thread> workers = new ArrayList<Thread>();
+        Throwable[] failure = new Throwable[1];
+        for (int w = 0; w < this.numberOfWorkers; w++) {
+            BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(QUEUED_BATCHES);
+            queues.add(queue);
+            Thread worker = new Thread(() -> {
+                try {
+                    this.work(queue, report);
+                } catch (RuntimeException | Error e) {
+                    synchronized (failure) {
+                        if (failure[0] == null) {
+                            failure[0] = e;
+                        }
+                    }
+                    // Keep draining, so that the reader never blocks on a dead worker
+                    this.drain(queue);
+                }
+            }, "atm-ingest-" + w);
+            worker.start();
+            workers.add(worker);
+        }
+
+        Batch[] filling = new Batch[this.numberOfWorkers];
+        try {
+            if (format == Format.CSV) {
+                this.readCsv(path, queues, filling, report);
+            } else {
+                this.readBinary(path, queues, filling, report);
+            }
+
+            // Send what's left, then tell every worker it's over
+            for (int w = 0; w < this.numberOfWorkers; w++) {
+                if (filling[w] != null && filling[w].size > 0) {
+                    queues.get(w).put(filling[w]);
+                }
+                queues.get(w).put(Batch.END);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw new IOException("Interrupted while ingesting " + path, e);
+        } catch (IOException | RuntimeException e) {
+            // Stop the workers before giving up
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw e;
+        }
+
+        report.setElapsedNanos(System.nanoTime() - start);
+        if (failure[0] != null) {
+            throw new IOException("Ingestion of " + path + " failed while posting", failure[0]);
+        }
+        return report;
+    }
+
+    /**
+     * Read a CSV file and dispatch its records
+     */
+    private void readCsv(Path path, ArrayList<BlockingQueue<Batch>> queues, Batch[] filling, IngestReport report)
+            throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            long recordNumber = 0;
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                if (first) {
+                    first = false;
+                    if (line.startsWith("account")) {
+                        continue;
+                    }
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                recordNumber++;
+                report.recordRead(1);
+
+                // accountUUID,amount,memo,timestamp: the memo is what's between the 2nd and the last comma
+                int firstComma = line.indexOf(',');
+                int secondComma = firstComma < 0 ? -1 : line.indexOf(',', firstComma + 1);
+                int lastComma = line.lastIndexOf(',');
+                if (secondComma < 0 || lastComma <= secondComma) {
+                    report.recordRejected(recordNumber, "expected accountUUID,amount,memo,timestamp");
+                    continue;
+                }
+                long amount;
+                long timestamp;
+                try {
+                    amount = Money.parse(line.substring(firstComma + 1, secondComma).trim());
+                    timestamp = TransactionIngestor.parseTimestamp(line.substring(lastComma + 1).trim());
+                } catch (NumberFormatException | ArithmeticException | DateTimeParseException e) {
+                    report.recordRejected(recordNumber, "unreadable amount or timestamp: " + e.getMessage());
+                    continue;
+                }
+                this.dispatch(line.substring(0, firstComma).trim(), amount, timestamp,
+                        line.substring(secondComma + 1, lastComma), recordNumber, queues, filling);
+            }
+        }
+    }
+
+    /**
+     * Read a binary file and dispatch its records
+     */
+    private void readBinary(Path path, ArrayList<BlockingQueue<Batch>> queues, Batch[] filling, IngestReport report)
+            throws IOException, InterruptedException {
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            long recordNumber = 0;
+            while (true) {
+                String account;
+                try {
+                    account = in.readUTF();
+                } catch (EOFException e) {
+                    break; // Clean end of file
+                }
+                long amount = in.readLong();
+                long timestamp = in.readLong();
+                String memo = in.readUTF();
+                recordNumber++;
+                report.recordRead(1);
+                this.dispatch(account, amount, timestamp, memo, recordNumber, queues, filling);
+            }
+        }
+    }
+
+    /**
+     * Put a record in the batch of its partition, sending the batch to its worker when full
+     */
+    private void dispatch(String account, long amount, long timestamp, String memo, long recordNumber,
+                          ArrayList<BlockingQueue<Batch>> queues, Batch[] filling) throws InterruptedException {
+        int partition = Math.floorMod(account.hashCode(), this.numberOfWorkers);
+        Batch batch = filling[partition];
+        if (batch == null) {
+            batch = new Batch(BATCH_SIZE);
+            filling[partition] = batch;
+        }
+        batch.add(account, amount, timestamp, memo, recordNumber);
+        if (batch.isFull()) {
+            // Blocks when the worker is behind, which bounds the memory used
+            queues.get(partition).put(batch);
+            filling[partition] = null;
+        }
+    }
+
+    /**
+     * Post the batches of one partition until the END batch
+     */
+    private void work(BlockingQueue<Batch> queue, IngestReport report) {
+        while (true) {
+            Batch batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == Batch.END) {
+                return;
+            }
+
+            long seq = 0;
+            long accepted = 0;
+            int i = 0;
+            while (i < batch.size) {
+                // Take the account's lock once for the whole run of its records
+                String accountId = batch.accounts[i];
+                Account account = this.theBank.findAccount(accountId);
+                int end = i;
+                while (end < batch.size && batch.accounts[end].equals(accountId)) {
+                    end++;
+                }
+                if (account == null) {
+                    for (int r = i; r < end; r++) {
+                        report.recordRejected(batch.recordNumbers[r], "unknown account " + accountId);
+                    }
+                    i = end;
+                    continue;
+                }
+
+                account.getLock().lock();
+                try {
+                    for (int r = i; r < end; r++) {
+                        long amount = batch.amounts[r];
+                        if (batch.timestamps[r] < account.getLastTimestamp()) {
+                            report.recordRejected(batch.recordNumbers[r], "older than the last transaction of " + accountId);
+                        } else if (amount < 0 && account.getBalance() + amount < 0) {
+                            report.recordRejected(batch.recordNumbers[r], "would overdraw " + accountId);
+                        } else {
+                            try {
+                                seq = Math.max(seq, account.post(amount, batch.timestamps[r], batch.memos[r]));
+                                accepted++;
+                            } catch (ArithmeticException e) {
+                                // post checks the new balance first, the account is untouched
+                                report.recordRejected(batch.recordNumbers[r], "would overflow the balance of " + accountId);
+                            }
+                        }
+                    }
+                } finally {
+                    account.getLock().unlock();
+                }
+                i = end;
+            }
+
+            // One journal wait for the whole batch
+            this.theBank.awaitDurable(seq);
+            report.recordAccepted(accepted);
+        }
+    }
+
+    /**
+     * Throw away the batches of a failed worker until the END batch
+     */
+    private void drain(BlockingQueue<Batch> queue) {
+        try {
+            while (queue.take() != Batch.END) {
+                // Dropped, the ingestion fails anyway
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parse the timestamp of a CSV record
+     * @param text epoch milliseconds, an ISO-8601 instant, or empty for now
+     * @return the epoch milliseconds
+     */
+    private static long parseTimestamp(String text) {
+        if (text.isEmpty()) {
+            return System.currentTimeMillis();
+        }
+        if (text.indexOf('T') >= 0) {
+            return Instant.parse(text).toEpochMilli();
+        }
+        return Long.parseLong(text);
+    }
+}
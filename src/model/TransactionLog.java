@@ -0,0 +1,626 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Column storage of the transactions of one account.
+ * Instead of one Transaction object (with its Date, memo String and account link) per entry,
+ * the amounts and timestamps are kept in parallel primitive arrays and the memos in a dictionary,
+ * because the same memo (e.g. "Transfer to account #... for: ...") comes back a lot.
+ * Transaction objects are only created as views when someone asks for one.
+ *
+ * Heap per transaction, 1M transactions with a repeated transfer memo:
+ * ArrayList of Transaction ~149 bytes, TransactionLog ~20 bytes (up to ~30 while the arrays grow).
+ *
+ * With a ColdStore, the oldest transactions are sealed into segments of ColdStore.SEGMENT_SIZE and leave
+ * the heap: the arrays only hold the hot ones, from `coldSize` on, and the log keeps where each segment is.
+ * Indexes stay the same for everyone, whether the transaction is hot or cold. A cold transaction is read by
+ * decoding the column asked of its segment, kept per thread, since reads of cold history go through it in order.
+ *
+ * The log is append-only: a slot of the arrays is never written again once a transaction is in it, and growing,
+ * sealing or adding memos puts new arrays in place rather than changing the old ones. So the reads go through
+ * a View, an immutable copy of the fields replaced at each of those changes, that stays valid for the
+ * transactions it had forever: a reader holding a View and a size needs no lock (see AccountSnapshot).
+ */
+class TransactionLog {
+    /**
+     * Capacity of the arrays at the first transaction
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The arrays of every log without transactions: most accounts opened in bulk stay empty for a while,
+     * and each would otherwise hold its arrays of INITIAL_CAPACITY
+     */
+    private static final long[] NO_LONGS = new long[0];
+    private static final int[] NO_INTS = new int[0];
+    private static final String[] NO_MEMOS = new String[0];
+    private static final boolean[] NO_FLAGS = new boolean[0];
+
+    /**
+     * Largest encoded segment: a 10-byte variable-length timestamp delta, 10-byte amount and 5-byte memo id
+     * per transaction, after the 16-byte header
+     */
+    private static final int MAX_SEGMENT_BYTES = 16 + 25 * ColdStore.SEGMENT_SIZE;
+
+    /**
+     * Buffer each thread encodes segments in
+     */
+    private static final ThreadLocal<ByteBuffer> ENCODER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_SEGMENT_BYTES));
+
+    /**
+     * The last segment each thread decoded
+     */
+    private static final ThreadLocal<DecodedSegment> DECODED = ThreadLocal.withInitial(DecodedSegment::new);
+
+    /**
+     * Amount of each hot transaction in cents, in the order they were added, from index `hotStart`
+     */
+    private long[] amounts;
+
+    /**
+     * Timestamp of each hot transaction, in epoch milliseconds
+     */
+    private long[] timestamps;
+
+    /**
+     * Index of the memo of each hot transaction in `memos`
+     */
+    private int[] memoIds;
+
+    /**
+     * Index in the arrays of the oldest hot transaction: sealing moves it forward instead of moving the arrays
+     */
+    private int hotStart;
+
+    /**
+     * Number of transactions stored, hot and cold
+     */
+    private int size;
+
+    /**
+     * The distinct memos, and the index of each of them. Cold transactions keep their memo ids,
+     * so the dictionary stays whole in memory.
+     */
+    private String[] memos;
+    private int numberOfMemos;
+    private HashMap<String, Integer> memoIndex;
+
+    /**
+     * Whether the transactions with each memo are debits counted against the withdrawal limits (withdrawals
+     * and outgoing transfers, not fees or ingested debits): a memo used both ways has one entry for each,
+     * the limited ones indexed in `limitedMemoIndex`. The kind of a transaction goes wherever its memo id goes,
+     * cold segments and snapshots included, at no cost per transaction.
+     */
+    private boolean[] limitedMemos;
+    private HashMap<String, Integer> limitedMemoIndex;
+
+    /**
+     * Number of transactions sealed into `coldStore`, the oldest ones, a multiple of ColdStore.SEGMENT_SIZE
+     */
+    private int coldSize;
+
+    /**
+     * Where the segments are, null until the first one is sealed
+     */
+    private ColdStore coldStore;
+
+    /**
+     * For each segment: its position and length in the store, and the timestamp of its last transaction
+     */
+    private long[] segmentPositions;
+    private int[] segmentLengths;
+    private long[] segmentLastTimestamps;
+
+    /**
+     * The fields above as of the last change of arrays or segments, what the reads go through
+     */
+    private View view;
+
+    /**
+     * Create an empty log
+     */
+    TransactionLog() {
+        this.amounts = NO_LONGS;
+        this.timestamps = NO_LONGS;
+        this.memoIds = NO_INTS;
+        this.size = 0;
+        this.memos = NO_MEMOS;
+        this.memoIndex = new HashMap<String, Integer>();
+        this.limitedMemos = NO_FLAGS;
+        this.limitedMemoIndex = new HashMap<String, Integer>();
+        this.segmentPositions = NO_LONGS;
+        this.segmentLengths = NO_INTS;
+        this.segmentLastTimestamps = NO_LONGS;
+        this.view = new View(this);
+    }
+
+    /**
+     * Add a transaction at the end of the log
+     * @param amount the amount transacted in cents
+     * @param timestamp the time of the transaction, in epoch milliseconds
+     * @param memo the memo of the transaction
+     * @param limited whether it's a debit counted against the withdrawal limits
+     */
+    void append(long amount, long timestamp, String memo, boolean limited) {
+        int hotSize = this.size - this.coldSize;
+        if (this.hotStart + hotSize == this.amounts.length) {
+            if (this.hotStart >= this.amounts.length / 2) {
+                // Half of the arrays was sealed: move the hot transactions back to the start
+                this.resize(this.amounts.length);
+            } else {
+                // Grow the columns by half when they are full
+                this.resize(hotSize + (hotSize >> 1));
+            }
+        }
+
+        int i = this.hotStart + hotSize;
+        this.amounts[i] = amount;
+        this.timestamps[i] = timestamp;
+        this.memoIds[i] = this.memoId(memo, limited);
+        this.size++;
+    }
+
+    /**
+     * Copy the hot transactions to the start of new arrays
+     * @param capacity the capacity of the new arrays, at least the number of hot transactions
+     */
+    private void resize(int capacity) {
+        int hotSize = this.size - this.coldSize;
+        capacity = Math.max(capacity, INITIAL_CAPACITY);
+        long[] amounts = new long[capacity];
+        long[] timestamps = new long[capacity];
+        int[] memoIds = new int[capacity];
+        System.arraycopy(this.amounts, this.hotStart, amounts, 0, hotSize);
+        System.arraycopy(this.timestamps, this.hotStart, timestamps, 0, hotSize);
+        System.arraycopy(this.memoIds, this.hotStart, memoIds, 0, hotSize);
+        this.amounts = amounts;
+        this.timestamps = timestamps;
+        this.memoIds = memoIds;
+        this.hotStart = 0;
+        this.view = new View(this);
+    }
+
+    /**
+     * Get the dictionary index of a memo, adding it if we have never seen it
+     * @param memo the memo
+     * @param limited whether the transaction is a debit counted against the withdrawal limits
+     * @return its index in `memos`
+     */
+    private int memoId(String memo, boolean limited) {
+        HashMap<String, Integer> index = limited ? this.limitedMemoIndex : this.memoIndex;
+        Integer id = index.get(memo);
+        if (id == null) {
+            if (this.numberOfMemos == this.memos.length) {
+                int capacity = Math.max(this.numberOfMemos * 2, INITIAL_CAPACITY);
+                this.memos = Arrays.copyOf(this.memos, capacity);
+                this.limitedMemos = Arrays.copyOf(this.limitedMemos, capacity);
+                this.view = new View(this);
+            }
+            id = this.numberOfMemos;
+            this.memos[this.numberOfMemos] = memo;
+            this.limitedMemos[this.numberOfMemos++] = limited;
+            index.put(memo, id);
+        }
+        return id;
+    }
+
+    /**
+     * Get the number of transactions in the log
+     * @return the number of transactions
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Get the amount of a transaction
+     * @param index the index of the transaction, 0 is the oldest
+     * @return the amount in cents
+     */
+    long amount(int index) {
+        return this.view.amount(index);
+    }
+
+    /**
+     * Get the timestamp of a transaction
+     * @param index the index of the transaction, 0 is the oldest
+     * @return the timestamp in epoch milliseconds
+     */
+    long timestamp(int index) {
+        return this.view.timestamp(index);
+    }
+
+    /**
+     * Get the memo of a transaction
+     * @param index the index of the transaction, 0 is the oldest
+     * @return the memo
+     */
+    String memo(int index) {
+        return this.view.memo(index);
+    }
+
+    /**
+     * Find the first transaction at or after a time, by binary search: the log is in time order
+     * @param timestamp the time in epoch milliseconds
+     * @return the index of the first transaction with a timestamp >= `timestamp`, size() if there is none
+     */
+    int firstAtOrAfter(long timestamp) {
+        return this.view.firstAtOrAfter(timestamp, this.size);
+    }
+
+    /**
+     * Binary search of the first timestamp >= `timestamp` in timestamps[from, to)
+     */
+    private static int firstAtOrAfter(long[] timestamps, int from, int to, long timestamp) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps[middle] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the dictionary index of the memo of a transaction
+     * @param index the index of the transaction, 0 is the oldest
+     * @return the index of its memo, see memoAt
+     */
+    int memoIdAt(int index) {
+        return this.view.memoIdAt(index);
+    }
+
+    /**
+     * Get the number of distinct memos
+     * @return the size of the memo dictionary
+     */
+    int numberOfMemos() {
+        return this.numberOfMemos;
+    }
+
+    /**
+     * Get a memo of the dictionary
+     * @param memoId the index of the memo
+     * @return the memo
+     */
+    String memoAt(int memoId) {
+        return this.memos[memoId];
+    }
+
+    /**
+     * Whether the transactions with a memo of the dictionary are debits counted against the withdrawal limits
+     * @param memoId the index of the memo
+     * @return true for withdrawals and outgoing transfers
+     */
+    boolean isLimitedMemo(int memoId) {
+        return this.limitedMemos[memoId];
+    }
+
+    /**
+     * Whether a transaction is a debit counted against the withdrawal limits
+     * @param index the index of the transaction, 0 is the oldest
+     * @return true for withdrawals and outgoing transfers
+     */
+    boolean isLimited(int index) {
+        return this.limitedMemos[this.memoIdAt(index)];
+    }
+
+    /**
+     * Replace the content of the log with whole columns, e.g. loaded from a snapshot
+     * @param amounts the amounts in cents, the log keeps the array
+     * @param timestamps the timestamps in epoch milliseconds, the log keeps the array
+     * @param memoIds the index of the memo of each transaction in `memos`, the log keeps the array
+     * @param size the number of transactions in the arrays
+     * @param memos the distinct memos
+     * @param limitedMemos whether the transactions with each memo are counted against the withdrawal limits
+     */
+    void load(long[] amounts, long[] timestamps, int[] memoIds, int size, String[] memos, boolean[] limitedMemos) {
+        int capacity = Math.max(size, INITIAL_CAPACITY);
+        this.amounts = amounts.length >= capacity ? amounts : Arrays.copyOf(amounts, capacity);
+        this.timestamps = timestamps.length >= capacity ? timestamps : Arrays.copyOf(timestamps, capacity);
+        this.memoIds = memoIds.length >= capacity ? memoIds : Arrays.copyOf(memoIds, capacity);
+        this.hotStart = 0;
+        this.size = size;
+        this.coldSize = 0;
+        this.segmentPositions = NO_LONGS;
+        this.segmentLengths = NO_INTS;
+        this.segmentLastTimestamps = NO_LONGS;
+        this.memos = Arrays.copyOf(memos, Math.max(memos.length, INITIAL_CAPACITY));
+        this.limitedMemos = Arrays.copyOf(limitedMemos, this.memos.length);
+        this.numberOfMemos = memos.length;
+        this.memoIndex = new HashMap<String, Integer>();
+        this.limitedMemoIndex = new HashMap<String, Integer>();
+        for (int m = 0; m < memos.length; m++) {
+            (limitedMemos[m] ? this.limitedMemoIndex : this.memoIndex).put(memos[m], m);
+        }
+        this.view = new View(this);
+    }
+
+    /**
+     * Build a Transaction view of an entry of the log
+     * @param index the index of the transaction, 0 is the oldest
+     * @param inAccount the account owning this log
+     * @return the Transaction object
+     */
+    Transaction get(int index, Account inAccount) {
+        return this.view.get(index, inAccount);
+    }
+
+    /**
+     * Get the current view of the log, to read it without the lock of the account
+     * @return the view, valid for the transactions of the log so far, and as long as it lives
+     */
+    View view() {
+        return this.view;
+    }
+
+    /**
+     * Get the number of transactions in memory
+     * @return the number of hot transactions
+     */
+    int hotSize() {
+        return this.size - this.coldSize;
+    }
+
+    /**
+     * Seal the oldest hot transactions into segments of the store while more than
+     * store.getHotTransactions() + ColdStore.SEGMENT_SIZE are in memory
+     * @param store the cold store of the bank, always the same one for a log
+     */
+    void seal(ColdStore store) {
+        int hotSize = this.size - this.coldSize;
+        int keep = store.getHotTransactions();
+        if (hotSize < keep + ColdStore.SEGMENT_SIZE) {
+            return;
+        }
+        if (this.coldStore != null && this.coldStore != store) {
+            throw new IllegalStateException("The log already has segments in another cold store");
+        }
+        this.coldStore = store;
+
+        int segments = this.coldSize / ColdStore.SEGMENT_SIZE;
+        int newSegments = (hotSize - keep) / ColdStore.SEGMENT_SIZE;
+        this.segmentPositions = Arrays.copyOf(this.segmentPositions, segments + newSegments);
+        this.segmentLengths = Arrays.copyOf(this.segmentLengths, segments + newSegments);
+        this.segmentLastTimestamps = Arrays.copyOf(this.segmentLastTimestamps, segments + newSegments);
+
+        ByteBuffer buffer = ENCODER.get();
+        for (int s = segments; s < segments + newSegments; s++) {
+            buffer.clear();
+            this.encode(this.hotStart, buffer);
+            buffer.flip();
+            this.segmentLengths[s] = buffer.remaining();
+            this.segmentPositions[s] = store.append(buffer, ColdStore.SEGMENT_SIZE);
+            this.segmentLastTimestamps[s] = this.timestamps[this.hotStart + ColdStore.SEGMENT_SIZE - 1];
+            this.hotStart += ColdStore.SEGMENT_SIZE;
+            this.coldSize += ColdStore.SEGMENT_SIZE;
+        }
+
+        // Give back the arrays grown by a long history, e.g. loaded whole from a snapshot
+        int hotCapacity = keep + ColdStore.SEGMENT_SIZE;
+        if (this.amounts.length > 2 * hotCapacity) {
+            this.resize(hotCapacity + (hotCapacity >> 1));
+        }
+        this.view = new View(this);
+    }
+
+    /**
+     * Encode the SEGMENT_SIZE transactions of the arrays from `start`: a header (the first timestamp, and where
+     * the second and third columns start), then the column of timestamp deltas, the column of amounts and the
+     * column of memo ids, all variable-length
+     */
+    private void encode(int start, ByteBuffer buffer) {
+        int end = start + ColdStore.SEGMENT_SIZE;
+        long previous = this.timestamps[start];
+        buffer.putLong(previous);
+        int offsets = buffer.position();
+        buffer.putInt(0).putInt(0);
+        for (int i = start; i < end; i++) {
+            TransactionLog.putVarLong(buffer, TransactionLog.zigZag(this.timestamps[i] - previous));
+            previous = this.timestamps[i];
+        }
+        buffer.putInt(offsets, buffer.position());
+        for (int i = start; i < end; i++) {
+            TransactionLog.putVarLong(buffer, TransactionLog.zigZag(this.amounts[i]));
+        }
+        buffer.putInt(offsets + 4, buffer.position());
+        for (int i = start; i < end; i++) {
+            TransactionLog.putVarLong(buffer, this.memoIds[i]);
+        }
+    }
+
+    /**
+     * The fields of a log at one point: the arrays, where the hot transactions start in them, and the segments.
+     * Reads through it are valid for the transactions the log had then, from any thread, without a lock.
+     */
+    static final class View {
+        private final long[] amounts;
+        private final long[] timestamps;
+        private final int[] memoIds;
+        private final int hotStart;
+        private final int coldSize;
+        private final String[] memos;
+        private final ColdStore coldStore;
+        private final long[] segmentPositions;
+        private final int[] segmentLengths;
+        private final long[] segmentLastTimestamps;
+
+        View(TransactionLog log) {
+            this.amounts = log.amounts;
+            this.timestamps = log.timestamps;
+            this.memoIds = log.memoIds;
+            this.hotStart = log.hotStart;
+            this.coldSize = log.coldSize;
+            this.memos = log.memos;
+            this.coldStore = log.coldStore;
+            this.segmentPositions = log.segmentPositions;
+            this.segmentLengths = log.segmentLengths;
+            this.segmentLastTimestamps = log.segmentLastTimestamps;
+        }
+
+        long amount(int index) {
+            if (index >= this.coldSize) {
+                return this.amounts[this.hotStart + index - this.coldSize];
+            }
+            return this.decode(index, DecodedSegment.AMOUNTS).amounts[index % ColdStore.SEGMENT_SIZE];
+        }
+
+        long timestamp(int index) {
+            if (index >= this.coldSize) {
+                return this.timestamps[this.hotStart + index - this.coldSize];
+            }
+            return this.decode(index, DecodedSegment.TIMESTAMPS).timestamps[index % ColdStore.SEGMENT_SIZE];
+        }
+
+        int memoIdAt(int index) {
+            if (index >= this.coldSize) {
+                return this.memoIds[this.hotStart + index - this.coldSize];
+            }
+            return this.decode(index, DecodedSegment.MEMO_IDS).memoIds[index % ColdStore.SEGMENT_SIZE];
+        }
+
+        String memo(int index) {
+            return this.memos[this.memoIdAt(index)];
+        }
+
+        Transaction get(int index, Account inAccount) {
+            return new Transaction(this.amount(index), this.timestamp(index), this.memo(index), inAccount);
+        }
+
+        /**
+         * Find the first transaction at or after a time among the first `size`, see TransactionLog.firstAtOrAfter
+         */
+        int firstAtOrAfter(long timestamp, int size) {
+            int segments = this.coldSize / ColdStore.SEGMENT_SIZE;
+            if (segments > 0 && timestamp <= this.segmentLastTimestamps[segments - 1]) {
+                // In the first segment ending at or after `timestamp`
+                int low = 0;
+                int high = segments - 1;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (this.segmentLastTimestamps[middle] < timestamp) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                int first = low * ColdStore.SEGMENT_SIZE;
+                return first + TransactionLog.firstAtOrAfter(this.decode(first, DecodedSegment.TIMESTAMPS).timestamps,
+                        0, ColdStore.SEGMENT_SIZE, timestamp);
+            }
+            return this.coldSize + TransactionLog.firstAtOrAfter(this.timestamps, this.hotStart,
+                    this.hotStart + size - this.coldSize, timestamp) - this.hotStart;
+        }
+
+        /**
+         * Get the decoded segment of a cold transaction with one of its columns decoded, decoding what this thread
+         * didn't decode last. Only the column asked is decoded: a balance only needs the amounts.
+         */
+        private DecodedSegment decode(int index, int column) {
+            int s = index / ColdStore.SEGMENT_SIZE;
+            long position = this.segmentPositions[s];
+            DecodedSegment decoded = DECODED.get();
+            if (decoded.store != this.coldStore || decoded.position != position) {
+                // Copy the segment out of the mapping once, decoding from an array is much cheaper
+                int length = this.segmentLengths[s];
+                this.coldStore.read(position, length).get(decoded.bytes, 0, length);
+                decoded.store = this.coldStore;
+                decoded.position = position;
+                decoded.columns = 0;
+            }
+            if ((decoded.columns & column) != 0) {
+                return decoded;
+            }
+
+            byte[] bytes = decoded.bytes;
+            ByteBuffer header = ByteBuffer.wrap(bytes);
+            long[] cursor = new long[1];
+            if (column == DecodedSegment.TIMESTAMPS) {
+                cursor[0] = 16;
+                long timestamp = header.getLong(0);
+                for (int i = 0; i < ColdStore.SEGMENT_SIZE; i++) {
+                    timestamp += TransactionLog.unZigZag(TransactionLog.getVarLong(bytes, cursor));
+                    decoded.timestamps[i] = timestamp;
+                }
+            } else if (column == DecodedSegment.AMOUNTS) {
+                cursor[0] = header.getInt(8);
+                for (int i = 0; i < ColdStore.SEGMENT_SIZE; i++) {
+                    decoded.amounts[i] = TransactionLog.unZigZag(TransactionLog.getVarLong(bytes, cursor));
+                }
+            } else {
+                cursor[0] = header.getInt(12);
+                for (int i = 0; i < ColdStore.SEGMENT_SIZE; i++) {
+                    decoded.memoIds[i] = (int) TransactionLog.getVarLong(bytes, cursor);
+                }
+            }
+            decoded.columns |= column;
+            return decoded;
+        }
+    }
+
+    /**
+     * The bytes of a segment, and its columns once decoded
+     */
+    private static class DecodedSegment {
+        static final int TIMESTAMPS = 1;
+        static final int AMOUNTS = 2;
+        static final int MEMO_IDS = 4;
+
+        ColdStore store;
+        long position = -1;
+        byte[] bytes = new byte[MAX_SEGMENT_BYTES];
+
+        /**
+         * The columns decoded, a set of the flags above
+         */
+        int columns;
+        long[] amounts = new long[ColdStore.SEGMENT_SIZE];
+        long[] timestamps = new long[ColdStore.SEGMENT_SIZE];
+        int[] memoIds = new int[ColdStore.SEGMENT_SIZE];
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Write an unsigned number 7 bits at a time, the high bit of each byte telling whether another follows
+     */
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Read a number written by putVarLong
+     * @param bytes the bytes
+     * @param cursor where to read, moved past the number
+     */
+    private static long getVarLong(byte[] bytes, long[] cursor) {
+        int i = (int) cursor[0];
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[i++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                cursor[0] = i;
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package model;
+
+import java.util.List;
+
+/**
+ * One page of the transaction history of an account, newest first, with the cursor to get the next
+ * (older) page. Cursors are positions in the account's log, so new transactions arriving between two
+ * pages don't shift what the next page returns.
+ */
+public class TransactionPage {
+    /**
+     * Cursor to ask for the first page, starting from the newest transaction
+     */
+    public static final int FIRST = Integer.MAX_VALUE;
+
+    private List<Transaction> transactions;
+    private int nextCursor;
+    private boolean hasMore;
+
+    TransactionPage(List<Transaction> transactions, int nextCursor, boolean hasMore) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Get the transactions of the page, newest first
+     * @return the transactions
+     */
+    public List<Transaction> getTransactions() {
+        return this.transactions;
+    }
+
+    /**
+     * Get the cursor to pass to get the next, older, page
+     * @return the cursor
+     */
+    public int getNextCursor() {
+        return this.nextCursor;
+    }
+
+    /**
+     * Whether there are older transactions after this page
+     * @return true if there is a next page
+     */
+    public boolean hasMore() {
+        return this.hasMore;
+    }
+}
@@ -1,11 +1,19 @@
 package model;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class User {
+    /**
+     * Number of times getAccountSnapshots reads the accounts without locking them before it gives up
+     */
+    private static final int OPTIMISTIC_READS = 16;
+
     /**
      * Name of the user:
      */
@@ -18,15 +26,35 @@ public class User {
     private String uuid;
     /**
      * A byte array
-     * Code to access user's account, an MD5 hash code:
+     * Code to access user's account, a salted slow hash code (see PinAuthenticator):
      */
     private byte pinHash[];
 
+    /**
+     * The salt and the number of hash iterations of pinHash, 0 iterations for an old unsalted MD5 hash
+     */
+    private byte pinSalt[];
+    private int pinIterations;
+
     /**
      * The list of accounts for this user:
-     * ArrayList can be used as a function
+     * copy-on-write, as accounts are rarely added but read by every session of the user
+     */
+    private CopyOnWriteArrayList<Account> accounts;
+
+    /**
+     * The bank the user is a customer of
+     */
+    private Bank bank;
+
+    /**
+     * Number of transfers involving an account of the user started, and finished. A reader of several
+     * accounts knows no transfer changed them under it if these were equal before its reads and
+     * `transfersStarted` didn't move during them: operations on a single account need no such check,
+     * each of them publishes one AccountSnapshot.
      */
-    private ArrayList<Account> accounts;
+    private AtomicLong transfersStarted;
+    private AtomicLong transfersFinished;
 
     /**
      * Create a new user
@@ -41,28 +69,44 @@ public class User {
         this.firstName = firstName;
         this.lastName = lastName;
 
-        // Store the pin's MD5 hash, rather than original value for security
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            // Get the bytes of the pin -> digest it to a different bytes -> store in pinHash
-            this.pinHash = md.digest(pin.getBytes());
-        } catch (NoSuchAlgorithmException e) {
-            System.out.println("error: caught NoSuchAlgorithmException");
-            e.printStackTrace();
-            System.exit(1);
-        }
+        // Store the pin's salted hash, rather than original value for security
+        PinAuthenticator authenticator = theBank.getAuthenticator();
+        this.pinSalt = authenticator.newSalt();
+        this.pinIterations = authenticator.getIterations();
+        this.pinHash = PinAuthenticator.hash(pin, this.pinSalt, this.pinIterations);
 
         // Get a uuid for the user
         this.uuid = theBank.getNewUserUUID();
+        this.bank = theBank;
 
         // Constructor, create an empty list of accounts
-        this.accounts = new ArrayList<Account>();
+        this.accounts = new CopyOnWriteArrayList<Account>();
+        this.transfersStarted = new AtomicLong();
+        this.transfersFinished = new AtomicLong();
+    }
 
-        // Print log message
-        System.out.printf("New user %s, %s, with ID %s created.%n",
-                lastName,
-                firstName,
-                this.uuid);
+    /**
+     * Rebuild a user that already exists, e.g. from the journal
+     * @param uuid the uuid of the user
+     * @param firstName user's first name
+     * @param lastName user's last name
+     * @param pinHash the hash of the user's pin
+     * @param pinSalt the salt of the hash
+     * @param pinIterations the number of iterations of the hash, 0 for an old MD5 hash
+     * @param theBank the bank object that holds the user as a customer
+     */
+    User(String uuid, String firstName, String lastName, byte[] pinHash, byte[] pinSalt, int pinIterations,
+         Bank theBank) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.pinHash = pinHash;
+        this.pinSalt = pinSalt;
+        this.pinIterations = pinIterations;
+        this.uuid = uuid;
+        this.bank = theBank;
+        this.accounts = new CopyOnWriteArrayList<Account>();
+        this.transfersStarted = new AtomicLong();
+        this.transfersFinished = new AtomicLong();
     }
 
     /**
@@ -73,6 +117,46 @@ public class User {
         return this.firstName;
     }
 
+    /**
+     * Get the user's last name
+     * @return the last name
+     */
+    public String getLastName() {
+        return this.lastName;
+    }
+
+    /**
+     * Get the hash of the user's pin, to persist it
+     * @return the pin hash
+     */
+    byte[] getPinHash() {
+        return this.pinHash;
+    }
+
+    /**
+     * Get the bank of the user
+     * @return the bank
+     */
+    Bank getBank() {
+        return this.bank;
+    }
+
+    /**
+     * Get the salt of the pin hash, to persist it
+     * @return the salt
+     */
+    byte[] getPinSalt() {
+        return this.pinSalt;
+    }
+
+    /**
+     * Get the number of iterations of the pin hash, to persist it
+     * @return the number of iterations, 0 for an old MD5 hash
+     */
+    int getPinIterations() {
+        return this.pinIterations;
+    }
+
     /**
      * add an account for the user
      * @param account account to add
@@ -92,15 +176,7 @@ public class User {
      * @return whether the pin is valid or not
      */
     public boolean validatePin(String aPin) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            return MessageDigest.isEqual(md.digest(aPin.getBytes()), this.pinHash);
-        } catch (NoSuchAlgorithmException e) {
-            System.out.println("error: caught NoSuchAlgorithmException");
-            e.printStackTrace();
-            System.exit(1);
-        }
-        return false; // The 3rd possibility (Java is smart)
+        return PinAuthenticator.matches(aPin, this.pinSalt, this.pinIterations, this.pinHash);
     }
 
 
@@ -108,14 +184,79 @@ public class User {
      * Print summaries for each account that the user owns
      */
     public void printAccountsSummary() {
-        // Loop through all the accounts of the particular user
-        System.out.printf("%n%s's accounts summary%n", this.firstName);
-        for (int i = 0; i < this.accounts.size(); i++) {
-            System.out.printf(" %d) %s%n",
+        this.printAccountsSummary(System.out);
+    }
+
+    /**
+     * Print summaries for each account that the user owns
+     * @param out where to print, e.g. System.out or a terminal's connection
+     */
+    public void printAccountsSummary(PrintStream out) {
+        // Loop through all the accounts of the particular user, as of one moment: a transfer between
+        // two of them shows on both sides or on none
+        List<AccountSnapshot> snapshots = this.getAccountSnapshots();
+        out.printf("%n%s's accounts summary%n", this.firstName);
+        for (int i = 0; i < snapshots.size(); i++) {
+            out.printf(" %d) %s%n",
                     i+1, // index of the accounts for user to select
-                    this.accounts.get(i).getSummaryLine());
+                    snapshots.get(i).getSummaryLine());
+        }
+        out.println();
+    }
+
+    /**
+     * Get a snapshot of every account of the user, all as of the same moment, without holding up writers:
+     * the accounts are read again if a transfer touched them meanwhile, and only locked if transfers
+     * keep coming
+     * @return the snapshots, in the order of the accounts
+     */
+    public List<AccountSnapshot> getAccountSnapshots() {
+        for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+            long started = this.transfersStarted.get();
+            if (this.transfersFinished.get() == started) {
+                List<AccountSnapshot> snapshots = new ArrayList<AccountSnapshot>(this.accounts.size());
+                for (Account account : this.accounts) {
+                    snapshots.add(account.getSnapshot());
+                }
+                if (this.transfersStarted.get() == started) {
+                    return snapshots;
+                }
+            }
+            Thread.onSpinWait();
+        }
+
+        // Lock the accounts in the order of their uuid, as transfers do, so that none is in progress
+        Account[] accounts = this.accounts.toArray(new Account[0]);
+        Account[] ordered = accounts.clone();
+        Arrays.sort(ordered, Comparator.comparing(Account::getUUID));
+        for (Account account : ordered) {
+            account.getLock().lock();
+        }
+        try {
+            List<AccountSnapshot> snapshots = new ArrayList<AccountSnapshot>(accounts.length);
+            for (Account account : accounts) {
+                snapshots.add(account.getSnapshot());
+            }
+            return snapshots;
+        } finally {
+            for (int i = ordered.length - 1; i >= 0; i--) {
+                ordered[i].getLock().unlock();
+            }
         }
-        System.out.println();
+    }
+
+    /**
+     * Record the start of a transfer involving an account of the user, called with the locks of its accounts
+     */
+    void beginTransfer() {
+        this.transfersStarted.incrementAndGet();
+    }
+
+    /**
+     * Record the end of a transfer started with beginTransfer
+     */
+    void endTransfer() {
+        this.transfersFinished.incrementAndGet();
     }
 
     /**
@@ -129,24 +270,65 @@ public class User {
 
     /**
      * Print transactions from a particular account
-     * @param acctIndex the index of the account in ArrayList
+     * @param acctIndex the index of the account in the list
      */
     public void printAcctTransHistory(int acctIndex) {
-        this.accounts.get(acctIndex).printTransHistory();
+        this.printAcctTransHistory(acctIndex, System.out);
+    }
+
+    /**
+     * Print transactions from a particular account
+     * @param acctIndex the index of the account in the list
+     * @param out where to print, e.g. System.out or a terminal's connection
+     */
+    public void printAcctTransHistory(int acctIndex, PrintStream out) {
+        long start = System.nanoTime();
+        this.accounts.get(acctIndex).printTransHistory(out);
+        this.bank.getMetrics().record(Metrics.Operation.HISTORY, start, true);
+    }
+
+    /**
+     * Get a page of the transaction history of a particular account, newest first
+     * @param acctIndex the index of the account in the list
+     * @param cursor TransactionPage.FIRST for the newest page, or the next cursor of the previous page
+     * @param pageSize the max number of transactions in the page
+     * @return the page
+     */
+    public TransactionPage getAcctHistoryPage(int acctIndex, int cursor, int pageSize) {
+        long start = System.nanoTime();
+        TransactionPage page = this.accounts.get(acctIndex).getHistoryPage(cursor, pageSize);
+        this.bank.getMetrics().record(Metrics.Operation.HISTORY, start, true);
+        return page;
+    }
+
+    /**
+     * Get a page of the transactions of a particular account between two times, newest first
+     * @param acctIndex the index of the account in the list
+     * @param from the start time in epoch milliseconds, included
+     * @param to the end time in epoch milliseconds, included
+     * @param cursor TransactionPage.FIRST for the newest page, or the next cursor of the previous page
+     * @param pageSize the max number of transactions in the page
+     * @return the page
+     */
+    public TransactionPage getAcctHistoryPage(int acctIndex, long from, long to, int cursor, int pageSize) {
+        long start = System.nanoTime();
+        TransactionPage page = this.accounts.get(acctIndex).getHistoryPage(from, to, cursor, pageSize);
+        this.bank.getMetrics().record(Metrics.Operation.HISTORY, start, true);
+        return page;
     }
 
     /**
      * Get the balance of the a particular account
-     * @param acctIndex index of the account in ArrayList
-     * @return the amount in double
+     * @param acctIndex index of the account in the list
+     * @return the amount in cents
      */
-    public double getAccountBalance(int acctIndex) {
+    public long getAccountBalance(int acctIndex) {
         return this.accounts.get(acctIndex).getBalance();
     }
 
     /**
      * Get the UUID of the a particular account
-     * @param acctIndex the index of the account in ArrayList
+     * @param acctIndex the index of the account in the list
      * @return the account uuid
      */
     public String getAcctUUID(int acctIndex) {
@@ -155,11 +337,52 @@ public class User {
 
     /**
      * Add a transaction through user to a particular account
-     * @param acctIndex index of the account in the ArrayList
-     * @param amount amount to transfer
+     * @param acctIndex index of the account in the list
+     * @param amount amount to transfer in cents
      * @param memo memo of the transaction
      */
-    public void addAcctTransaction(int acctIndex, double amount, String memo) {
-        this.accounts.get(acctIndex).addTransaction(amount, memo);
+    public void addAcctTransaction(int acctIndex, long amount, String memo) {
+        long start = System.nanoTime();
+        this.bank.deposit(this.accounts.get(acctIndex), amount, memo);
+        this.bank.getMetrics().record(Metrics.Operation.DEPOSIT, start, true);
+    }
+
+    /**
+     * Withdraw from a particular account, if its balance is high enough
+     * @param acctIndex index of the account in the list
+     * @param amount amount to withdraw in cents
+     * @param memo memo of the transaction
+     * @return true if it's done, false if the balance is too low or a withdrawal limit is reached
+     */
+    public boolean withdrawFromAcct(int acctIndex, long amount, String memo) {
+        long start = System.nanoTime();
+        boolean done = this.bank.withdraw(this.accounts.get(acctIndex), amount, memo);
+        this.bank.getMetrics().record(Metrics.Operation.WITHDRAW, start, done);
+        return done;
+    }
+
+    /**
+     * Check whether a withdrawal or a transfer from a particular account stays within its withdrawal limits
+     * @param acctIndex index of the account in the list
+     * @param amount amount of the debit in cents
+     * @return true if the account has no limits, or the debit stays within them
+     */
+    public boolean isWithinAcctLimits(int acctIndex, long amount) {
+        return this.accounts.get(acctIndex).isWithinLimits(amount);
+    }
+
+    /**
+     * Transfer between two accounts of the user, if the balance of the first one is high enough
+     * @param fromIndex index of the account to transfer from
+     * @param toIndex index of the account to transfer to
+     * @param amount amount to transfer in cents
+     * @param memo memo of the transfer
+     * @return true if it's done, false if the balance is too low or a withdrawal limit is reached
+     */
+    public boolean transferBetweenAccts(int fromIndex, int toIndex, long amount, String memo) {
+        long start = System.nanoTime();
+        boolean done = this.bank.transfer(this.accounts.get(fromIndex), this.accounts.get(toIndex), amount, memo);
+        this.bank.getMetrics().record(Metrics.Operation.TRANSFER, start, done);
+        return done;
     }
 }
@@ -0,0 +1,512 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Opens the accounts of a large number of new customers read from a file, e.g. a customer base migrated
+ * from another bank. The file is streamed, never loaded whole, in batches of BATCH_SIZE records:
+ * worker threads hash the PINs of the batches in parallel, taking the salts and the uuids of a whole batch
+ * at once, and build the users and their accounts; a single committer adds the batches to the bank in file
+ * order, one journal wait per batch, and writes the uuids given out to the mapping file.
+ *
+ * CSV format, one user per line: firstName,lastName,pin,savingsBalance,otherAccounts
+ * where savingsBalance is the opening balance of the "Savings" account every user has, in dollars ("250.00",
+ * empty for 0), and otherAccounts, optional, lists more accounts with their opening balance:
+ * "Checking:100.00;Business:0". A first line starting with "firstName" is a header and is skipped.
+ *
+ * Mapping format, one line per user added, in file order: recordNumber,userUUID,accounts
+ * where accounts is "Savings:accountUUID;Checking:accountUUID..." in the order of the file. The lines of a
+ * batch are written before the batch is added, so if the import fails midway, the mapping lists every user
+ * added and maybe a few more: resumeImportUsers keeps the lines of the users the bank has, and imports the
+ * records after them.
+ *
+ * A record is rejected, and the others still imported, if it can't be parsed, a name or the pin is empty,
+ * or an opening balance is negative.
+ */
+public class UserImporter {
+    /**
+     * Number of records in a batch
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * Number of batches waiting per worker: bounds the memory used whatever the size of the file
+     */
+    private static final int QUEUED_BATCHES = 4;
+
+    /**
+     * Number of rejections kept with their reason in the report
+     */
+    private static final int MAX_REJECTIONS_KEPT = 1000;
+
+    /**
+     * Memo of the transaction of an opening balance
+     */
+    static final String OPENING_MEMO = "Opening balance";
+
+    private Bank theBank;
+    private int numberOfWorkers;
+
+    /**
+     * Create an importer for a bank
+     * @param theBank the bank the users become customers of
+     * @param numberOfWorkers number of threads hashing the PINs
+     */
+    public UserImporter(Bank theBank, int numberOfWorkers) {
+        if (numberOfWorkers < 1) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        this.theBank = theBank;
+        this.numberOfWorkers = numberOfWorkers;
+    }
+
+    /**
+     * A batch of records, stored column by column, then the users built from them
+     */
+    private static class Batch {
+        /**
+         * Sent to the committer and the workers to tell them there is nothing more
+         */
+        static final Batch END = new Batch(0);
+
+        String[] firstNames;
+        String[] lastNames;
+        String[] pins;
+        long[] savingsBalances;
+        String[][] otherNames;
+        long[][] otherBalances;
+        long[] recordNumbers;
+        int size;
+
+        /**
+         * Set by the worker: the users, their accounts, and whether building them failed
+         */
+        User[] users;
+        ArrayList<Account> accounts;
+        boolean failed;
+        CountDownLatch built;
+
+        Batch(int capacity) {
+            this.firstNames = new String[capacity];
+            this.lastNames = new String[capacity];
+            this.pins = new String[capacity];
+            this.savingsBalances = new long[capacity];
+            this.otherNames = new String[capacity][];
+            this.otherBalances = new long[capacity][];
+            this.recordNumbers = new long[capacity];
+            this.built = new CountDownLatch(1);
+        }
+
+        boolean isFull() {
+            return this.size == this.firstNames.length;
+        }
+
+        void add(String firstName, String lastName, String pin, long savingsBalance, String[] otherNames,
+                 long[] otherBalances, long recordNumber) {
+            this.firstNames[this.size] = firstName;
+            this.lastNames[this.size] = lastName;
+            this.pins[this.size] = pin;
+            this.savingsBalances[this.size] = savingsBalance;
+            this.otherNames[this.size] = otherNames;
+            this.otherBalances[this.size] = otherBalances;
+            this.recordNumbers[this.size] = recordNumber;
+            this.size++;
+        }
+    }
+
+    /**
+     * Import a file of users
+     * @param path the file of users
+     * @param mapping the file to write the uuids given out to, replaced if it exists
+     * @return the report of the import
+     * @throws IOException if a file can't be read or written, or a worker failed (e.g. the journal failed)
+     */
+    public IngestReport importUsers(Path path, Path mapping) throws IOException {
+        return this.importUsers(path, mapping, 0);
+    }
+
+    /**
+     * Import the rest of a file of users after an import that failed midway, e.g. after a crash and the bank
+     * reopened from its journal: the records already in the mapping file with their user in the bank are
+     * skipped, the other lines of the mapping are dropped, and the users of the records after them are added
+     * and appended to it. Starts from the first record if the mapping file doesn't exist.
+     * @param path the file of users, the same as the import that failed
+     * @param mapping the mapping file of the import that failed
+     * @return the report of the records after the ones skipped
+     * @throws IOException if a file can't be read or written, or a worker failed (e.g. the journal failed)
+     */
+    public IngestReport resumeImportUsers(Path path, Path mapping) throws IOException {
+        if (!Files.exists(mapping)) {
+            return this.importUsers(path, mapping, 0);
+        }
+        return this.importUsers(path, mapping, this.keepAddedUsers(mapping));
+    }
+
+    /**
+     * Import the records of a file of users after a record number
+     * @param resumeAfter the last record number already imported, 0 for none: the mapping is appended to
+     */
+    private IngestReport importUsers(Path path, Path mapping, long resumeAfter) throws IOException {
+        IngestReport report = new IngestReport(MAX_REJECTIONS_KEPT);
+        long start = System.nanoTime();
+
+        // Batches go to the committer in file order, and to whichever worker is free
+        BlockingQueue<Batch> toCommit = new ArrayBlockingQueue<Batch>(QUEUED_BATCHES * this.numberOfWorkers);
+        BlockingQueue<Batch> toBuild = new ArrayBlockingQueue<Batch>(QUEUED_BATCHES * this.numberOfWorkers);
+        Throwable[] failure = new Throwable[1];
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        for (int w = 0; w < this.numberOfWorkers; w++) {
+            Thread worker = new Thread(() -> this.work(toBuild, failure), "atm-import-" + w);
+            worker.start();
+            threads.add(worker);
+        }
+
+        OpenOption[] options = resumeAfter == 0
+                ? new OpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE}
+                : new OpenOption[] {StandardOpenOption.APPEND};
+        try (BufferedWriter out = Files.newBufferedWriter(mapping, StandardCharsets.UTF_8, options)) {
+            Thread committer = new Thread(() -> {
+                try {
+                    this.commit(toCommit, out, resumeAfter == 0, report);
+                } catch (RuntimeException | Error e) {
+                    UserImporter.fail(failure, e instanceof UncheckedIOException ? e.getCause() : e);
+                    // Keep draining, so that the reader never blocks on a dead committer
+                    UserImporter.drain(toCommit);
+                }
+            }, "atm-import-commit");
+            committer.start();
+            threads.add(committer);
+
+            try {
+                this.read(path, resumeAfter, toCommit, toBuild, report);
+                toCommit.put(Batch.END);
+                for (int w = 0; w < this.numberOfWorkers; w++) {
+                    toBuild.put(Batch.END);
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Thread thread : threads) {
+                    thread.interrupt();
+                }
+                throw new IOException("Interrupted while importing " + path, e);
+            } catch (IOException | RuntimeException e) {
+                // Stop the threads before giving up
+                for (Thread thread : threads) {
+                    thread.interrupt();
+                }
+                throw e;
+            }
+        }
+
+        report.setElapsedNanos(System.nanoTime() - start);
+        if (failure[0] instanceof IOException) {
+            throw (IOException) failure[0];
+        }
+        if (failure[0] != null) {
+            throw new IOException("Import of " + path + " failed while adding the users", failure[0]);
+        }
+        return report;
+    }
+
+    /**
+     * Keep the lines of a mapping file up to the first one whose user or accounts the bank doesn't have,
+     * or that is cut short
+     * @return the record number of the last line kept, 0 if none
+     */
+    private long keepAddedUsers(Path mapping) throws IOException {
+        Path temporary = mapping.resolveSibling(mapping.getFileName() + ".tmp");
+        long resumeAfter = 0;
+        try (BufferedReader in = Files.newBufferedReader(mapping, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            // The header, then the users in file order
+            in.readLine();
+            out.write("record,user,accounts");
+            out.newLine();
+            String line;
+            while ((line = in.readLine()) != null) {
+                long recordNumber = this.addedRecordNumber(line);
+                if (recordNumber <= resumeAfter) {
+                    break;
+                }
+                out.write(line);
+                out.newLine();
+                resumeAfter = recordNumber;
+            }
+        }
+        Files.move(temporary, mapping, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return resumeAfter;
+    }
+
+    /**
+     * Get the record number of a line of a mapping file if the bank has its user and all of its accounts
+     * @return the record number, 0 if the line isn't of a user added
+     */
+    private long addedRecordNumber(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 3) {
+            return 0;
+        }
+        User user = this.theBank.findUser(fields[1]);
+        String[] accounts = fields[2].split(";");
+        if (user == null || user.numberOfAccounts() != accounts.length) {
+            return 0;
+        }
+        for (String account : accounts) {
+            Account found = this.theBank.findAccount(account.substring(account.lastIndexOf(':') + 1));
+            if (found == null || found.getHolder() != user) {
+                return 0;
+            }
+        }
+        try {
+            return Long.parseLong(fields[0]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Read the file of users and hand out the batches of the records after `resumeAfter`
+     */
+    private void read(Path path, long resumeAfter, BlockingQueue<Batch> toCommit, BlockingQueue<Batch> toBuild,
+                      IngestReport report) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Batch batch = new Batch(BATCH_SIZE);
+            long recordNumber = 0;
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                if (first) {
+                    first = false;
+                    if (line.startsWith("firstName")) {
+                        continue;
+                    }
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                recordNumber++;
+                if (recordNumber <= resumeAfter) {
+                    continue;
+                }
+                report.recordRead(1);
+
+                String[] fields = line.split(",", -1);
+                if (fields.length < 4 || fields.length > 5) {
+                    report.recordRejected(recordNumber, "expected firstName,lastName,pin,savingsBalance,otherAccounts");
+                    continue;
+                }
+                String firstName = fields[0].trim();
+                String lastName = fields[1].trim();
+                String pin = fields[2].trim();
+                if (firstName.isEmpty() || lastName.isEmpty() || pin.isEmpty()) {
+                    report.recordRejected(recordNumber, "empty name or pin");
+                    continue;
+                }
+                long savingsBalance;
+                String[] otherNames;
+                long[] otherBalances;
+                try {
+                    savingsBalance = UserImporter.parseBalance(fields[3].trim());
+                    String others = fields.length == 5 ? fields[4].trim() : "";
+                    otherNames = others.isEmpty() ? new String[0] : others.split(";");
+                    otherBalances = new long[otherNames.length];
+                    for (int a = 0; a < otherNames.length; a++) {
+                        int colon = otherNames[a].lastIndexOf(':');
+                        String name = (colon < 0 ? otherNames[a] : otherNames[a].substring(0, colon)).trim();
+                        if (name.isEmpty()) {
+                            throw new NumberFormatException("empty account name");
+                        }
+                        otherBalances[a] = colon < 0 ? 0
+                                : UserImporter.parseBalance(otherNames[a].substring(colon + 1).trim());
+                        otherNames[a] = name;
+                    }
+                } catch (NumberFormatException | ArithmeticException e) {
+                    report.recordRejected(recordNumber, "unreadable account or balance: " + e.getMessage());
+                    continue;
+                }
+
+                batch.add(firstName, lastName, pin, savingsBalance, otherNames, otherBalances, recordNumber);
+                if (batch.isFull()) {
+                    // Both block when the workers or the committer are behind, which bounds the memory used
+                    toCommit.put(batch);
+                    toBuild.put(batch);
+                    batch = new Batch(BATCH_SIZE);
+                }
+            }
+            if (batch.size > 0) {
+                toCommit.put(batch);
+                toBuild.put(batch);
+            }
+        }
+    }
+
+    /**
+     * Build the users of batches until an END batch: hash the PINs, give out the uuids, open the accounts
+     */
+    private void work(BlockingQueue<Batch> toBuild, Throwable[] failure) {
+        PinAuthenticator authenticator = this.theBank.getAuthenticator();
+        while (true) {
+            Batch batch;
+            try {
+                batch = toBuild.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == Batch.END) {
+                return;
+            }
+
+            try {
+                int numberOfAccounts = batch.size;
+                for (int i = 0; i < batch.size; i++) {
+                    numberOfAccounts += batch.otherNames[i].length;
+                }
+                // One draw of the shared random generator and one update of each uuid allocator per batch
+                byte[][] salts = authenticator.newSalts(batch.size);
+                int iterations = authenticator.getIterations();
+                String[] userIds = this.theBank.getNewUserUUIDs(batch.size);
+                String[] accountIds = this.theBank.getNewAccountUUIDs(numberOfAccounts);
+                long now = System.currentTimeMillis();
+
+                batch.users = new User[batch.size];
+                batch.accounts = new ArrayList<Account>(numberOfAccounts);
+                int a = 0;
+                for (int i = 0; i < batch.size; i++) {
+                    byte[] pinHash = PinAuthenticator.hash(batch.pins[i], salts[i], iterations);
+                    batch.pins[i] = null;
+                    User user = new User(userIds[i], batch.firstNames[i], batch.lastNames[i], pinHash, salts[i],
+                            iterations, this.theBank);
+                    batch.users[i] = user;
+                    this.open(batch, user, "Savings", accountIds[a++], batch.savingsBalances[i], now);
+                    for (int o = 0; o < batch.otherNames[i].length; o++) {
+                        this.open(batch, user, batch.otherNames[i][o], accountIds[a++], batch.otherBalances[i][o], now);
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                batch.failed = true;
+                UserImporter.fail(failure, e);
+            } finally {
+                batch.built.countDown();
+            }
+        }
+    }
+
+    /**
+     * Open an account of a new user, with its opening balance. Not in the bank yet, so the journal gets the
+     * transaction with the account, and the daily rollups and the audit trail once the batch is committed.
+     */
+    private void open(Batch batch, User user, String name, String uuid, long balance, long now) {
+        Account account = new Account(uuid, name, user, this.theBank);
+        if (balance > 0) {
+            account.open(balance, now, OPENING_MEMO);
+        }
+        user.addAccount(account);
+        batch.accounts.add(account);
+    }
+
+    /**
+     * Add the batches to the bank in file order until the END batch, and write their uuids
+     */
+    private void commit(BlockingQueue<Batch> toCommit, BufferedWriter out, boolean header, IngestReport report) {
+        try {
+            if (header) {
+                out.write("record,user,accounts");
+                out.newLine();
+            }
+            while (true) {
+                Batch batch = toCommit.take();
+                if (batch == Batch.END) {
+                    return;
+                }
+                batch.built.await();
+                if (batch.failed) {
+                    throw new IllegalStateException("A worker failed, see the cause of the import failure");
+                }
+
+                int a = 0;
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < batch.size; i++) {
+                    line.setLength(0);
+                    line.append(batch.recordNumbers[i]).append(',').append(batch.users[i].getUUID()).append(',');
+                    for (int o = 0; o <= batch.otherNames[i].length; o++) {
+                        Account account = batch.accounts.get(a++);
+                        if (o > 0) {
+                            line.append(';');
+                        }
+                        line.append(account.getName()).append(':').append(account.getUUID());
+                    }
+                    out.append(line);
+                    out.newLine();
+                }
+                // Written ahead: a user added is always in the file, see resumeImportUsers
+                out.flush();
+
+                this.theBank.addImportedUsers(Arrays.asList(batch.users), batch.accounts);
+                report.recordAccepted(batch.size);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Record the first failure of a worker or of the committer
+     */
+    private static void fail(Throwable[] failure, Throwable e) {
+        synchronized (failure) {
+            if (failure[0] == null) {
+                failure[0] = e;
+            }
+        }
+    }
+
+    /**
+     * Throw away the batches of a failed committer until the END batch
+     */
+    private static void drain(BlockingQueue<Batch> queue) {
+        try {
+            while (queue.take() != Batch.END) {
+                // Dropped, the import fails anyway
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parse an opening balance
+     * @param text dollars, e.g. "250.00", or empty for 0
+     * @return the balance in cents
+     * @throws NumberFormatException if it is not an amount, or is negative
+     */
+    private static long parseBalance(String text) {
+        if (text.isEmpty()) {
+            return 0;
+        }
+        long balance = Money.parse(text);
+        if (balance < 0) {
+            throw new NumberFormatException("negative opening balance " + text);
+        }
+        return balance;
+    }
+}
@@ -0,0 +1,167 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A limit profile for the money leaving an account (withdrawals and outgoing transfers): for each of its
+ * windows, at most `maxAmount` cents and `maxCount` debits in the last `windowMillis`. A Bank holds one
+ * profile per account name, e.g. "Savings" or "Checking", see Bank.setWithdrawalLimits.
+ *
+ * Profiles are immutable: withWindow returns a new one. Each account counts its debits in `buckets` time
+ * buckets per window, so a check costs the same whatever the history, and the window it covers is up to
+ * one bucket longer than `windowMillis`, never shorter: a limit can refuse a little early, never late.
+ */
+public class WithdrawalLimits {
+    /**
+     * Default number of buckets per window, e.g. hours for a day
+     */
+    public static final int DEFAULT_BUCKETS = 24;
+
+    private long[] windowMillis;
+    private int[] buckets;
+    private long[] maxAmounts;
+    private int[] maxCounts;
+
+    /**
+     * Create a profile without any window, that allows everything
+     */
+    public WithdrawalLimits() {
+        this.windowMillis = new long[0];
+        this.buckets = new int[0];
+        this.maxAmounts = new long[0];
+        this.maxCounts = new int[0];
+    }
+
+    private WithdrawalLimits(WithdrawalLimits limits, int extraWindows) {
+        int n = limits.numberOfWindows() + extraWindows;
+        this.windowMillis = Arrays.copyOf(limits.windowMillis, n);
+        this.buckets = Arrays.copyOf(limits.buckets, n);
+        this.maxAmounts = Arrays.copyOf(limits.maxAmounts, n);
+        this.maxCounts = Arrays.copyOf(limits.maxCounts, n);
+    }
+
+    /**
+     * Get a profile with one more window, counted in DEFAULT_BUCKETS buckets
+     * @param windowMillis length of the window in milliseconds
+     * @param maxAmount max total of the debits in the window, in cents
+     * @param maxCount max number of debits in the window
+     * @return the new profile
+     */
+    public WithdrawalLimits withWindow(long windowMillis, long maxAmount, int maxCount) {
+        return this.withWindow(windowMillis, DEFAULT_BUCKETS, maxAmount, maxCount);
+    }
+
+    /**
+     * Get a profile with one more window
+     * @param windowMillis length of the window in milliseconds
+     * @param buckets number of buckets the window is counted in: more is more precise, and uses more memory
+     * @param maxAmount max total of the debits in the window, in cents
+     * @param maxCount max number of debits in the window
+     * @return the new profile
+     */
+    public WithdrawalLimits withWindow(long windowMillis, int buckets, long maxAmount, int maxCount) {
+        if (windowMillis < 1 || buckets < 1 || maxAmount < 0 || maxCount < 0) {
+            throw new IllegalArgumentException(String.format("Bad window: %d ms in %d buckets, %d cents, %d debits",
+                    windowMillis, buckets, maxAmount, maxCount));
+        }
+        WithdrawalLimits limits = new WithdrawalLimits(this, 1);
+        int w = this.numberOfWindows();
+        limits.windowMillis[w] = windowMillis;
+        limits.buckets[w] = (int) Math.min(buckets, windowMillis);
+        limits.maxAmounts[w] = maxAmount;
+        limits.maxCounts[w] = maxCount;
+        return limits;
+    }
+
+    /**
+     * Parse a profile written as comma-separated windows "minutes:amount/count", e.g. "1440:500.00/5,60:200/3"
+     * for at most $500 in 5 debits a day, and $200 in 3 debits an hour
+     * @param text the profile
+     * @return the profile
+     * @throws IllegalArgumentException if the text is not a profile
+     */
+    public static WithdrawalLimits parse(String text) {
+        WithdrawalLimits limits = new WithdrawalLimits();
+        for (String window : text.split(",")) {
+            int colon = window.indexOf(':');
+            int slash = window.indexOf('/', colon + 1);
+            if (colon < 0 || slash < 0) {
+                throw new IllegalArgumentException("Not a limit window: " + window);
+            }
+            long minutes = Long.parseLong(window.substring(0, colon).trim());
+            long maxAmount = Money.parse(window.substring(colon + 1, slash).trim());
+            int maxCount = Integer.parseInt(window.substring(slash + 1).trim());
+            limits = limits.withWindow(Math.multiplyExact(minutes, 60_000L), maxAmount, maxCount);
+        }
+        return limits;
+    }
+
+    /**
+     * Get the number of windows of the profile
+     * @return the number of windows
+     */
+    public int numberOfWindows() {
+        return this.windowMillis.length;
+    }
+
+    /**
+     * Get the length of a window
+     * @param window index of the window
+     * @return the length in milliseconds
+     */
+    public long getWindowMillis(int window) {
+        return this.windowMillis[window];
+    }
+
+    /**
+     * Get the number of buckets a window is counted in
+     * @param window index of the window
+     * @return the number of buckets
+     */
+    public int getBuckets(int window) {
+        return this.buckets[window];
+    }
+
+    /**
+     * Get the max total of the debits in a window
+     * @param window index of the window
+     * @return the amount in cents
+     */
+    public long getMaxAmount(int window) {
+        return this.maxAmounts[window];
+    }
+
+    /**
+     * Get the max number of debits in a window
+     * @param window index of the window
+     * @return the number of debits
+     */
+    public int getMaxCount(int window) {
+        return this.maxCounts[window];
+    }
+
+    /**
+     * Get the length of the longest window
+     * @return the length in milliseconds, 0 if there is no window
+     */
+    long getLongestWindowMillis() {
+        long longest = 0;
+        for (long millis : this.windowMillis) {
+            longest = Math.max(longest, millis);
+        }
+        return longest;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < this.numberOfWindows(); w++) {
+            if (w > 0) {
+                sb.append(", ");
+            }
+            sb.append(Money.format(this.maxAmounts[w])).append(" in ").append(this.maxCounts[w])
+                    .append(" debits per ").append(this.windowMillis[w] / 60_000).append(" min");
+        }
+        return sb.toString();
+    }
+}